@@ -0,0 +1,68 @@
+package org.contract4j5.benchmarks;
+
+import org.apache.bsf.BSFException;
+import org.contract4j5.configurator.AbstractConfigurator;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.enforcer.ContractEnforcer;
+import org.contract4j5.enforcer.defaultimpl.DefaultContractEnforcer;
+import org.contract4j5.interpreter.ExpressionInterpreter;
+import org.contract4j5.interpreter.bsf.groovy.GroovyBSFExpressionInterpreter;
+import org.contract4j5.interpreter.bsf.jexl.JexlBSFExpressionInterpreter;
+import org.contract4j5.interpreter.bsf.jruby.JRubyBSFExpressionInterpreter;
+import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.contract4j5.interpreter.jexl.JexlExpressionInterpreter;
+import org.contract4j5.reporter.Severity;
+import org.contract4j5.reporter.WriterReporter;
+
+/**
+ * Configures Contract4J for a benchmark trial with the interpreter named by
+ * the benchmarks' "interpreter" parameter, using the same names as the 
+ * "interpreter.lang" of the test targets in build.xml. "none" leaves 
+ * Contract4J alone; it's used for the unwoven baseline runs, where no 
+ * advice runs anyway. Only errors are reported, so the measurements don't
+ * include writing log messages.
+ */
+public class BenchmarkConfigurator extends AbstractConfigurator {
+	public static final String BASELINE = "none";
+
+	private final String interpreter;
+
+	public BenchmarkConfigurator(String interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	public static void configure(String interpreter) {
+		new BenchmarkConfigurator(interpreter).configure();
+	}
+
+	protected void doConfigure() {
+		if (BASELINE.equals(interpreter))
+			return;
+		Contract4J c4j = new Contract4J();
+		c4j.setSystemConfigurator(this);
+		Contract4J.setInstance(c4j);
+		c4j.setReporter(new WriterReporter(Severity.ERROR));
+		ContractEnforcer ce = new DefaultContractEnforcer();
+		c4j.setContractEnforcer(ce);
+		ce.setExpressionInterpreter(makeInterpreter(interpreter));
+	}
+
+	static ExpressionInterpreter makeInterpreter(String name) {
+		try {
+			if (name.equalsIgnoreCase("groovy"))
+				return new GroovyExpressionInterpreter();
+			if (name.equalsIgnoreCase("groovybsf"))
+				return new GroovyBSFExpressionInterpreter();
+			if (name.equalsIgnoreCase("jexl"))
+				return new JexlExpressionInterpreter();
+			if (name.equalsIgnoreCase("jexlbsf"))
+				return new JexlBSFExpressionInterpreter();
+			// As in the tests, JRuby is only supported through BSF.
+			if (name.equalsIgnoreCase("jruby"))
+				return new JRubyBSFExpressionInterpreter();
+		} catch (BSFException e) {
+			throw new ConfigurationFailedException("Could not create the \"" + name + "\" interpreter.", e);
+		}
+		throw new ConfigurationFailedException("Unrecognized interpreter name: \"" + name + "\".");
+	}
+}
@@ -0,0 +1,77 @@
+package org.contract4j5.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.contract4j5.contract.Contract;
+import org.contract4j5.contract.Invar;
+import org.contract4j5.contract.Post;
+import org.contract4j5.contract.Pre;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Constructor precondition, postcondition and invariant tests. The unwoven
+ * baseline allocates the same objects, so the difference in the GC 
+ * profiler's allocation rate is what the contracts allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructorBenchmarks {
+	@Contract
+	public static class PreAccount {
+		private int balance;
+		@Pre("balance >= 0")
+		public PreAccount(int balance) { this.balance = balance; }
+	}
+
+	@Contract
+	public static class PostAccount {
+		private int balance;
+		@Post("$this.balance >= 0")
+		public PostAccount(int balance) { this.balance = balance; }
+	}
+
+	@Contract
+	public static class InvarAccount {
+		private int balance;
+		@Invar("$this.balance >= 0")
+		public InvarAccount(int balance) { this.balance = balance; }
+	}
+
+	@Param({ "groovy", "groovybsf", "jexl", "jexlbsf", "jruby" })
+	public String interpreter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkConfigurator.configure(interpreter);
+	}
+
+	@Benchmark
+	public PreAccount constructorPre() {
+		return new PreAccount(1);
+	}
+
+	@Benchmark
+	public PostAccount constructorPost() {
+		return new PostAccount(1);
+	}
+
+	@Benchmark
+	public InvarAccount constructorInvar() {
+		return new InvarAccount(1);
+	}
+}
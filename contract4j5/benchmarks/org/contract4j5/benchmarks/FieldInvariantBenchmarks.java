@@ -0,0 +1,59 @@
+package org.contract4j5.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.contract4j5.contract.Contract;
+import org.contract4j5.contract.Invar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A field invariant, which is tested on every read and write of the field.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldInvariantBenchmarks {
+	@Contract
+	public static class Account {
+		@Invar("$this.balance >= 0")
+		private int balance = 0;
+		public int  getBalance() { return balance; }
+		public void setBalance(int balance) { this.balance = balance; }
+	}
+
+	@Param({ "groovy", "groovybsf", "jexl", "jexlbsf", "jruby" })
+	public String interpreter;
+
+	private Account account;
+	private int     next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkConfigurator.configure(interpreter);
+		account = new Account();
+	}
+
+	@Benchmark
+	public int fieldGet() {
+		return account.getBalance();
+	}
+
+	@Benchmark
+	public void fieldSet() {
+		account.setBalance(next++ & 0xff);
+	}
+}
@@ -0,0 +1,152 @@
+package org.contract4j5.benchmarks;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Multi-threaded throughput of the ways to share compiled Groovy test 
+ * expressions between threads. It doesn't need the aspects, so it measures
+ * the same thing in the baseline and woven runs:
+ * <ul>
+ * <li><code>sharedScript</code>: one script instance and binding for all 
+ * threads, which must be locked around setting the variables and running 
+ * the script.</li>
+ * <li><code>scriptFromSharedClass</code>: the class compiled once, with an
+ * instance and binding for each thread, as GroovyExpressionInterpreter 
+ * does now. No locking.</li>
+ * <li><code>newThreadParsesScript</code> and 
+ * <code>newThreadInstantiatesSharedClass</code>: what a thread's first 
+ * evaluation of an expression costs when each thread parses its own 
+ * script, and when it instantiates the shared class. Each parse uses a 
+ * new class loader, and its class is removed from Groovy's registry after
+ * the call, so the classes can be unloaded instead of filling the 
+ * metaspace.</li>
+ * <li><code>interpreter</code>: a whole test evaluation with 
+ * GroovyExpressionInterpreter, for reference.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class GroovyScriptCacheBenchmarks {
+	static final String EXPRESSION = "c4jThis.id >= 0 && c4jThis.id < limit";
+
+	public static class Account {
+		private final int id;
+		public int getId() { return id; }
+		public Account(int id) { this.id = id; }
+	}
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+		Binding binding;
+		Script  script;
+		Class<?> scriptClass;
+		GroovyExpressionInterpreter interpreter;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			binding     = new Binding();
+			script      = new GroovyShell(binding).parse(EXPRESSION);
+			scriptClass = new GroovyClassLoader().parseClass(EXPRESSION, "BenchmarkScript.groovy");
+			interpreter = new GroovyExpressionInterpreter();
+			interpreter.registerGlobalContextObject("limit", Integer.valueOf(Integer.MAX_VALUE));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PerThread {
+		Account account;
+		Integer limit = Integer.valueOf(Integer.MAX_VALUE);
+		Binding binding;
+		Script  script;
+		TestContextImpl context;
+
+		@Setup(Level.Trial)
+		public void setUp(Shared shared) {
+			account = new Account((int) Thread.currentThread().getId());
+			binding = new Binding();
+			script  = InvokerHelper.createScript(shared.scriptClass, binding);
+			context = new TestContextImpl("$this.id >= 0 && $this.id < limit", "id", 
+					new Instance("account", Account.class, account), 
+					null, null, null, "Account.java", 1);
+		}
+	}
+
+	/** A new class loader for each parse, and the class it parsed. */
+	@State(Scope.Thread)
+	public static class Parse {
+		GroovyClassLoader loader;
+		Class<?> parsed;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			loader = new GroovyClassLoader();
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			if (parsed != null)
+				InvokerHelper.removeClass(parsed);
+			parsed = null;
+			loader = null;
+		}
+	}
+
+	@Benchmark
+	public Object sharedScript(Shared shared, PerThread thread) {
+		synchronized (shared.script) {
+			shared.binding.setVariable("c4jThis", thread.account);
+			shared.binding.setVariable("limit",   thread.limit);
+			return shared.script.run();
+		}
+	}
+
+	@Benchmark
+	public Object scriptFromSharedClass(PerThread thread) {
+		thread.binding.setVariable("c4jThis", thread.account);
+		thread.binding.setVariable("limit",   thread.limit);
+		return thread.script.run();
+	}
+
+	@Benchmark
+	public Object newThreadParsesScript(Parse parse, PerThread thread) {
+		parse.parsed = parse.loader.parseClass(EXPRESSION, "BenchmarkScript.groovy");
+		return InvokerHelper.createScript(parse.parsed, thread.binding);
+	}
+
+	@Benchmark
+	public Object newThreadInstantiatesSharedClass(Shared shared, PerThread thread) {
+		return InvokerHelper.createScript(shared.scriptClass, thread.binding);
+	}
+
+	@Benchmark
+	public boolean interpreter(Shared shared, PerThread thread) {
+		return shared.interpreter.invokeTest(thread.context).isPassed();
+	}
+}
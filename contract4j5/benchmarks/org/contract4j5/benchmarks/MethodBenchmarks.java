@@ -0,0 +1,68 @@
+package org.contract4j5.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.contract4j5.contract.Contract;
+import org.contract4j5.contract.Post;
+import org.contract4j5.contract.Pre;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Method precondition and postcondition tests. Each target class has only
+ * the contract being measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodBenchmarks {
+	@Contract
+	public static class PreAccount {
+		private int balance = 0;
+		@Pre("amount >= 0")
+		public int deposit(int amount) { balance += amount; return balance; }
+	}
+
+	@Contract
+	public static class PostAccount {
+		private int balance = 0;
+		@Post("$return >= 0")
+		public int deposit(int amount) { balance += amount; return balance; }
+	}
+
+	@Param({ "groovy", "groovybsf", "jexl", "jexlbsf", "jruby" })
+	public String interpreter;
+
+	private PreAccount  preAccount;
+	private PostAccount postAccount;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkConfigurator.configure(interpreter);
+		preAccount  = new PreAccount();
+		postAccount = new PostAccount();
+	}
+
+	@Benchmark
+	public int methodPre() {
+		return preAccount.deposit(1);
+	}
+
+	@Benchmark
+	public int methodPost() {
+		return postAccount.deposit(1);
+	}
+}
@@ -0,0 +1,53 @@
+package org.contract4j5.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.contract4j5.contract.Contract;
+import org.contract4j5.contract.Invar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A type invariant, which is tested before and after each public method.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeInvariantBenchmarks {
+	@Contract
+	@Invar("$this.balance >= 0")
+	public static class Account {
+		private int balance = 0;
+		public int getBalance() { return balance; }
+		public int deposit(int amount) { balance += amount; return balance; }
+	}
+
+	@Param({ "groovy", "groovybsf", "jexl", "jexlbsf", "jruby" })
+	public String interpreter;
+
+	private Account account;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkConfigurator.configure(interpreter);
+		account = new Account();
+	}
+
+	@Benchmark
+	public int typeInvariant() {
+		return account.deposit(1);
+	}
+}
@@ -7,6 +7,8 @@ set JUNIT_HOME=%DRIVE%\tools\javatools\junit3.8.1
 set ASPECTJ_HOME=%DRIVE%\aspectj1.5.3
 rem Ignore the SPRING_HOME if you aren't building the separate Spring example
 set SPRING_HOME=%DRIVE%\Spring\spring-framework-1.2.5
+rem Ignore the JMH_HOME if you aren't running the "benchmarks" targets
+set JMH_HOME=%DRIVE%\tools\javatools\jmh
 
 rem set CONTRACT4J5_ROOT=%HOME%\src\java\contract4j5
 set CONTRACT4J5_ROOT=..\
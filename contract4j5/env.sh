@@ -44,6 +44,7 @@ esac
 : ${JAVA_HOME:=$TOOLS_HOME/jdk$JDK_VERSION}
 : ${JUNIT_HOME:=$TOOLS_HOME/junit3.8.1}
 : ${SPRING_HOME:=$TOOLS_HOME/Spring/spring-framework-1.2.5}
+: ${JMH_HOME:=$TOOLS_HOME/jmh}  # Only needed for the "benchmarks" targets.
 
 case "$osname" in
 	cygwin*)
@@ -60,6 +61,7 @@ case "$osname" in
 	JAVA_HOME=`cygpath --windows --path "$JAVA_HOME"`
 	JUNIT_HOME=`cygpath --windows --path "$JUNIT_HOME"`
 	SPRING_HOME=`cygpath --windows --path "$SPRING_HOME"`
+	JMH_HOME=`cygpath --windows --path "$JMH_HOME"`
 	CLASSPATH=`cygpath --windows --path "$CLASSPATH"`
 	CLASSPATH="$ANT_HOME\\lib\\ant.jar;$ASPECTJ_HOME\\lib\\aspectjrt.jar;$ASPECTJ_HOME\\lib\\aspectjtools.jar;$JUNIT_HOME\\junit.jar;$CLASSPATH"
 	;;
@@ -78,6 +80,7 @@ export CONTRACT4J5_LIB
 export JAVA_HOME
 export JUNIT_HOME
 export SPRING_HOME
+export JMH_HOME
 export TOOLS_HOME
 export CLASSPATH
 export PATH
@@ -0,0 +1,95 @@
+package org.contract4j5.performance;
+
+import org.contract4j5.contract.Contract;
+import org.contract4j5.contract.Invar;
+import org.contract4j5.contract.Post;
+import org.contract4j5.contract.Pre;
+import org.contract4j5.controller.Contract4J;
+
+import junit.framework.TestCase;
+
+/** 
+ * Compare the cost of calling methods of a class with contracts when all 
+ * tests are disabled with the cost of calling the same methods of an 
+ * identical class without contracts, which isn't advised. The guard at
+ * each advised join point is a single static field read, so the two should 
+ * be within noise of each other; the test allows a lot more than noise, so
+ * it only fails if disabled tests are still (partly) evaluated.
+ */
+public class DisabledContractsPerfTest extends TestCase {
+	private static final int CALLS  = 10000000;
+	private static final int ROUNDS = 5;
+	/** The bound on the time with contracts is this times the time without... */
+	private static final int  MAX_RATIO   = 3;
+	/** ... plus this many nanoseconds, in case the time without is tiny. */
+	private static final long SLACK_NANOS = 50000000L;
+
+	@Contract @Invar("count >= 0")
+	static class WithContracts {
+		private int count = 0;
+		@Pre("i >= 0")
+		@Post("$this.count >= 0")
+		public int add(int i) { count += i; return count; }
+	}
+
+	static class WithoutContracts {
+		private int count = 0;
+		public int add(int i) { count += i; return count; }
+	}
+
+	private boolean pre, post, invar;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Contract4J c4j = Contract4J.getInstance();
+		pre   = c4j.isPreTestsEnabled();
+		post  = c4j.isPostTestsEnabled();
+		invar = c4j.isInvarTestsEnabled();
+		c4j.setPreTestsEnabled(false);
+		c4j.setPostTestsEnabled(false);
+		c4j.setInvarTestsEnabled(false);
+	}
+
+	protected void tearDown() throws Exception {
+		Contract4J c4j = Contract4J.getInstance();
+		c4j.setPreTestsEnabled(pre);
+		c4j.setPostTestsEnabled(post);
+		c4j.setInvarTestsEnabled(invar);
+		super.tearDown();
+	}
+
+	public void testDisabledContractsCostAboutAsMuchAsNone() {
+		long with = Long.MAX_VALUE, without = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			with    = Math.min(with,    timeWithContracts());
+			without = Math.min(without, timeWithoutContracts());
+		}
+		assertTrue("Disabled contracts: " + nanosPerCall(with) + 
+				" ns/call, no contracts: " + nanosPerCall(without) + " ns/call",
+				with <= MAX_RATIO * without + SLACK_NANOS);
+	}
+
+	private long timeWithContracts() {
+		WithContracts w = new WithContracts();
+		long start = System.nanoTime();
+		for (int i = 0; i < CALLS; i++)
+			w.add(i & 1);
+		long elapsed = System.nanoTime() - start;
+		assertEquals(CALLS / 2, w.count);
+		return elapsed;
+	}
+
+	private long timeWithoutContracts() {
+		WithoutContracts w = new WithoutContracts();
+		long start = System.nanoTime();
+		for (int i = 0; i < CALLS; i++)
+			w.add(i & 1);
+		long elapsed = System.nanoTime() - start;
+		assertEquals(CALLS / 2, w.count);
+		return elapsed;
+	}
+
+	private static double nanosPerCall(long nanos) {
+		return Math.round(nanos * 100.0 / CALLS) / 100.0;
+	}
+}
@@ -0,0 +1,78 @@
+package org.contract4j5.performance;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContextCache;
+import org.contract4j5.context.TestContextImpl;
+
+import junit.framework.TestCase;
+
+/** 
+ * Look up tests' {@link ContractSite}s in the {@link TestContextCache}, as 
+ * the advice does for every evaluated test, with 1, 8 and 32 threads doing
+ * lookups concurrently. Plain objects stand in for the join points' static
+ * parts. Time the test with and without contention to see the cost.
+ */
+public class TestContextCacheLookupPerfTest extends TestCase {
+	private static final int   SITES      = 512;
+	private static final int   LOOKUPS    = 2000000;
+	private static final int[] THREADS    = { 1, 8, 32 };
+	private static final String[] TYPES   = { "Pre", "Post", "InvarMethod" };
+
+	private TestContextCache cache;
+	private Object[] staticParts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache = new TestContextCache();
+		cache.enableCachePuts();
+		staticParts = new Object[SITES];
+		for (int i = 0; i < SITES; i++) {
+			staticParts[i] = new Object();
+			for (String type: TYPES) {
+				cache.put(staticParts[i], type, new ContractSite(
+					new TestContextImpl("x > 0", "item", null, null, null, null, "Foo.java", i), null, null));
+			}
+		}
+	}
+
+	public void testLookupCost() throws Exception {
+		long lookups = 0;
+		for (int threads: THREADS) {
+			runLookups(threads);
+			lookups += (long) threads * LOOKUPS;
+			assertEquals(lookups, cache.getHitCount());
+			assertEquals(0, cache.getMissCount());
+		}
+	}
+
+	private void runLookups(int threadCount) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done  = new CountDownLatch(threadCount);
+		final int[] found = new int[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int index = t;
+			new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < LOOKUPS; i++) {
+							int s = (i * 31 + index) % SITES;
+							if (cache.get(staticParts[s], TYPES[i % TYPES.length]) != null)
+								found[index]++;
+						}
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		done.await();
+		for (int t = 0; t < threadCount; t++)
+			assertEquals("thread " + t, LOOKUPS, found[t]);
+	}
+}
@@ -31,9 +31,17 @@ import org.contract4j5.aspects.InvariantMethodConditions;
 import org.contract4j5.aspects.InvariantTypeConditions;
 import org.contract4j5.aspects.MethodBoundaryConditions;
 import org.contract4j5.configurator.AbstractConfigurator;
+import org.contract4j5.contract.CostTier;
 import org.contract4j5.controller.Contract4J;
 import org.contract4j5.enforcer.ContractEnforcer;
+import org.contract4j5.enforcer.ContractEnforcerHelper;
+import org.contract4j5.interpreter.ExpressionCache;
 import org.contract4j5.interpreter.ExpressionInterpreter;
+import org.contract4j5.interpreter.ExpressionInterpreterHelper;
+import org.contract4j5.interpreter.bytecode.BytecodeExpressionInterpreter;
+import org.contract4j5.interpreter.snapshot.SnapshotStrategy;
+import org.contract4j5.interpreter.snapshot.StandardSnapshotStrategy;
+import org.contract4j5.reporter.AsyncReporter;
 import org.contract4j5.reporter.Reporter;
 import org.contract4j5.reporter.Severity;
 import org.contract4j5.reporter.WriterReporter;
@@ -48,6 +56,10 @@ import org.contract4j5.utils.StringUtils;
  */
 public class PropertiesConfigurator extends AbstractConfigurator {
 	public static final String PROPERTY_PREFIX = "org.contract4j5.";
+	public static final String SAMPLE_RATE_PREFIX = "SampleRate.";
+	public static final String BUDGET_PREFIX = "Budget.";
+	public static final String SNAPSHOT_TYPE_PREFIX = "Snapshot.Type.";
+	public static final String SNAPSHOT_SITE_PREFIX = "Snapshot.Site.";
 	public static enum EnabledPropertyKeys {
 		Contract, 
 		Pre,
@@ -59,13 +71,22 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 		GlobalReporterThreshold,
 		GlobalWriterReporterWriter,
 		GlobalWriterReporterOutputStream, 
+		GlobalAsyncReporterCapacity,
+		GlobalAsyncReporterFlushIntervalMillis,
+		GlobalAsyncReporterOverflowPolicy,
 		ContractEnforcer,
 		ContractEnforcerReportErrors,
 		ContractEnforcerErrorReportingSeverity,
 		ContractEnforcerIncludeStackTrace,
+		ContractEnforcerFailureSummaryIntervalMillis,
+		ContractEnforcerStacklessErrors,
 		ExpressionInterpreter,
 		ExpressionInterpreterEmptyTestExpressionsValid,
 		ExpressionInterpreterOptionalKeywordSubstitutions,
+		ExpressionInterpreterCompileToBytecode,
+		ExpressionInterpreterCacheCapacity,
+		ExpressionInterpreterCacheEvictionPolicy,
+		ExpressionInterpreterEvaluateTestsDirectly,
 		DefaultFieldInvarTestExpressionMaker,
 		DefaultFieldCtorInvarTestExpressionMaker,
 		DefaultMethodInvarTestExpressionMaker,
@@ -80,7 +101,17 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 		MethodParentTestExpressionFinder,
 		MethodInvarParentTestExpressionFinder,
 		CtorInvarParentTestExpressionFinder,
-		TypeInvarParentTestExpressionFinder
+		TypeInvarParentTestExpressionFinder,
+		RegisterMBeans,
+		CollectMetrics,
+		TrustThreshold,
+		MaxTrustInterval,
+		BudgetOverruns,
+		BudgetWindowMillis,
+		SuspensionMillis,
+		MaxTier,
+		SnapshotImmutableTypes,
+		SnapshotDefaultStrategy
 	};
 	
 	private Properties properties = null;
@@ -122,6 +153,9 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 	private Severity globalReporterThreshold = null;
 	private java.io.Writer globalWriterReporterWriter = null;
 	private java.io.OutputStream globalWriterReporterOutputStream = null;
+	private Integer globalAsyncReporterCapacity = null;
+	private Long    globalAsyncReporterFlushIntervalMillis = null;
+	private AsyncReporter.OverflowPolicy globalAsyncReporterOverflowPolicy = null;
 	private boolean foundContractDisableProperty = false;
 	private ContractEnforcer ce = null; 
 	private Severity errorReportingSeverity = Severity.FATAL;
@@ -130,10 +164,17 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 	private boolean reportErrorsWasSet = false;
 	private boolean includeStackTrace = false;
 	private boolean includeStackTraceWasSet = false;
+	private Long failureSummaryIntervalMillis = null;
+	private Boolean stacklessErrors = null;
 	private ExpressionInterpreter ei = null; 
 	private boolean emptyTestExprsValid = false;
 	private boolean emptyTestExprsValidWasSet = false;
 	private Map<String,String> optionalKeywordSubstitutions;
+	private boolean compileToBytecode = false;
+	private boolean compileToBytecodeWasSet = false;
+	private Integer expressionCacheCapacity = null;
+	private ExpressionCache.EvictionPolicy expressionCacheEvictionPolicy = null;
+	private Boolean evaluateTestsDirectly = null;
 
 	private StringBuffer errors = new StringBuffer(1024);
 	private boolean expressionInterpreterAlreadySet = false;
@@ -187,7 +228,66 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 				return true; // found and processed one of these options.
 			}
 		}
-		return false;
+		return processEnablementOverrideProperty(propKey, propValue);
+	}
+
+	/**
+	 * Handle an override for a package, class or member, e.g., 
+	 * "org.contract4j5.Pre.com.example.Account.withdraw=false", or a sample
+	 * rate, e.g., "org.contract4j5.SampleRate.Invar.com.example=0.01". 
+	 * @see org.contract4j5.controller.EnablementRegistry
+	 */
+	protected boolean processEnablementOverrideProperty(String propKey, String propValue) {
+		if (propKey == null || ! propKey.startsWith(PROPERTY_PREFIX))
+			return false;
+		String  key        = propKey.substring(PROPERTY_PREFIX.length());
+		boolean sampleRate = key.startsWith(SAMPLE_RATE_PREFIX);
+		boolean budget     = key.startsWith(BUDGET_PREFIX);
+		if (sampleRate)
+			key = key.substring(SAMPLE_RATE_PREFIX.length());
+		else if (budget)
+			key = key.substring(BUDGET_PREFIX.length());
+		for (EnabledPropertyKeys type: EnabledPropertyKeys.values()) {
+			if (key.startsWith(type.name() + ".")) {
+				try {
+					if (sampleRate)
+						Contract4J.getEnablementRegistry().setSampleRate(key, Double.parseDouble(propValue.trim()));
+					else if (budget)
+						Contract4J.getEnablementRegistry().setBudget(key, Long.parseLong(propValue.trim()));
+					else
+						Contract4J.getEnablementRegistry().setOverride(key, convertToBoolean(propValue));
+				} catch (IllegalArgumentException iae) {
+					recordEnableTestTypeError(propKey, propValue);
+				}
+				return true;
+			}
+		}
+		return processSnapshotStrategyProperty(propKey, propValue);
+	}
+
+	/**
+	 * Handle a snapshot strategy for the "old" values of a type, e.g.,
+	 * "org.contract4j5.Snapshot.Type.java.util.List=SHALLOW", or of the 
+	 * tests of a package, class or member, e.g., 
+	 * "org.contract4j5.Snapshot.Site.com.example.Account.withdraw=DEEP".
+	 * @see org.contract4j5.interpreter.snapshot.SnapshotPolicy
+	 */
+	protected boolean processSnapshotStrategyProperty(String propKey, String propValue) {
+		String  key  = propKey.substring(PROPERTY_PREFIX.length());
+		boolean type = key.startsWith(SNAPSHOT_TYPE_PREFIX);
+		if (! type && ! key.startsWith(SNAPSHOT_SITE_PREFIX))
+			return false;
+		key = key.substring((type ? SNAPSHOT_TYPE_PREFIX : SNAPSHOT_SITE_PREFIX).length());
+		try {
+			SnapshotStrategy strategy = propertyToSnapshotStrategy(propValue);
+			if (type)
+				Contract4J.getSnapshotPolicy().setTypeStrategy(key, strategy);
+			else
+				Contract4J.getSnapshotPolicy().setSiteStrategy(key, strategy);
+		} catch (Throwable th) {
+			recordBeanPropertyError(propKey, propValue, th);
+		}
+		return true;
 	}
 
 	protected boolean processBean(String beanName, String propValue) {
@@ -219,6 +319,21 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 						globalWriterReporterOutputStream = (java.io.OutputStream) propertyToObject(propValue);
 					}
 					break;
+					case GlobalAsyncReporterCapacity:
+					{
+						globalAsyncReporterCapacity = Integer.valueOf(propValue.trim());
+					}
+					break;
+					case GlobalAsyncReporterFlushIntervalMillis:
+					{
+						globalAsyncReporterFlushIntervalMillis = Long.valueOf(propValue.trim());
+					}
+					break;
+					case GlobalAsyncReporterOverflowPolicy:
+					{
+						globalAsyncReporterOverflowPolicy = AsyncReporter.OverflowPolicy.valueOf(propValue.trim().toUpperCase());
+					}
+					break;
 					case ContractEnforcer:
 					{
 						ce = (ContractEnforcer) propertyToObject(propValue);
@@ -242,6 +357,16 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 						includeStackTraceWasSet = true;
 					}
 					break;
+					case ContractEnforcerFailureSummaryIntervalMillis:
+					{
+						failureSummaryIntervalMillis = Long.valueOf(propValue.trim());
+					}
+					break;
+					case ContractEnforcerStacklessErrors:
+					{
+						stacklessErrors = Boolean.valueOf(convertToBoolean(propValue));
+					}
+					break;
 					case ExpressionInterpreter:
 					{
 						if (expressionInterpreterAlreadySet == false)
@@ -259,6 +384,27 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 						processOptionalKeywordSubstitutions(propValue);
 					}
 					break;
+					case ExpressionInterpreterCompileToBytecode:
+					{
+						compileToBytecode = convertToBoolean(propValue);
+						compileToBytecodeWasSet = true;
+					}
+					break;
+					case ExpressionInterpreterCacheCapacity:
+					{
+						expressionCacheCapacity = Integer.valueOf(propValue.trim());
+					}
+					break;
+					case ExpressionInterpreterCacheEvictionPolicy:
+					{
+						expressionCacheEvictionPolicy = ExpressionCache.EvictionPolicy.valueOf(propValue.trim().toUpperCase());
+					}
+					break;
+					case ExpressionInterpreterEvaluateTestsDirectly:
+					{
+						evaluateTestsDirectly = Boolean.valueOf(convertToBoolean(propValue));
+					}
+					break;
 					case DefaultFieldInvarTestExpressionMaker:
 					{
 						DefaultTestExpressionMaker dtem = 
@@ -360,6 +506,60 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 						InvariantTypeConditions.aspectOf().setParentTestExpressionFinder(ptef);
 					}
 					break;
+					case RegisterMBeans:
+					{
+						if (convertToBoolean(propValue))
+							Contract4J.registerMBeans();
+					}
+					break;
+					case CollectMetrics:
+					{
+						Contract4J.getMetricsRegistry().setEnabled(convertToBoolean(propValue));
+					}
+					break;
+					case TrustThreshold:
+					{
+						Contract4J.getEnablementRegistry().setTrustThreshold(Integer.parseInt(propValue.trim()));
+					}
+					break;
+					case MaxTrustInterval:
+					{
+						Contract4J.getEnablementRegistry().setMaxTrustInterval(Integer.parseInt(propValue.trim()));
+					}
+					break;
+					case BudgetOverruns:
+					{
+						Contract4J.getEnablementRegistry().setBudgetOverruns(Integer.parseInt(propValue.trim()));
+					}
+					break;
+					case BudgetWindowMillis:
+					{
+						Contract4J.getEnablementRegistry().setBudgetWindowMillis(Long.parseLong(propValue.trim()));
+					}
+					break;
+					case SuspensionMillis:
+					{
+						Contract4J.getEnablementRegistry().setSuspensionMillis(Long.parseLong(propValue.trim()));
+					}
+					break;
+					case MaxTier:
+					{
+						getContract4J().setMaxTier(CostTier.valueOf(propValue.trim().toUpperCase()));
+					}
+					break;
+					case SnapshotImmutableTypes:
+					{
+						for (String className: propValue.split(",")) {
+							if (className.trim().length() > 0)
+								Contract4J.getSnapshotPolicy().addImmutableType(className);
+						}
+					}
+					break;
+					case SnapshotDefaultStrategy:
+					{
+						Contract4J.getSnapshotPolicy().setDefaultStrategy(propertyToSnapshotStrategy(propValue));
+					}
+					break;
 					default:
 						throw new UnsupportedOperationException("Forgot to support bean type \""+beanKey+"\"!");
 					}
@@ -400,6 +600,16 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 		}
 	}
 
+	/**
+	 * @return the {@link StandardSnapshotStrategy} with the name, or else an
+	 * instance of the named {@link SnapshotStrategy} class.
+	 */
+	private SnapshotStrategy propertyToSnapshotStrategy(String propValue) 
+			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		SnapshotStrategy strategy = StandardSnapshotStrategy.parse(propValue);
+		return strategy != null ? strategy : (SnapshotStrategy) propertyToObject(propValue.trim());
+	}
+
 	private Object propertyToObject(String className) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
 		Class<?> clazz = Class.forName(className);
 		Object object = clazz.newInstance();
@@ -422,11 +632,17 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 			if (includeStackTraceWasSet) {
 				ce.setIncludeStackTrace(includeStackTrace);
 			}
+			if (failureSummaryIntervalMillis != null || stacklessErrors != null) {
+				configureContractEnforcerHelper();
+			}
 			if (ei == null) {
 				ei = ce.getExpressionInterpreter();
 			} else {
 				ce.setExpressionInterpreter(ei);
 			}
+			if (compileToBytecodeWasSet) {
+				configureBytecodeCompilation();
+			}
 			if (ei != null) {
 				if (emptyTestExprsValidWasSet) {
 					ei.setTreatEmptyTestExpressionAsValidTest(emptyTestExprsValid);
@@ -434,10 +650,125 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 				if (optionalKeywordSubstitutions != null) {
 					ei.setOptionalKeywordSubstitutions(optionalKeywordSubstitutions);
 				}
+				if (expressionCacheCapacity != null || expressionCacheEvictionPolicy != null) {
+					configureExpressionCache();
+				}
+				if (evaluateTestsDirectly != null) {
+					configureDirectEvaluation();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Apply the settings only supported by {@link ContractEnforcerHelper} subclasses.
+	 */
+	private void configureContractEnforcerHelper() {
+		if (!(ce instanceof ContractEnforcerHelper)) {
+			errors.append("The contract enforcer \"");
+			errors.append(ce.getClass().getName());
+			errors.append("\" is not a \"ContractEnforcerHelper\", so the failure summary interval and stackless errors settings are ignored.");
+			errors.append(StringUtils.newline());
+			return;
+		}
+		ContractEnforcerHelper helper = (ContractEnforcerHelper) ce;
+		if (stacklessErrors != null) {
+			helper.setStacklessErrors(stacklessErrors.booleanValue());
+		}
+		if (failureSummaryIntervalMillis != null && helper.getFailureAggregator() != null) {
+			try {
+				helper.getFailureAggregator().setSummaryIntervalMillis(failureSummaryIntervalMillis.longValue());
+			} catch (IllegalArgumentException iae) {
+				recordBeanPropertyError(PROPERTY_PREFIX+KnownBeanKeys.ContractEnforcerFailureSummaryIntervalMillis.name(), 
+						failureSummaryIntervalMillis, iae);
 			}
 		}
 	}
 
+	/**
+	 * Wrap the interpreter in (or unwrap it from) a {@link BytecodeExpressionInterpreter}.
+	 */
+	private void configureBytecodeCompilation() {
+		if (compileToBytecode) {
+			if (ei instanceof ExpressionInterpreterHelper) {
+				ei = new BytecodeExpressionInterpreter((ExpressionInterpreterHelper) ei);
+				ce.setExpressionInterpreter(ei);
+			} else if (!(ei instanceof BytecodeExpressionInterpreter)) {
+				errors.append("The expression interpreter \"");
+				errors.append(ei == null ? null : ei.getClass().getName());
+				errors.append("\" can't be combined with bytecode compilation. Ignored.");
+				errors.append(StringUtils.newline());
+			}
+		} else if (ei instanceof BytecodeExpressionInterpreter) {
+			ei = ((BytecodeExpressionInterpreter) ei).getDelegate();
+			ce.setExpressionInterpreter(ei);
+		}
+	}
+
+	/**
+	 * Size the interpreter's cache of parsed expressions and set its eviction
+	 * policy. A {@link BytecodeExpressionInterpreter} has no such cache, but
+	 * its delegate does.
+	 */
+	private void configureExpressionCache() {
+		ExpressionInterpreterHelper helper = interpreterHelper();
+		ExpressionCache<?> cache = helper != null ? helper.getExpressionCache() : null;
+		if (cache == null) {
+			errors.append("The expression interpreter \"");
+			errors.append(interpreterName());
+			errors.append("\" doesn't cache its expressions, so the cache capacity and eviction policy are ignored.");
+			errors.append(StringUtils.newline());
+			return;
+		}
+		if (expressionCacheEvictionPolicy != null) {
+			cache.setEvictionPolicy(expressionCacheEvictionPolicy);
+		}
+		if (expressionCacheCapacity != null) {
+			try {
+				cache.setCapacity(expressionCacheCapacity.intValue());
+			} catch (IllegalArgumentException iae) {
+				recordBeanPropertyError(PROPERTY_PREFIX+KnownBeanKeys.ExpressionInterpreterCacheCapacity.name(), 
+						expressionCacheCapacity, iae);
+			}
+		}
+	}
+
+	/**
+	 * Turn the evaluation of simple tests without the scripting engine on or off.
+	 */
+	private void configureDirectEvaluation() {
+		ExpressionInterpreterHelper helper = interpreterHelper();
+		if (helper == null) {
+			errors.append("The expression interpreter \"");
+			errors.append(interpreterName());
+			errors.append("\" is not an \"ExpressionInterpreterHelper\", so the direct evaluation setting is ignored.");
+			errors.append(StringUtils.newline());
+			return;
+		}
+		helper.setEvaluateTestsDirectly(evaluateTestsDirectly.booleanValue());
+	}
+
+	/**
+	 * @return the interpreter, or the delegate of a {@link BytecodeExpressionInterpreter},
+	 * if it is an {@link ExpressionInterpreterHelper}, otherwise null.
+	 */
+	private ExpressionInterpreterHelper interpreterHelper() {
+		ExpressionInterpreter interpreter = unwrappedInterpreter();
+		return interpreter instanceof ExpressionInterpreterHelper ? 
+				(ExpressionInterpreterHelper) interpreter : null;
+	}
+
+	private String interpreterName() {
+		return unwrappedInterpreter().getClass().getName();
+	}
+
+	private ExpressionInterpreter unwrappedInterpreter() {
+		if (ei instanceof BytecodeExpressionInterpreter) {
+			return ((BytecodeExpressionInterpreter) ei).getDelegate();
+		}
+		return ei;
+	}
+
 	private void configureGlobalReporter() {
 		initGlobalReporterIfNotInitialized();
 		getContract4J().setReporter(globalReporter);
@@ -462,6 +793,26 @@ public class PropertiesConfigurator extends AbstractConfigurator {
 				}
 			}
 		}
+		if (globalAsyncReporterCapacity != null ||
+			globalAsyncReporterFlushIntervalMillis != null ||
+			globalAsyncReporterOverflowPolicy != null) {
+			if (!(globalReporter instanceof AsyncReporter)) {
+				errors.append("The \"global\" reporter is not an \"AsyncReporter\", so the values for its capacity, flush interval and overflow policy are ignored.");
+				errors.append(StringUtils.newline());
+				return;
+			}
+			AsyncReporter ar = (AsyncReporter) globalReporter;
+			try {
+				if (globalAsyncReporterCapacity != null)
+					ar.setCapacity(globalAsyncReporterCapacity.intValue());
+				if (globalAsyncReporterFlushIntervalMillis != null)
+					ar.setFlushIntervalMillis(globalAsyncReporterFlushIntervalMillis.longValue());
+				if (globalAsyncReporterOverflowPolicy != null)
+					ar.setOverflowPolicy(globalAsyncReporterOverflowPolicy);
+			} catch (RuntimeException re) {
+				recordBeanPropertyError(PROPERTY_PREFIX+KnownBeanKeys.GlobalReporter.name(), globalReporter, re);
+			}
+		}
 	}
 	private void initGlobalReporterIfNotInitialized() {
 		if (globalReporter == null) {
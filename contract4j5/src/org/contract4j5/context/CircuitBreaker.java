@@ -0,0 +1,105 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context;
+
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.controller.EnablementRegistry;
+
+/**
+ * The latency "circuit breaker" of a {@link ContractSite}: its budget, the
+ * overruns in the current window, and when a suspension ends (0 if the site
+ * isn't suspended). Like {@link TrustPolicy}, it is updated without locking.
+ */
+final class CircuitBreaker {
+	private volatile long    budgetNanos    = 0;
+	private volatile int     overruns       = 0;
+	private volatile long    windowStart    = 0;
+	private volatile long    suspendedUntil = 0;
+	private volatile boolean probing        = false;
+	private volatile long    lastCostNanos  = 0;
+
+	/**
+	 * Start again with a new budget, ending any suspension.
+	 * @param budgetNanos the budget, or 0 for none.
+	 */
+	void reset(long budgetNanos) {
+		this.budgetNanos = budgetNanos;
+		suspendedUntil   = 0;
+		probing          = false;
+		overruns         = 0;
+	}
+
+	/**
+	 * @return true if the site isn't suspended, or its suspension is over, in
+	 * which case this call is the probe. Until the probe's cost is recorded,
+	 * or another suspension period has passed, no other call is evaluated.
+	 */
+	boolean mayProbe() {
+		long until = suspendedUntil;
+		if (until == 0)
+			return true;
+		long now = System.nanoTime();
+		if (now - until < 0)
+			return false;
+		suspendedUntil = suspensionEnd(now);
+		probing        = true;
+		return true;
+	}
+
+	/**
+	 * @see ContractSite#recordCost(long)
+	 */
+	boolean recordCost(long nanos) {
+		long budget = budgetNanos;
+		if (budget == 0)
+			return false;
+		lastCostNanos = nanos;
+		if (probing) {
+			probing = false;
+			if (nanos > budget)
+				return false;
+			suspendedUntil = 0;
+			overruns       = 0;
+			return true;
+		}
+		if (nanos <= budget || suspendedUntil != 0)
+			return false;
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		long now = System.nanoTime();
+		if (overruns == 0 || now - windowStart > registry.getBudgetWindowMillis() * 1000000L) {
+			windowStart = now;
+			overruns    = 0;
+		}
+		if (++overruns < registry.getBudgetOverruns())
+			return false;
+		overruns       = 0;
+		suspendedUntil = suspensionEnd(now);
+		return true;
+	}
+
+	private static long suspensionEnd(long now) {
+		long end = now + Contract4J.getEnablementRegistry().getSuspensionMillis() * 1000000L;
+		return end != 0 ? end : 1;
+	}
+
+	long    getBudgetNanos()   { return budgetNanos; }
+	boolean isSuspended()      { return suspendedUntil != 0; }
+	long    getLastCostNanos() { return lastCostNanos; }
+}
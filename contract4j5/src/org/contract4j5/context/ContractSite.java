@@ -0,0 +1,369 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context;
+
+import java.lang.annotation.Annotation;
+
+import org.contract4j5.contract.CostTier;
+import org.contract4j5.contract.Invar;
+import org.contract4j5.contract.Post;
+import org.contract4j5.contract.Pre;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.controller.EnablementRegistry;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.instance.InstanceUtils;
+import org.contract4j5.interpreter.EvaluationTier;
+import org.contract4j5.metrics.ContractMetrics;
+import org.contract4j5.metrics.MetricsRegistry;
+
+/**
+ * The parts of a test's context that are the same every time the test at a
+ * particular join point is evaluated: the test expressions, the name of the
+ * item being tested, the names and types of the instance, field, arguments
+ * and result, and the source location. A site is built once, from the first
+ * context made for the join point, and then shared by all threads, so it
+ * holds no references to the objects under test. The per-call values are
+ * held by a {@link TestContextFrame} created with {@link #newFrame}.
+ * <p>
+ * What the site learns as the test runs is cached on it: the "internal" test
+ * expression and its compiled form (see {@link #getCompiledTest()}), and 
+ * three policies that {@link #shouldEvaluate()} consults in turn. The 
+ * sampling policy remembers whether the test is enabled, and how often it's
+ * sampled, in the {@link EnablementRegistry}, until the registry changes. 
+ * The trust policy skips more and more calls while the test keeps passing
+ * (see {@link EnablementRegistry#getTrustThreshold()}), and the circuit 
+ * breaker suspends a site whose evaluations keep exceeding its latency 
+ * budget, from its annotation or the registry, and probes it again later.
+ * None of this state is locked: computing a value twice (e.g., by two 
+ * threads at the same time) gives the same result, and a lost update only
+ * moves the next check a few calls earlier or later.
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+public class ContractSite {
+	private final String     testExpression;
+	private final String     actualTestExpression;
+	private final String     itemName;
+	private final String     instanceName;
+	private final Class<?>   instanceType;
+	private final String     fieldName;
+	private final Class<?>   fieldType;
+	private final String[]   argNames;
+	private final Class<?>[] argTypes;
+	private final String     resultName;
+	private final Class<?>   resultType;
+	private final boolean    hasResult;
+	private final String     fileName;
+	private final int        lineNumber;
+	private final Contract4J.TestType testType;
+	private final String     className;
+	private final String     memberName;
+	private final long       declaredBudgetMicros;
+	private final CostTier   tier;
+
+	private final SamplingPolicy sampling = new SamplingPolicy();
+	private final TrustPolicy    trust    = new TrustPolicy();
+	private final CircuitBreaker breaker  = new CircuitBreaker();
+
+	private volatile String internalTestExpression = null;
+	private volatile ContractMetrics metrics = null;
+	private volatile Object compiledTest = null;
+	private volatile EvaluationTier evaluationTier = null;
+
+	public String     getTestExpression()       { return testExpression; }
+	public String     getActualTestExpression() { return actualTestExpression; }
+	public String     getItemName()             { return itemName; }
+	public String     getInstanceName()         { return instanceName; }
+	public Class<?>   getInstanceType()         { return instanceType; }
+	public String     getFieldName()            { return fieldName; }
+	public Class<?>   getFieldType()            { return fieldType; }
+	public String[]   getArgNames()             { return argNames; }
+	public Class<?>[] getArgTypes()             { return argTypes; }
+	public Class<?>   getResultType()           { return resultType; }
+	public String     getFileName()             { return fileName; }
+	public int        getLineNumber()           { return lineNumber; }
+	public Contract4J.TestType getTestType()    { return testType; }
+	public String     getClassName()            { return className; }
+	public String     getMemberName()           { return memberName; }
+	public long       getDeclaredBudgetMicros() { return declaredBudgetMicros; }
+	public CostTier   getTier()                 { return tier; }
+
+	/**
+	 * @return the "internal" test expression, or null if it hasn't been
+	 * computed yet.
+	 * @see TestContext#getInternalTestExpression()
+	 */
+	public String getInternalTestExpression() { 
+		return internalTestExpression; 
+	}
+
+	/**
+	 * @return the metrics of this site, or null if they haven't been looked
+	 * up yet.
+	 * @see MetricsRegistry#getMetrics(TestContext, String)
+	 */
+	public ContractMetrics getMetrics() { return metrics; }
+	public void setMetrics(ContractMetrics metrics) { this.metrics = metrics; }
+
+	/**
+	 * @return the compiled form of the test that an interpreter bound to
+	 * this site, or null. Only that interpreter knows what it is. Only the
+	 * {@link org.contract4j5.interpreter.bytecode.BytecodeExpressionInterpreter}
+	 * binds tests to sites, and it is only used when the 
+	 * "ExpressionInterpreterCompileToBytecode" property is true, which isn't
+	 * the default. Otherwise this is always null.
+	 */
+	public Object getCompiledTest() { return compiledTest; }
+	public void setCompiledTest(Object compiledTest) { this.compiledTest = compiledTest; }
+
+	/**
+	 * @return how the test is evaluated, or null if it hasn't been evaluated yet.
+	 */
+	public EvaluationTier getEvaluationTier() { return evaluationTier; }
+
+	/**
+	 * Set how the test is evaluated, and record it in the site's metrics, 
+	 * if it has any.
+	 */
+	public void setEvaluationTier(EvaluationTier evaluationTier) {
+		this.evaluationTier = evaluationTier;
+		ContractMetrics m = metrics;
+		if (m != null)
+			m.setEvaluationTier(evaluationTier != null ? evaluationTier.name() : null);
+	}
+
+	void setInternalTestExpression(String testExpression) {
+		internalTestExpression = testExpression == null ? "" : testExpression.trim();
+	}
+
+	/**
+	 * Capture the per-site data in <code>prototype</code>, normally the context
+	 * built for the first evaluation of the test, after its "actual" test 
+	 * expression has been determined. The values of the instance, field, 
+	 * arguments and result are not retained.
+	 * @param prototype the context to copy the per-site data from.
+	 * @param argNames the names of the method or constructor arguments, or null.
+	 * @param argTypes the types of the method or constructor arguments, or null.
+	 */
+	public ContractSite(TestContext prototype, String[] argNames, Class<?>[] argTypes) {
+		this(prototype, argNames, argTypes, null, null, null);
+	}
+
+	/**
+	 * Like {@link #ContractSite(TestContext, String[], Class[])}, for a site 
+	 * that can be enabled and disabled in the {@link EnablementRegistry}.
+	 * @param testType the type of the test, or null if it is always enabled.
+	 * @param className the name of the class declaring the tested member.
+	 * @param memberName the name of the method, "new" for a constructor, or
+	 * the name of the field, or null for the whole class.
+	 */
+	public ContractSite(TestContext prototype, String[] argNames, Class<?>[] argTypes, 
+			Contract4J.TestType testType, String className, String memberName) {
+		this(prototype, argNames, argTypes, testType, className, memberName, null);
+	}
+
+	/**
+	 * Like {@link #ContractSite(TestContext, String[], Class[], Contract4J.TestType, String, String)},
+	 * also taking the settings of the contract annotation.
+	 * @param annotation the {@link Pre}, {@link Post} or {@link Invar} 
+	 * annotation of the test, or null.
+	 */
+	public ContractSite(TestContext prototype, String[] argNames, Class<?>[] argTypes, 
+			Contract4J.TestType testType, String className, String memberName, Annotation annotation) {
+		Instance instance = prototype.getInstance();
+		Instance field    = prototype.getField();
+		Instance result   = prototype.getMethodResult();
+		this.testExpression       = prototype.getTestExpression();
+		this.actualTestExpression = prototype.getActualTestExpression();
+		this.itemName     = prototype.getItemName();
+		this.instanceName = instance != null ? instance.getItemName() : null;
+		this.instanceType = instance != null ? instance.getClazz()    : null;
+		this.fieldName    = field    != null ? field.getItemName()    : null;
+		this.fieldType    = field    != null ? field.getClazz()       : null;
+		this.resultName   = result   != null ? result.getItemName()   : null;
+		this.resultType   = result   != null ? result.getClazz()      : null;
+		this.hasResult    = result   != null;
+		this.argNames     = argNames;
+		this.argTypes     = argTypes;
+		this.fileName     = prototype.getFileName();
+		this.lineNumber   = prototype.getLineNumber();
+		this.testType     = testType;
+		this.className    = className;
+		this.memberName   = memberName;
+		this.declaredBudgetMicros = budgetMicros(annotation);
+		this.tier         = tier(annotation);
+	}
+
+	private static CostTier tier(Annotation annotation) {
+		if (annotation instanceof Pre)
+			return ((Pre) annotation).tier();
+		if (annotation instanceof Post)
+			return ((Post) annotation).tier();
+		if (annotation instanceof Invar)
+			return ((Invar) annotation).tier();
+		return CostTier.CHEAP;
+	}
+
+	private static long budgetMicros(Annotation annotation) {
+		if (annotation instanceof Pre)
+			return ((Pre) annotation).budgetMicros();
+		if (annotation instanceof Post)
+			return ((Post) annotation).budgetMicros();
+		if (annotation instanceof Invar)
+			return ((Invar) annotation).budgetMicros();
+		return 0;
+	}
+
+	/**
+	 * @return false if the test has been disabled for this site's member,
+	 * class or package in the {@link EnablementRegistry}, or its cost tier
+	 * is above the maximum tier. The result is remembered until the 
+	 * registry changes.
+	 */
+	public boolean isEnabled() {
+		return getSampleThreshold() > 0;
+	}
+
+	/**
+	 * Decide whether to evaluate the test for this call: false if it is
+	 * disabled, if it is sampled and this call wasn't chosen, or if the site
+	 * has earned enough trust that this call falls between two checks. Calls
+	 * that aren't evaluated for the latter two reasons are counted as skipped 
+	 * in the site's metrics, when metrics are being collected.
+	 */
+	public boolean shouldEvaluate() {
+		int threshold = getSampleThreshold();
+		if (threshold >= EnablementRegistry.ALWAYS && trust.checksEveryCall() && ! breaker.isSuspended())
+			return true;
+		if (threshold == 0)
+			return false;
+		if (SamplingPolicy.chosen(threshold) && ! trust.skip() && breaker.mayProbe())
+			return true;
+		MetricsRegistry metrics = Contract4J.getMetricsRegistry();
+		if (metrics.isEnabled())
+			metrics.getMetrics(this).recordSkipped();
+		return false;
+	}
+
+	/**
+	 * Record the outcome of an evaluation of the test. A failure resets the
+	 * site to checking every call. A pass counts towards earning trust, and
+	 * once the site has passed {@link EnablementRegistry#getTrustThreshold()} 
+	 * times in a row, each further pass doubles the number of calls until
+	 * the next check, up to {@link EnablementRegistry#getMaxTrustInterval()}.
+	 */
+	public void recordResult(boolean passed) {
+		if (! passed) {
+			resetTrust();
+			return;
+		}
+		if (testType == null)
+			return;
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		int trustThreshold = registry.getTrustThreshold();
+		if (trustThreshold == 0)
+			return;
+		trust.recordPass(trustThreshold, registry.getMaxTrustInterval());
+	}
+
+	/**
+	 * Record how long an evaluation of the test took, if the site has a 
+	 * latency budget. When the evaluations have exceeded the budget 
+	 * {@link EnablementRegistry#getBudgetOverruns()} times within 
+	 * {@link EnablementRegistry#getBudgetWindowMillis()}, the site is 
+	 * suspended. When a probe after a suspension is within budget, the site
+	 * resumes.
+	 * @return true if the site was suspended or resumed by this evaluation.
+	 */
+	public boolean recordCost(long nanos) {
+		return breaker.recordCost(nanos);
+	}
+
+	/**
+	 * @return the latency budget of this site in nanoseconds, or 0 if it has none.
+	 */
+	public long getBudgetNanos() { return breaker.getBudgetNanos(); }
+
+	/**
+	 * @return true if the test is suspended because it exceeded its budget.
+	 */
+	public boolean isSuspended() { return breaker.isSuspended(); }
+
+	/**
+	 * @return how long the last evaluation took, if the site has a budget.
+	 */
+	public long getLastCostNanos() { return breaker.getLastCostNanos(); }
+
+	/**
+	 * @return the number of calls between checks: 1 until the site has 
+	 * earned trust.
+	 */
+	public int getCheckInterval() { return trust.getInterval(); }
+
+	/**
+	 * Go back to checking every call.
+	 */
+	public void resetTrust() {
+		trust.reset();
+	}
+
+	/**
+	 * @see EnablementRegistry#getSampleThreshold(String, String, Contract4J.TestType)
+	 */
+	protected int getSampleThreshold() {
+		if (testType == null)
+			return EnablementRegistry.ALWAYS;
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		int version   = registry.getVersion();
+		int threshold = sampling.getThreshold(version);
+		if (threshold >= 0)
+			return threshold;
+		threshold = registry.isTierEnabled(tier) ? 
+				registry.getSampleThreshold(className, memberName, testType) : 0;
+		// Configuration changes also take away any trust the site had earned,
+		// and end any suspension, since the budget may have changed.
+		trust.reset();
+		long budget = registry.getBudgetMicros(className, memberName, testType);
+		breaker.reset((budget >= 0 ? budget : declaredBudgetMicros) * 1000L);
+		sampling.setThreshold(version, threshold);
+		return threshold;
+	}
+
+	/**
+	 * Create the context for one evaluation of the test. The frame is meant
+	 * to be used only by the calling thread and discarded afterwards.
+	 * @param instanceValue the object under test, or null.
+	 * @param fieldValue the value of the field under test, ignored unless
+	 * this site is for a field invariant.
+	 * @param argValues the argument values, ignored unless this site has 
+	 * arguments.
+	 */
+	public TestContextFrame newFrame(Object instanceValue, Object fieldValue, Object[] argValues) {
+		Instance   instance = new Instance(instanceName, instanceType, instanceValue);
+		Instance   field    = fieldType != null ? new Instance(fieldName, fieldType, fieldValue) : null;
+		Instance[] args     = argNames  != null || argTypes != null ? 
+				InstanceUtils.makeInstanceArray(argNames, argTypes, argValues) : null;
+		Instance   result   = hasResult ? new Instance(resultName, resultType, null) : null;
+		return new TestContextFrame(this, instance, field, args, result);
+	}
+
+	public String toString() {
+		return "site (" + fileName + ":" + lineNumber + ", " + itemName + ", " + actualTestExpression + ")";
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context;
+
+import org.contract4j5.controller.EnablementRegistry;
+import org.contract4j5.utils.SampleRandom;
+
+/**
+ * The sample threshold of a {@link ContractSite}, remembered with the
+ * {@link EnablementRegistry} version it was resolved for. Both are kept in
+ * one long, the version in the high 32 bits, so they are read atomically.
+ */
+final class SamplingPolicy {
+	private volatile long sampling = 0;
+
+	/**
+	 * @return the threshold resolved for <code>version</code>, or -1 if it
+	 * was resolved for another version, or not at all.
+	 */
+	int getThreshold(int version) {
+		long memo = sampling;
+		return (int) (memo >>> 32) == version ? (int) memo : -1;
+	}
+
+	void setThreshold(int version, int threshold) {
+		sampling = ((long) version << 32) | threshold;
+	}
+
+	/**
+	 * @return true if a call is chosen to be evaluated, which it always is
+	 * when <code>threshold</code> is {@link EnablementRegistry#ALWAYS}.
+	 */
+	static boolean chosen(int threshold) {
+		return threshold >= EnablementRegistry.ALWAYS || SampleRandom.next(24) < threshold;
+	}
+}
@@ -20,61 +20,172 @@
 
 package org.contract4j5.context;
 
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.contract4j5.metrics.StripedCounters;
+
+/**
+ * Cache of the {@link ContractSite}s for the tests that have been evaluated,
+ * so the advice only has to find the test expression, etc. once for each 
+ * join point. Sites are immutable and hold no references to the objects 
+ * under test, so one site is safely shared by all threads; each evaluation
+ * gets its own {@link TestContextFrame}.
+ * <p>
+ * Sites are keyed by the join point's static part (i.e., 
+ * <code>thisJoinPointStaticPart</code>), which AspectJ creates once for each 
+ * join point shadow and which doesn't override <code>equals()</code>, so 
+ * lookups compare identities rather than strings. Several tests can apply
+ * to one join point, so a site is further distinguished by the test type
+ * and, where the site depends on them, the runtime class of the object and
+ * the field name. Lookups don't lock or allocate.
+ * <p>
+ * The hit and miss counts are {@link StripedCounters}, so threads that 
+ * find the same site don't contend; they are only approximate while 
+ * lookups are in progress. The size is exact.
+ */
 public class TestContextCache {
-	// Uses the type of annotation ("testType") and the file location
-	// as the key. This works since only one instance of an annotation can 
-	// be applied to any element, so this "triple" of fields is unique.
-	static public class Key implements Comparable<Key> {
-		public String testType;
-		public String fileName;
-		public int    lineNumber;
-		public Key(String testType, String fileName, int lineNumber) {
-			this.testType = testType;
-			this.fileName = fileName;
-			this.lineNumber = lineNumber;
-		}
-		public int compareTo(Key o) {
-			int compare = testType.compareTo(o.testType);
-			if (compare != 0) return compare; 
-			compare = fileName.compareTo(o.fileName); 
-			if (compare != 0) return compare; 
-			return lineNumber - o.lineNumber;
+
+	// The sites for one join point. The array is replaced, never modified,
+	// when a site is added, which is rare.
+	private class Sites {
+		private volatile Entry[] entries = new Entry[0];
+
+		Entry find(String testType, Class<?> type, String name) {
+			for (Entry e: entries) {
+				if (e.matches(testType, type, name))
+					return e;
+			}
+			return null;
 		}
-		public boolean equals(Object o) {
-			if (o instanceof Key) 
-				return compareTo((Key) o) == 0;
-			return false;
+
+		synchronized Entry add(String testType, Class<?> type, String name, ContractSite site) {
+			Entry e = find(testType, type, name);
+			if (e != null)
+				return e;
+			e = new Entry(testType, type, name, site);
+			Entry[] newEntries = new Entry[entries.length + 1];
+			System.arraycopy(entries, 0, newEntries, 0, entries.length);
+			newEntries[entries.length] = e;
+			entries = newEntries;
+			size.incrementAndGet();
+			return e;
 		}
 	}
-	
-	// Some fields may be null, depending on the context.
-	static public class Entry {
-		public TestContext testContext;
-		public String[]    argNames;
-		public Class<?>[]  argTypes;
-		public String      fieldName;
-		public Class<?>    fieldType;
-		public Entry(TestContext testContext, String[] argNames, Class<?>[] argTypes, 
-						String fieldName, Class<?> fieldType) {
-			this.testContext = testContext;
-			this.argNames = argNames;
-			this.argTypes = argTypes;
-			this.fieldName = fieldName;
-			this.fieldType = fieldType;
+
+	private static class Entry {
+		final String       testType;
+		final Class<?>     type;
+		final String       name;
+		final ContractSite site;
+
+		Entry(String testType, Class<?> type, String name, ContractSite site) {
+			this.testType = testType;
+			this.type = type;
+			this.name = name;
+			this.site = site;
+		}
+
+		boolean matches(String testType, Class<?> type, String name) {
+			return this.type == type &&
+				(this.testType == testType || this.testType.equals(testType)) &&
+				(this.name == name || (this.name != null && this.name.equals(name)));
 		}
 	}
 
-	protected TreeMap<Key, Entry> cache = new TreeMap<Key, Entry>();
+	private final ConcurrentMap<Object, Sites> cache = new ConcurrentHashMap<Object, Sites>();
+	private static final int HITS   = 0;
+	private static final int MISSES = 1;
+
+	private final StripedCounters counts = new StripedCounters(2);
+	private final AtomicInteger   size   = new AtomicInteger();
 
 	// This global flag is for performance testing the impact of caching. 
 	// When disabled, you get 100% cache misses!
 
-	private static boolean cachePutsEnabled = false;
+	private static volatile boolean cachePutsEnabled = true;
 	public void enableCachePuts()  { cachePutsEnabled = true; }
 	public void disableCachePuts() { cachePutsEnabled = false; }
 	
-	public Entry get(Key key) { return cache.get(key); }
-	public void  put(Key key, Entry entry) { if (cachePutsEnabled) cache.put(key, entry); }
+	public ContractSite get(Object staticPart, String testType) {
+		return get(staticPart, testType, null, null);
+	}
+
+	public ContractSite get(Object staticPart, String testType, Class<?> type) {
+		return get(staticPart, testType, type, null);
+	}
+
+	/**
+	 * @param staticPart the join point's static part.
+	 * @param testType the kind of test, e.g., "Pre".
+	 * @param type the runtime class of the object, for sites that depend on it, or null.
+	 * @param name the field name, for sites that need it to be unique, or null.
+	 * @return the cached site or null.
+	 */
+	public ContractSite get(Object staticPart, String testType, Class<?> type, String name) {
+		Sites sites = cache.get(staticPart);
+		if (sites != null) {
+			Entry e = sites.find(testType, type, name);
+			if (e != null) {
+				counts.increment(HITS);
+				return e.site;
+			}
+		}
+		counts.increment(MISSES);
+		return null;
+	}
+
+	public ContractSite put(Object staticPart, String testType, ContractSite site) {
+		return put(staticPart, testType, null, null, site);
+	}
+
+	public ContractSite put(Object staticPart, String testType, Class<?> type, ContractSite site) {
+		return put(staticPart, testType, type, null, site);
+	}
+
+	/**
+	 * Cache the site, unless caching is disabled or another thread already 
+	 * cached one for the same key. The arguments are the same as for 
+	 * {@link #get(Object, String, Class, String)}.
+	 * @return the site that is cached for the key, or <code>site</code> if
+	 * caching is disabled.
+	 */
+	public ContractSite put(Object staticPart, String testType, Class<?> type, String name, ContractSite site) { 
+		if (! cachePutsEnabled)
+			return site;
+		Sites sites = cache.get(staticPart);
+		if (sites == null) {
+			Sites newSites = new Sites();
+			sites = cache.putIfAbsent(staticPart, newSites);
+			if (sites == null)
+				sites = newSites;
+		}
+		return sites.add(testType, type, name, site).site;
+	}
+
+	/**
+	 * @return the (approximate) number of lookups that found a site.
+	 */
+	public long getHitCount() { return counts.get(HITS); }
+
+	/**
+	 * @return the (approximate) number of lookups that didn't find a site.
+	 */
+	public long getMissCount() { return counts.get(MISSES); }
+
+	/**
+	 * @return the number of cached sites.
+	 */
+	public int size() { return size.get(); }
+
+	public void clear() { 
+		cache.clear(); 
+		counts.reset();
+		size.set(0);
+	}
+
+	public String toString() {
+		return "TestContextCache: size = " + size() + ", hits = " + getHitCount() + ", misses = " + getMissCount();
+	}
 }
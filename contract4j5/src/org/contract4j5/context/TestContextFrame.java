@@ -0,0 +1,175 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.contract4j5.instance.Instance;
+
+/**
+ * The {@link TestContext} for one evaluation of a test. The per-site data
+ * come from a shared, immutable {@link ContractSite}, while the instance, 
+ * field, arguments, result and "old" values belong to this frame only. A 
+ * frame is created by the advice for each join point it tests and is only 
+ * used by that thread, so it needs no synchronization and it doesn't keep 
+ * the objects under test reachable after the advice returns.
+ * <p>
+ * The per-site data can't be changed through a frame. The setters for them
+ * throw {@link UnsupportedOperationException}, except for the "internal"
+ * test expression, which is stored in the site so it is only computed once.
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+public class TestContextFrame implements TestContext {
+	private final ContractSite site;
+	public  ContractSite getSite() { return site; }
+
+	private Instance   instance;
+	private Instance   field;
+	private Instance[] methodArgs;
+	private Instance   methodResult;
+	private Map<String, Object> oldValuesMap = null;
+
+	public String getTestExpression() {
+		return site.getTestExpression();
+	}
+	public void setTestExpression(String testExpression) {
+		throw unsupported("test expression");
+	}
+
+	public String getActualTestExpression() {
+		return site.getActualTestExpression();
+	}
+	public void setActualTestExpression(String testExpression) {
+		throw unsupported("actual test expression");
+	}
+
+	public String getInternalTestExpression() {
+		return site.getInternalTestExpression();
+	}
+	public void setInternalTestExpression(String testExpression) {
+		site.setInternalTestExpression(testExpression);
+	}
+
+	public String getItemName() {
+		return site.getItemName();
+	}
+	public void setItemName(String itemName) {
+		throw unsupported("item name");
+	}
+
+	public Instance getInstance() {
+		return instance;
+	}
+	public void setInstance(Instance instance) {
+		this.instance = instance;
+	}
+
+	public Instance getField() {
+		return field;
+	}
+	public void setField(Instance field) {
+		this.field = field;
+	}
+
+	public Instance[] getMethodArgs() {
+		return methodArgs;
+	}
+	public void setMethodArgs(Instance[] methodArgs) {
+		this.methodArgs = methodArgs;
+	}
+
+	public Instance getMethodResult() {
+		return methodResult;
+	}
+	public void setMethodResult(Instance methodResult) {
+		this.methodResult = methodResult;
+	}
+
+	/**
+	 * @return the "old" values map, which is created on first use, since most
+	 * tests don't have "$old(..)" expressions.
+	 */
+	public Map<String, Object> getOldValuesMap() {
+		if (oldValuesMap == null)
+			oldValuesMap = new HashMap<String, Object>();
+		return oldValuesMap;
+	}
+	public void setOldValuesMap(Map<String, Object> map) {
+		oldValuesMap = map;
+	}
+
+	public String getFileName() {
+		return site.getFileName();
+	}
+	public void setFileName(String fileName) {
+		throw unsupported("file name");
+	}
+
+	public int getLineNumber() {
+		return site.getLineNumber();
+	}
+	public void setLineNumber(int lineNumber) {
+		throw unsupported("line number");
+	}
+
+	private UnsupportedOperationException unsupported(String what) {
+		return new UnsupportedOperationException(
+				"The " + what + " belongs to the shared " + site + " and can't be changed for one test evaluation.");
+	}
+
+	public TestContextFrame(
+			ContractSite site,
+			Instance     instance,
+			Instance     field,
+			Instance[]   methodArgs,
+			Instance     methodResult) {
+		this.site         = site;
+		this.instance     = instance;
+		this.field        = field;
+		this.methodArgs   = methodArgs;
+		this.methodResult = methodResult;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer(256);
+		sb.append("test expressions (raw, actual, internal) = (")
+			.append(getTestExpression()).append(", ")
+			.append(getActualTestExpression()).append(", ")
+			.append(getInternalTestExpression()).append(")");
+		sb.append("name = ").append(getItemName());
+		sb.append(", instance = ").append(getInstance());
+		sb.append(", field = ").append(getField());
+		sb.append(", method args = ");
+		if (getMethodArgs() == null) {
+			sb.append("null");
+		} else {
+			sb.append("(");
+			for (Instance i: getMethodArgs()) {
+				sb.append(i);
+				sb.append(", ");
+			}
+			sb.append(")");
+		}
+		sb.append(", method result = ");
+		sb.append(getMethodResult());
+		return sb.toString();
+	}
+}
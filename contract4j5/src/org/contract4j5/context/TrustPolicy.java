@@ -0,0 +1,73 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context;
+
+/**
+ * The "earned trust" of a {@link ContractSite}: its consecutive passes, the
+ * current number of calls between checks, and the number of calls left to
+ * skip before the next check. The state is updated without locking; a lost
+ * update only moves the next check a few calls earlier or later.
+ */
+final class TrustPolicy {
+	private volatile int passes    = 0;
+	private volatile int interval  = 1;
+	private volatile int countdown = 0;
+
+	/**
+	 * @return true if every call is checked.
+	 */
+	boolean checksEveryCall() {
+		return countdown == 0;
+	}
+
+	/**
+	 * @return true if this call falls between two checks, counting it down.
+	 */
+	boolean skip() {
+		int left = countdown;
+		if (left == 0)
+			return false;
+		countdown = left - 1;
+		return true;
+	}
+
+	/**
+	 * Count a pass. Once there have been <code>threshold</code> passes in a
+	 * row, each further pass doubles the number of calls until the next
+	 * check, up to <code>maxInterval</code>.
+	 */
+	void recordPass(int threshold, int maxInterval) {
+		if (passes < threshold) {
+			passes++;
+			return;
+		}
+		int next  = interval < maxInterval / 2 ? interval * 2 : maxInterval;
+		interval  = next;
+		countdown = next - 1;
+	}
+
+	int getInterval() { return interval; }
+
+	void reset() {
+		passes    = 0;
+		interval  = 1;
+		countdown = 0;
+	}
+}
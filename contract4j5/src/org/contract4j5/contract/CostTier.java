@@ -0,0 +1,9 @@
+package org.contract4j5.contract;
+
+/**
+ * How expensive a test is to evaluate, from cheap (e.g., a null check) to 
+ * expensive (e.g., walking a collection). Only the tests up to the maximum
+ * tier set with {@link org.contract4j5.controller.Contract4J#setMaxTier}
+ * are evaluated, so production can run just the cheap tests.
+ */
+public enum CostTier { CHEAP, MODERATE, EXPENSIVE }
\ No newline at end of file
@@ -59,4 +59,21 @@ public @interface Post {
 	 * When to run the contracts enclosed in this type.
 	 */
 	RunFlag run() default RunFlag.ALWAYS;
+
+	/**
+	 * An optional latency budget for evaluating the test, in microseconds. 
+	 * If evaluations keep exceeding it, the test is suspended for a while.
+	 * The default, 0, is no budget. A budget set in the configuration takes
+	 * precedence.
+	 * @see org.contract4j5.controller.EnablementRegistry
+	 */
+	long budgetMicros() default 0;
+
+	/**
+	 * How expensive the test is. It is only evaluated when its tier is not
+	 * above the maximum tier, which is set at runtime with 
+	 * {@link org.contract4j5.controller.Contract4J#setMaxTier}, and when 
+	 * the library was built, with the "woven.max.tier" build property.
+	 */
+	CostTier tier() default CostTier.CHEAP;
 }
@@ -20,10 +20,19 @@ package org.contract4j5.controller;
  * @author Dean Wampler <mailto:dean@aspectprogramming.com>
  */
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.contract4j5.configurator.Configurator;
 import org.contract4j5.configurator.properties.PropertiesConfigurator;
+import org.contract4j5.contract.CostTier;
 import org.contract4j5.enforcer.ContractEnforcer;
 import org.contract4j5.enforcer.defaultimpl.DefaultContractEnforcer;
+import org.contract4j5.interpreter.snapshot.SnapshotPolicy;
+import org.contract4j5.metrics.MetricsRegistry;
 import org.contract4j5.reporter.Reporter;
 import org.contract4j5.reporter.WriterReporter;
 
@@ -41,6 +50,8 @@ public class Contract4J {
 	 */
 	public static void setInstance(Contract4J c4j) { 
 		systemInstance = c4j; 
+		publishEnabledFlags(c4j);
+		SystemCaches.testContextCache.clear();
 	}
 	public static Contract4J getInstance() { 
 		if (systemInstance == null)
@@ -53,9 +64,118 @@ public class Contract4J {
 	public boolean isPostTestsEnabled()  { return isEnabled[TestType.Post.ordinal()]; }
 	public boolean isInvarTestsEnabled() { return isEnabled[TestType.Invar.ordinal()]; }
 
-	public void setPreTestsEnabled(boolean b)   { isEnabled[TestType.Pre.ordinal()] = b; }
-	public void setPostTestsEnabled(boolean b)  { isEnabled[TestType.Post.ordinal()] = b; }
-	public void setInvarTestsEnabled(boolean b) { isEnabled[TestType.Invar.ordinal()] = b; }
+	public void setPreTestsEnabled(boolean b)   { setEnabled(TestType.Pre, b); }
+	public void setPostTestsEnabled(boolean b)  { setEnabled(TestType.Post, b); }
+	public void setInvarTestsEnabled(boolean b) { setEnabled(TestType.Invar, b); }
+
+	private CostTier maxTier = CostTier.EXPENSIVE;
+
+	/**
+	 * @return the most expensive {@link CostTier} of tests that are evaluated.
+	 * The default is {@link CostTier#EXPENSIVE}, i.e., all tests.
+	 */
+	public CostTier getMaxTier() { return maxTier; }
+
+	/**
+	 * Set the most expensive tier of tests that are evaluated, e.g., 
+	 * {@link CostTier#CHEAP} to evaluate only the cheap tests. Each test site
+	 * checks its tier once, and again only when the setting changes.
+	 */
+	public void setMaxTier(CostTier tier) {
+		if (tier == null)
+			throw new IllegalArgumentException("The maximum tier can't be null.");
+		maxTier = tier;
+		if (this == systemInstance)
+			publishEnabledFlags(this);
+	}
+	
+	// The flags of the system instance are copied to the registry whenever 
+	// they or the system instance change. The aspects' guards, which run at
+	// every advised join point, read the registry's summary flags instead of 
+	// calling getInstance().isEnabled(..), so when tests are disabled a guard
+	// costs one static field read, which doesn't touch the Contract4J instance
+	// (or trigger any advice on it).
+	private static final EnablementRegistry enablementRegistry = new EnablementRegistry();
+
+	/**
+	 * @return the registry of per-package, per-class and per-member overrides
+	 * of the enabled flags of the system instance.
+	 */
+	public static EnablementRegistry getEnablementRegistry() { return enablementRegistry; }
+
+	/** 
+	 * @return true if precondition tests are enabled in the system instance,
+	 * or enabled for some package, class or member in the registry. 
+	 */
+	public static boolean isSystemPreTestsEnabled()   { return enablementRegistry.mayEnablePre; }
+	/** 
+	 * @return true if postcondition tests are enabled in the system instance,
+	 * or enabled for some package, class or member in the registry. 
+	 */
+	public static boolean isSystemPostTestsEnabled()  { return enablementRegistry.mayEnablePost; }
+	/** 
+	 * @return true if invariant tests are enabled in the system instance,
+	 * or enabled for some package, class or member in the registry. 
+	 */
+	public static boolean isSystemInvarTestsEnabled() { return enablementRegistry.mayEnableInvar; }
+
+	private static void publishEnabledFlags(Contract4J c4j) {
+		// A null system instance will be replaced by a new one, with all tests enabled.
+		enablementRegistry.setDefaults(
+				c4j == null || c4j.isEnabled(TestType.Pre),
+				c4j == null || c4j.isEnabled(TestType.Post),
+				c4j == null || c4j.isEnabled(TestType.Invar));
+		enablementRegistry.setMaxTier(c4j == null ? CostTier.EXPENSIVE : c4j.getMaxTier());
+	}
+
+	private static final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+	/**
+	 * @return the per-site evaluation counts and latencies, which are only
+	 * collected while the registry is {@link MetricsRegistry#setEnabled enabled}.
+	 */
+	public static MetricsRegistry getMetricsRegistry() { return metricsRegistry; }
+
+	private static final SnapshotPolicy snapshotPolicy = new SnapshotPolicy();
+
+	/**
+	 * @return the policy that decides how the values of <code>$old(..)</code>
+	 * expressions are copied before the call.
+	 */
+	public static SnapshotPolicy getSnapshotPolicy() { return snapshotPolicy; }
+
+	/**
+	 * Register the {@link EnablementRegistry}, as 
+	 * {@link EnablementRegistry#OBJECT_NAME}, and the {@link MetricsRegistry} 
+	 * and its sites with the platform MBean server. Calling it again has no effect.
+	 * @throws IllegalStateException if the registration fails.
+	 */
+	public static synchronized void registerMBeans() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName  name   = new ObjectName(EnablementRegistry.OBJECT_NAME);
+			if (! server.isRegistered(name))
+				server.registerMBean(enablementRegistry, name);
+			metricsRegistry.registerMBeans(server);
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register the Contract4J MBeans", e);
+		}
+	}
+
+	/**
+	 * Remove the MBeans registered by {@link #registerMBeans()}, if any.
+	 */
+	public static synchronized void unregisterMBeans() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName  name   = new ObjectName(EnablementRegistry.OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			metricsRegistry.unregisterMBeans(server);
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not unregister the Contract4J MBeans", e);
+		}
+	}
 	
 	/**
 	 * The types of contract tests.
@@ -80,6 +200,8 @@ public class Contract4J {
 	 */
 	public void setEnabled (TestType type, boolean b) { 
 		isEnabled[type.ordinal()] = b; 
+		if (this == systemInstance)
+			publishEnabledFlags(this);
 	}	
 	
 	private Configurator systemConfigurator = null;
@@ -97,6 +219,7 @@ public class Contract4J {
 	
 	public void setContractEnforcer(ContractEnforcer ce) { 
 		contractEnforcer = ce; 
+		SystemCaches.testContextCache.clear();
 	}
 	public ContractEnforcer getContractEnforcer() { 
 		if (contractEnforcer == null)
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.contract4j5.contract.CostTier;
+
+/**
+ * Overrides of the global {@link Contract4J.TestType} flags for packages, 
+ * classes, and individual methods, constructors and fields. An override is
+ * named with a key of the form <code>&lt;type&gt;.&lt;scope&gt;</code>, 
+ * where the type is "Pre", "Post", "Invar", or "Contract" for all three, and
+ * the scope is a package name, a fully-qualified class name (nested classes 
+ * use "$"), or a class name followed by ".", and a method name, "new" for 
+ * constructors, or a field name, or "*" for everything. For example:
+ * <pre>
+ * Contract.com.example.hot=false
+ * Pre.com.example.hot.Cache.put=true
+ * </pre>
+ * The most specific scope that has an override wins; for the same scope, an
+ * override for the test type wins over a "Contract" override. Without any,
+ * the global flag for the type is used.
+ * <p>
+ * The registry also holds sample rates, keyed the same way and resolved 
+ * independently of the overrides. An enabled test whose rate is less than 
+ * 1.0 is only evaluated for that fraction of the calls, chosen at random. 
+ * The default rate is 1.0. For example, to check 1% of the invariant tests 
+ * in a package:
+ * <pre>
+ * Invar.com.example.hot=0.01
+ * </pre>
+ * <p>
+ * Finally, it holds the settings for "earned trust": when the 
+ * {@link #getTrustThreshold() trust threshold} is positive, a site whose 
+ * test has passed that many times in a row is checked less and less often,
+ * doubling the interval after each further pass up to the 
+ * {@link #getMaxTrustInterval() maximum interval}. Any failure, and any 
+ * change to the registry, puts the site back to checking every call. 
+ * <p>
+ * Tests whose {@link CostTier} is above the {@link #getMaxTier() maximum 
+ * tier}, which is normally set through {@link Contract4J#setMaxTier}, are
+ * disabled, whatever the overrides say.
+ * <p>
+ * It also holds latency budgets, in microseconds, keyed the same way, which
+ * take precedence over the <code>budgetMicros</code> of the contract 
+ * annotations. A site whose evaluations exceed its budget 
+ * {@link #getBudgetOverruns()} times within {@link #getBudgetWindowMillis()} 
+ * is suspended for {@link #getSuspensionMillis()}, after which one evaluation
+ * is let through as a probe; if it is within budget, the site resumes.
+ * <p>
+ * Each test site resolves its state once and remembers it with the 
+ * {@link #getVersion() version} of the registry, which changes with every
+ * update of the overrides or the global flags, so evaluating a test only
+ * costs a version check until the registry changes. The registry is also
+ * a JMX MBean, so overrides can be changed in a running application.
+ */
+public class EnablementRegistry implements EnablementRegistryMBean {
+	/** The type name for overrides that apply to all test types. */
+	public static final String ALL_TYPES = "Contract";
+
+	/** The scope that matches everything. */
+	public static final String ALL_SCOPES = "*";
+
+	/** 
+	 * The sample threshold of a test that is always evaluated. A test is 
+	 * evaluated if a random number from 0 to this value, exclusive, is less 
+	 * than its threshold.
+	 */
+	public static final int ALWAYS = 1 << 24;
+
+	/** The default for {@link #getMaxTrustInterval()}. */
+	public static final int DEFAULT_MAX_TRUST_INTERVAL = 1024;
+
+	/** The default for {@link #getBudgetOverruns()}. */
+	public static final int  DEFAULT_BUDGET_OVERRUNS      = 5;
+	/** The default for {@link #getBudgetWindowMillis()}. */
+	public static final long DEFAULT_BUDGET_WINDOW_MILLIS = 10000;
+	/** The default for {@link #getSuspensionMillis()}. */
+	public static final long DEFAULT_SUSPENSION_MILLIS    = 60000;
+
+	/** The JMX object name used by {@link Contract4J#registerMBeans()}. */
+	public static final String OBJECT_NAME = "org.contract4j5:type=EnablementRegistry";
+
+	// Copy on write, so lookups don't need to lock.
+	private volatile SortedMap<String, Boolean> overrides = new TreeMap<String, Boolean>();
+	private volatile SortedMap<String, Double>  sampleRates = new TreeMap<String, Double>();
+	private volatile boolean[] defaults = { true, true, true };
+	private volatile int version = 1;
+	private volatile CostTier maxTier = CostTier.EXPENSIVE;
+	private volatile int trustThreshold   = 0;
+	private volatile int maxTrustInterval = DEFAULT_MAX_TRUST_INTERVAL;
+	private volatile SortedMap<String, Long> budgets = new TreeMap<String, Long>();
+	private volatile int  budgetOverruns     = DEFAULT_BUDGET_OVERRUNS;
+	private volatile long budgetWindowMillis = DEFAULT_BUDGET_WINDOW_MILLIS;
+	private volatile long suspensionMillis   = DEFAULT_SUSPENSION_MILLIS;
+
+	// Whether any test of the type might be enabled, for the aspects' guards.
+	volatile boolean mayEnablePre   = true;
+	volatile boolean mayEnablePost  = true;
+	volatile boolean mayEnableInvar = true;
+
+	public int getVersion() { return version; }
+
+	/**
+	 * @return the most expensive tier of tests that are evaluated.
+	 */
+	public CostTier getMaxTier() { return maxTier; }
+
+	/**
+	 * Set the most expensive tier of tests that are evaluated. Normally 
+	 * called by {@link Contract4J} when the system instance's tier changes.
+	 */
+	public synchronized void setMaxTier(CostTier tier) {
+		if (tier == null)
+			throw new IllegalArgumentException("The maximum tier can't be null.");
+		maxTier = tier;
+		changed();
+	}
+
+	public String getMaxTierName() { return maxTier.name(); }
+
+	/**
+	 * @throws IllegalArgumentException if <code>name</code> isn't a {@link CostTier}.
+	 */
+	public void setMaxTierName(String name) {
+		setMaxTier(CostTier.valueOf(name.trim().toUpperCase()));
+	}
+
+	/**
+	 * @return true if tests of the tier are evaluated.
+	 */
+	public boolean isTierEnabled(CostTier tier) {
+		return tier.compareTo(maxTier) <= 0;
+	}
+
+	/**
+	 * @return the number of consecutive passes after which a site is checked 
+	 * less often, or 0 (the default) if every enabled call is checked.
+	 */
+	public int getTrustThreshold() { return trustThreshold; }
+
+	/**
+	 * @throws IllegalArgumentException if <code>passes</code> is negative.
+	 */
+	public synchronized void setTrustThreshold(int passes) {
+		if (passes < 0)
+			throw new IllegalArgumentException("Invalid trust threshold " + passes + ". Expected 0 or more.");
+		trustThreshold = passes;
+		changed();
+	}
+
+	/**
+	 * @return the largest number of calls between two checks of a trusted site.
+	 */
+	public int getMaxTrustInterval() { return maxTrustInterval; }
+
+	/**
+	 * @throws IllegalArgumentException if <code>calls</code> is less than 1.
+	 */
+	public synchronized void setMaxTrustInterval(int calls) {
+		if (calls < 1)
+			throw new IllegalArgumentException("Invalid maximum trust interval " + calls + ". Expected 1 or more.");
+		maxTrustInterval = calls;
+		changed();
+	}
+
+	/**
+	 * @return true if tests of the type are enabled for the member (method, 
+	 * "new" or field name) of the class. The member name may be null.
+	 */
+	public boolean isEnabled(String className, String memberName, Contract4J.TestType type) {
+		Boolean b = resolve(overrides, className, memberName, type);
+		return b != null ? b.booleanValue() : defaults[type.ordinal()];
+	}
+
+	/**
+	 * @return the fraction of the calls for which tests of the type are 
+	 * evaluated for the member of the class, when they are enabled.
+	 */
+	public double getSampleRate(String className, String memberName, Contract4J.TestType type) {
+		Double rate = resolve(sampleRates, className, memberName, type);
+		return rate != null ? rate.doubleValue() : 1.0;
+	}
+
+	/**
+	 * @return 0 if tests of the type are disabled for the member of the 
+	 * class, {@link #ALWAYS} if they are always evaluated, or the sample 
+	 * rate scaled to {@link #ALWAYS}, but at least 1, otherwise.
+	 */
+	public int getSampleThreshold(String className, String memberName, Contract4J.TestType type) {
+		if (! isEnabled(className, memberName, type))
+			return 0;
+		double rate = getSampleRate(className, memberName, type);
+		if (rate >= 1.0)
+			return ALWAYS;
+		return rate <= 0.0 ? 0 : Math.max(1, (int) (rate * ALWAYS));
+	}
+
+	public double getSampleRateFor(String className, String memberName, String testType) {
+		return getSampleRate(className, memberName, Contract4J.TestType.valueOf(testType));
+	}
+
+	/**
+	 * @return the configured latency budget, in microseconds, for tests of 
+	 * the type for the member of the class, 0 for no budget, or -1 if none 
+	 * is configured, so the annotation's budget applies.
+	 */
+	public long getBudgetMicros(String className, String memberName, Contract4J.TestType type) {
+		Long budget = resolve(budgets, className, memberName, type);
+		return budget != null ? budget.longValue() : -1;
+	}
+
+	public long getBudgetMicrosFor(String className, String memberName, String testType) {
+		return getBudgetMicros(className, memberName, Contract4J.TestType.valueOf(testType));
+	}
+
+	/**
+	 * Find the value for the most specific scope that has one, from the 
+	 * member up through the class, any outer classes, the packages, and "*".
+	 */
+	private static <V> V resolve(Map<String, V> map, String className, String memberName, 
+			Contract4J.TestType type) {
+		if (map.isEmpty())
+			return null;
+		if (className != null) {
+			String scope = memberName == null ? className : className + "." + memberName;
+			while (scope.length() > 0) {
+				V value = get(map, type, scope);
+				if (value != null)
+					return value;
+				int end = Math.max(scope.lastIndexOf('.'), scope.lastIndexOf('$'));
+				scope = end > 0 ? scope.substring(0, end) : "";
+			}
+		}
+		return get(map, type, ALL_SCOPES);
+	}
+
+	private static <V> V get(Map<String, V> map, Contract4J.TestType type, String scope) {
+		V value = map.get(type.name() + "." + scope);
+		return value != null ? value : map.get(ALL_TYPES + "." + scope);
+	}
+
+	public boolean isEnabledFor(String className, String memberName, String testType) {
+		return isEnabled(className, memberName, Contract4J.TestType.valueOf(testType));
+	}
+
+	/**
+	 * Add or replace an override for all test types, when <code>type</code> 
+	 * is null, or for one type.
+	 */
+	public void setEnabled(String scope, Contract4J.TestType type, boolean enabled) {
+		setOverride((type == null ? ALL_TYPES : type.name()) + "." + scope, enabled);
+	}
+
+	/**
+	 * Add or replace an override.
+	 * @param key e.g., "Pre.com.example.Account".
+	 * @throws IllegalArgumentException if the key is malformed.
+	 */
+	public synchronized void setOverride(String key, boolean enabled) {
+		checkKey(key);
+		SortedMap<String, Boolean> newOverrides = new TreeMap<String, Boolean>(overrides);
+		newOverrides.put(key, Boolean.valueOf(enabled));
+		overrides = newOverrides;
+		changed();
+	}
+
+	/**
+	 * @return the override for the key, or null if there isn't one.
+	 */
+	public Boolean getOverride(String key) {
+		return overrides.get(key);
+	}
+
+	/**
+	 * @return a read-only copy of the overrides.
+	 */
+	public SortedMap<String, Boolean> getOverrides() {
+		return new TreeMap<String, Boolean>(overrides);
+	}
+
+	public String[] getOverrideList() {
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<String, Boolean> entry: overrides.entrySet())
+			list.add(entry.getKey() + "=" + entry.getValue());
+		return list.toArray(new String[list.size()]);
+	}
+
+	public void enable(String key)  { setOverride(key, true); }
+	public void disable(String key) { setOverride(key, false); }
+
+	public synchronized void remove(String key) {
+		if (! overrides.containsKey(key))
+			return;
+		SortedMap<String, Boolean> newOverrides = new TreeMap<String, Boolean>(overrides);
+		newOverrides.remove(key);
+		overrides = newOverrides;
+		changed();
+	}
+
+	public synchronized void clear() {
+		overrides   = new TreeMap<String, Boolean>();
+		sampleRates = new TreeMap<String, Double>();
+		budgets     = new TreeMap<String, Long>();
+		changed();
+	}
+
+	/**
+	 * Add or replace a sample rate.
+	 * @param key e.g., "Invar.com.example.hot".
+	 * @param rate from 0.0 (never evaluate) to 1.0 (always evaluate).
+	 * @throws IllegalArgumentException if the key or rate is invalid.
+	 */
+	public synchronized void setSampleRate(String key, double rate) {
+		checkKey(key);
+		if (! (rate >= 0.0 && rate <= 1.0))
+			throw new IllegalArgumentException("Invalid sample rate " + rate + " for \"" + key + 
+					"\". Expected a number from 0.0 to 1.0.");
+		SortedMap<String, Double> newRates = new TreeMap<String, Double>(sampleRates);
+		newRates.put(key, new Double(rate));
+		sampleRates = newRates;
+		changed();
+	}
+
+	public synchronized void removeSampleRate(String key) {
+		if (! sampleRates.containsKey(key))
+			return;
+		SortedMap<String, Double> newRates = new TreeMap<String, Double>(sampleRates);
+		newRates.remove(key);
+		sampleRates = newRates;
+		changed();
+	}
+
+	/**
+	 * @return a read-only copy of the sample rates.
+	 */
+	public SortedMap<String, Double> getSampleRates() {
+		return new TreeMap<String, Double>(sampleRates);
+	}
+
+	public String[] getSampleRateList() {
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<String, Double> entry: sampleRates.entrySet())
+			list.add(entry.getKey() + "=" + entry.getValue());
+		return list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * Add or replace a latency budget.
+	 * @param key e.g., "Invar.com.example.Cache".
+	 * @param micros the budget in microseconds, 0 for none.
+	 * @throws IllegalArgumentException if the key or budget is invalid.
+	 */
+	public synchronized void setBudget(String key, long micros) {
+		checkKey(key);
+		if (micros < 0)
+			throw new IllegalArgumentException("Invalid budget " + micros + " for \"" + key + 
+					"\". Expected 0 or more microseconds.");
+		SortedMap<String, Long> newBudgets = new TreeMap<String, Long>(budgets);
+		newBudgets.put(key, new Long(micros));
+		budgets = newBudgets;
+		changed();
+	}
+
+	public synchronized void removeBudget(String key) {
+		if (! budgets.containsKey(key))
+			return;
+		SortedMap<String, Long> newBudgets = new TreeMap<String, Long>(budgets);
+		newBudgets.remove(key);
+		budgets = newBudgets;
+		changed();
+	}
+
+	/**
+	 * @return a read-only copy of the budgets.
+	 */
+	public SortedMap<String, Long> getBudgets() {
+		return new TreeMap<String, Long>(budgets);
+	}
+
+	public String[] getBudgetList() {
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<String, Long> entry: budgets.entrySet())
+			list.add(entry.getKey() + "=" + entry.getValue());
+		return list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * @return how many evaluations over budget, within the window, suspend a site.
+	 */
+	public int getBudgetOverruns() { return budgetOverruns; }
+
+	public synchronized void setBudgetOverruns(int overruns) {
+		if (overruns < 1)
+			throw new IllegalArgumentException("Invalid budget overruns " + overruns + ". Expected 1 or more.");
+		budgetOverruns = overruns;
+		changed();
+	}
+
+	/**
+	 * @return the window in which overruns are counted.
+	 */
+	public long getBudgetWindowMillis() { return budgetWindowMillis; }
+
+	public synchronized void setBudgetWindowMillis(long millis) {
+		if (millis < 1)
+			throw new IllegalArgumentException("Invalid budget window " + millis + ". Expected 1 or more milliseconds.");
+		budgetWindowMillis = millis;
+		changed();
+	}
+
+	/**
+	 * @return how long a site is suspended before it is probed again.
+	 */
+	public long getSuspensionMillis() { return suspensionMillis; }
+
+	public synchronized void setSuspensionMillis(long millis) {
+		if (millis < 1)
+			throw new IllegalArgumentException("Invalid suspension " + millis + ". Expected 1 or more milliseconds.");
+		suspensionMillis = millis;
+		changed();
+	}
+
+	/**
+	 * Set the global flags, which apply where there is no override. Called
+	 * by {@link Contract4J} when the system instance's flags change.
+	 */
+	synchronized void setDefaults(boolean pre, boolean post, boolean invar) {
+		defaults = new boolean[] { pre, post, invar };
+		changed();
+	}
+
+	/**
+	 * @return true if the key is "&lt;type&gt;.&lt;scope&gt;" with a valid type.
+	 */
+	public static boolean isValidKey(String key) {
+		if (key == null)
+			return false;
+		int dot = key.indexOf('.');
+		if (dot <= 0 || dot == key.length() - 1)
+			return false;
+		String type = key.substring(0, dot);
+		if (type.equals(ALL_TYPES))
+			return true;
+		for (Contract4J.TestType t: Contract4J.TestType.values()) {
+			if (t.name().equals(type))
+				return true;
+		}
+		return false;
+	}
+
+	private static void checkKey(String key) {
+		if (! isValidKey(key))
+			throw new IllegalArgumentException("Invalid contract enablement key \"" + key + 
+					"\". Expected \"<Contract|Pre|Post|Invar>.<package, class, class.member, or *>\".");
+	}
+
+	private void changed() {
+		mayEnablePre   = mayEnable(Contract4J.TestType.Pre);
+		mayEnablePost  = mayEnable(Contract4J.TestType.Post);
+		mayEnableInvar = mayEnable(Contract4J.TestType.Invar);
+		version++;
+	}
+
+	private boolean mayEnable(Contract4J.TestType type) {
+		if (defaults[type.ordinal()])
+			return true;
+		for (Map.Entry<String, Boolean> entry: overrides.entrySet()) {
+			String key = entry.getKey();
+			if (entry.getValue().booleanValue() && 
+				(key.startsWith(type.name() + ".") || key.startsWith(ALL_TYPES + ".")))
+				return true;
+		}
+		return false;
+	}
+}
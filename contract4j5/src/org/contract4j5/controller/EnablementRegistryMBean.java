@@ -0,0 +1,110 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.controller;
+
+/**
+ * JMX management interface for the {@link EnablementRegistry}. Overrides are 
+ * named with the same keys as in the properties file, without the 
+ * "org.contract4j5." prefix, e.g., "Contract.com.example.hot" or 
+ * "Pre.com.example.risky.Account.withdraw".
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+public interface EnablementRegistryMBean {
+	/**
+	 * @return the overrides, each formatted as "key=true|false".
+	 */
+	String[] getOverrideList();
+
+	/**
+	 * @return a number that changes whenever the overrides, sample rates, 
+	 * trust settings or the global flags change.
+	 */
+	int getVersion();
+
+	void enable(String key);
+	void disable(String key);
+	void remove(String key);
+
+	/**
+	 * @return the sample rates, each formatted as "key=rate".
+	 */
+	String[] getSampleRateList();
+
+	void setSampleRate(String key, double rate);
+	void removeSampleRate(String key);
+
+	/**
+	 * @return the most expensive cost tier of tests that are evaluated: 
+	 * "CHEAP", "MODERATE" or "EXPENSIVE".
+	 */
+	String getMaxTierName();
+	void   setMaxTierName(String name);
+
+	/**
+	 * @return the number of consecutive passes after which a site is checked
+	 * exponentially less often, or 0 if it is always checked.
+	int  getTrustThreshold();
+	void setTrustThreshold(int passes);
+
+	/**
+	 * @return the largest number of calls between two checks of a trusted site.
+	 */
+	int  getMaxTrustInterval();
+	void setMaxTrustInterval(int calls);
+
+	/**
+	 * @return the latency budgets, in microseconds, each formatted as "key=micros".
+	 */
+	String[] getBudgetList();
+
+	void setBudget(String key, long micros);
+	void removeBudget(String key);
+
+	int  getBudgetOverruns();
+	void setBudgetOverruns(int overruns);
+	long getBudgetWindowMillis();
+	void setBudgetWindowMillis(long millis);
+	long getSuspensionMillis();
+	void setSuspensionMillis(long millis);
+
+	/**
+	 * Remove all overrides, sample rates and budgets.
+	 */
+	void clear();
+
+	/**
+	 * @return whether tests of the type (e.g., "Pre") are enabled for the method,
+	 * constructor ("new") or field of the class, taking all overrides into account.
+	 */
+	boolean isEnabledFor(String className, String memberName, String testType);
+
+	/**
+	 * @return the fraction of calls for which enabled tests of the type are 
+	 * evaluated for the method, constructor ("new") or field of the class.
+	 */
+	double getSampleRateFor(String className, String memberName, String testType);
+
+	/**
+	 * @return the configured latency budget of tests of the type for the 
+	 * method, constructor ("new") or field of the class, in microseconds, 
+	 * or -1 if the annotation's budget applies.
+	 */
+	long getBudgetMicrosFor(String className, String memberName, String testType);
+}
@@ -20,13 +20,20 @@
 
 package org.contract4j5.enforcer;
 
+import org.contract4j5.context.ContractSite;
 import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextFrame;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.controller.SystemCaches;
 import org.contract4j5.errors.ContractError;
+import org.contract4j5.errors.StacklessContractError;
+import org.contract4j5.errors.StacklessTestSpecificationError;
 import org.contract4j5.errors.TestSpecificationError;
 import org.contract4j5.instance.Instance;
 import org.contract4j5.interpreter.ExpressionInterpreter;
 import org.contract4j5.interpreter.TestResult;
 import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.contract4j5.metrics.MetricsRegistry;
 import org.contract4j5.reporter.Reporter;
 import org.contract4j5.reporter.Severity;
 import org.contract4j5.utils.StringUtils;
@@ -49,6 +56,8 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 	}
 	public void setExpressionInterpreter(ExpressionInterpreter expressionInterpreter) {
 		this.expressionInterpreter = expressionInterpreter;
+		// The cached sites have "internal" expressions made by the old interpreter.
+		SystemCaches.testContextCache.clear();
 	}
 	
 	private boolean reportError = true;
@@ -66,6 +75,28 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 	public void    setIncludeStackTrace(boolean onOff) { includeStackTrace = onOff; }
 	public boolean getIncludeStackTrace()              { return includeStackTrace; }
 	
+	private boolean stacklessErrors = false;
+
+	/**
+	 * If true, failures throw errors without stack traces. Use it when 
+	 * contract failures are common and expected, <i>e.g.,</i> when contracts
+	 * validate input. (Either way, the messages of the errors are only built
+	 * if {@link ContractError#getMessage()} is called or the failure is 
+	 * reported.)
+	 * @see StacklessContractError
+	 */
+	public void    setStacklessErrors(boolean onOff) { stacklessErrors = onOff; }
+	public boolean getStacklessErrors()              { return stacklessErrors; }
+
+	private FailureAggregator failureAggregator = new FailureAggregator();
+
+	/**
+	 * @return the object that limits how often repeated failures of the same
+	 * test are reported.
+	 */
+	public FailureAggregator getFailureAggregator() { return failureAggregator; }
+	public void setFailureAggregator(FailureAggregator aggregator) { failureAggregator = aggregator; }
+
 	private boolean  warnedOnce = false;
 	private Reporter reporter;
 	
@@ -85,8 +116,23 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 			}
 			return;
 		}
-		getReporter().report(Severity.DEBUG, this.getClass(), "Invoking \""+testPrefix+"\" test: \""+context.getActualTestExpression()+"\".");
-		TestResult testResult = interpreter.invokeTest(context);
+		getReporter().report(Severity.DEBUG, this.getClass(), "Invoking \"{}\" test: \"{}\".", testPrefix, context.getActualTestExpression());
+		MetricsRegistry metrics = Contract4J.getMetricsRegistry();
+		ContractSite    site    = getSite(context);
+		TestResult testResult;
+		if (metrics.isEnabled() || (site != null && site.getBudgetNanos() > 0)) {
+			long start = System.nanoTime();
+			testResult = interpreter.invokeTest(context);
+			long nanos = System.nanoTime() - start;
+			if (metrics.isEnabled())
+				metrics.getMetrics(context, testPrefix).record(testResult.isPassed(), 
+						testResult.isFailureCauseATestSpecificationFailure(), nanos);
+			if (site != null && site.recordCost(nanos))
+				reportSuspension(site, testPrefix);
+		} else {
+			testResult = interpreter.invokeTest(context);
+		}
+		recordResult(context, testResult.isPassed());
 		if (testResult.isPassed() == false) {
 			handleFailure(context.getActualTestExpression(), testPrefix, extraMessage, context, testResult);
 		}
@@ -100,15 +146,93 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 			Throwable optionalThrowable) throws ContractError {
 		getReporter().report(Severity.DEBUG, this.getClass(), "fail() called!");
 		TestResult testResult = new TestResult(false, "", optionalThrowable);
+		MetricsRegistry metrics = Contract4J.getMetricsRegistry();
+		if (metrics.isEnabled() && context != null) {
+			metrics.getMetrics(context, testPrefix).recordFailure(
+					testResult.isFailureCauseATestSpecificationFailure());
+		}
+		recordResult(context, false);
 		handleFailure(testExpression, testPrefix, extraMessage, context, testResult);
 	}
 
+	/**
+	 * Tell the site of the test the outcome, so it can earn (or lose) trust.
+	 * @see org.contract4j5.context.ContractSite#recordResult(boolean)
+	 */
+	protected void recordResult(TestContext context, boolean passed) {
+		ContractSite site = getSite(context);
+		if (site != null)
+			site.recordResult(passed);
+	}
+
+	/**
+	 * Report, once, that a test site was suspended because it exceeded its
+	 * latency budget, or that it resumed, and show it in the site's metrics.
+	 */
+	protected void reportSuspension(ContractSite site, String testPrefix) {
+		Contract4J.getMetricsRegistry().getMetrics(site).recordSuspension(
+				site.isSuspended(), site.getBudgetNanos(), site.getLastCostNanos());
+		if (site.isSuspended()) {
+			getReporter().report(Severity.WARN, this.getClass(), "Suspending the \"" + testPrefix + 
+					"\" test at " + site.getFileName() + ":" + site.getLineNumber() + 
+					" (\"" + site.getActualTestExpression() + "\"), because it took longer than its budget of " + 
+					(site.getBudgetNanos() / 1000) + " microseconds " + 
+					Contract4J.getEnablementRegistry().getBudgetOverruns() + " times (the last time, " + 
+					(site.getLastCostNanos() / 1000) + " microseconds). It will be tried again in " + 
+					Contract4J.getEnablementRegistry().getSuspensionMillis() + " milliseconds.");
+		} else {
+			getReporter().report(Severity.INFO, this.getClass(), "Resuming the \"" + testPrefix + 
+					"\" test at " + site.getFileName() + ":" + site.getLineNumber() + 
+					", which took " + (site.getLastCostNanos() / 1000) + " microseconds.");
+		}
+	}
+
+	private static ContractSite getSite(TestContext context) {
+		return context instanceof TestContextFrame ? ((TestContextFrame) context).getSite() : null;
+	}
+
 	public void handleFailure(String testExpression, String testPrefix, String extraMessage, TestContext context, TestResult testResult) throws ContractError {
-		String msg = makeFailureMessage(testExpression, testPrefix, extraMessage, context, testResult);
-		reportContractFailure(msg, testResult.getFailureCause());
+		FailureMessage msg = new FailureMessage(testExpression, testPrefix, extraMessage, context, testResult);
+		reportContractFailure(msg, testResult.getFailureCause(), getFailureSite(context, testPrefix));
 		finishFailureHandling(testResult, msg);
 	}
 
+	/**
+	 * The message from {@link #makeFailureMessage(String, String, String, String, String, String, TestResult)},
+	 * built the first time it is asked for. It only keeps the strings the 
+	 * message is made from, not the context, so the error doesn't keep the 
+	 * object under test reachable, and the message describes the failure 
+	 * as it was, even if it is built later.
+	 */
+	protected class FailureMessage implements ContractError.MessageSource {
+		private final String     testExpression;
+		private final String     testPrefix;
+		private final String     extraMessage;
+		private final String     fileName;
+		private final String     lineNumber;
+		private final String     itemName;
+		private final TestResult testResult;
+		private String message = null;
+
+		public FailureMessage(String testExpression, String testPrefix, String extraMessage, 
+				TestContext context, TestResult testResult) {
+			this.testExpression = testExpression;
+			this.testPrefix     = testPrefix;
+			this.extraMessage   = extraMessage;
+			this.fileName       = failureFileName(context);
+			this.lineNumber     = failureLineNumber(context);
+			this.itemName       = failureItemName(context);
+			this.testResult     = testResult;
+		}
+
+		public synchronized String getMessage() {
+			if (message == null)
+				message = makeFailureMessage(testExpression, testPrefix, extraMessage, 
+						fileName, lineNumber, itemName, testResult);
+			return message;
+		}
+	}
+
 	/**
 	 * Override this method to complete failure handling, <i>e.g.,</i> to throw a 
 	 * {@link ContractError}, it will have to subclass {@link ContractError}, which
@@ -117,6 +241,17 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 	 * @param msg
 	 */
 	protected abstract void finishFailureHandling(TestResult testResult, String msg) throws ContractError;
+
+	/**
+	 * Called to complete failure handling, with a message that may not have 
+	 * been built yet. Override it to throw an error made with
+	 * {@link #makeContractError(ContractError.MessageSource, Throwable)}, so
+	 * the message is only built if it is needed. By default, it builds the 
+	 * message and calls {@link #finishFailureHandling(TestResult, String)}.
+	 */
+	protected void finishFailureHandling(TestResult testResult, ContractError.MessageSource msg) throws ContractError {
+		finishFailureHandling(testResult, msg.getMessage());
+	}
 	
 	protected void reportContractFailure (String message, Throwable throwable) {
 		if (getReportErrors() == false)
@@ -124,6 +259,39 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 		String report = makeStackDumpMessage(message, throwable);
 		getReporter().report (getErrorReportingSeverityLevel(), this.getClass(), report);
 	}
+
+	/**
+	 * Report a failure of the test at "site", unless the {@link FailureAggregator}
+	 * says the same failure was reported recently. The first failure is reported
+	 * in full with {@link #reportContractFailure(String, Throwable)}; later
+	 * reports only add the number of failures since the previous one.
+	 */
+	protected void reportContractFailure (ContractError.MessageSource message, Throwable throwable, Object site) {
+		if (getReportErrors() == false || getReporter().isEnabled(getErrorReportingSeverityLevel()) == false)
+			return;
+		FailureAggregator aggregator = getFailureAggregator();
+		long count = aggregator != null ? aggregator.record(site, throwable) : FailureAggregator.FIRST;
+		if (count == FailureAggregator.FIRST) {
+			reportContractFailure(message.getMessage(), throwable);
+		} else if (count != FailureAggregator.SUPPRESS) {
+			getReporter().report(getErrorReportingSeverityLevel(), this.getClass(), 
+					"{} (Failed {} times since it was last reported; the details are reported once every {} milliseconds.)", 
+					message.getMessage(), count, aggregator.getSummaryIntervalMillis());
+		}
+	}
+
+	/**
+	 * @return the {@link ContractSite} of the test or, if there isn't one, a
+	 * key made from the file, line and test type.
+	 */
+	protected Object getFailureSite(TestContext context, String testPrefix) {
+		ContractSite site = getSite(context);
+		if (site != null)
+			return site;
+		if (context == null)
+			return String.valueOf(testPrefix);
+		return context.getFileName() + ":" + context.getLineNumber() + ":" + testPrefix;
+	}
 	
 	protected String makeStackDumpMessage(String message, Throwable throwable) {
 		StringBuilder buff = new StringBuilder(1024); // arbitrary size
@@ -182,35 +350,53 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 		return new ContractError(message, throwable);
 	}
 
+	/**
+	 * Like {@link #makeContractError(String, Throwable)}, but makes an error 
+	 * that builds its message when it is asked for, without a stack trace if
+	 * {@link #getStacklessErrors()} is true.
+	 */
+	protected ContractError makeContractError(ContractError.MessageSource message, Throwable throwable) {
+		boolean stackless = getStacklessErrors();
+		if (throwable instanceof TestSpecificationError) {
+			return stackless ? new StacklessTestSpecificationError(message, throwable) :
+				new TestSpecificationError(message, throwable);
+		}
+		return stackless ? new StacklessContractError(message, throwable) : 
+			new ContractError(message, throwable);
+	}
+
 	protected String makeFailureMessage(
 			String testExpression, 
 			String testPrefix, 
 			String extraMessage, 
 			TestContext context, 
 			TestResult testResult) {
+		return makeFailureMessage(testExpression, testPrefix, extraMessage, failureFileName(context),
+				failureLineNumber(context), failureItemName(context), testResult);
+	}
+
+	/**
+	 * Make the failure message from the file name, line number and item name
+	 * of the test's context, rather than the context itself.
+	 */
+	protected String makeFailureMessage(
+			String testExpression, 
+			String testPrefix, 
+			String extraMessage, 
+			String fileName,
+			String lineNumber,
+			String itemName,
+			TestResult testResult) {
 		String expression = StringUtils.empty(testExpression) ? "<empty test expression>" : testExpression;
 		String prefix = StringUtils.empty(testPrefix) ? "<unknown test>" : testPrefix;
-		String fn = context != null ? context.getFileName() : null;
-		if (StringUtils.empty(fn)) {
-			fn = "<unknown file>";
-		}
 		StringBuffer msg = new StringBuffer(256);
 		msg.append("*** Contract Failure ");
-		String lineNumber = context != null ? Integer.toString(context.getLineNumber()) : "<unknown>";
-		msg.append("("+fn+":"+lineNumber +"): ");				
+		msg.append("("+fileName+":"+lineNumber +"): ");				
 		if (testResult.isFailureCauseATestSpecificationFailure()) {
 			msg.append("Test specification error, ");
 		}
 		msg.append(prefix).append(" test \"").append(expression);
-		Instance thiz = context != null ? context.getInstance() : null;
-		String name = thiz != null ? thiz.getItemName() : "";
-		if (name.length() == 0) {
-			name = "<unknown>";
-			if (context != null && context.getField() != null) {
-				name = context.getField().getItemName();
-			}
-		}
-		msg.append("\" for \"").append(name).append("\" failed. ");
+		msg.append("\" for \"").append(itemName).append("\" failed. ");
 		if (!StringUtils.empty(extraMessage)) {
 			msg.append(" ").append(extraMessage);
 		}
@@ -220,6 +406,27 @@ public abstract class ContractEnforcerHelper implements ContractEnforcer {
 		msg.append(" [").append(testResult.getFailureCauseMessage()).append("]");
 		return msg.toString();
 	}
+
+	private static String failureFileName(TestContext context) {
+		String fn = context != null ? context.getFileName() : null;
+		return StringUtils.empty(fn) ? "<unknown file>" : fn;
+	}
+
+	private static String failureLineNumber(TestContext context) {
+		return context != null ? Integer.toString(context.getLineNumber()) : "<unknown>";
+	}
+
+	private static String failureItemName(TestContext context) {
+		Instance thiz = context != null ? context.getInstance() : null;
+		String name = thiz != null ? thiz.getItemName() : "";
+		if (name.length() == 0) {
+			name = "<unknown>";
+			if (context != null && context.getField() != null) {
+				name = context.getField().getItemName();
+			}
+		}
+		return name;
+	}
 	
 	/**
 	 * Constructor.
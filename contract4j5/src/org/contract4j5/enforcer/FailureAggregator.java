@@ -0,0 +1,215 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.enforcer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a contract that fails on every call from flooding the reporter. 
+ * Failures are grouped by test site and failure cause (the class of the 
+ * exception, if any). The first failure in a group is reported in full; 
+ * repeats are only counted until the summary interval has passed, then the
+ * next one is reported briefly, with the number of failures since the last
+ * report, and counting starts again. So each group costs at most one full 
+ * report per interval, however often it fails.
+ * <p>
+ * Summaries are written when the group fails again, not by a timer, so the
+ * count for a group that stops failing is only available from 
+ * {@link #getSuppressedCount()}. A group that hasn't failed for a whole 
+ * interval is dropped (at most one interval later), so the aggregator 
+ * doesn't keep the sites of tests that stopped failing, or were replaced, 
+ * reachable; if it fails again, it is reported in full. An interval of 0 
+ * reports every failure.
+ */
+public class FailureAggregator {
+
+	public static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 10000;
+
+	/** Returned by {@link #record(Object, Throwable)} for a group's first failure. */
+	public static final long FIRST = 0;
+
+	/** Returned by {@link #record(Object, Throwable)} for a failure that shouldn't be reported. */
+	public static final long SUPPRESS = -1;
+
+	/** Returned by {@link Group#record(long, long)} for a group that was dropped. */
+	private static final long DROPPED = -2;
+
+	private volatile long summaryIntervalMillis = DEFAULT_SUMMARY_INTERVAL_MILLIS;
+
+	public long getSummaryIntervalMillis() { return summaryIntervalMillis; }
+
+	/**
+	 * @param millis how long to count, rather than report, repeated failures 
+	 * of a test site. 0 reports every failure.
+	 */
+	public void setSummaryIntervalMillis(long millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("Invalid summary interval " + millis + ". Expected 0 or more milliseconds.");
+		summaryIntervalMillis = millis;
+	}
+
+	private final ConcurrentMap<Key, Group> groups = new ConcurrentHashMap<Key, Group>();
+	private final AtomicLong nextSweep  = new AtomicLong(System.nanoTime());
+	// The pending failures of dropped groups.
+	private final AtomicLong unreported = new AtomicLong();
+
+	/**
+	 * Record a failure.
+	 * @param site identifies the test site, e.g., its {@link org.contract4j5.context.ContractSite}.
+	 * @param cause of the failure, or null if the test simply returned false.
+	 * @return {@link #FIRST} if the failure should be reported in full, 
+	 * {@link #SUPPRESS} if it shouldn't be reported, or otherwise the number 
+	 * of failures, including this one, since the group was last reported, 
+	 * which should be reported as a summary.
+	 */
+	public long record(Object site, Throwable cause) {
+		long interval = summaryIntervalMillis;
+		if (interval == 0)
+			return FIRST;
+		long intervalNanos = interval * 1000000L;
+		long now = System.nanoTime();
+		Key  key = new Key(site, cause != null ? cause.getClass() : null);
+		long result;
+		for (;;) {
+			Group group = groups.get(key);
+			if (group == null) {
+				group = groups.putIfAbsent(key, new Group(now));
+				if (group == null) {
+					result = FIRST;
+					break;
+				}
+			}
+			result = group.record(now, intervalNanos);
+			if (result != DROPPED)
+				break;
+			groups.remove(key, group);
+		}
+		sweepIfDue(now, intervalNanos);
+		return result;
+	}
+
+	/**
+	 * Once an interval, drop the groups that haven't failed for an interval.
+	 */
+	private void sweepIfDue(long now, long intervalNanos) {
+		long due = nextSweep.get();
+		if (now - due < 0 || ! nextSweep.compareAndSet(due, now + intervalNanos))
+			return;
+		for (Map.Entry<Key, Group> entry: groups.entrySet()) {
+			long pending = entry.getValue().dropIfQuiet(now, intervalNanos);
+			if (pending >= 0) {
+				unreported.addAndGet(pending);
+				groups.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return the number of sites and causes whose failures are being counted.
+	 */
+	public int getGroupCount() {
+		return groups.size();
+	}
+
+	/**
+	 * @return the number of failures that were counted but not yet reported.
+	 */
+	public long getSuppressedCount() {
+		long count = unreported.get();
+		for (Group group: groups.values())
+			count += group.getPending();
+		return count;
+	}
+
+	/**
+	 * Forget all failures, so the next one of each group is reported in full.
+	 */
+	public void clear() {
+		groups.clear();
+		unreported.set(0);
+	}
+
+	private static final class Group {
+		private long    lastReport;
+		private long    lastFailure;
+		private long    pending = 0;
+		private boolean dropped = false;
+
+		Group(long now) {
+			lastReport  = now;
+			lastFailure = now;
+		}
+
+		/** @return the number to return from {@link FailureAggregator#record(Object, Throwable)}, or {@link #DROPPED}. */
+		synchronized long record(long now, long intervalNanos) {
+			if (dropped)
+				return DROPPED;
+			pending++;
+			lastFailure = now;
+			if (now - lastReport < intervalNanos)
+				return SUPPRESS;
+			long count = pending;
+			pending    = 0;
+			lastReport = now;
+			return count;
+		}
+
+		/** 
+		 * Drop the group if it hasn't failed for the interval.
+		 * @return its pending failures, or -1 if it wasn't dropped. 
+		 */
+		synchronized long dropIfQuiet(long now, long intervalNanos) {
+			if (dropped || now - lastFailure < intervalNanos)
+				return -1;
+			dropped = true;
+			return pending;
+		}
+
+		synchronized long getPending() {
+			return dropped ? 0 : pending;
+		}
+	}
+
+	private static final class Key {
+		private final Object   site;
+		private final Class<?> cause;
+
+		Key(Object site, Class<?> cause) {
+			this.site  = site;
+			this.cause = cause;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return site.equals(k.site) && cause == k.cause;
+		}
+
+		@Override
+		public int hashCode() {
+			return site.hashCode() * 31 + (cause != null ? cause.hashCode() : 0);
+		}
+	}
+}
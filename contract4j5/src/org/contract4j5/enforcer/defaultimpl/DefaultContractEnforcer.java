@@ -20,6 +20,7 @@
 package org.contract4j5.enforcer.defaultimpl;
 
 import org.contract4j5.enforcer.ContractEnforcerHelper;
+import org.contract4j5.errors.ContractError;
 import org.contract4j5.interpreter.ExpressionInterpreter;
 import org.contract4j5.interpreter.TestResult;
 
@@ -29,6 +30,11 @@ public class DefaultContractEnforcer extends ContractEnforcerHelper {
 		throw makeContractError(msg, testResult.getFailureCause());
 	}
 
+	@Override
+	protected void finishFailureHandling(TestResult testResult, ContractError.MessageSource msg) {
+		throw makeContractError(msg, testResult.getFailureCause());
+	}
+
 	/**
 	 * Constructor.
 	 * @param expressionInterpreter
@@ -20,6 +20,9 @@
 
 package org.contract4j5.errors;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
 /**
  * ContractError is an <i>unchecked</i> Error thrown when 
  * contract tests fail.
@@ -39,4 +42,44 @@ public class ContractError extends Error {
 	public ContractError (String s, Throwable t) {
 		super(s, t);
 	}
+
+	/**
+	 * Supplies the message of an error the first time it is asked for, so
+	 * the message of an error that is caught and discarded is never built.
+	 */
+	public static interface MessageSource {
+		String getMessage();
+	}
+
+	private boolean lazy = false;
+	private transient MessageSource messageSource = null;
+	private String lazyMessage = null;
+
+	/**
+	 * @param source of the message, which isn't called until {@link #getMessage()} is.
+	 * Whatever it references stays reachable until then.
+	 */
+	public ContractError (MessageSource source, Throwable t) {
+		super((String) null, t);
+		lazy = true;
+		messageSource = source;
+	}
+
+	@Override
+	public String getMessage() {
+		if (lazy == false)
+			return super.getMessage();
+		synchronized (this) {
+			if (messageSource != null) {
+				lazyMessage   = messageSource.getMessage();
+				messageSource = null;
+			}
+			return lazyMessage;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getMessage();
+		out.defaultWriteObject();
+	}
 }
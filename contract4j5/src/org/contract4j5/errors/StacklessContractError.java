@@ -0,0 +1,40 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.errors;
+
+/**
+ * A {@link ContractError} that doesn't record a stack trace and builds its 
+ * message only if it is asked for. Filling in the stack trace is most of the
+ * cost of throwing an error, so this is for applications where contract 
+ * failures are common, <i>e.g.,</i> where contracts validate input.
+ * @see org.contract4j5.enforcer.ContractEnforcerHelper#setStacklessErrors(boolean)
+ */
+public class StacklessContractError extends ContractError {
+	private static final long serialVersionUID = 3120965279113858317L;
+
+	public StacklessContractError (MessageSource source, Throwable t) {
+		super(source, t);
+	}
+
+	@Override
+	public Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -39,4 +39,7 @@ public class TestSpecificationError extends ContractError {
 	public TestSpecificationError (String s, Throwable t) {
 		super(s, t);
 	}
+	public TestSpecificationError (MessageSource source, Throwable t) {
+		super(source, t);
+	}
 }
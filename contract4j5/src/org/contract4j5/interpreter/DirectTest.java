@@ -0,0 +1,753 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.contract4j5.context.TestContext;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.expression.ExpressionNode;
+import org.contract4j5.interpreter.expression.ExpressionParseException;
+import org.contract4j5.interpreter.expression.ExpressionParser;
+
+/**
+ * Evaluates the most common, simple test expressions directly, without the
+ * scripting engine. The expanded expression (see 
+ * {@link ExpressionInterpreterHelper#expandKeywords(TestContext)}) must be
+ * built only from:
+ * <ul>
+ * <li><code>c4jThis</code>, <code>c4jTarget</code>, <code>c4jReturn</code>,
+ *   <code>c4jArgs[</code>N<code>]</code> and the "old" values, 
+ *   <code>c4jExprVar</code>N,</li>
+ * <li>reads of their public properties (and, if the interpreter reads 
+ *   them too, public fields) and calls of their public methods with no 
+ *   arguments, <i>e.g.,</i> <code>c4jThis.count</code>, 
+ *   <code>c4jArgs[0].length()</code>, but not of the members' values, 
+ *   <i>e.g.,</i> not <code>c4jThis.name.length()</code>,</li>
+ * <li>number, string, boolean and <code>null</code> literals,</li>
+ * <li>null checks, comparisons (<code>== != &lt; &lt;= &gt; &gt;=</code>), 
+ *   <code>!</code>, <code>&amp;&amp;</code> and <code>||</code>.</li>
+ * </ul>
+ * That covers, <i>e.g.,</i> all the tests made by the default test 
+ * expression makers. The members are looked up once for each class they are
+ * read from, with the same rules as the {@link OldValueAccessor}. The lengths
+ * of strings and arrays, and the sizes of collections and maps, are read 
+ * without reflection, and comparisons of integral values with each other 
+ * and with integral constants are done on primitive <code>long</code>s.
+ * <p>
+ * Before anything is read from the tested objects, the test is checked 
+ * against the classes of <code>c4jThis</code>, the arguments, etc. and the 
+ * declared types of the members. Whenever the result might differ from the 
+ * scripting language's, <i>e.g.,</i> a value is null where it's 
+ * dereferenced, a member isn't public, a value might be NaN, or two values 
+ * might not both be numbers, strings or booleans, 
+ * {@link #test(TestContext)} returns {@link Outcome#UNDECIDED} and the caller
+ * should let the interpreter evaluate the test, so errors are reported as 
+ * before. So the interpreter never calls a method that has already been 
+ * called for the same evaluation. A test that is undecided 
+ * {@link #MAX_UNDECIDED} times in a row is given up on.
+ */
+public class DirectTest {
+	public static enum Outcome { PASSED, FAILED, UNDECIDED }
+
+	/** The number of consecutive undecided evaluations before the test is given up on. */
+	public static final int MAX_UNDECIDED = 32;
+
+	/** The test for expressions that always have to be interpreted. */
+	public static final DirectTest INTERPRETED = new DirectTest(null, false);
+
+	/**
+	 * @param expression the expanded test expression.
+	 * @return the test, or {@link #INTERPRETED} if the expression isn't in 
+	 * the subset evaluated directly.
+	 */
+	public static DirectTest compile(String expression) {
+		return compile(expression, true);
+	}
+
+	/**
+	 * @param readFields false if properties without a "get" or "is" method 
+	 * must be left to the interpreter, rather than read from public fields.
+	 * @see #compile(String)
+	 */
+	public static DirectTest compile(String expression, boolean readFields) {
+		ExpressionNode node;
+		try {
+			node = ExpressionParser.parse(expression);
+		} catch (ExpressionParseException epe) {
+			return INTERPRETED;
+		}
+		Compiler compiler = new Compiler(readFields);
+		Node root = compiler.test(node);
+		if (root == null)
+			return INTERPRETED;
+		return new DirectTest(root, compiler.usesOldValues);
+	}
+
+	private final Node    root;
+	private final boolean usesOldValues;
+	// Updated without synchronization; a lost update only delays giving up.
+	private int undecided = 0;
+
+	private DirectTest(Node root, boolean usesOldValues) {
+		this.root          = root;
+		this.usesOldValues = usesOldValues;
+	}
+
+	/**
+	 * @return false for {@link #INTERPRETED} and for tests that have been 
+	 * given up on.
+	 */
+	public boolean isEnabled() {
+		return root != null && undecided < MAX_UNDECIDED;
+	}
+
+	/** @return true if the expression refers to "old" values. */
+	public boolean usesOldValues() { return usesOldValues; }
+
+	/**
+	 * @throws InvocationTargetException if a method of a tested object 
+	 * throws; its cause is the exception.
+	 */
+	public Outcome test(TestContext context) throws InvocationTargetException {
+		if (! isEnabled())
+			return Outcome.UNDECIDED;
+		Frame frame = new Frame(context);
+		if (root.kinds(frame) != BOOLEAN) {
+			undecided++;
+			return Outcome.UNDECIDED;
+		}
+		int result;
+		try {
+			result = root.test(frame);
+		} catch (RuntimeException re) {
+			throw new InvocationTargetException(re);
+		}
+		if (undecided != 0)
+			undecided = 0;
+		return result == TRUE ? Outcome.PASSED : Outcome.FAILED;
+	}
+
+	private static final int FALSE   = 0;
+	private static final int TRUE    = 1;
+	private static final int UNKNOWN = -1;
+
+	/** The "no value" of an {@link Integral}. */
+	private static final long NO_VALUE = Long.MIN_VALUE;
+
+	private static final Object UNREADABLE = OldValueAccessor.UNREADABLE;
+
+	/*
+	 * The kinds of values a node can have in an evaluation, as bits. A node 
+	 * with none can't be evaluated directly.
+	 */
+	private static final int UNDECIDABLE = 0;
+	private static final int NULL        = 1;
+	private static final int INTEGRAL    = 2;
+	/** A finite float or double. */
+	private static final int REAL        = 4;
+	private static final int STRING      = 8;
+	private static final int BOOLEAN     = 16;
+	private static final int OTHER       = 32;
+	private static final int NUMBER      = INTEGRAL | REAL;
+	private static final int ANY         = NULL | NUMBER | STRING | BOOLEAN | OTHER;
+
+	private static int kindOf(Object value) {
+		if (value == null)
+			return NULL;
+		if (isIntegral(value))
+			return INTEGRAL;
+		if (isNumber(value)) {
+			double d = ((Number) value).doubleValue();
+			// The languages compare NaN and infinity differently.
+			return Double.isNaN(d) || Double.isInfinite(d) ? OTHER : REAL;
+		}
+		if (value instanceof String)
+			return STRING;
+		return value instanceof Boolean ? BOOLEAN : OTHER;
+	}
+
+	/** @return the kinds of the values of a member of the type. */
+	private static int kindsOf(Class<?> type) {
+		if (type == int.class || type == long.class || type == short.class || type == byte.class)
+			return INTEGRAL;
+		if (type == boolean.class)
+			return BOOLEAN;
+		if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class)
+			return NULL | INTEGRAL;
+		if (type == String.class)
+			return NULL | STRING;
+		if (type == Boolean.class)
+			return NULL | BOOLEAN;
+		return type.isPrimitive() ? OTHER : ANY;
+	}
+
+	/**
+	 * The values of one evaluation. The "old" values are put in order the 
+	 * first time one is read.
+	 */
+	private static final class Frame {
+		final TestContext context;
+		Object[] oldValues = null;
+
+		Frame(TestContext context) {
+			this.context = context;
+		}
+
+		Object oldValue(int index) {
+			if (oldValues == null) {
+				Map<String, Object> map = context.getOldValuesMap();
+				oldValues = map != null ? new TreeMap<String, Object>(map).values().toArray() : new Object[0];
+			}
+			return index < oldValues.length ? oldValues[index] : UNREADABLE;
+		}
+	}
+
+	private abstract static class Node {
+		/** @return the value, or {@link #UNREADABLE}. */
+		abstract Object value(Frame frame) throws InvocationTargetException;
+
+		/**
+		 * @return the kinds of values the node can have in the evaluation, 
+		 * found without calling any method of the tested objects, or 
+		 * {@link #UNDECIDABLE}. A test whose kind is {@link #BOOLEAN} is 
+		 * never {@link #UNKNOWN}.
+		 */
+		abstract int kinds(Frame frame);
+
+		/** @return {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}. */
+		int test(Frame frame) throws InvocationTargetException {
+			Object value = value(frame);
+			if (value instanceof Boolean)
+				return ((Boolean) value).booleanValue() ? TRUE : FALSE;
+			return UNKNOWN;
+		}
+	}
+
+	/** A node whose value is a boolean, computed without boxing. */
+	private abstract static class Condition extends Node {
+		Object value(Frame frame) throws InvocationTargetException {
+			int result = test(frame);
+			return result == UNKNOWN ? UNREADABLE : Boolean.valueOf(result == TRUE);
+		}
+		abstract int test(Frame frame) throws InvocationTargetException;
+	}
+
+	/** A node whose value is integral, computed without boxing. */
+	private abstract static class Integral extends Node {
+		/** @return the value, or {@link #NO_VALUE}. */
+		abstract long longValue(Frame frame) throws InvocationTargetException;
+
+		Object value(Frame frame) throws InvocationTargetException {
+			long value = longValue(frame);
+			return value == NO_VALUE ? UNREADABLE : Long.valueOf(value);
+		}
+	}
+
+	private static final class Constant extends Node {
+		final Object value;
+		Constant(Object value) { this.value = value; }
+		Object value(Frame frame) { return value; }
+		int    kinds(Frame frame) { return kindOf(value); }
+	}
+
+	private static final class IntegralConstant extends Integral {
+		final long   value;
+		final Object boxed;
+		IntegralConstant(Number boxed) {
+			this.value = boxed.longValue();
+			this.boxed = boxed;
+		}
+		long   longValue(Frame frame) { return value; }
+		Object value(Frame frame)     { return boxed; }
+		int    kinds(Frame frame)     { return INTEGRAL; }
+	}
+
+	private static final class Root extends Node {
+		static final int THIS   = 0;
+		static final int TARGET = 1;
+		static final int RETURN = 2;
+		static final int ARG    = 3;
+		static final int OLD    = 4;
+
+		final int kind;
+		final int index;
+		Root(int kind, int index) {
+			this.kind  = kind;
+			this.index = index;
+		}
+
+		Object value(Frame frame) {
+			TestContext context = frame.context;
+			switch (kind) {
+			case THIS:   return value(context.getInstance());
+			case TARGET: return value(context.getField());
+			case RETURN: return value(context.getMethodResult());
+			case OLD:    return frame.oldValue(index);
+			default:
+				Instance[] args = context.getMethodArgs();
+				return args != null && index < args.length ? value(args[index]) : UNREADABLE;
+			}
+		}
+
+		int kinds(Frame frame) {
+			Object value = value(frame);
+			return value != UNREADABLE ? kindOf(value) : UNDECIDABLE;
+		}
+
+		private static Object value(Instance instance) {
+			return instance != null ? instance.getValue() : null;
+		}
+	}
+
+	private static final class Member extends Node {
+		final Root         target;
+		final MemberReader reader;
+		Member(Root target, MemberReader reader) {
+			this.target = target;
+			this.reader = reader;
+		}
+		Object value(Frame frame) throws InvocationTargetException {
+			Object object = target.value(frame);
+			if (object == null || object == UNREADABLE)
+				return UNREADABLE;
+			return reader.invoke(object);
+		}
+		int kinds(Frame frame) {
+			Object object = target.value(frame);
+			if (object == null || object == UNREADABLE)
+				return UNDECIDABLE;
+			Class<?> type = reader.getType(object.getClass());
+			return type != null ? kindsOf(type) : UNDECIDABLE;
+		}
+	}
+
+	/**
+	 * <code>length()</code>, <code>size()</code> or the <code>length</code>
+	 * property, read directly from strings, collections, maps and arrays.
+	 */
+	private static final class Size extends Integral {
+		final Root         target;
+		final boolean      length;
+		final boolean      call;
+		final MemberReader reader;
+		Size(Root target, String name, boolean call, boolean readFields) {
+			this.target = target;
+			this.length = name.equals("length");
+			this.call   = call;
+			this.reader = new MemberReader(name, call, readFields);
+		}
+		long longValue(Frame frame) throws InvocationTargetException {
+			Object object = target.value(frame);
+			if (object == null || object == UNREADABLE)
+				return NO_VALUE;
+			if (call) {
+				if (object instanceof CharSequence && length)
+					return ((CharSequence) object).length();
+				if (object instanceof Collection && ! length)
+					return ((Collection<?>) object).size();
+				if (object instanceof Map && ! length)
+					return ((Map<?,?>) object).size();
+			} else if (object.getClass().isArray()) {
+				return Array.getLength(object);
+			}
+			Object value = reader.invoke(object);
+			return isIntegral(value) ? ((Number) value).longValue() : NO_VALUE;
+		}
+		int kinds(Frame frame) {
+			Object object = target.value(frame);
+			if (object == null || object == UNREADABLE)
+				return UNDECIDABLE;
+			if (call ? (length ? object instanceof CharSequence : 
+								 object instanceof Collection || object instanceof Map)
+					 : object.getClass().isArray())
+				return INTEGRAL;
+			Class<?> type = reader.getType(object.getClass());
+			return type != null && kindsOf(type) == INTEGRAL ? INTEGRAL : UNDECIDABLE;
+		}
+	}
+
+	/** <code>isEmpty()</code>, read directly from collections and maps. */
+	private static final class IsEmpty extends Condition {
+		final Root         target;
+		final MemberReader reader = new MemberReader("isEmpty", true, false);
+		IsEmpty(Root target) { this.target = target; }
+		int test(Frame frame) throws InvocationTargetException {
+			Object object = target.value(frame);
+			if (object == null || object == UNREADABLE)
+				return UNKNOWN;
+			if (object instanceof Collection)
+				return ((Collection<?>) object).isEmpty() ? TRUE : FALSE;
+			if (object instanceof Map)
+				return ((Map<?,?>) object).isEmpty() ? TRUE : FALSE;
+			Object value = reader.invoke(object);
+			if (value instanceof Boolean)
+				return ((Boolean) value).booleanValue() ? TRUE : FALSE;
+			return UNKNOWN;
+		}
+		int kinds(Frame frame) {
+			Object object = target.value(frame);
+			if (object == null || object == UNREADABLE)
+				return UNDECIDABLE;
+			if (object instanceof Collection || object instanceof Map)
+				return BOOLEAN;
+			return reader.getType(object.getClass()) == boolean.class ? BOOLEAN : UNDECIDABLE;
+		}
+	}
+
+	private static final class Not extends Condition {
+		final Node operand;
+		Not(Node operand) { this.operand = operand; }
+		int test(Frame frame) throws InvocationTargetException {
+			int result = operand.test(frame);
+			return result == UNKNOWN ? UNKNOWN : TRUE - result;
+		}
+		int kinds(Frame frame) {
+			return operand.kinds(frame) == BOOLEAN ? BOOLEAN : UNDECIDABLE;
+		}
+	}
+
+	private static final class And extends Condition {
+		final Node left, right;
+		And(Node left, Node right) {
+			this.left  = left;
+			this.right = right;
+		}
+		int test(Frame frame) throws InvocationTargetException {
+			int result = left.test(frame);
+			return result == TRUE ? right.test(frame) : result;
+		}
+		int kinds(Frame frame) {
+			return bothBoolean(left, right, frame);
+		}
+	}
+
+	private static final class Or extends Condition {
+		final Node left, right;
+		Or(Node left, Node right) {
+			this.left  = left;
+			this.right = right;
+		}
+		int test(Frame frame) throws InvocationTargetException {
+			int result = left.test(frame);
+			return result == FALSE ? right.test(frame) : result;
+		}
+		int kinds(Frame frame) {
+			return bothBoolean(left, right, frame);
+		}
+	}
+
+	/**
+	 * Both operands are checked, even one that short-circuiting would skip,
+	 * since checking doesn't call anything.
+	 */
+	private static int bothBoolean(Node left, Node right, Frame frame) {
+		return left.kinds(frame) == BOOLEAN && right.kinds(frame) == BOOLEAN ? BOOLEAN : UNDECIDABLE;
+	}
+
+	private static final class NullCheck extends Condition {
+		final Node    operand;
+		final boolean isNull;
+		NullCheck(Node operand, boolean isNull) {
+			this.operand = operand;
+			this.isNull  = isNull;
+		}
+		int test(Frame frame) throws InvocationTargetException {
+			Object value = operand.value(frame);
+			if (value == UNREADABLE)
+				return UNKNOWN;
+			return (value == null) == isNull ? TRUE : FALSE;
+		}
+		int kinds(Frame frame) {
+			return operand.kinds(frame) != UNDECIDABLE ? BOOLEAN : UNDECIDABLE;
+		}
+	}
+
+	private static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+	private static int operator(String op) {
+		if (op.equals("=="))  return EQ;
+		if (op.equals("!="))  return NE;
+		if (op.equals("<"))   return LT;
+		if (op.equals("<="))  return LE;
+		if (op.equals(">"))   return GT;
+		if (op.equals(">="))  return GE;
+		return -1;
+	}
+
+	private static int compare(int op, int comparison) {
+		boolean result;
+		switch (op) {
+		case EQ: result = comparison == 0; break;
+		case NE: result = comparison != 0; break;
+		case LT: result = comparison <  0; break;
+		case LE: result = comparison <= 0; break;
+		case GT: result = comparison >  0; break;
+		default: result = comparison >= 0; break;
+		}
+		return result ? TRUE : FALSE;
+	}
+
+	/** A comparison of two integral values, without boxing. */
+	private static final class IntegralComparison extends Condition {
+		final int      op;
+		final Integral left, right;
+		IntegralComparison(int op, Integral left, Integral right) {
+			this.op    = op;
+			this.left  = left;
+			this.right = right;
+		}
+		int test(Frame frame) throws InvocationTargetException {
+			long l = left.longValue(frame);
+			if (l == NO_VALUE)
+				return UNKNOWN;
+			long r = right.longValue(frame);
+			if (r == NO_VALUE)
+				return UNKNOWN;
+			return compare(op, l < r ? -1 : (l == r ? 0 : 1));
+		}
+		int kinds(Frame frame) {
+			return left.kinds(frame) == INTEGRAL && right.kinds(frame) == INTEGRAL ? 
+					BOOLEAN : UNDECIDABLE;
+		}
+	}
+
+	/**
+	 * A comparison of numbers, or an equality test of two strings, two 
+	 * booleans or with null.
+	 */
+	private static final class Comparison extends Condition {
+		final int  op;
+		final Node left, right;
+		Comparison(int op, Node left, Node right) {
+			this.op    = op;
+			this.left  = left;
+			this.right = right;
+		}
+		int test(Frame frame) throws InvocationTargetException {
+			Object l = left.value(frame);
+			if (l == UNREADABLE)
+				return UNKNOWN;
+			Object r = right.value(frame);
+			if (r == UNREADABLE)
+				return UNKNOWN;
+			boolean equality = op == EQ || op == NE;
+			if (l == null || r == null)
+				return equality ? compare(op, l == r ? 0 : 1) : UNKNOWN;
+			if (isIntegral(l) && isIntegral(r)) {
+				long a = ((Number) l).longValue(), b = ((Number) r).longValue();
+				return compare(op, a < b ? -1 : (a == b ? 0 : 1));
+			}
+			if (isNumber(l) && isNumber(r)) {
+				double a = ((Number) l).doubleValue(), b = ((Number) r).doubleValue();
+				if (Double.isNaN(a) || Double.isNaN(b))
+					return UNKNOWN;
+				return compare(op, a < b ? -1 : (a == b ? 0 : 1));
+			}
+			if (equality && ((l instanceof String && r instanceof String) ||
+							 (l instanceof Boolean && r instanceof Boolean)))
+				return compare(op, l.equals(r) ? 0 : 1);
+			return UNKNOWN;
+		}
+		int kinds(Frame frame) {
+			int l = left.kinds(frame);
+			int r = right.kinds(frame);
+			if (l == UNDECIDABLE || r == UNDECIDABLE)
+				return UNDECIDABLE;
+			if (op != EQ && op != NE)
+				return ((l | r) & ~NUMBER) == 0 ? BOOLEAN : UNDECIDABLE;
+			for (int a = NULL; a <= OTHER; a <<= 1) {
+				for (int b = NULL; b <= OTHER; b <<= 1) {
+					if ((l & a) != 0 && (r & b) != 0 && ! equatable(a, b))
+						return UNDECIDABLE;
+				}
+			}
+			return BOOLEAN;
+		}
+	}
+
+	/** @return true if values of the two kinds can be tested for equality. */
+	private static boolean equatable(int a, int b) {
+		return a == NULL || b == NULL || ((a & NUMBER) != 0 && (b & NUMBER) != 0) ||
+			   (a == b && (a == STRING || a == BOOLEAN));
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Integer || value instanceof Long || 
+			   value instanceof Short   || value instanceof Byte;
+	}
+
+	private static boolean isNumber(Object value) {
+		return isIntegral(value) || value instanceof Double || value instanceof Float;
+	}
+
+	/**
+	 * Builds the nodes from the parsed expression, or returns null for 
+	 * anything outside the subset.
+	 */
+	private static final class Compiler {
+		final boolean readFields;
+		boolean usesOldValues = false;
+
+		Compiler(boolean readFields) {
+			this.readFields = readFields;
+		}
+
+		Node test(ExpressionNode node) {
+			if (node instanceof ExpressionNode.Binary) {
+				ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+				String op = binary.getOperator();
+				if (op.equals("&&") || op.equals("||")) {
+					Node left  = test(binary.getLeft());
+					Node right = test(binary.getRight());
+					if (left == null || right == null)
+						return null;
+					return op.equals("&&") ? new And(left, right) : new Or(left, right);
+				}
+				return comparison(operator(op), binary.getLeft(), binary.getRight());
+			}
+			if (node instanceof ExpressionNode.Unary) {
+				ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+				if (! unary.getOperator().equals("!"))
+					return null;
+				Node operand = test(unary.getOperand());
+				return operand != null ? new Not(operand) : null;
+			}
+			if (node instanceof ExpressionNode.Literal && 
+				! (((ExpressionNode.Literal) node).getValue() instanceof Boolean))
+				return null;
+			return value(node);
+		}
+
+		private Node comparison(int op, ExpressionNode leftNode, ExpressionNode rightNode) {
+			if (op < 0)
+				return null;
+			if ((op == EQ || op == NE) && isNullLiteral(rightNode) != isNullLiteral(leftNode)) {
+				Node operand = value(isNullLiteral(rightNode) ? leftNode : rightNode);
+				return operand != null ? new NullCheck(operand, op == EQ) : null;
+			}
+			Node left  = value(leftNode);
+			Node right = value(rightNode);
+			if (left == null || right == null)
+				return null;
+			if (left instanceof Integral && right instanceof Integral)
+				return new IntegralComparison(op, (Integral) left, (Integral) right);
+			return new Comparison(op, left, right);
+		}
+
+		private static boolean isNullLiteral(ExpressionNode node) {
+			return node instanceof ExpressionNode.Literal && 
+				((ExpressionNode.Literal) node).getValue() == null;
+		}
+
+		Node value(ExpressionNode node) {
+			if (node instanceof ExpressionNode.Literal)
+				return constant(((ExpressionNode.Literal) node).getValue());
+			if (node instanceof ExpressionNode.Unary) {
+				ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+				if (! unary.getOperator().equals("-") || ! (unary.getOperand() instanceof ExpressionNode.Literal))
+					return null;
+				Object negated = negate(((ExpressionNode.Literal) unary.getOperand()).getValue());
+				return negated != null ? constant(negated) : null;
+			}
+			if (node instanceof ExpressionNode.Name)
+				return root(((ExpressionNode.Name) node).getName());
+			if (node instanceof ExpressionNode.Index) {
+				ExpressionNode.Index index = (ExpressionNode.Index) node;
+				if (index.getTarget() instanceof ExpressionNode.Name &&
+					((ExpressionNode.Name) index.getTarget()).getName().equals("c4jArgs") &&
+					index.getIndex() instanceof ExpressionNode.Literal &&
+					((ExpressionNode.Literal) index.getIndex()).getValue() instanceof Integer) {
+					int i = ((Integer) ((ExpressionNode.Literal) index.getIndex()).getValue()).intValue();
+					return i >= 0 ? new Root(Root.ARG, i) : null;
+				}
+				return null;
+			}
+			if (node instanceof ExpressionNode.Property) {
+				ExpressionNode.Property property = (ExpressionNode.Property) node;
+				Node target = value(property.getTarget());
+				if (! (target instanceof Root))
+					return null;
+				if (property.getName().equals("length"))
+					return new Size((Root) target, "length", false, readFields);
+				return new Member((Root) target, new MemberReader(property.getName(), false, readFields));
+			}
+			if (node instanceof ExpressionNode.MethodCall) {
+				ExpressionNode.MethodCall call = (ExpressionNode.MethodCall) node;
+				if (call.getTarget() == null || call.getArguments().size() > 0)
+					return null;
+				Node target = value(call.getTarget());
+				if (! (target instanceof Root))
+					return null;
+				String name = call.getName();
+				if (name.equals("length") || name.equals("size"))
+					return new Size((Root) target, name, true, readFields);
+				if (name.equals("isEmpty"))
+					return new IsEmpty((Root) target);
+				return new Member((Root) target, new MemberReader(name, true, readFields));
+			}
+			return null;
+		}
+
+		private Node root(String name) {
+			if (name.equals("c4jThis"))
+				return new Root(Root.THIS, 0);
+			if (name.equals("c4jTarget"))
+				return new Root(Root.TARGET, 0);
+			if (name.equals("c4jReturn"))
+				return new Root(Root.RETURN, 0);
+			if (name.startsWith("c4jExprVar")) {
+				try {
+					int n = Integer.parseInt(name.substring("c4jExprVar".length()));
+					if (n < 1)
+						return null;
+					usesOldValues = true;
+					return new Root(Root.OLD, n - 1);
+				} catch (NumberFormatException nfe) {
+					return null;
+				}
+			}
+			return null;
+		}
+
+		private static Node constant(Object value) {
+			if (value instanceof Integer || value instanceof Long)
+				return new IntegralConstant((Number) value);
+			if (value == null || value instanceof Double || 
+				value instanceof String || value instanceof Boolean)
+				return new Constant(value);
+			return null;
+		}
+
+		private static Object negate(Object value) {
+			if (value instanceof Integer)
+				return Integer.valueOf(- ((Integer) value).intValue());
+			if (value instanceof Long)
+				return Long.valueOf(- ((Long) value).longValue());
+			if (value instanceof Double)
+				return Double.valueOf(- ((Double) value).doubleValue());
+			return null;
+		}
+	}
+}
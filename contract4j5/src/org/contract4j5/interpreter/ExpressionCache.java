@@ -0,0 +1,241 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.contract4j5.metrics.StripedCounters;
+
+/**
+ * A bounded, thread-safe cache of the parsed or compiled form of test 
+ * expressions, keyed by the expression. Lookups are hash lookups that 
+ * don't lock. When an insertion takes the cache over its 
+ * {@link #getCapacity() capacity}, the least recently used ({@link 
+ * EvictionPolicy#LRU}) or least frequently used ({@link EvictionPolicy#LFU})
+ * entries are evicted, in a batch of about an eighth of the capacity, so 
+ * the cost of choosing them is spread over many insertions. The recency 
+ * and use counts are updated without synchronization, so the choice is 
+ * approximate. Use counts are halved after each eviction, so entries that
+ * were popular long ago don't stay forever.
+ * <p>
+ * An {@link EvictionListener} is told about each evicted entry, <i>e.g.,</i>
+ * so an interpreter can release the classes it generated for it. 
+ * The hit, miss and eviction counts are kept in {@link StripedCounters}.
+ */
+public class ExpressionCache<V> {
+	/** The default {@link #getCapacity() capacity}. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public static enum EvictionPolicy {
+		/** Evict the entries that were used least recently. */
+		LRU,
+		/** Evict the entries that were used least often. */
+		LFU
+	}
+
+	/**
+	 * Told about each entry evicted from the cache.
+	 */
+	public static interface EvictionListener<V> {
+		void evicted(String expression, V value);
+	}
+
+	private static final int HITS      = 0;
+	private static final int MISSES    = 1;
+	private static final int EVICTIONS = 2;
+
+	private static final class Entry<V> {
+		final String key;
+		final V      value;
+		// Plain fields: a lost update only makes the eviction choice less exact.
+		long lastUsed;
+		int  uses;
+
+		Entry(String key, V value, long now) {
+			this.key      = key;
+			this.value    = value;
+			this.lastUsed = now;
+			this.uses     = 1;
+		}
+	}
+
+	private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<String, Entry<V>>();
+	private final StripedCounters counts = new StripedCounters(3);
+	private volatile int capacity = DEFAULT_CAPACITY;
+	private volatile EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+	private volatile EvictionListener<V> evictionListener = null;
+	// A logical clock for the LRU order, also updated without synchronization.
+	private long clock = 0;
+
+	public ExpressionCache() {}
+
+	public ExpressionCache(int capacity, EvictionPolicy evictionPolicy) {
+		setCapacity(capacity);
+		setEvictionPolicy(evictionPolicy);
+	}
+
+	/**
+	 * @return the value for the expression, or null if it isn't cached, 
+	 * counting a hit or a miss.
+	 */
+	public V get(String expression) {
+		Entry<V> entry = entries.get(expression);
+		if (entry == null) {
+			counts.increment(MISSES);
+			return null;
+		}
+		entry.lastUsed = ++clock;
+		entry.uses++;
+		counts.increment(HITS);
+		return entry.value;
+	}
+
+	/**
+	 * @return the value for the expression, or null if it isn't cached, 
+	 * without counting a hit or a miss or marking the entry as used.
+	 */
+	public V peek(String expression) {
+		Entry<V> entry = entries.get(expression);
+		return entry != null ? entry.value : null;
+	}
+
+	/**
+	 * Cache the value, unless there is one for the expression already.
+	 * @return the cached value, which is the existing one, if there was one.
+	 */
+	public V put(String expression, V value) {
+		Entry<V> entry    = new Entry<V>(expression, value, ++clock);
+		Entry<V> existing = entries.putIfAbsent(expression, entry);
+		if (existing != null)
+			return existing.value;
+		if (entries.size() > capacity)
+			evict();
+		return value;
+	}
+
+	/**
+	 * Remove all the entries, telling the {@link EvictionListener} about each.
+	 * The statistics are not reset.
+	 */
+	public void clear() {
+		for (Entry<V> entry: new ArrayList<Entry<V>>(entries.values()))
+			remove(entry);
+	}
+
+	public int size() { return entries.size(); }
+
+	public long getHits()      { return counts.get(HITS); }
+	public long getMisses()    { return counts.get(MISSES); }
+	public long getEvictions() { return counts.get(EVICTIONS); }
+
+	/**
+	 * @return the fraction of the lookups that were hits, or 0 if there
+	 * have been none.
+	 */
+	public double getHitRate() {
+		long[] sums  = counts.getAll();
+		long   total = sums[HITS] + sums[MISSES];
+		return total == 0 ? 0.0 : (double) sums[HITS] / total;
+	}
+
+	public void resetStatistics() { counts.reset(); }
+
+	public int getCapacity() { return capacity; }
+
+	/**
+	 * Set the maximum number of entries, evicting entries now if there are 
+	 * more.
+	 * @throws IllegalArgumentException if the capacity is less than 1.
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid expression cache capacity " + capacity + ". Expected 1 or more.");
+		this.capacity = capacity;
+		if (entries.size() > capacity)
+			evict();
+	}
+
+	public EvictionPolicy getEvictionPolicy() { return evictionPolicy; }
+	public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		if (evictionPolicy == null)
+			throw new IllegalArgumentException("The eviction policy can't be null.");
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * Convenience method for setting the eviction policy from its name, 
+	 * ignoring case.
+	 */
+	public void setEvictionPolicyUsingString(String name) {
+		setEvictionPolicy(EvictionPolicy.valueOf(name.trim().toUpperCase()));
+	}
+
+	public EvictionListener<V> getEvictionListener() { return evictionListener; }
+	public void setEvictionListener(EvictionListener<V> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	public String toString() {
+		return "ExpressionCache (size = " + size() + ", capacity = " + capacity + 
+			", policy = " + evictionPolicy + ", hits = " + getHits() + 
+			", misses = " + getMisses() + ", evictions = " + getEvictions() + ")";
+	}
+
+	private synchronized void evict() {
+		int excess = entries.size() - capacity;
+		if (excess <= 0)
+			return;
+		List<Entry<V>> candidates = new ArrayList<Entry<V>>(entries.values());
+		Collections.sort(candidates, evictionPolicy == EvictionPolicy.LFU ? LEAST_USED : LEAST_RECENT);
+		int count = Math.min(candidates.size(), excess + capacity / 8);
+		for (int i = 0; i < count; i++)
+			remove(candidates.get(i));
+		for (Entry<V> entry: entries.values())
+			entry.uses = entry.uses / 2;
+	}
+
+	private void remove(Entry<V> entry) {
+		if (! entries.remove(entry.key, entry))
+			return;
+		counts.increment(EVICTIONS);
+		EvictionListener<V> listener = evictionListener;
+		if (listener != null)
+			listener.evicted(entry.key, entry.value);
+	}
+
+	private static final Comparator<Entry<?>> LEAST_RECENT = new Comparator<Entry<?>>() {
+		public int compare(Entry<?> e1, Entry<?> e2) {
+			return e1.lastUsed < e2.lastUsed ? -1 : (e1.lastUsed == e2.lastUsed ? 0 : 1);
+		}
+	};
+
+	private static final Comparator<Entry<?>> LEAST_USED = new Comparator<Entry<?>>() {
+		public int compare(Entry<?> e1, Entry<?> e2) {
+			if (e1.uses != e2.uses)
+				return e1.uses < e2.uses ? -1 : 1;
+			return LEAST_RECENT.compare(e1, e2);
+		}
+	};
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.contract4j5.interpreter.expression.ExpressionCanonicalizer;
+import org.contract4j5.reporter.Reporter;
+import org.contract4j5.reporter.Severity;
+
+/**
+ * Maps each expanded test expression to one shared instance of the same
+ * text, so all the sites with the same test use the same string, and with 
+ * it the same parsed or compiled expression. The text itself is never 
+ * changed. Expressions are also grouped by their 
+ * {@link ExpressionCanonicalizer canonical form}, which is the same for 
+ * tests with the same logic written with different whitespace; that is 
+ * only a key, and is never evaluated.
+ * <p>
+ * It counts the expansions (one for each contract site), the distinct 
+ * expanded expressions and the distinct canonical expressions. Since sites 
+ * are created when their tests first run, there's no single "startup" 
+ * moment to report them; instead a summary is reported with 
+ * {@link Severity#INFO} when the number of expansions reaches 
+ * {@link #FIRST_REPORT}, and again each time it doubles, which covers the
+ * application's warm-up without repeating itself afterwards.
+ */
+public class ExpressionDeduplicator {
+	/** The number of expansions when the first summary is reported. */
+	public static final int FIRST_REPORT = 16;
+
+	// Each distinct expression, mapped to itself, and its canonical form.
+	private final ConcurrentMap<String, String> expressions = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> canonicalForms = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> canonicalExpressions = new ConcurrentHashMap<String, String>();
+	private final AtomicInteger expansions = new AtomicInteger();
+
+	/**
+	 * @return the shared instance of the expression, which is equal to it.
+	 * @param reporter reports the summary when it is due, or null.
+	 */
+	public String deduplicate(String expression, Reporter reporter) {
+		String shared = expressions.get(expression);
+		if (shared == null) {
+			getCanonicalForm(expression);
+			shared = expressions.putIfAbsent(expression, expression);
+			if (shared == null)
+				shared = expression;
+		}
+		int count = expansions.incrementAndGet();
+		if (reporter != null && count >= FIRST_REPORT && (count & (count - 1)) == 0)
+			reporter.report(Severity.INFO, ExpressionDeduplicator.class, toString());
+		return shared;
+	}
+
+	/**
+	 * @return the shared instance of the expression's canonical form. It is 
+	 * a key for grouping expressions, not something to evaluate.
+	 */
+	public String getCanonicalForm(String expression) {
+		String canonical = canonicalForms.get(expression);
+		if (canonical == null) {
+			canonical = ExpressionCanonicalizer.canonicalize(expression);
+			String existing = canonicalExpressions.putIfAbsent(canonical, canonical);
+			if (existing != null)
+				canonical = existing;
+			canonicalForms.put(expression, canonical);
+		}
+		return canonical;
+	}
+
+	/** @return the number of expressions deduplicated, i.e., sites expanded. */
+	public int getExpansionCount() { return expansions.get(); }
+
+	/** @return the number of distinct expressions, before canonicalization. */
+	public int getExpandedExpressionCount() { return expressions.size(); }
+
+	/** @return the number of distinct canonical expressions. */
+	public int getCanonicalExpressionCount() { return canonicalExpressions.size(); }
+
+	/**
+	 * @return the number of expansions for each canonical expression, or 0
+	 * if there have been none.
+	 */
+	public double getDeduplicationRatio() {
+		int canonical = getCanonicalExpressionCount();
+		return canonical == 0 ? 0.0 : (double) getExpansionCount() / canonical;
+	}
+
+	public void clear() {
+		expressions.clear();
+		canonicalForms.clear();
+		canonicalExpressions.clear();
+		expansions.set(0);
+	}
+
+	public String toString() {
+		return "Test expression deduplication: " + getExpansionCount() + 
+			" expansions of " + getExpandedExpressionCount() + 
+			" distinct expressions share " + getCanonicalExpressionCount() + 
+			" canonical expressions (ratio " + 
+			String.format("%.2f", getDeduplicationRatio()) + ")";
+	}
+}
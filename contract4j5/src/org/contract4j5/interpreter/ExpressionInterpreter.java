@@ -176,6 +176,11 @@ public interface ExpressionInterpreter {
 	 * result in unpredictable results (depending on the implementation). Note 
 	 * that whitespace is ignored, except that there can be no whitespace
 	 * between the "$" characters and their keywords.
+	 * <p>
+	 * The values are kept as they are, unless the 
+	 * {@link org.contract4j5.controller.Contract4J#getSnapshotPolicy() snapshot policy}
+	 * says to copy them, so a test can see the state of a mutable value before 
+	 * the call.
 	 * @param context of the test.
 	 * @return map of the old values and their corresponding names.
 	 * @note Only "$old(..)" are processed; other keywords are ignored.
@@ -20,17 +20,29 @@
 
 package org.contract4j5.interpreter;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.contract4j5.context.ContractSite;
 import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextFrame;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.controller.SystemCaches;
 import org.contract4j5.errors.TestSpecificationError;
 import org.contract4j5.instance.Instance;
 import org.contract4j5.instance.InstanceUtils;
+import org.contract4j5.interpreter.expression.TestExpressionAnalysis;
+import org.contract4j5.interpreter.snapshot.SnapshotPolicy;
+import org.contract4j5.metrics.MetricsRegistry;
 import org.contract4j5.reporter.Reporter;
 import org.contract4j5.reporter.Severity;
 
@@ -39,6 +51,10 @@ import org.contract4j5.reporter.Severity;
  * An abstract helper class that implements the common boiler plate for the 
  * expression interpreter. It uses a Template Method pattern and calls abstract 
  * methods to provide specific support for user-provided interpreters.
+ * <p>Tests may be evaluated on several threads at once. The objects recorded for a
+ * test are kept per thread, so subclasses must keep their bindings per thread, too.
+ * Objects registered with {@link #registerGlobalContextObject(String, Object)} are
+ * shared by all threads.
  * @author Dean Wampler <mailto: dean@aspectprogramming.com>
  */
 abstract public class ExpressionInterpreterHelper implements ExpressionInterpreter {
@@ -66,6 +82,8 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 */
 	public void setOptionalKeywordSubstitutions(Map<String, String> optionalKeywordSubstitutions) {
 		this.optionalKeywordSubstitutions = optionalKeywordSubstitutions;
+		// The cached sites have "internal" expressions made with the old substitutions.
+		SystemCaches.testContextCache.clear();
 	}
 
 	/* (non-Javadoc)
@@ -73,21 +91,68 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 */
 	public Map<String, Object> determineOldValues(TestContext context) {
 		Map<String, Object> map = new HashMap<String, Object>();
-		// Find "$old()", "$old($this)", "$old($this.foo)", "$old($this.doFoo(bar,baz))", etc.
-		// See Javadocs for parent class declaration.
-		// Also handle quoted strings: remove them!
-		String regex = "\\$old\\s*\\([^\\(\\)]*(\\([^\\)]*\\))?[^\\(\\)]*\\)";
-		String expr2 = removeQuotedStrings(context.getActualTestExpression());
-		Pattern p = Pattern.compile(regex); 
-		Matcher m = p.matcher(expr2);
-		while (m.find()) {
-			String s1 = m.group();
-			String expr = s1.substring(s1.indexOf('(')+1, s1.length()-1); // grab everything between '(' and ')'
-			expr = expr.trim();
-			map.put(expr, determineOldValue(expr, context)); 
+		// Find "$old($this)", "$old($this.foo)", "$old($this.doFoo(bar,baz))", etc.,
+		// ignoring quoted strings. See Javadocs for parent class declaration.
+		List<String> exprs = analyze(context.getActualTestExpression()).getOldExpressions();
+		if (exprs.isEmpty())
+			return map;
+		MetricsRegistry metrics = Contract4J.getMetricsRegistry();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		ContractSite site = context instanceof TestContextFrame ? 
+				((TestContextFrame) context).getSite() : null;
+		String className  = site != null ? site.getClassName()  : null;
+		String memberName = site != null ? site.getMemberName() : null;
+		SnapshotPolicy policy = Contract4J.getSnapshotPolicy();
+		Instance obji   = context.getInstance();
+		Instance fieldi = context.getField();
+		Object   obj    = obji   != null ? obji.getValue()   : null;
+		Object   field  = fieldi != null ? fieldi.getValue() : null;
+		boolean direct = getReadOldValuesDirectly();
+		for (String expr: exprs) {
+			Object value = direct ? getOldValueAccessor(expr).read(obj, field) : OldValueAccessor.UNREADABLE;
+			if (value == OldValueAccessor.UNREADABLE)
+				value = determineOldValue(expr, context);
+			map.put(expr, policy.snapshot(value, className, memberName)); 
 		}
+		if (start != 0 && site != null)
+			metrics.getMetrics(site).recordSnapshot(System.nanoTime() - start);
 		return map;
 	}
+
+	/**
+	 * @return true if simple "old" expressions may be read with an 
+	 * {@link OldValueAccessor} instead of the interpreter. Interpreters for 
+	 * languages whose property access differs from Java's should return false.
+	 */
+	protected boolean getReadOldValuesDirectly() {
+		return true;
+	}
+
+	/**
+	 * @return true if the {@link OldValueAccessor}s and {@link DirectTest}s 
+	 * may read a property from a public field when it has no "get" or "is" 
+	 * method. Interpreters for languages that can't read fields that way 
+	 * should return false.
+	 */
+	protected boolean getReadPublicFieldsDirectly() {
+		return true;
+	}
+
+	private final Map<String, OldValueAccessor> oldValueAccessors = 
+		new ConcurrentHashMap<String, OldValueAccessor>();
+
+	/**
+	 * @return the accessor that reads the "old" value of the expression 
+	 * without the interpreter, made the first time the expression is seen. 
+	 */
+	protected OldValueAccessor getOldValueAccessor(String oldExpression) {
+		OldValueAccessor accessor = oldValueAccessors.get(oldExpression);
+		if (accessor == null) {
+			accessor = OldValueAccessor.compile(oldExpression, getReadPublicFieldsDirectly());
+			oldValueAccessors.put(oldExpression, accessor);
+		}
+		return accessor;
+	}
 	
 
 	/**
@@ -110,6 +175,7 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 		Instance fieldi = context.getField();
 		Object   obj    =  obji   != null ? obji.getValue()   : null;
 		Object   field  =  fieldi != null ? fieldi.getValue() : null;
+		synchronizeGlobalContextObjects();
 		recordContextChange ("c4jOldThis",   obj, false);
 		recordContextChange ("c4jOldTarget", field, false);
 		Object result = doDetermineOldValue (newExprStr, context);
@@ -147,16 +213,85 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 		if (testResult.isPassed() == false) {
 			return testResult;
 		}
+		testResult = evaluateDirectly(context);
+		if (testResult != null) {
+			return testResult;
+		}
+		synchronizeGlobalContextObjects();
 		saveDynamicContextData(context);
 		
 		String expr = context.getInternalTestExpression();
 		getReporter().report(Severity.DEBUG, ExpressionInterpreterHelper.class,
-				"Invoking test (expanded): " + expr);
+				"Invoking test (expanded): {}", expr);
 		testResult = doTest(expr, context);
 		cleanupContext();
 		return testResult;
 	}
 
+	/**
+	 * Evaluate the expanded test with a {@link DirectTest}, if it's simple 
+	 * enough, and record the site's {@link EvaluationTier}.
+	 * @return the result, or null if the interpreter has to evaluate the test.
+	 */
+	protected TestResult evaluateDirectly(TestContext context) {
+		DirectTest direct = getEvaluateTestsDirectly() ? 
+				getDirectTest(context.getInternalTestExpression()) : DirectTest.INTERPRETED;
+		DirectTest.Outcome outcome;
+		try {
+			outcome = direct.test(context);
+		} catch (InvocationTargetException ite) {
+			recordEvaluationTier(context, EvaluationTier.DIRECT);
+			return makeExceptionThrownTestResult(context.getInternalTestExpression(), context, ite.getCause());
+		}
+		recordEvaluationTier(context, direct.isEnabled() ? EvaluationTier.DIRECT : EvaluationTier.SCRIPT);
+		if (outcome == DirectTest.Outcome.UNDECIDED)
+			return null;
+		return new TestResult(outcome == DirectTest.Outcome.PASSED);
+	}
+
+	private boolean evaluateTestsDirectly = true;
+
+	/**
+	 * @return true if simple tests may be evaluated with a {@link DirectTest}
+	 * instead of the interpreter (the default). Interpreters for languages 
+	 * whose syntax or semantics differ from Java's for that subset should 
+	 * return false.
+	 */
+	public boolean getEvaluateTestsDirectly() {
+		return evaluateTestsDirectly;
+	}
+	public void setEvaluateTestsDirectly(boolean evaluateTestsDirectly) {
+		this.evaluateTestsDirectly = evaluateTestsDirectly;
+	}
+
+	private final Map<String, DirectTest> directTests = 
+		new ConcurrentHashMap<String, DirectTest>();
+
+	protected DirectTest getDirectTest(String expression) {
+		DirectTest direct = directTests.get(expression);
+		if (direct == null) {
+			direct = DirectTest.compile(expression, getReadPublicFieldsDirectly());
+			directTests.put(expression, direct);
+		}
+		return direct;
+	}
+
+	/**
+	 * Remember the tier the context's site runs in, reporting it when it 
+	 * changes.
+	 */
+	public void recordEvaluationTier(TestContext context, EvaluationTier tier) {
+		if (! (context instanceof TestContextFrame))
+			return;
+		ContractSite site = ((TestContextFrame) context).getSite();
+		if (site.getEvaluationTier() == tier)
+			return;
+		site.setEvaluationTier(tier);
+		getReporter().report(Severity.INFO, ExpressionInterpreterHelper.class,
+				"Test at " + site.getFileName() + ":" + site.getLineNumber() + 
+				" runs in the " + tier + " tier: " + site.getInternalTestExpression());
+	}
+
 	/* (non-Javadoc)
 	 * @see org.contract4j5.interpreter.ExpressionInterpreter#validateTestExpression(java.lang.String, org.contract4j5.TestContext)
 	 */
@@ -170,148 +305,112 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 		if (empty(expression)) {
 			return handleEmptyTestExpression();
 		} 
-		errStr = checkDollarThis(context, expression, errStr);
-		errStr = checkDollarTarget(context, expression, errStr);
-		errStr = checkFieldName(context, expression, errStr);
-		errStr = checkDollarArgs(context, expression, errStr);
-		errStr = checkDollarReturn(context, expression, errStr);
-		errStr = checkDollarOld(expression, errStr);
-		errStr = checkForInvalidWhitespace(expression, errStr);
-		errStr = checkForUnrecognizedKeywords(expression, errStr);
-		warnStr = checkForMissingDollarSignsInPossibleKeywords(expression,
-				warnStr);
+		TestExpressionAnalysis analysis = analyze(expression);
+		errStr = checkDollarThis(context, analysis, errStr);
+		errStr = checkDollarTarget(context, analysis, errStr);
+		errStr = checkDollarArgs(context, analysis, errStr);
+		errStr = checkDollarReturn(context, analysis, errStr);
+		errStr = checkDollarOld(analysis, errStr);
+		errStr = checkForInvalidWhitespace(analysis, errStr);
+		errStr = checkForUnrecognizedKeywords(analysis, errStr);
+		warnStr = checkForMissingDollarSignsInPossibleKeywords(analysis, warnStr);
 		return makeValidateTestExpressionReturn (warnStr, errStr);
 	}
 
-	private String checkForMissingDollarSignsInPossibleKeywords(
-			String expression, String warnStr) {
-		Pattern p2 = Pattern.compile ("(?:(^|[^\\$]))\\s*(this|target|args|return|old)");
-		Matcher m2 = p2.matcher (expression);
-		boolean firstBadDollar = true;
-		String  badDollarKeyWords = "";
-		while (m2.find()) {
-			String match   = m2.group();
-			//String keyWord = match.replaceAll("(^|[^\\$])\\s*", "");
-			if (firstBadDollar) {
-				firstBadDollar = false;
-			} else {
-				badDollarKeyWords += ", ";
-			}
-			badDollarKeyWords += match;
+	private final Map<String, TestExpressionAnalysis> analyses = 
+		new ConcurrentHashMap<String, TestExpressionAnalysis>();
+
+	/**
+	 * Lex the expression once and remember what was found, for validation, 
+	 * "old" value capture and keyword expansion of every test that uses it.
+	 */
+	protected TestExpressionAnalysis analyze(String expression) {
+		TestExpressionAnalysis analysis = analyses.get(expression);
+		if (analysis == null) {
+			analysis = TestExpressionAnalysis.analyze(expression);
+			analyses.put(expression, analysis);
 		}
-		if (badDollarKeyWords.length() > 0) {
-			warnStr += InvalidTestExpression.MISSING_DOLLAR_SIGN_IN_KEYWORD.toString()+badDollarKeyWords+". ";			
+		return analysis;
+	}
+
+	private String checkForMissingDollarSignsInPossibleKeywords(
+			TestExpressionAnalysis analysis, String warnStr) {
+		List<String> words = analysis.getKeywordsMissingDollars();
+		if (words.size() > 0) {
+			warnStr += InvalidTestExpression.MISSING_DOLLAR_SIGN_IN_KEYWORD.toString()+join(words)+". ";
 		}
 		return warnStr;
 	}
 
-	private String checkForUnrecognizedKeywords(String expression, String errStr) {
+	private String checkForUnrecognizedKeywords(TestExpressionAnalysis analysis, String errStr) {
 		if (getAllowUnrecognizedKeywords())
 			return errStr;
-		Pattern p1 = Pattern.compile ("\\$\\w+");
-		Matcher m1 = p1.matcher (expression);
-		boolean firstBad = true;
-		String badKeyWords = "";
-		while (m1.find()) {
-			String match = m1.group();
-			if (match.equals("$this")   || match.equals("$target") ||
-				match.equals("$return") || match.equals("$args")   ||
-				match.equals("$old")) {
-				continue;
-			}
-			if (firstBad) {
-				firstBad = false;
-			} else {
-				badKeyWords += ", ";
-			}
-			badKeyWords += match;
-		}
-		if (badKeyWords.length() > 0) {
-			errStr += InvalidTestExpression.UNRECOGNIZED_KEYWORDS.toString()+badKeyWords+". ";			
+		List<String> words = analysis.getUnrecognizedKeywords();
+		if (words.size() > 0) {
+			errStr += InvalidTestExpression.UNRECOGNIZED_KEYWORDS.toString()+join(words)+". ";
 		}
 		return errStr;
 	}
 
-	private String checkForInvalidWhitespace(String expression, String errStr) {
-		if (containsKeyword(expression, "\\s+\\w*")) { // '$' followed by whitespace
+	private String join(List<String> words) {
+		StringBuffer sb = new StringBuffer();
+		for (String word: words) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(word);
+		}
+		return sb.toString();
+	}
+
+	private String checkForInvalidWhitespace(TestExpressionAnalysis analysis, String errStr) {
+		if (analysis.hasWhitespaceAfterDollar()) {
 			errStr += InvalidTestExpression.INVALID_WHITESPACE_IN_KEYWORD.toString();			
 		}
 		return errStr;
 	}
 
-	private String checkDollarOld(String expression, String errStr) {
-		if (containsKeyword(expression, "old")) { 
-			if (expression.matches("^.*\\$old\\s*[^\\(]+.*$")) {  // "$old ..." w/out "(..)"
-				errStr += InvalidTestExpression.OLD_KEYWORD_NO_ARGS.toString();			
-			} else if (expression.matches("^.*\\$old\\s*$.*$")) {  // "$old" w/out "(..)"
-				errStr += InvalidTestExpression.OLD_KEYWORD_NO_ARGS.toString();			
-			} 
-			if (expression.matches("^.*\\$old\\s*\\(\\s*\\).*$")) { // $old() (no arg)
-				errStr += InvalidTestExpression.OLD_KEYWORD_INVALID_ARGS.toString();			
-			} else { 
-				Pattern p = Pattern.compile("^.*(\\$old\\s*\\(\\s*[^\\(\\)]*(\\([^\\)]*\\))?[^\\(\\)]*\\)).*$"); 
-				Matcher m = p.matcher(expression);
-				while (m.find()) {
-					String s1 = m.group(1);
-					String expr = s1.substring(s1.indexOf('(')+1, s1.length()-1); // grab everything between '(' and ')'
-					expr = expr.trim();
-					if (expr.matches("^.*[+\\-*/<>=~\\^|&%#@!,:;?{}].*$")) { // $old(..) with nonvalid arg?
-						errStr += InvalidTestExpression.OLD_KEYWORD_INVALID_ARGS.toString();
-						break;
-					}
-				}
-			}
+	private String checkDollarOld(TestExpressionAnalysis analysis, String errStr) {
+		if (analysis.hasOldWithoutArguments()) {  // "$old" w/out "(..)"
+			errStr += InvalidTestExpression.OLD_KEYWORD_NO_ARGS.toString();			
+		}
+		if (analysis.hasOldWithInvalidArguments()) { // "$old()" or "$old(x+y)"
+			errStr += InvalidTestExpression.OLD_KEYWORD_INVALID_ARGS.toString();			
 		}
 		return errStr;
 	}
 
-	private String checkDollarArgs(TestContext context, String expression,
+	private String checkDollarArgs(TestContext context, TestExpressionAnalysis analysis,
 			String errStr) {
 		Object[] args = context.getMethodArgs();
-		if (expression.matches("^.*\\$args.*$") && (args == null || args.length == 0)) {
+		if (analysis.usesKeyword("args") && (args == null || args.length == 0)) {
 			errStr += InvalidTestExpression.ARGS_KEYWORD_WITH_NO_ARGS.toString();
 		}
 		return errStr;
 	}
 
-	private String checkDollarReturn(TestContext context, String expression,
+	private String checkDollarReturn(TestContext context, TestExpressionAnalysis analysis,
 			String errStr) {
-		if (containsKeyword(expression, "return") && context.getMethodResult() == null) {
+		if (analysis.usesKeyword("return") && context.getMethodResult() == null) {
 			errStr += InvalidTestExpression.RETURN_KEYWORD_WITH_NO_RETURN.toString();
 		}
 		return errStr;
 	}
 
-	private String checkFieldName(TestContext context, String expression,
+	private String checkDollarTarget(TestContext context, TestExpressionAnalysis analysis,
 			String errStr) {
-		return errStr;
-	}
-
-	private String checkDollarTarget(TestContext context, String expression,
-			String errStr) {
-		if (containsKeyword(expression, "target")) {
-			Instance i = context.getField();
-			if (i == null) {
-				errStr += InvalidTestExpression.TARGET_KEYWORD_WITH_NO_TARGET.toString();
-			}
+		if (analysis.usesKeyword("target") && context.getField() == null) {
+			errStr += InvalidTestExpression.TARGET_KEYWORD_WITH_NO_TARGET.toString();
 		}
 		return errStr;
 	}
 
-	private String checkDollarThis(TestContext context, String expression,
+	private String checkDollarThis(TestContext context, TestExpressionAnalysis analysis,
 			String errStr) {
-		if (containsKeyword(expression, "this")) {
-			Instance i = context.getInstance();
-			if (i == null) {
-				errStr += InvalidTestExpression.THIS_KEYWORD_WITH_NO_INSTANCE.toString();
-			}
+		if (analysis.usesKeyword("this") && context.getInstance() == null) {
+			errStr += InvalidTestExpression.THIS_KEYWORD_WITH_NO_INSTANCE.toString();
 		}
 		return errStr;
 	}
-
-	private boolean containsKeyword(String expression, String keyword) {
-		return expression.matches("^.*\\$"+keyword+"\\b.*$");
-	}
 	
 	protected TestResult handleEmptyTestExpression() {
 		String warnStr = "";
@@ -345,7 +444,10 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	/**
 	 * Expands all keywords, using the user-supplied optional mappings, if defined, followed
 	 * by the substitution of the "dollar" keywords. Does <em>not</em> expand keywords within
-	 * quoted strings.
+	 * quoted strings. The result is shared by the 
+	 * {@link #getExpressionDeduplicator() deduplicator} with the other sites whose
+	 * expanded test is the same, so they share the parsed or compiled expression.
+	 * The expanded text is never rewritten.
 	 * @param context
 	 * @return TestResult with {@link TestResult#isPassed()} equals true and the new test 
 	 * expression returned by {@link TestResult#getMessage()} or, if an error occurred, 
@@ -363,18 +465,80 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 			internalExpression = context.getActualTestExpression();
 			internalExpression = substituteOptionalKeywords(internalExpression);
 			internalExpression = expandStaticDollarKeywords(internalExpression, context);
+			internalExpression = deduplicator.deduplicate(internalExpression, getReporter());
 			context.setInternalTestExpression(internalExpression);
 		}
 		return new TestResult(true, internalExpression);
 	}
 
+	private final ExpressionDeduplicator deduplicator = new ExpressionDeduplicator();
+
+	/**
+	 * @return the deduplicator that shares the expanded expressions and groups
+	 * them by their canonical forms, with its counts of expansions and distinct
+	 * expressions.
+	 */
+	public ExpressionDeduplicator getExpressionDeduplicator() {
+		return deduplicator;
+	}
+
+	/**
+	 * Make the user's optional substitutions, in order, outside the quoted 
+	 * strings. The keys are regular expressions and the values may contain 
+	 * "dollar" keywords, so this is a separate pass before the lexer's. The 
+	 * keys are compiled once, not each time an expression is expanded.
+	 */
 	protected String substituteOptionalKeywords(String internalExpression) {
 		Map<String, String> keyWordSubs = getOptionalKeywordSubstitutions();
-		for (Map.Entry<String,String> entry: keyWordSubs.entrySet()) 
-			internalExpression = substituteInTestExpression(internalExpression, entry.getKey(), entry.getValue());
-		return internalExpression;
+		if (keyWordSubs == null || keyWordSubs.size() == 0)
+			return internalExpression;
+		KeywordSubstitutions subs = keywordSubstitutions;
+		if (subs == null || ! subs.source.equals(keyWordSubs)) {
+			subs = new KeywordSubstitutions(keyWordSubs);
+			keywordSubstitutions = subs;
+		}
+		return subs.substitute(internalExpression);
 	}
 
+	private volatile KeywordSubstitutions keywordSubstitutions = null;
+
+	/** The optional substitutions, with their keys compiled. */
+	private static final class KeywordSubstitutions {
+		final Map<String, String> source;
+		final Pattern[] keys;
+		final String[]  values;
+
+		KeywordSubstitutions(Map<String, String> substitutions) {
+			source = new LinkedHashMap<String, String>(substitutions);
+			keys   = new Pattern[source.size()];
+			values = new String[source.size()];
+			int i = 0;
+			for (Map.Entry<String,String> entry: source.entrySet()) {
+				keys[i]   = Pattern.compile(entry.getKey());
+				values[i] = entry.getValue();
+				i++;
+			}
+		}
+
+		String substitute(String expression) {
+			StringBuffer buff = new StringBuffer(expression.length() + 32);
+			int count = 0;
+			for (String subExpression: UNESCAPED_QUOTE.split(expression)) {
+				// Only the even ones, starting at zero are NOT quoted strings
+				if (count++ % 2 == 0) {
+					for (int i = 0; i < keys.length; i++)
+						subExpression = keys[i].matcher(subExpression).replaceAll(values[i]);
+				} else {
+					subExpression = "\"" + subExpression + "\"";
+				}
+				buff.append(subExpression);
+			}
+			return buff.toString();
+		}
+	}
+
+	private static final Pattern UNESCAPED_QUOTE = Pattern.compile("(?<!\\\\)\"");
+
 	/**
 	 * Substitute the <code>$this</code>,
 	 * <code>$target</code>, <code>$args[n]</code>, <code>$return</code>, and 
@@ -419,72 +583,36 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 * @param context
 	 */
 	protected String expandStaticDollarKeywords(String internalTestExpression, TestContext context) {
-		internalTestExpression = substituteOldValueKeywords(internalTestExpression, context);
-		internalTestExpression = substituteUnhandledOldKeywords(internalTestExpression);
-		internalTestExpression = substituteKnownKeywords(internalTestExpression, context);
-		internalTestExpression = prependBareItemNamesWithObjectQualifier(internalTestExpression, context);
-        return internalTestExpression;
-	}
-
-	protected String substituteOldValueKeywords(String internalTestExpression,
-			TestContext context) {
-		Map<String, Object> ovmap = context.getOldValuesMap();
-		if (ovmap != null) {
-			int magicSymbolCounter = 1;
-			// use a sorted set of keys so the generated var names are consistent
-			// with those used in saveDynamicContextData().
-			SortedSet<String> keys = new TreeSet<String>(ovmap.keySet());
-			for (String key: keys) {
-				// Escape regex characters in key:
-				String key2 = Pattern.quote (key);
-				String magicSymbol = Matcher.quoteReplacement("c4jExprVar"+magicSymbolCounter);
-				magicSymbolCounter++;
-				internalTestExpression = 
-					substituteInTestExpression(internalTestExpression, "\\$old\\s*\\(\\s*"+key2+"\\s*\\)", magicSymbol);
-			}
-		}
-		return internalTestExpression;
-	}
-
-	/**
-	 *  There *should* be no $old(..) expressions remaining!!
-	 */
-	protected String substituteUnhandledOldKeywords(
-			String internalTestExpression) {
-		if (containsKeyword(internalTestExpression, "old")) {
+		TestExpressionAnalysis analysis = analyze(internalTestExpression);
+		List<String> oldKeys = sortedOldValueKeys(context);
+		if (! oldKeys.containsAll(analysis.getOldExpressions()) || analysis.hasOldWithInvalidArguments()) {
+			// There *should* be no $old(..) expressions without captured values!!
 			getReporter().report(Severity.WARN, ExpressionInterpreterHelper.class, 
 					"One or more \"$old(..)\" strings remain in test expression \"" +
 					internalTestExpression +
 					"\" after previous substitutions of known values." +
 					" Test results may be inaccurate!");
-			internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$old\\s*\\(\\s*\\$this([^\\(\\)]*(\\([^\\)]*\\))?[^\\(\\)]*)\\)",   "c4jThis$1");
-			internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$old\\s*\\(\\s*\\$target([^\\(\\)]*(\\([^\\)]*\\))?[^\\(\\)]*)\\)", "c4jTarget$1");
-			// If $old(..) and ".." doesn't start with $target or $this, then assume "$this." prefix.
-			internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$old\\s*\\(\\s*([^\\(\\)]*(\\([^\\)]*\\))?[^\\(\\)]*)\\)", "c4jThis.$1");
 		}
-		return internalTestExpression;
-	}
-
-	protected String substituteKnownKeywords(String internalTestExpression,
-			TestContext context) {
-		internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$this",   "c4jThis");
-		internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$target", "c4jTarget");
-		internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$return", "c4jReturn");
-		internalTestExpression = substituteInTestExpression(internalTestExpression, "\\$args",   "c4jArgs"  );
-		internalTestExpression = substituteMethodArguments (internalTestExpression, context);
-		return internalTestExpression;
+		return analysis.expand(oldKeys, argumentNames(context), context.getItemName(), true);
 	}
 
 	/**
-	 *  Look for "bare" items, matching "itemName", but without $this or $target; prepend $this.
+	 * Use the sorted keys so the generated var names are consistent with 
+	 * those used in saveDynamicContextData().
 	 */
-	protected String prependBareItemNamesWithObjectQualifier(
-			String internalTestExpression, TestContext context) {
-		String itemName = context.getItemName();
-	    if (itemName != null && itemName.length() != 0) {
-	        internalTestExpression = substituteInTestExpression(internalTestExpression, "(?<!(c4jThis|c4jTarget)\\.)\\b"+itemName+"\\b", "c4jThis."+itemName);
-	    }
-		return internalTestExpression;
+	private List<String> sortedOldValueKeys(TestContext context) {
+		Map<String, Object> ovmap = context.getOldValuesMap();
+		if (ovmap == null)
+			return new ArrayList<String>();
+		return new ArrayList<String>(new TreeSet<String>(ovmap.keySet()));
+	}
+
+	private String[] argumentNames(TestContext context) {
+		Instance[] args = context.getMethodArgs();
+		String[] names = new String[args != null ? args.length : 0];
+		for (int ia = 0; ia < names.length; ia++)
+			names[ia] = args[ia].getItemName();
+		return names;
 	}
 
 	/**
@@ -531,65 +659,169 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 		return expression;
 	}
 	
+	private static final Pattern REFERENCED_ITEM = Pattern.compile("([\\w\\.]+)");
+
+	/**
+	 * The maximum number of {@link BindingPlan}s kept for one expression, one
+	 * for each class of "this" it was evaluated with. 
+	 */
+	public static final int MAX_BINDING_PLANS_PER_EXPRESSION = 8;
+
+	private final Map<String, BindingPlan[]> bindingPlans = 
+		new ConcurrentHashMap<String, BindingPlan[]>();
+
+	/**
+	 * Make the classes referenced in the expression available to the interpreter.
+	 * The names are resolved once for each expression and class of "this", 
+	 * including the names that aren't classes, so later evaluations neither
+	 * scan the expression nor try to load classes.
+	 */
 	public void findReferencedObjectsAndLoad(String expression, TestContext context) {
-	    Pattern pattern = Pattern.compile("([\\w\\.]+)");
-	    String message = "";
-	    Matcher matcher = pattern.matcher(expression);
+	    BindingPlan plan = getBindingPlan(expression, context);
+	    // Only collect the unresolved names if they will be reported.
+	    StringBuffer message = getReporter().isEnabled(Severity.INFO) ? new StringBuffer() : null;
+	    for (int i = 0; i < plan.items.length; i++) {
+	    	if (bind(plan.prefixes[i], plan.classes[i]) == false && message != null)
+	    		message.append(plan.items[i]).append(", ");
+	    }
+	    if (message != null && message.length() > 0) {
+	    	getReporter().report(Severity.INFO, context.getClass(), "Expression may contain references to classes or objects ({}) that can't be resolved (expression = \"{}\").", message, expression);
+	    }
+	}
+
+	/**
+	 * The names referenced by an expression and the classes they resolve to 
+	 * for one class of "this". For each dotted name, e.g., 
+	 * <code>java.lang.Math.max</code>, the candidates are its prefixes, longest 
+	 * first, each with the class it names or null if it names none.
+	 */
+	protected static class BindingPlan {
+		final Class<?>     instanceClass;
+		final String[]     items;
+		final String[][]   prefixes;
+		final Class<?>[][] classes;
+
+		BindingPlan(Class<?> instanceClass, List<String> items, List<String[]> prefixes, List<Class<?>[]> classes) {
+			this.instanceClass = instanceClass;
+			this.items    = items.toArray(new String[items.size()]);
+			this.prefixes = prefixes.toArray(new String[prefixes.size()][]);
+			this.classes  = classes.toArray(new Class<?>[classes.size()][]);
+		}
+	}
+
+	protected BindingPlan getBindingPlan(String expression, TestContext context) {
+		Class<?> instanceClass = instanceClass(context);
+		BindingPlan[] plans = bindingPlans.get(expression);
+		if (plans != null) {
+			for (BindingPlan plan: plans) {
+				if (plan.instanceClass == instanceClass)
+					return plan;
+			}
+		}
+		BindingPlan plan = makeBindingPlan(expression, context);
+		if (plans == null || plans.length < MAX_BINDING_PLANS_PER_EXPRESSION) {
+			BindingPlan[] newPlans = new BindingPlan[plans == null ? 1 : plans.length + 1];
+			if (plans != null)
+				System.arraycopy(plans, 0, newPlans, 0, plans.length);
+			newPlans[newPlans.length - 1] = plan;
+			// A plan lost to a concurrent update is just made again.
+			bindingPlans.put(expression, newPlans);
+		}
+		return plan;
+	}
+
+	protected BindingPlan makeBindingPlan(String expression, TestContext context) {
+		List<String>     items    = new ArrayList<String>();
+		List<String[]>   prefixes = new ArrayList<String[]>();
+		List<Class<?>[]> classes  = new ArrayList<Class<?>[]>();
+	    Matcher matcher = REFERENCED_ITEM.matcher(expression);
 	    while (matcher.find()) {
 	    	String bareItem = matcher.group(1);
-	    	if (bareItem.startsWith("c4j") == false && resolveItem(bareItem, context) == false)
-	    		message += bareItem + ", ";
+	    	if (bareItem.startsWith("c4j"))
+	    		continue;
+	    	List<String> names = new ArrayList<String>();
+			String name = getPrefix(bareItem, ".");
+			String previousName = bareItem;
+			while (name.length() > 0 && !name.equals(previousName)) {
+				names.add(name);
+				previousName = name;
+				name = getPrefix(name, ".");
+			}
+			Class<?>[] resolved = new Class<?>[names.size()];
+			for (int i = 0; i < resolved.length; i++)
+				resolved[i] = findClass(names.get(i), context);
+			items.add(bareItem);
+			prefixes.add(names.toArray(new String[names.size()]));
+			classes.add(resolved);
         }
-	    if (message.length() > 0) {
-	    	getReporter().report(Severity.INFO, context.getClass(), "Expression may contain references to classes or objects ("+message+") that can't be resolved (expression = \""+expression+"\").");
-	    }
+		return new BindingPlan(instanceClass(context), items, prefixes, classes);
 	}
-	
-	protected boolean resolveItem(String bareItemName, TestContext context) {
-		String name = getPrefix(bareItemName, ".");
-		String previousName = bareItemName;
-		while (name.length() > 0 && !name.equals(previousName)) {
-			if (findAndLoad(name, context))
+
+	/**
+	 * Bind the first of the names that is already in the context or names a class.
+	 * @return false if none of them does.
+	 */
+	private boolean bind(String[] names, Class<?>[] classes) {
+		for (int i = 0; i < names.length; i++) {
+			if (getObjectInContext(names[i]) != null)
+				return true;
+			if (classes[i] != null) {
+				registerContextObject(names[i], classes[i]);
 				return true;
-			previousName = name;
-			name = getPrefix(name, ".");
+			}
 		}
 		return false;
 	}
-	
+
+	/**
+	 * Forget the resolved names, e.g., after classes have been loaded that
+	 * some expressions may reference.
+	 */
+	public void clearBindingPlans() {
+		bindingPlans.clear();
+	}
+
+	/**
+	 * @return the cache of parsed or compiled expressions, so its size and
+	 * eviction policy can be configured and its statistics read, or null if
+	 * this interpreter doesn't cache them.
+	 */
+	public ExpressionCache<?> getExpressionCache() {
+		return null;
+	}
+
 	protected String getPrefix(String name, String separator) {
     	int index  = name.lastIndexOf(separator);
     	return (index <= 0) ? name : name.substring(0, index);
 	}
 	
-	protected boolean findAndLoad(String name, TestContext context) {
-		if (getObjectInContext(name) != null)
-			return true;
-		Instance instance = context.getInstance();
-		Class<?>  clazz  = null;
-		if (instance != null) {
-			clazz = instance.getClazz();
-		}
+	/**
+	 * @return the class "name" refers to: the class of "this" if it is its 
+	 * full or simple name, a class with that name, or a class with that name
+	 * in the package of "this"; or null if there is none.
+	 */
+	protected Class<?> findClass(String name, TestContext context) {
+		Class<?> clazz = instanceClass(context);
 		if (clazz != null && (clazz.getName().equals(name) || clazz.getSimpleName().equals(name))) {
-			registerContextObject(name, clazz);
-			return true;
+			return clazz;
 		}
-		if (loadClassIfPossible(name, name) == true)
-			return true;
-		if (clazz != null && Character.isUpperCase(name.charAt(0)) && loadClassIfPossible(name, clazz.getPackage().getName()+"."+name))
-			return true;
-		return false;
+		Class<?> found = loadClassIfPossible(name);
+		if (found == null && clazz != null && clazz.getPackage() != null && Character.isUpperCase(name.charAt(0)))
+			found = loadClassIfPossible(clazz.getPackage().getName()+"."+name);
+		return found;
 	}
-	
-	protected boolean loadClassIfPossible(String symbol, String className) {
+
+	protected Class<?> loadClassIfPossible(String className) {
 		try {
-			Class<?> clazz = Class.forName(className);
-			registerContextObject(symbol, clazz);
-			return true;
+			return Class.forName(className);
 		} catch (Throwable th) {
-//			System.err.println("not found: "+className);
+			return null;
 		}
-		return false;
+	}
+
+	private static Class<?> instanceClass(TestContext context) {
+		Instance instance = context.getInstance();
+		return instance != null ? instance.getClazz() : null;
 	}
 
 	/**
@@ -604,19 +836,13 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 		if (args == null || args.length == 0) {
 			return testExpression;
 		}
-		String expression = testExpression;
-		for (int ia = 0; ia < args.length; ia++) {
-			String argName = args[ia].getItemName();
-			expression = substituteInTestExpression(expression, 
-					"(?<!(c4jThis|c4jTarget)\\.)\\b"+argName+"\\b", "c4jArgs["+ia+"]");			
-		}
-		return expression;
+		return analyze(testExpression).expand(null, argumentNames(context), null, false);
 	}
 
 	public String substituteInTestExpression(String expression, String key,	String value) {
 		StringBuffer buff = new StringBuffer();
 		int count = 0;
-		for (String subExpression: expression.split("(?<!\\\\)\"")) {
+		for (String subExpression: UNESCAPED_QUOTE.split(expression)) {
 			// Only the even ones, starting at zero are NOT quoted strings
 			if (count++ % 2 == 0)  
 				subExpression = subExpression.replaceAll(key, value);
@@ -630,7 +856,7 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	public String removeQuotedStrings(String expression) {
 		StringBuffer buff = new StringBuffer();
 		int count = 0;
-		for (String subExpression: expression.split("(?<!\\\\)\"")) {
+		for (String subExpression: UNESCAPED_QUOTE.split(expression)) {
 			// Remove only the odd ones, starting at zero, which are the quoted strings
 			if (count++ % 2 == 0)  
 				buff.append(subExpression);
@@ -640,6 +866,7 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 
 
 	public Object getObjectInContext(String name) {
+		synchronizeGlobalContextObjects();
 		return doGetObjectInContext(name);
 	}
 
@@ -669,7 +896,7 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 * Remove an object from the scripting language interpreter's context for one test run.
 	 */
 	public void unregisterContextObject(String existingSymbolName) {
-		removeContextChange(existingSymbolName, true);
+		removeContextChange(existingSymbolName, false);
 	}
 	
 	/**
@@ -680,8 +907,49 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	}
 	
 	
-	private Map<String, Object> rememberedContextChanges = new HashMap<String, Object>();
-	
+	/**
+	 * The objects registered globally, shared by all threads. The map is never 
+	 * modified after it is published; changes replace it with a new copy, so each
+	 * thread can tell whether its own scope is current by comparing references.
+	 */
+	private volatile Map<String, Object> globalContextObjects = new HashMap<String, Object>();
+
+	/**
+	 * The per-thread part of the interpreter state. Subclasses keep their bindings
+	 * (e.g., the Groovy <code>Binding</code>) per thread, too, so each evaluation 
+	 * only sees the symbols recorded by its own thread plus the global objects.
+	 */
+	private static class EvaluationScope {
+		final Map<String, Object> rememberedContextChanges = new HashMap<String, Object>();
+		Map<String, Object> globalContextObjects = new HashMap<String, Object>();
+	}
+
+	private final ThreadLocal<EvaluationScope> evaluationScope = new ThreadLocal<EvaluationScope>() {
+		protected EvaluationScope initialValue() {
+			return new EvaluationScope();
+		}
+	};
+
+	/**
+	 * Make sure the calling thread's bindings contain the current global objects.
+	 * Called before each evaluation, so objects registered globally by another 
+	 * thread become visible here.
+	 */
+	protected void synchronizeGlobalContextObjects() {
+		EvaluationScope scope = evaluationScope.get();
+		Map<String, Object> globals = globalContextObjects;
+		if (scope.globalContextObjects == globals)
+			return;
+		for (String name: scope.globalContextObjects.keySet()) {
+			if (! globals.containsKey(name))
+				doRemoveContextChange(name);
+		}
+		for (Map.Entry<String, Object> entry: globals.entrySet()) {
+			doRecordContextChange(entry.getKey(), entry.getValue());
+		}
+		scope.globalContextObjects = globals;
+	}
+
 	/**
 	 * A hook that is called when an expression references an object by name and the object
 	 * needs to be made available to the interpreter. For a particular interpreter, capture 
@@ -695,9 +963,17 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 			String newSymbolName, 
 			Object newObject, 
 			boolean useGlobally) {
-		if (useGlobally == false)
-			rememberedContextChanges.put(newSymbolName, newObject);
-		doRecordContextChange(newSymbolName, newObject);
+		if (useGlobally) {
+			synchronized (this) {
+				Map<String, Object> globals = new HashMap<String, Object>(globalContextObjects);
+				globals.put(newSymbolName, newObject);
+				globalContextObjects = globals;
+			}
+			synchronizeGlobalContextObjects();
+		} else {
+			evaluationScope.get().rememberedContextChanges.put(newSymbolName, newObject);
+			doRecordContextChange(newSymbolName, newObject);
+		}
 	}
 
 	/**
@@ -705,6 +981,7 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 * an expression with a new symbol name and a corresponding object exists that holds its
 	 * value. for a particular interpreter, capture this information in the implementation 
 	 * of this method for later use in {@link #doTest(String, TestContext)}.
+	 * Implementations must record it only for the calling thread.
 	 * @param newSymbolName
 	 * @param newObject
 	 */
@@ -716,19 +993,28 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 * A hook that is called when a previous context change should be "forgotten", so it
 	 * doesn't potentially cause confusion later on.
 	 * @param oldSymbolName
-	 * @param usedGlobally TODO
+	 * @param usedGlobally is true if the object was registered globally.
 	 */
 	void removeContextChange (
 			String oldSymbolName, 
 			boolean usedGlobally) {
-		if (usedGlobally == false)
-			rememberedContextChanges.remove(oldSymbolName);
-		doRemoveContextChange(oldSymbolName);
+		if (usedGlobally) {
+			synchronized (this) {
+				Map<String, Object> globals = new HashMap<String, Object>(globalContextObjects);
+				globals.remove(oldSymbolName);
+				globalContextObjects = globals;
+			}
+			synchronizeGlobalContextObjects();
+		} else {
+			evaluationScope.get().rememberedContextChanges.remove(oldSymbolName);
+			restoreOrRemove(oldSymbolName);
+		}
 	}
 
 	/**
 	 * A hook that is called when a previous context change should be "forgotten", so it
 	 * doesn't potentially cause confusion later on.
+	 * Implementations must remove it only for the calling thread.
 	 * @param oldSymbolName
 	 */
 	abstract protected void doRemoveContextChange (
@@ -739,10 +1025,23 @@ abstract public class ExpressionInterpreterHelper implements ExpressionInterpret
 	 * later.
 	 */
 	protected void cleanupContext() {
-		for (Map.Entry<String, Object> entry: rememberedContextChanges.entrySet()) {
-			doRemoveContextChange(entry.getKey());
+		Map<String, Object> remembered = evaluationScope.get().rememberedContextChanges;
+		for (Map.Entry<String, Object> entry: remembered.entrySet()) {
+			restoreOrRemove(entry.getKey());
 		}
-		rememberedContextChanges.clear();
+		remembered.clear();
+	}
+
+	/**
+	 * Global objects are read-only as far as a single test is concerned, so if
+	 * a test hid one with its own object, put the global one back.
+	 */
+	private void restoreOrRemove(String symbolName) {
+		Map<String, Object> globals = evaluationScope.get().globalContextObjects;
+		if (globals.containsKey(symbolName))
+			doRecordContextChange(symbolName, globals.get(symbolName));
+		else
+			doRemoveContextChange(symbolName);
 	}
 	
 	/**
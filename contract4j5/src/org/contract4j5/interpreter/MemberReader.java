@@ -0,0 +1,180 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+/**
+ * One property read or method call on an object, with the member it resolved
+ * to for the last class it was used with. Only public members of public 
+ * types are used, and public fields only if the reader was made with 
+ * <code>fields</code> true. When there is no such member, or it throws, 
+ * {@link #read(Object)} returns {@link OldValueAccessor#UNREADABLE} and the 
+ * caller should let the interpreter evaluate the expression instead.
+ */
+final class MemberReader {
+	private final String  name;
+	private final boolean call;
+	private final boolean fields;
+	private volatile Resolved resolved = null;
+
+	MemberReader(String name, boolean call, boolean fields) {
+		this.name   = name;
+		this.call   = call;
+		this.fields = fields;
+	}
+
+	Object read(Object object) {
+		try {
+			return invoke(object);
+		} catch (InvocationTargetException ite) {
+			return OldValueAccessor.UNREADABLE;
+		}
+	}
+
+	/**
+	 * @return the type of the member's values when read from an object of 
+	 * the class, or null if there's no such member.
+	 */
+	Class<?> getType(Class<?> type) {
+		Resolved r = resolved(type);
+		if (r.method != null)
+			return r.method.getReturnType();
+		if (r.field != null)
+			return r.field.getType();
+		return r.arrayLength ? int.class : null;
+	}
+
+	/**
+	 * Like {@link #read(Object)}, but a member that throws makes it throw 
+	 * an {@link InvocationTargetException} with the exception as its cause.
+	 */
+	Object invoke(Object object) throws InvocationTargetException {
+		Resolved r = resolved(object.getClass());
+		try {
+			if (r.method != null)
+				return r.method.invoke(object);
+			if (r.field != null)
+				return r.field.get(object);
+		} catch (IllegalAccessException iae) {
+			// Can't happen for the public members that are resolved.
+			return OldValueAccessor.UNREADABLE;
+		}
+		if (r.arrayLength)
+			return Integer.valueOf(Array.getLength(object));
+		return OldValueAccessor.UNREADABLE;
+	}
+
+	private Resolved resolved(Class<?> type) {
+		Resolved r = resolved;
+		if (r == null || r.type != type) {
+			r = resolve(type);
+			resolved = r;
+		}
+		return r;
+	}
+
+	private Resolved resolve(Class<?> type) {
+		if (call)
+			return new Resolved(type, publicMethod(type, name), null, false);
+		if (type.isArray())
+			return new Resolved(type, null, null, name.equals("length"));
+		if (Map.class.isAssignableFrom(type))
+			return new Resolved(type, null, null, false);
+		String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		Method getter = publicMethod(type, "get" + capitalized);
+		if (getter == null) {
+			getter = publicMethod(type, "is" + capitalized);
+			if (getter != null && getter.getReturnType() != boolean.class)
+				getter = null;
+		}
+		if (getter != null)
+			return new Resolved(type, getter, null, false);
+		return new Resolved(type, null, fields ? publicField(type, name) : null, false);
+	}
+
+	/**
+	 * @return a public, no-argument instance method, declared in (or 
+	 * overriding one in) a public type, so it can be invoked.
+	 */
+	private static Method publicMethod(Class<?> type, String name) {
+		Method method;
+		try {
+			method = type.getMethod(name);
+		} catch (NoSuchMethodException nsme) {
+			return null;
+		}
+		if (Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class)
+			return null;
+		for (Class<?> owner = type; owner != null; owner = owner.getSuperclass()) {
+			Method m = accessible(owner, name);
+			if (m != null)
+				return m;
+			for (Class<?> iface: owner.getInterfaces()) {
+				m = accessible(iface, name);
+				if (m != null)
+					return m;
+			}
+		}
+		return null;
+	}
+
+	private static Method accessible(Class<?> owner, String name) {
+		if (! Modifier.isPublic(owner.getModifiers()))
+			return null;
+		try {
+			return owner.getMethod(name);
+		} catch (NoSuchMethodException nsme) {
+			return null;
+		}
+	}
+
+	private static Field publicField(Class<?> type, String name) {
+		Field field;
+		try {
+			field = type.getField(name);
+		} catch (NoSuchFieldException nsfe) {
+			return null;
+		}
+		if (Modifier.isStatic(field.getModifiers()) || 
+			! Modifier.isPublic(field.getDeclaringClass().getModifiers()))
+			return null;
+		return field;
+	}
+
+	private static final class Resolved {
+		final Class<?> type;
+		final Method   method;
+		final Field    field;
+		final boolean  arrayLength;
+
+		Resolved(Class<?> type, Method method, Field field, boolean arrayLength) {
+			this.type        = type;
+			this.method      = method;
+			this.field       = field;
+			this.arrayLength = arrayLength;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.contract4j5.interpreter.expression.ExpressionNode;
+import org.contract4j5.interpreter.expression.ExpressionParseException;
+import org.contract4j5.interpreter.expression.ExpressionParser;
+
+/**
+ * Reads the value of an <code>$old(..)</code> expression directly with 
+ * reflection, rather than by evaluating a script, when the expression is 
+ * <code>$this</code> or <code>$target</code> (or a bare name, which means 
+ * a property of <code>$this</code>) followed by reads of public properties,
+ * public fields or calls to public methods with no arguments, e.g., 
+ * <code>$old($this.account.balance)</code> or <code>$old(size())</code>.
+ * A property is read with its "get" or (boolean) "is" method if there is one,
+ * otherwise its field. The member is looked up once for each class it is 
+ * read from.
+ * <p>
+ * If a value can't be read this way, <i>e.g.,</i> because an object in the
+ * chain is null or a {@link Map}, or a member isn't public or throws, 
+ * {@link #read(Object, Object)} returns {@link #UNREADABLE} and the caller
+ * should evaluate the expression with the interpreter, so errors are 
+ * reported as before.
+ */
+public class OldValueAccessor {
+
+	/** Returned by {@link #read(Object, Object)} when the value must be interpreted. */
+	public static final Object UNREADABLE = new Object();
+
+	/** An accessor for expressions that always have to be interpreted. */
+	public static final OldValueAccessor INTERPRETED = new OldValueAccessor(false, new MemberReader[0]) {
+		@Override
+		public Object read(Object thiz, Object target) { return UNREADABLE; }
+	};
+
+	/**
+	 * @param oldExpression the expression inside <code>$old(..)</code>.
+	 * @return the accessor, or {@link #INTERPRETED} if the expression isn't 
+	 * a simple chain of property reads and method calls.
+	 */
+	public static OldValueAccessor compile(String oldExpression) {
+		return compile(oldExpression, true);
+	}
+
+	/**
+	 * @param readFields false if properties without a "get" or "is" method 
+	 * must be left to the interpreter, rather than read from public fields.
+	 * @see #compile(String)
+	 */
+	public static OldValueAccessor compile(String oldExpression, boolean readFields) {
+		String expression = oldExpression.trim();
+		if (! expression.startsWith("$"))
+			expression = "$this." + expression;
+		ExpressionNode node;
+		try {
+			node = ExpressionParser.parse(expression);
+		} catch (ExpressionParseException epe) {
+			return INTERPRETED;
+		}
+		List<MemberReader> steps = new ArrayList<MemberReader>();
+		while (! (node instanceof ExpressionNode.Name)) {
+			if (node instanceof ExpressionNode.Property) {
+				ExpressionNode.Property property = (ExpressionNode.Property) node;
+				steps.add(0, new MemberReader(property.getName(), false, readFields));
+				node = property.getTarget();
+			} else if (node instanceof ExpressionNode.MethodCall) {
+				ExpressionNode.MethodCall call = (ExpressionNode.MethodCall) node;
+				if (call.getTarget() == null || call.getArguments().size() > 0)
+					return INTERPRETED;
+				steps.add(0, new MemberReader(call.getName(), true, readFields));
+				node = call.getTarget();
+			} else {
+				return INTERPRETED;
+			}
+		}
+		String root = ((ExpressionNode.Name) node).getName();
+		if (! root.equals("$this") && ! root.equals("$target"))
+			return INTERPRETED;
+		return new OldValueAccessor(root.equals("$target"), steps.toArray(new MemberReader[steps.size()]));
+	}
+
+	private final boolean fromTarget;
+	private final MemberReader[] steps;
+
+	private OldValueAccessor(boolean fromTarget, MemberReader[] steps) {
+		this.fromTarget = fromTarget;
+		this.steps      = steps;
+	}
+
+	/**
+	 * @return the value, or {@link #UNREADABLE}.
+	 */
+	public Object read(Object thiz, Object target) {
+		Object value = fromTarget ? target : thiz;
+		for (MemberReader step: steps) {
+			if (value == null)
+				return UNREADABLE;
+			value = step.read(value);
+			if (value == UNREADABLE)
+				return UNREADABLE;
+		}
+		return value;
+	}
+}
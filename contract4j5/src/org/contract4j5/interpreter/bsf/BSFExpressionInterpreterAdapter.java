@@ -35,14 +35,29 @@ import org.contract4j5.reporter.Severity;
 public class BSFExpressionInterpreterAdapter extends
 		ExpressionInterpreterHelper {
 
-	private BSFEngine  bsfEngine;
-	private BSFManager bsfManager;
+	/**
+	 * The declared beans live in the manager, so each thread gets its own.
+	 */
+	private final ThreadLocal<BSFManager> bsfManager = new ThreadLocal<BSFManager>() {
+		protected BSFManager initialValue() {
+			return new BSFManager();
+		}
+	};
+	private final ThreadLocal<BSFEngine> bsfEngine = new ThreadLocal<BSFEngine>();
+
+	/**
+	 * @return the calling thread's engine.
+	 */
 	public BSFEngine  getBSFEngine() throws BSFException  { 
-		if (bsfEngine == null)
-			bsfEngine  = getBSFManager().loadScriptingEngine(getScriptingEngineName());
-		return bsfEngine;  
+		if (bsfEngine.get() == null)
+			bsfEngine.set(getBSFManager().loadScriptingEngine(getScriptingEngineName()));
+		return bsfEngine.get();  
 	}
-	public BSFManager getBSFManager() { return bsfManager; }
+
+	/**
+	 * @return the calling thread's manager.
+	 */
+	public BSFManager getBSFManager() { return bsfManager.get(); }
 	
 	public BSFExpressionInterpreterAdapter(String whichScriptingEngine) throws BSFException {
 		super(whichScriptingEngine);
@@ -66,7 +81,22 @@ public class BSFExpressionInterpreterAdapter extends
 	
 	private void init(String whichScriptingEngine) throws BSFException {
 		this.scriptingEngineName = whichScriptingEngine;
-		this.bsfManager = new BSFManager();
+	}
+
+	/**
+	 * The engine may be for any language, so let it evaluate all "old" expressions.
+	 */
+	@Override
+	protected boolean getReadOldValuesDirectly() {
+		return false;
+	}
+
+	/**
+	 * Likewise, let the engine evaluate all tests, even the simple ones.
+	 */
+	@Override
+	public boolean getEvaluateTestsDirectly() {
+		return false;
 	}
 
 	@Override
@@ -167,7 +197,7 @@ public class BSFExpressionInterpreterAdapter extends
 	@Override
 	protected void doRecordContextChange(String newSymbolName, Object newObject) {
 		try {
-			bsfManager.declareBean(newSymbolName, newObject, 
+			getBSFManager().declareBean(newSymbolName, newObject, 
 					newObject != null ? newObject.getClass() : null);
 		} catch (BSFException e) {
 			throw new TestSpecificationError("BSF Manager failed to declare bean with name \""+newSymbolName+"\", and value \"" + newObject + "\".", e);
@@ -176,20 +206,20 @@ public class BSFExpressionInterpreterAdapter extends
 
 	@Override
 	protected Object doGetObjectInContext(String name) {
-		return bsfManager.lookupBean(name);
+		return getBSFManager().lookupBean(name);
 	}
 	
 	@Override
 	protected void doRemoveContextChange(String oldSymbolName) {
 		try {
-			bsfManager.undeclareBean(oldSymbolName);
+			getBSFManager().undeclareBean(oldSymbolName);
 		} catch (BSFException e) {
 			throw new TestSpecificationError("BSF Manager failed to undeclare bean with name \""+oldSymbolName+"\".", e);
 		}
 	}
 
 	protected Object evaluateScript(String testExpression, TestContext context) throws BSFException {
-		return bsfManager.eval(scriptingEngineName, getSourceName(context), 0, 0, testExpression);
+		return getBSFManager().eval(scriptingEngineName, getSourceName(context), 0, 0, testExpression);
 	}
 
 	private String getSourceName(TestContext context) {
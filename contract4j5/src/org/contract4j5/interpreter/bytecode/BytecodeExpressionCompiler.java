@@ -0,0 +1,956 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.contract4j5.interpreter.expression.ExpressionNode;
+import org.contract4j5.interpreter.expression.ExpressionParseException;
+import org.contract4j5.interpreter.expression.ExpressionParser;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Compiles an expanded ("internal") test expression into a JVM class that
+ * implements {@link CompiledTest}, using ASM. Member references are resolved
+ * once, at compile time, against the declared types of the symbols in the
+ * expression, so evaluation involves no parsing, no symbol lookup, and no
+ * reflection.
+ * <p>
+ * Only the subset of expressions understood by {@link ExpressionParser} is
+ * handled and only when the semantics can be matched to those of the
+ * scripting languages, <i>e.g.,</i> "==" on objects means
+ * {@link CompiledTestSupport#equal(Object, Object)}, "x.foo" means
+ * <code>x.getFoo()</code> (or a public field "foo"), and integer division is
+ * rejected because Groovy returns a decimal. Only public types and members are
+ * used. Anything else throws an {@link UncompilableExpressionException}, in
+ * which case the caller should use a scripting interpreter instead.
+ * <p>
+ * Each generated class is defined in its own class loader, whose parent is the
+ * class loader of the types under test, so it can be garbage collected once it
+ * is no longer referenced.
+ */
+public class BytecodeExpressionCompiler implements Opcodes {
+
+	/**
+	 * The static types of the symbols an expression may reference. A null type
+	 * means "unknown" and is treated as Object. Primitive types mean the
+	 * corresponding wrapper object will be passed at runtime.
+	 */
+	public static class Signature {
+		private final Class<?>   thisType;
+		private final Class<?>   targetType;
+		private final Class<?>   resultType;
+		private final Class<?>[] argTypes;
+		private final Class<?>[] exprVarTypes;
+
+		public Class<?>   getThisType()     { return thisType; }
+		public Class<?>   getTargetType()   { return targetType; }
+		public Class<?>   getResultType()   { return resultType; }
+		public Class<?>[] getArgTypes()     { return argTypes; }
+		public Class<?>[] getExprVarTypes() { return exprVarTypes; }
+
+		public Signature(Class<?> thisType, Class<?> targetType, Class<?> resultType,
+				Class<?>[] argTypes, Class<?>[] exprVarTypes) {
+			this.thisType     = thisType;
+			this.targetType   = targetType;
+			this.resultType   = resultType;
+			this.argTypes     = argTypes     != null ? argTypes     : new Class<?>[0];
+			this.exprVarTypes = exprVarTypes != null ? exprVarTypes : new Class<?>[0];
+		}
+
+		public String toString() {
+			return "[this=" + name(thisType) + ", target=" + name(targetType) +
+				", return=" + name(resultType) + ", args=" + Arrays.asList(argTypes) +
+				", old=" + Arrays.asList(exprVarTypes) + "]";
+		}
+		private static String name(Class<?> c) {
+			return c == null ? "?" : c.getName();
+		}
+	}
+
+	private static final String COMPILED_TEST   = Type.getInternalName(CompiledTest.class);
+	private static final String SUPPORT         = Type.getInternalName(CompiledTestSupport.class);
+	private static final String TEST_DESCRIPTOR =
+		"(Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;)Z";
+	private static final int THIS_ARG     = 1;
+	private static final int TARGET_ARG   = 2;
+	private static final int ARGS_ARG     = 3;
+	private static final int RESULT_ARG   = 4;
+	private static final int EXPRVARS_ARG = 5;
+
+	private static final AtomicInteger classCounter = new AtomicInteger();
+
+	/** The static "type" of the <code>null</code> literal. */
+	private static final class NullType {}
+
+	/** Marker for "x.length" on an array. */
+	private static final Object ARRAY_LENGTH = new Object();
+
+	/**
+	 * Compile the expression.
+	 * @param expression the expanded ("internal") test expression.
+	 * @param signature the types of the symbols it references.
+	 * @return a new instance of the generated class.
+	 * @throws UncompilableExpressionException if the expression can't be compiled.
+	 */
+	public CompiledTest compile(String expression, Signature signature) {
+		ExpressionNode ast;
+		try {
+			ast = ExpressionParser.parse(expression);
+		} catch (ExpressionParseException epe) {
+			throw new UncompilableExpressionException(epe.getMessage(), epe);
+		}
+		GeneratedClassLoader loader = new GeneratedClassLoader(chooseParentClassLoader(signature));
+		Compilation compilation = new Compilation(signature, loader);
+		Class<?> type = ast.accept(compilation.analyzer);
+		if (! isBoolean(type))
+			throw new UncompilableExpressionException("Expression does not have a boolean type (" + type.getName() + ")");
+		String className = CompiledTest.class.getName() + "$" + classCounter.incrementAndGet();
+		byte[] bytes = compilation.generate(ast, className, expression);
+		try {
+			Class<?> clazz = loader.define(className, bytes);
+			return (CompiledTest) clazz.getConstructor().newInstance();
+		} catch (LinkageError le) {
+			throw new UncompilableExpressionException("Generated class was rejected: " + le, le);
+		} catch (Exception e) {
+			throw new UncompilableExpressionException("Generated class could not be instantiated: " + e, e);
+		}
+	}
+
+	protected ClassLoader chooseParentClassLoader(Signature signature) {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(signature.getThisType());
+		types.add(signature.getTargetType());
+		types.add(signature.getResultType());
+		types.addAll(Arrays.asList(signature.getArgTypes()));
+		types.addAll(Arrays.asList(signature.getExprVarTypes()));
+		for (Class<?> type: types) {
+			if (type != null && type.getClassLoader() != null)
+				return type.getClassLoader();
+		}
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		return loader != null ? loader : BytecodeExpressionCompiler.class.getClassLoader();
+	}
+
+	/**
+	 * Loads one generated class. The Contract4J types the generated code uses
+	 * always come from Contract4J's own class loader, even if the parent can
+	 * see another copy.
+	 */
+	static class GeneratedClassLoader extends ClassLoader {
+		GeneratedClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.equals(CompiledTest.class.getName()))
+				return CompiledTest.class;
+			if (name.equals(CompiledTestSupport.class.getName()))
+				return CompiledTestSupport.class;
+			return super.loadClass(name, resolve);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+		boolean canSee(Class<?> type) {
+			if (type.isPrimitive())
+				return true;
+			try {
+				return Class.forName(type.getName(), false, this) == type;
+			} catch (ClassNotFoundException cnfe) {
+				return false;
+			} catch (LinkageError le) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * The state of one compilation: first the tree is analyzed, which resolves
+	 * types and members, then code is generated from the analyzed tree.
+	 */
+	private static class Compilation {
+		private final Signature signature;
+		private final GeneratedClassLoader loader;
+		private final Map<ExpressionNode, Class<?>> types   = new IdentityHashMap<ExpressionNode, Class<?>>();
+		private final Map<ExpressionNode, Class<?>> owners  = new IdentityHashMap<ExpressionNode, Class<?>>();
+		private final Map<ExpressionNode, Object>   members = new IdentityHashMap<ExpressionNode, Object>();
+		/** For binary operators, the type both operands are converted to. */
+		private final Map<ExpressionNode, Class<?>> operandTypes = new IdentityHashMap<ExpressionNode, Class<?>>();
+		private MethodVisitor mv;
+
+		Compilation(Signature signature, GeneratedClassLoader loader) {
+			this.signature = signature;
+			this.loader    = loader;
+		}
+
+		private Class<?> typeOf(ExpressionNode node) {
+			return types.get(node);
+		}
+
+		private final ExpressionNode.Visitor<Class<?>> analyzer = new ExpressionNode.Visitor<Class<?>>() {
+			public Class<?> visitLiteral(ExpressionNode.Literal node) {
+				Object value = node.getValue();
+				Class<?> type;
+				if (value == null)
+					type = NullType.class;
+				else if (value instanceof Integer)
+					type = int.class;
+				else if (value instanceof Long)
+					type = long.class;
+				else if (value instanceof Double)
+					type = double.class;
+				else if (value instanceof Boolean)
+					type = boolean.class;
+				else
+					type = value.getClass();
+				return record(node, type);
+			}
+
+			public Class<?> visitName(ExpressionNode.Name node) {
+				String name = node.getName();
+				if (name.equals("c4jThis"))
+					return record(node, rootType(signature.getThisType()));
+				if (name.equals("c4jTarget"))
+					return record(node, rootType(signature.getTargetType()));
+				if (name.equals("c4jReturn"))
+					return record(node, rootType(signature.getResultType()));
+				if (name.equals("c4jArgs"))
+					return record(node, Object[].class);
+				if (name.startsWith("c4jExprVar")) {
+					int index = exprVarIndex(name);
+					return record(node, rootType(signature.getExprVarTypes()[index]));
+				}
+				throw new UncompilableExpressionException("Unsupported name \"" + name + "\"");
+			}
+
+			public Class<?> visitIndex(ExpressionNode.Index node) {
+				int index = argIndex(node);
+				return record(node, rootType(signature.getArgTypes()[index]));
+			}
+
+			public Class<?> visitProperty(ExpressionNode.Property node) {
+				Class<?> targetType = node.getTarget().accept(this);
+				String   name       = node.getName();
+				if (targetType.isArray() && name.equals("length")) {
+					checkUsable(targetType);
+					members.put(node, ARRAY_LENGTH);
+					return record(node, int.class);
+				}
+				checkReferenceType(targetType, node);
+				if (Map.class.isAssignableFrom(targetType))
+					throw new UncompilableExpressionException("Property \"" + name + "\" of a Map means a key lookup");
+				String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+				Class<?>[] noArgs = new Class<?>[0];
+				MemberRef ref = findMethod(targetType, "get" + capitalized, noArgs);
+				if (ref == null) {
+					ref = findMethod(targetType, "is" + capitalized, noArgs);
+					if (ref != null && ((Method) ref.member).getReturnType() != boolean.class)
+						ref = null;
+				}
+				if (ref == null)
+					ref = findField(targetType, name);
+				if (ref == null)
+					throw new UncompilableExpressionException("No public property \"" + name + "\" in " + targetType.getName());
+				return recordMember(node, ref);
+			}
+
+			public Class<?> visitMethodCall(ExpressionNode.MethodCall node) {
+				if (node.getTarget() == null)
+					throw new UncompilableExpressionException("Unqualified method call \"" + node.getName() + "\"");
+				Class<?> targetType = node.getTarget().accept(this);
+				checkReferenceType(targetType, node);
+				List<ExpressionNode> args = node.getArguments();
+				Class<?>[] argTypes = new Class<?>[args.size()];
+				for (int i = 0; i < argTypes.length; i++)
+					argTypes[i] = args.get(i).accept(this);
+				MemberRef ref = findMethod(targetType, node.getName(), argTypes);
+				if (ref == null)
+					throw new UncompilableExpressionException("No unique public method \"" + node.getName() +
+							"\" in " + targetType.getName() + " for arguments " + Arrays.asList(argTypes));
+				return recordMember(node, ref);
+			}
+
+			public Class<?> visitUnary(ExpressionNode.Unary node) {
+				Class<?> type = node.getOperand().accept(this);
+				if (node.getOperator().equals("!")) {
+					requireBoolean(type, node);
+					return record(node, boolean.class);
+				}
+				return record(node, requireNumeric(type, node));
+			}
+
+			public Class<?> visitBinary(ExpressionNode.Binary node) {
+				String   op    = node.getOperator();
+				Class<?> left  = node.getLeft().accept(this);
+				Class<?> right = node.getRight().accept(this);
+				if (op.equals("&&") || op.equals("||")) {
+					requireBoolean(left,  node);
+					requireBoolean(right, node);
+					return record(node, boolean.class);
+				}
+				if (op.equals("==") || op.equals("!=")) {
+					operandTypes.put(node, equalityOperandType(left, right));
+					return record(node, boolean.class);
+				}
+				Class<?> kind = promote(requireNumeric(left, node), requireNumeric(right, node));
+				operandTypes.put(node, kind);
+				if (op.equals("<") || op.equals("<=") || op.equals(">") || op.equals(">="))
+					return record(node, boolean.class);
+				if (op.equals("/") && kind != double.class)
+					throw new UncompilableExpressionException("Integer division semantics differ between languages");
+				if (op.equals("%") && kind == double.class)
+					throw new UncompilableExpressionException("Floating point remainder is not supported");
+				return record(node, kind);
+			}
+		};
+
+		private Class<?> record(ExpressionNode node, Class<?> type) {
+			types.put(node, type);
+			return type;
+		}
+
+		private Class<?> recordMember(ExpressionNode node, MemberRef ref) {
+			owners.put(node, ref.owner);
+			members.put(node, ref.member);
+			Class<?> type = ref.member instanceof Method ?
+					((Method) ref.member).getReturnType() : ((Field) ref.member).getType();
+			if (type == void.class)
+				throw new UncompilableExpressionException("Method \"" + ref.member.getName() + "\" returns void");
+			return record(node, normalize(type));
+		}
+
+		private int exprVarIndex(String name) {
+			String digits = name.substring("c4jExprVar".length());
+			int    number = digits.length() > 0 && digits.length() < 10 ? 0 : -1;
+			for (int i = 0; number >= 0 && i < digits.length(); i++) {
+				char c = digits.charAt(i);
+				number = c >= '0' && c <= '9' ? number * 10 + (c - '0') : -1;
+			}
+			int index = number - 1;
+			if (index >= 0 && index < signature.getExprVarTypes().length)
+				return index;
+			throw new UncompilableExpressionException("Unknown old value \"" + name + "\"");
+		}
+
+		private int argIndex(ExpressionNode.Index node) {
+			if (node.getTarget() instanceof ExpressionNode.Name &&
+				((ExpressionNode.Name) node.getTarget()).getName().equals("c4jArgs") &&
+				node.getIndex() instanceof ExpressionNode.Literal &&
+				((ExpressionNode.Literal) node.getIndex()).getValue() instanceof Integer) {
+				int index = ((Integer) ((ExpressionNode.Literal) node.getIndex()).getValue()).intValue();
+				if (index >= 0 && index < signature.getArgTypes().length)
+					return index;
+			}
+			throw new UncompilableExpressionException("Unsupported subscript \"" + node + "\"");
+		}
+
+		private Class<?> rootType(Class<?> declared) {
+			if (declared == null)
+				return Object.class;
+			if (declared == void.class)
+				throw new UncompilableExpressionException("Reference to a void value");
+			return normalize(declared);
+		}
+
+		private void checkReferenceType(Class<?> type, ExpressionNode node) {
+			if (type.isPrimitive() || type == NullType.class || type == Object.class)
+				throw new UncompilableExpressionException("Can't resolve members of \"" + node + "\" with type " + type.getName());
+		}
+
+		private void checkUsable(Class<?> type) {
+			if (! isAccessible(type) || ! loader.canSee(type))
+				throw new UncompilableExpressionException("Type " + type.getName() + " is not public or not visible");
+		}
+
+		private boolean isUsable(Class<?> type) {
+			return isAccessible(type) && loader.canSee(type);
+		}
+
+		private Class<?> equalityOperandType(Class<?> left, Class<?> right) {
+			if (left == NullType.class || right == NullType.class)
+				return NullType.class;
+			if (left.isPrimitive() || right.isPrimitive()) {
+				if (isBoolean(left) && isBoolean(right))
+					return boolean.class;
+				if (isNumeric(left) && isNumeric(right))
+					return promote(numericKind(left), numericKind(right));
+			}
+			return Object.class;
+		}
+
+		private void requireBoolean(Class<?> type, ExpressionNode node) {
+			if (! isBoolean(type))
+				throw new UncompilableExpressionException("Operand of \"" + node + "\" is not boolean");
+		}
+
+		private Class<?> requireNumeric(Class<?> type, ExpressionNode node) {
+			if (! isNumeric(type))
+				throw new UncompilableExpressionException("Operand of \"" + node + "\" is not numeric");
+			return numericKind(type);
+		}
+
+		/**
+		 * Find the unique, most specific, public instance method applicable to
+		 * the argument types and a public, visible type to invoke it through.
+		 */
+		private MemberRef findMethod(Class<?> type, String name, Class<?>[] argTypes) {
+			List<Method> candidates = new ArrayList<Method>();
+			List<Method> methods = new ArrayList<Method>(Arrays.asList(type.getMethods()));
+			if (type.isInterface())
+				methods.addAll(Arrays.asList(Object.class.getMethods()));
+			for (Method method: methods) {
+				if (! method.getName().equals(name) || method.isBridge() ||
+					Modifier.isStatic(method.getModifiers()) ||
+					method.getParameterTypes().length != argTypes.length ||
+					! isApplicable(method.getParameterTypes(), argTypes))
+					continue;
+				boolean duplicate = false;
+				for (Method candidate: candidates) {
+					if (Arrays.equals(candidate.getParameterTypes(), method.getParameterTypes()))
+						duplicate = true;
+				}
+				if (! duplicate)
+					candidates.add(method);
+			}
+			Method chosen = null;
+			for (Method candidate: candidates) {
+				boolean mostSpecific = true;
+				for (Method other: candidates) {
+					if (other != candidate && ! isApplicable(other.getParameterTypes(), candidate.getParameterTypes()))
+						mostSpecific = false;
+				}
+				if (mostSpecific) {
+					if (chosen != null)
+						return null;
+					chosen = candidate;
+				}
+			}
+			if (chosen == null)
+				return null;
+			for (Class<?> owner: supertypes(type)) {
+				if (! isUsable(owner))
+					continue;
+				Method method = publicMethod(owner, name, chosen.getParameterTypes());
+				if (method != null)
+					return new MemberRef(owner, method);
+			}
+			return null;
+		}
+
+		private MemberRef findField(Class<?> type, String name) {
+			for (Class<?> owner: supertypes(type)) {
+				if (! isUsable(owner))
+					continue;
+				Field field = publicField(owner, name);
+				if (field != null && ! Modifier.isStatic(field.getModifiers()))
+					return new MemberRef(owner, field);
+			}
+			return null;
+		}
+
+		/**
+		 * Like {@link Class#getMethod(String, Class[])}, but returns null
+		 * rather than throwing when the owner has no such public method.
+		 */
+		private Method publicMethod(Class<?> owner, String name, Class<?>[] paramTypes) {
+			for (Method method: owner.getMethods()) {
+				if (method.getName().equals(name) && ! method.isBridge() &&
+					Arrays.equals(method.getParameterTypes(), paramTypes))
+					return method;
+			}
+			return null;
+		}
+
+		/**
+		 * Like {@link Class#getField(String)}, but returns null rather than
+		 * throwing when the owner has no such public field.
+		 */
+		private Field publicField(Class<?> owner, String name) {
+			for (Field field: owner.getFields()) {
+				if (field.getName().equals(name))
+					return field;
+			}
+			return null;
+		}
+
+		private boolean isApplicable(Class<?>[] paramTypes, Class<?>[] argTypes) {
+			for (int i = 0; i < paramTypes.length; i++) {
+				if (! isConvertible(argTypes[i], paramTypes[i]))
+					return false;
+			}
+			return true;
+		}
+
+		private boolean isConvertible(Class<?> from, Class<?> to) {
+			if (to.isPrimitive()) {
+				if (to == boolean.class)
+					return isBoolean(from);
+				if (to == char.class)
+					return from == char.class || from == Character.class;
+				if (to == int.class || to == long.class || to == double.class)
+					return isNumeric(from) && promote(numericKind(from), to) == to;
+				return false;
+			}
+			if (! isUsable(to))
+				return false;
+			if (from == NullType.class)
+				return true;
+			if (from.isPrimitive())
+				from = wrapperFor(from);
+			return to.isAssignableFrom(from);
+		}
+
+		/**
+		 * Generate the class.
+		 */
+		byte[] generate(ExpressionNode ast, String className, String expression) {
+			String internalName = className.replace('.', '/');
+			ClassWriter cw = new ClassWriter(true);
+			cw.visit(V1_5, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, internalName, null,
+					"java/lang/Object", new String[] { COMPILED_TEST });
+
+			mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			mv = cw.visitMethod(ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null);
+			mv.visitCode();
+			mv.visitLdcInsn(expression);
+			mv.visitInsn(ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			mv = cw.visitMethod(ACC_PUBLIC, "test", TEST_DESCRIPTOR, null, null);
+			mv.visitCode();
+			emitBoolean(ast);
+			mv.visitInsn(IRETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+			cw.visitEnd();
+			return cw.toByteArray();
+		}
+
+		private final ExpressionNode.Visitor<Void> emitter = new ExpressionNode.Visitor<Void>() {
+			public Void visitLiteral(ExpressionNode.Literal node) {
+				Object value = node.getValue();
+				if (value == null)
+					mv.visitInsn(ACONST_NULL);
+				else if (value instanceof Integer)
+					pushInt(((Integer) value).intValue());
+				else if (value instanceof Boolean)
+					mv.visitInsn(((Boolean) value).booleanValue() ? ICONST_1 : ICONST_0);
+				else
+					mv.visitLdcInsn(value);
+				return null;
+			}
+
+			public Void visitName(ExpressionNode.Name node) {
+				String name = node.getName();
+				if (name.equals("c4jThis")) {
+					loadRoot(THIS_ARG, signature.getThisType());
+				} else if (name.equals("c4jTarget")) {
+					loadRoot(TARGET_ARG, signature.getTargetType());
+				} else if (name.equals("c4jReturn")) {
+					loadRoot(RESULT_ARG, signature.getResultType());
+				} else if (name.equals("c4jArgs")) {
+					mv.visitVarInsn(ALOAD, ARGS_ARG);
+				} else {
+					int index = exprVarIndex(name);
+					mv.visitVarInsn(ALOAD, EXPRVARS_ARG);
+					pushInt(index);
+					mv.visitInsn(AALOAD);
+					unboxDeclared(signature.getExprVarTypes()[index]);
+				}
+				return null;
+			}
+
+			public Void visitIndex(ExpressionNode.Index node) {
+				int index = argIndex(node);
+				mv.visitVarInsn(ALOAD, ARGS_ARG);
+				pushInt(index);
+				mv.visitInsn(AALOAD);
+				unboxDeclared(signature.getArgTypes()[index]);
+				return null;
+			}
+
+			public Void visitProperty(ExpressionNode.Property node) {
+				node.getTarget().accept(this);
+				Object member = members.get(node);
+				if (member == ARRAY_LENGTH) {
+					mv.visitTypeInsn(CHECKCAST, Type.getInternalName(typeOf(node.getTarget())));
+					mv.visitInsn(ARRAYLENGTH);
+					return null;
+				}
+				Class<?> owner = owners.get(node);
+				mv.visitTypeInsn(CHECKCAST, Type.getInternalName(owner));
+				if (member instanceof Method) {
+					invoke(owner, (Method) member);
+				} else {
+					Field field = (Field) member;
+					mv.visitFieldInsn(GETFIELD, Type.getInternalName(owner), field.getName(), Type.getDescriptor(field.getType()));
+					normalizeOnStack(field.getType());
+				}
+				return null;
+			}
+
+			public Void visitMethodCall(ExpressionNode.MethodCall node) {
+				node.getTarget().accept(this);
+				Class<?> owner  = owners.get(node);
+				Method   method = (Method) members.get(node);
+				mv.visitTypeInsn(CHECKCAST, Type.getInternalName(owner));
+				Class<?>[] paramTypes = method.getParameterTypes();
+				for (int i = 0; i < paramTypes.length; i++)
+					emitAs(node.getArguments().get(i), paramTypes[i]);
+				invoke(owner, method);
+				return null;
+			}
+
+			public Void visitUnary(ExpressionNode.Unary node) {
+				if (node.getOperator().equals("!")) {
+					emitBoolean(node.getOperand());
+					mv.visitInsn(ICONST_1);
+					mv.visitInsn(IXOR);
+				} else {
+					Class<?> kind = typeOf(node);
+					emitNumeric(node.getOperand(), kind);
+					mv.visitInsn(kind == int.class ? INEG : (kind == long.class ? LNEG : DNEG));
+				}
+				return null;
+			}
+
+			public Void visitBinary(ExpressionNode.Binary node) {
+				String op = node.getOperator();
+				if (op.equals("&&") || op.equals("||")) {
+					emitLogical(node, op.equals("&&"));
+				} else if (op.equals("==") || op.equals("!=")) {
+					emitEquality(node, op.equals("=="));
+				} else if (op.equals("<") || op.equals("<=") || op.equals(">") || op.equals(">=")) {
+					Class<?> kind = operandTypes.get(node);
+					emitNumeric(node.getLeft(),  kind);
+					emitNumeric(node.getRight(), kind);
+					emitComparison(kind, op);
+				} else {
+					Class<?> kind = operandTypes.get(node);
+					emitNumeric(node.getLeft(),  kind);
+					emitNumeric(node.getRight(), kind);
+					emitArithmetic(kind, op);
+				}
+				return null;
+			}
+		};
+
+		private void emit(ExpressionNode node) {
+			node.accept(emitter);
+		}
+
+		private void emitLogical(ExpressionNode.Binary node, boolean isAnd) {
+			Label shortCircuit = new Label();
+			Label end          = new Label();
+			int   jump         = isAnd ? IFEQ : IFNE;
+			emitBoolean(node.getLeft());
+			mv.visitJumpInsn(jump, shortCircuit);
+			emitBoolean(node.getRight());
+			mv.visitJumpInsn(jump, shortCircuit);
+			mv.visitInsn(isAnd ? ICONST_1 : ICONST_0);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(shortCircuit);
+			mv.visitInsn(isAnd ? ICONST_0 : ICONST_1);
+			mv.visitLabel(end);
+		}
+
+		private void emitEquality(ExpressionNode.Binary node, boolean isEqual) {
+			Class<?> operandType = operandTypes.get(node);
+			if (operandType == NullType.class) {
+				ExpressionNode operand = typeOf(node.getLeft()) == NullType.class ? node.getRight() : node.getLeft();
+				emitAsObject(operand);
+				pushBooleanForJump(isEqual ? IFNULL : IFNONNULL);
+			} else if (operandType == Object.class) {
+				emitAsObject(node.getLeft());
+				emitAsObject(node.getRight());
+				mv.visitMethodInsn(INVOKESTATIC, SUPPORT, "equal", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+				if (! isEqual) {
+					mv.visitInsn(ICONST_1);
+					mv.visitInsn(IXOR);
+				}
+			} else if (operandType == boolean.class) {
+				emitBoolean(node.getLeft());
+				emitBoolean(node.getRight());
+				pushBooleanForJump(isEqual ? IF_ICMPEQ : IF_ICMPNE);
+			} else {
+				emitNumeric(node.getLeft(),  operandType);
+				emitNumeric(node.getRight(), operandType);
+				emitComparison(operandType, isEqual ? "==" : "!=");
+			}
+		}
+
+		private void emitComparison(Class<?> kind, String op) {
+			if (kind == int.class) {
+				pushBooleanForJump(intComparisonOpcode(op));
+				return;
+			}
+			if (kind == long.class) {
+				mv.visitInsn(LCMP);
+			} else {
+				// Choose the instruction so comparisons with NaN are false.
+				mv.visitInsn(op.equals("<") || op.equals("<=") ? DCMPG : DCMPL);
+			}
+			pushBooleanForJump(intComparisonOpcode(op) - (IF_ICMPEQ - IFEQ));
+		}
+
+		private int intComparisonOpcode(String op) {
+			if (op.equals("=="))
+				return IF_ICMPEQ;
+			if (op.equals("!="))
+				return IF_ICMPNE;
+			if (op.equals("<"))
+				return IF_ICMPLT;
+			if (op.equals("<="))
+				return IF_ICMPLE;
+			if (op.equals(">"))
+				return IF_ICMPGT;
+			return IF_ICMPGE;
+		}
+
+		private void emitArithmetic(Class<?> kind, String op) {
+			int offset = kind == int.class ? 0 : (kind == long.class ? 1 : 3);
+			if (op.equals("+"))
+				mv.visitInsn(IADD + offset);
+			else if (op.equals("-"))
+				mv.visitInsn(ISUB + offset);
+			else if (op.equals("*"))
+				mv.visitInsn(IMUL + offset);
+			else if (op.equals("/"))
+				mv.visitInsn(IDIV + offset);
+			else
+				mv.visitInsn(IREM + offset);
+		}
+
+		private void pushBooleanForJump(int jumpOpcode) {
+			Label isTrue = new Label();
+			Label end    = new Label();
+			mv.visitJumpInsn(jumpOpcode, isTrue);
+			mv.visitInsn(ICONST_0);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(isTrue);
+			mv.visitInsn(ICONST_1);
+			mv.visitLabel(end);
+		}
+
+		private void emitBoolean(ExpressionNode node) {
+			emit(node);
+			if (typeOf(node) == Boolean.class)
+				unbox(Boolean.class, "booleanValue", "()Z");
+		}
+
+		/** Emit the node converted to the numeric kind (int, long, or double). */
+		private void emitNumeric(ExpressionNode node, Class<?> kind) {
+			emit(node);
+			Class<?> type = typeOf(node);
+			if (! type.isPrimitive()) {
+				Class<?> unboxed = numericKind(type);
+				unbox(type, unboxed.getName() + "Value", "()" + Type.getDescriptor(unboxed));
+				type = unboxed;
+			}
+			if (type == kind)
+				return;
+			if (type == int.class)
+				mv.visitInsn(kind == long.class ? I2L : I2D);
+			else if (type == long.class)
+				mv.visitInsn(L2D);
+		}
+
+		private void emitAsObject(ExpressionNode node) {
+			emit(node);
+			Class<?> type = typeOf(node);
+			if (type.isPrimitive())
+				box(type);
+		}
+
+		/** Emit an argument converted to a method parameter type. */
+		private void emitAs(ExpressionNode node, Class<?> paramType) {
+			if (paramType == boolean.class) {
+				emitBoolean(node);
+			} else if (paramType == char.class) {
+				emit(node);
+				if (typeOf(node) == Character.class)
+					unbox(Character.class, "charValue", "()C");
+			} else if (paramType.isPrimitive()) {
+				emitNumeric(node, paramType);
+			} else {
+				emitAsObject(node);
+				if (paramType != Object.class && typeOf(node) != NullType.class)
+					mv.visitTypeInsn(CHECKCAST, Type.getInternalName(paramType));
+			}
+		}
+
+		private void loadRoot(int local, Class<?> declaredType) {
+			mv.visitVarInsn(ALOAD, local);
+			unboxDeclared(declaredType);
+		}
+
+		/** Values of primitive types arrive boxed; unbox them. */
+		private void unboxDeclared(Class<?> declaredType) {
+			if (declaredType == null || ! declaredType.isPrimitive())
+				return;
+			Class<?> wrapper = wrapperFor(declaredType);
+			unbox(wrapper, declaredType.getName() + "Value", "()" + Type.getDescriptor(declaredType));
+			normalizeOnStack(declaredType);
+		}
+
+		private void unbox(Class<?> wrapper, String method, String descriptor) {
+			String owner = Type.getInternalName(wrapper);
+			mv.visitTypeInsn(CHECKCAST, owner);
+			mv.visitMethodInsn(INVOKEVIRTUAL, owner, method, descriptor);
+		}
+
+		private void box(Class<?> primitive) {
+			Class<?> wrapper = wrapperFor(primitive);
+			mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(wrapper), "valueOf",
+					"(" + Type.getDescriptor(primitive) + ")" + Type.getDescriptor(wrapper));
+		}
+
+		private void invoke(Class<?> owner, Method method) {
+			mv.visitMethodInsn(owner.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL,
+					Type.getInternalName(owner), method.getName(), Type.getMethodDescriptor(method));
+			normalizeOnStack(method.getReturnType());
+		}
+
+		/** floats are widened to doubles; bytes and shorts are already ints on the stack. */
+		private void normalizeOnStack(Class<?> type) {
+			if (type == float.class)
+				mv.visitInsn(F2D);
+		}
+
+		private void pushInt(int value) {
+			if (value >= -1 && value <= 5)
+				mv.visitInsn(ICONST_0 + value);
+			else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+				mv.visitIntInsn(BIPUSH, value);
+			else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+				mv.visitIntInsn(SIPUSH, value);
+			else
+				mv.visitLdcInsn(Integer.valueOf(value));
+		}
+	}
+
+	private static class MemberRef {
+		final Class<?> owner;
+		final Member   member;
+		MemberRef(Class<?> owner, Member member) {
+			this.owner  = owner;
+			this.member = member;
+		}
+	}
+
+	/** The type, its superclasses, then all its interfaces, then Object. */
+	static Set<Class<?>> supertypes(Class<?> type) {
+		Set<Class<?>> result = new LinkedHashSet<Class<?>>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass())
+			result.add(c);
+		List<Class<?>> pending = new ArrayList<Class<?>>(result);
+		for (int i = 0; i < pending.size(); i++) {
+			for (Class<?> i2: pending.get(i).getInterfaces()) {
+				if (result.add(i2))
+					pending.add(i2);
+			}
+		}
+		result.add(Object.class);
+		return result;
+	}
+
+	static boolean isAccessible(Class<?> type) {
+		if (type.isArray())
+			return isAccessible(type.getComponentType());
+		return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+	}
+
+	static boolean isBoolean(Class<?> type) {
+		return type == boolean.class || type == Boolean.class;
+	}
+
+	static boolean isNumeric(Class<?> type) {
+		Class<?> kind = numericKind(type);
+		return kind != null;
+	}
+
+	/** @return int, long, or double, or null if the type isn't numeric. */
+	static Class<?> numericKind(Class<?> type) {
+		if (type == int.class    || type == Integer.class || type == Short.class || type == Byte.class)
+			return int.class;
+		if (type == long.class   || type == Long.class)
+			return long.class;
+		if (type == double.class || type == Double.class || type == Float.class)
+			return double.class;
+		return null;
+	}
+
+	static Class<?> promote(Class<?> kind1, Class<?> kind2) {
+		if (kind1 == double.class || kind2 == double.class)
+			return double.class;
+		if (kind1 == long.class || kind2 == long.class)
+			return long.class;
+		return int.class;
+	}
+
+	/** byte and short are treated as int, float as double. */
+	static Class<?> normalize(Class<?> type) {
+		if (type == byte.class || type == short.class)
+			return int.class;
+		if (type == float.class)
+			return double.class;
+		return type;
+	}
+
+	static Class<?> wrapperFor(Class<?> primitive) {
+		if (primitive == int.class)     return Integer.class;
+		if (primitive == long.class)    return Long.class;
+		if (primitive == double.class)  return Double.class;
+		if (primitive == boolean.class) return Boolean.class;
+		if (primitive == char.class)    return Character.class;
+		if (primitive == byte.class)    return Byte.class;
+		if (primitive == short.class)   return Short.class;
+		if (primitive == float.class)   return Float.class;
+		return primitive;
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextFrame;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.instance.InstanceUtils;
+import org.contract4j5.interpreter.EvaluationTier;
+import org.contract4j5.interpreter.ExpressionInterpreter;
+import org.contract4j5.interpreter.ExpressionInterpreterHelper;
+import org.contract4j5.interpreter.TestResult;
+import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.contract4j5.metrics.StripedCounters;
+import org.contract4j5.reporter.Reporter;
+import org.contract4j5.reporter.Severity;
+
+/**
+ * An {@link ExpressionInterpreter} that compiles test expressions to JVM
+ * bytecode with {@link BytecodeExpressionCompiler}, the first time each one is
+ * evaluated for a given combination of types. Expressions that can't be
+ * compiled, and any compiled evaluation that throws an exception, are handed
+ * to a "delegate" scripting interpreter, which also does all the keyword
+ * validation and expansion and captures the "old" values, so the test
+ * semantics and error messages stay those of the delegate.
+ * <p>
+ * The types the test is compiled for are the ones Contract4J knows for the
+ * test site: <code>$this</code> has the type declaring the method (or the
+ * class of the object, for invariants), the arguments have their parameter
+ * types and <code>$return</code> has the return type; the "old" values have
+ * the types they had when they were captured. For a context from a 
+ * {@link ContractSite}, the compiled test is bound to the site, so later 
+ * evaluations at the site only check that the types still match, without 
+ * looking the expression up. 
+ * <p>
+ * This interpreter isn't used by default. The 
+ * {@link org.contract4j5.configurator.properties.PropertiesConfigurator} only 
+ * wraps the configured interpreter in one when the 
+ * "ExpressionInterpreterCompileToBytecode" property is true. Otherwise no test
+ * is compiled or bound to its site, and the scripting interpreter evaluates 
+ * every test, as before.
+ * <p>
+ * Which test sites were compiled, and why the others weren't, is reported
+ * at INFO level as each site is first evaluated and is available from
+ * {@link #getCompilationReport()}.
+ */
+public class BytecodeExpressionInterpreter implements ExpressionInterpreter {
+
+	/**
+	 * The maximum number of different type signatures compiled for one
+	 * expression. Expressions used with more are interpreted.
+	 */
+	public static final int MAX_SIGNATURES_PER_EXPRESSION = 8;
+
+	private static final Object[] NO_VALUES = new Object[0];
+	private static final String   COMPILED  = "compiled: ";
+
+	private ExpressionInterpreterHelper delegate;
+	public  ExpressionInterpreterHelper getDelegate() { return delegate; }
+	public  void setDelegate(ExpressionInterpreterHelper delegate) { this.delegate = delegate; }
+
+	private BytecodeExpressionCompiler compiler;
+	public  BytecodeExpressionCompiler getCompiler() { return compiler; }
+	public  void setCompiler(BytecodeExpressionCompiler compiler) { this.compiler = compiler; }
+
+	private final ConcurrentMap<String, Compilations> compilations =
+		new ConcurrentHashMap<String, Compilations>();
+	private final ConcurrentMap<String, String> compilationReport =
+		new ConcurrentHashMap<String, String>();
+	// The number of evaluations that used the test bound to their site.
+	private final StripedCounters siteBindingHits = new StripedCounters(1);
+
+	/**
+	 * @return a map from each test site ("file:line") evaluated so far to a
+	 * description of whether its expression was compiled or interpreted.
+	 */
+	public Map<String, String> getCompilationReport() {
+		return new TreeMap<String, String>(compilationReport);
+	}
+
+	/**
+	 * @return the number of evaluations so far that used the compiled test
+	 * bound to their {@link ContractSite}, without looking up the expression.
+	 */
+	public long getSiteBindingHits() {
+		return siteBindingHits.get(0);
+	}
+
+	/**
+	 * @return the number of test sites evaluated so far with compiled bytecode.
+	 */
+	public int getCompiledSiteCount() {
+		int count = 0;
+		for (String status: compilationReport.values()) {
+			if (status.startsWith(COMPILED))
+				count++;
+		}
+		return count;
+	}
+
+	public TestResult invokeTest(TestContext context) {
+		TestResult testResult = delegate.validateTestExpression(context);
+		if (testResult.getMessage().length() > 0) {
+			getReporter().report(Severity.INFO, BytecodeExpressionInterpreter.class,
+					testResult.getMessage());
+		}
+		if (testResult.isPassed() == false || empty(context.getActualTestExpression())) {
+			return testResult;
+		}
+		testResult = delegate.expandKeywords(context);
+		if (testResult.isPassed() == false) {
+			return testResult;
+		}
+		String   expression = context.getInternalTestExpression();
+		Object[] exprVars   = getOldValues(context);
+		Compiled compiled   = findOrCompile(expression, context, exprVars);
+		if (compiled.test != null) {
+			delegate.recordEvaluationTier(context, EvaluationTier.BYTECODE);
+			try {
+				boolean passed = compiled.test.test(
+						value(context.getInstance()), value(context.getField()),
+						InstanceUtils.getInstanceValues(context.getMethodArgs()),
+						value(context.getMethodResult()), exprVars);
+				return new TestResult(passed);
+			} catch (RuntimeException re) {
+				// Fall through and let the delegate evaluate it, so failures
+				// are reported exactly as the scripting language reports them.
+				getReporter().report(Severity.DEBUG, BytecodeExpressionInterpreter.class,
+						"Compiled test \"{}\" threw {}; evaluating it with the scripting engine.", 
+						expression, re);
+			} catch (LinkageError le) {
+				compiled.disable(le.toString());
+				recordSite(context, expression, compiled);
+			}
+		}
+		return delegate.invokeTest(context);
+	}
+
+	protected Compiled findOrCompile(String expression, TestContext context, Object[] exprVars) {
+		ContractSite site = context instanceof TestContextFrame ? 
+				((TestContextFrame) context).getSite() : null;
+		if (site != null) {
+			Object bound = site.getCompiledTest();
+			if (bound instanceof SiteBinding) {
+				SiteBinding binding = (SiteBinding) bound;
+				if (binding.owner == this && binding.expression.equals(expression) && 
+					binding.compiled.matches(context, exprVars)) {
+					siteBindingHits.increment(0);
+					return binding.compiled;
+				}
+			}
+		}
+		Compilations forExpression = compilations.get(expression);
+		if (forExpression == null) {
+			compilations.putIfAbsent(expression, new Compilations());
+			forExpression = compilations.get(expression);
+		}
+		Compiled compiled = forExpression.find(context, exprVars);
+		if (compiled == null) {
+			compiled = forExpression.compile(expression, context, exprVars);
+			recordSite(context, expression, compiled);
+		}
+		if (site != null)
+			site.setCompiledTest(new SiteBinding(this, expression, compiled));
+		return compiled;
+	}
+
+	private void recordSite(TestContext context, String expression, Compiled compiled) {
+		String site   = context.getFileName() + ":" + context.getLineNumber();
+		String status = compiled.test != null ?
+				COMPILED + expression :
+				"interpreted by " + delegate.getScriptingEngineName() + ": " + expression + " (" + compiled.reason + ")";
+		String previous = compilationReport.put(site, status);
+		if (! status.equals(previous)) {
+			getReporter().report(Severity.INFO, BytecodeExpressionInterpreter.class,
+					"Test at " + site + " " + status);
+		}
+	}
+
+	/**
+	 * The compiled test last used at a site, and the expression it was used with.
+	 */
+	private static class SiteBinding {
+		final BytecodeExpressionInterpreter owner;
+		final String   expression;
+		final Compiled compiled;
+
+		SiteBinding(BytecodeExpressionInterpreter owner, String expression, Compiled compiled) {
+			this.owner      = owner;
+			this.expression = expression;
+			this.compiled   = compiled;
+		}
+	}
+
+	/**
+	 * The compilations of one expression, one for each signature it was used with.
+	 */
+	protected class Compilations {
+		private volatile Compiled[] compiled = new Compiled[0];
+
+		Compiled find(TestContext context, Object[] exprVars) {
+			for (Compiled c: compiled) {
+				if (c.matches(context, exprVars))
+					return c;
+			}
+			return null;
+		}
+
+		synchronized Compiled compile(String expression, TestContext context, Object[] exprVars) {
+			Compiled c = find(context, exprVars);
+			if (c != null)
+				return c;
+			if (compiled.length >= MAX_SIGNATURES_PER_EXPRESSION) {
+				// A null signature matches everything, so this is the last entry.
+				c = new Compiled(null, null, "used with too many different types");
+			} else {
+				BytecodeExpressionCompiler.Signature signature = makeSignature(context, exprVars);
+				try {
+					c = new Compiled(signature, compiler.compile(expression, signature), null);
+				} catch (UncompilableExpressionException uee) {
+					c = new Compiled(signature, null, uee.getMessage());
+				}
+			}
+			Compiled[] newCompiled = new Compiled[compiled.length + 1];
+			System.arraycopy(compiled, 0, newCompiled, 0, compiled.length);
+			newCompiled[compiled.length] = c;
+			compiled = newCompiled;
+			return c;
+		}
+	}
+
+	/**
+	 * A compiled test for one signature, or the reason it couldn't be compiled.
+	 */
+	protected static class Compiled {
+		final BytecodeExpressionCompiler.Signature signature;
+		volatile CompiledTest test;
+		volatile String reason;
+
+		Compiled(BytecodeExpressionCompiler.Signature signature, CompiledTest test, String reason) {
+			this.signature = signature;
+			this.test      = test;
+			this.reason    = reason;
+		}
+
+		void disable(String reason) {
+			this.reason = reason;
+			this.test   = null;
+		}
+
+		boolean matches(TestContext context, Object[] exprVars) {
+			if (signature == null)
+				return true;
+			if (signature.getThisType()   != clazz(context.getInstance()) ||
+				signature.getTargetType() != clazz(context.getField()) ||
+				signature.getResultType() != clazz(context.getMethodResult()))
+				return false;
+			Instance[] args     = context.getMethodArgs();
+			Class<?>[] argTypes = signature.getArgTypes();
+			if ((args == null ? 0 : args.length) != argTypes.length)
+				return false;
+			for (int i = 0; i < argTypes.length; i++) {
+				if (argTypes[i] != clazz(args[i]))
+					return false;
+			}
+			Class<?>[] exprVarTypes = signature.getExprVarTypes();
+			if (exprVars.length != exprVarTypes.length)
+				return false;
+			for (int i = 0; i < exprVarTypes.length; i++) {
+				if (exprVarTypes[i] != runtimeClass(exprVars[i]))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	protected BytecodeExpressionCompiler.Signature makeSignature(TestContext context, Object[] exprVars) {
+		Instance[] args = context.getMethodArgs();
+		Class<?>[] argTypes = new Class<?>[args == null ? 0 : args.length];
+		for (int i = 0; i < argTypes.length; i++)
+			argTypes[i] = clazz(args[i]);
+		Class<?>[] exprVarTypes = new Class<?>[exprVars.length];
+		for (int i = 0; i < exprVarTypes.length; i++)
+			exprVarTypes[i] = runtimeClass(exprVars[i]);
+		return new BytecodeExpressionCompiler.Signature(
+				clazz(context.getInstance()), clazz(context.getField()),
+				clazz(context.getMethodResult()), argTypes, exprVarTypes);
+	}
+
+	/**
+	 * @return the "old" values, ordered by their keys, which is the order
+	 * the delegate numbers the corresponding <code>c4jExprVar</code>N symbols.
+	 */
+	protected Object[] getOldValues(TestContext context) {
+		Map<String, Object> map = context.getOldValuesMap();
+		if (map == null || map.isEmpty())
+			return NO_VALUES;
+		return new TreeMap<String, Object>(map).values().toArray();
+	}
+
+	private static Class<?> clazz(Instance instance) {
+		return instance != null ? instance.getClazz() : null;
+	}
+
+	private static Class<?> runtimeClass(Object value) {
+		return value != null ? value.getClass() : null;
+	}
+
+	private static Object value(Instance instance) {
+		return instance != null ? instance.getValue() : null;
+	}
+
+	private static boolean empty(String s) {
+		return s == null || s.trim().length() == 0;
+	}
+
+	public TestResult validateTestExpression(TestContext context) {
+		return delegate.validateTestExpression(context);
+	}
+
+	public Map<String, Object> determineOldValues(TestContext context) {
+		return delegate.determineOldValues(context);
+	}
+
+	public boolean getTreatEmptyTestExpressionAsValidTest() {
+		return delegate.getTreatEmptyTestExpressionAsValidTest();
+	}
+	public void setTreatEmptyTestExpressionAsValidTest(boolean emptyOK) {
+		delegate.setTreatEmptyTestExpressionAsValidTest(emptyOK);
+	}
+
+	public Map<String, String> getOptionalKeywordSubstitutions() {
+		return delegate.getOptionalKeywordSubstitutions();
+	}
+	public void setOptionalKeywordSubstitutions(Map<String, String> optionalKeywordSubstitutions) {
+		delegate.setOptionalKeywordSubstitutions(optionalKeywordSubstitutions);
+	}
+
+	public void registerContextObject(String name, Object object) {
+		delegate.registerContextObject(name, object);
+	}
+	public void registerGlobalContextObject(String name, Object object) {
+		delegate.registerGlobalContextObject(name, object);
+	}
+	public void unregisterContextObject(String name) {
+		delegate.unregisterContextObject(name);
+	}
+	public void unregisterGlobalContextObject(String name) {
+		delegate.unregisterGlobalContextObject(name);
+	}
+
+	public Object getObjectInContext(String name) {
+		return delegate.getObjectInContext(name);
+	}
+
+	/**
+	 * @return "bytecode+" followed by the delegate's name, e.g., "bytecode+groovy".
+	 */
+	public String getScriptingEngineName() {
+		return "bytecode+" + delegate.getScriptingEngineName();
+	}
+
+	private Reporter reporter;
+	protected Reporter getReporter() {
+		return reporter;
+	}
+
+	public BytecodeExpressionInterpreter(ExpressionInterpreterHelper delegate) {
+		this.delegate = delegate;
+		this.compiler = new BytecodeExpressionCompiler();
+	}
+
+	/**
+	 * Uses a {@link GroovyExpressionInterpreter} as the delegate.
+	 */
+	public BytecodeExpressionInterpreter() {
+		this(new GroovyExpressionInterpreter());
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode;
+
+/**
+ * Interface implemented by the classes that {@link BytecodeExpressionCompiler}
+ * generates for test expressions. The arguments correspond to the symbols in
+ * an expanded ("internal") test expression.
+ */
+public interface CompiledTest {
+	/**
+	 * Evaluate the test.
+	 * @param thiz     the value of <code>c4jThis</code>
+	 * @param target   the value of <code>c4jTarget</code>
+	 * @param args     the value of <code>c4jArgs</code>
+	 * @param result   the value of <code>c4jReturn</code>
+	 * @param exprVars the values of <code>c4jExprVar1</code>, <code>c4jExprVar2</code>, etc.
+	 * @return true if the test passes.
+	 */
+	boolean test(Object thiz, Object target, Object[] args, Object result, Object[] exprVars);
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Runtime support called by the classes generated by {@link BytecodeExpressionCompiler}.
+ * It gives "==" on objects the value semantics the scripting languages use,
+ * rather than Java's reference equality.
+ */
+public final class CompiledTestSupport {
+
+	/**
+	 * Null-safe equality. Numbers are compared by value, regardless of their
+	 * types (so <code>Integer(1)</code> equals <code>Long(1)</code>), and a
+	 * Character equals a one-character String.
+	 */
+	public static boolean equal(Object a, Object b) {
+		if (a == b)
+			return true;
+		if (a == null || b == null)
+			return false;
+		if (a instanceof Number && b instanceof Number)
+			return compareNumbers((Number) a, (Number) b) == 0;
+		if (a instanceof Character && b instanceof String)
+			return b.equals(a.toString());
+		if (a instanceof String && b instanceof Character)
+			return a.equals(b.toString());
+		return a.equals(b);
+	}
+
+	static int compareNumbers(Number a, Number b) {
+		if (isBig(a) || isBig(b))
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		if (isFloatingPoint(a) || isFloatingPoint(b))
+			return Double.compare(a.doubleValue(), b.doubleValue());
+		long la = a.longValue();
+		long lb = b.longValue();
+		return la < lb ? -1 : (la == lb ? 0 : 1);
+	}
+
+	private static boolean isBig(Number n) {
+		return n instanceof BigDecimal || n instanceof BigInteger;
+	}
+
+	private static boolean isFloatingPoint(Number n) {
+		return n instanceof Double || n instanceof Float;
+	}
+
+	private CompiledTestSupport() {}
+}
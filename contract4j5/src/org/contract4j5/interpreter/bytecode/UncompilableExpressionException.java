@@ -0,0 +1,37 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode;
+
+/**
+ * Thrown by {@link BytecodeExpressionCompiler} when a test expression can't be
+ * compiled, <i>e.g.,</i> because it uses syntax or types the compiler doesn't
+ * handle. It is not an error in the test; such expressions are simply
+ * evaluated by the scripting interpreter instead.
+ */
+public class UncompilableExpressionException extends RuntimeException {
+	private static final long serialVersionUID = -6092371486251507734L;
+
+	public UncompilableExpressionException(String message) {
+		super(message);
+	}
+	public UncompilableExpressionException(String message, Throwable t) {
+		super(message, t);
+	}
+}
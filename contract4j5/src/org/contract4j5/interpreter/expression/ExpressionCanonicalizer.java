@@ -0,0 +1,121 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes a canonical form of an expanded test expression, so expressions
+ * that differ only in their whitespace have the same key. Expressions in 
+ * the subset understood by {@link ExpressionParser} are rebuilt from their
+ * tokens with one space around each binary operator and after each comma, 
+ * and none anywhere else, <i>e.g.,</i> 
+ * <code>"c4jArgs[0]!=null&amp;&amp;c4jArgs[1] != null"</code> becomes 
+ * <code>"c4jArgs[0] != null &amp;&amp; c4jArgs[1] != null"</code>. The 
+ * tokens themselves, including literals and parentheses, are never changed.
+ * Other expressions, where the meaning of the whitespace isn't known 
+ * (<i>e.g.,</i> inside a Groovy regular expression), are only trimmed.
+ * <p>
+ * The canonical form is only a key. Whitespace can matter to a scripting 
+ * language even where it doesn't to the parser (<i>e.g.,</i> Ruby can read
+ * <code>x -1</code> as a call with the argument <code>-1</code>), so the 
+ * canonical form must never be evaluated in place of the expression itself.
+ * <p>
+ * Keywords are expected to have been expanded already, so <i>e.g.,</i>
+ * <code>$args[0]</code> and the name of the first argument are both 
+ * <code>c4jArgs[0]</code> by the time the expression is canonicalized.
+ */
+public class ExpressionCanonicalizer {
+
+	private static final String[] BINARY_OPERATORS = {
+		"||", "&&", "==", "!=", "<", "<=", ">", ">=", "+", "-", "*", "/", "%"
+	};
+
+	/**
+	 * @return the canonical form of the expression.
+	 */
+	public static String canonicalize(String expression) {
+		List<Token> tokens = significant(ExpressionLexer.tokenize(expression));
+		try {
+			new ExpressionParser(tokens).parse();
+		} catch (ExpressionParseException epe) {
+			return expression.trim();
+		}
+		StringBuffer sb = new StringBuffer(expression.length());
+		Token previous = null;
+		boolean previousIsBinary = false;
+		for (Token token: tokens) {
+			if (token.getType() == Token.Type.END)
+				break;
+			boolean binary = isBinaryOperator(token, previous);
+			if (previous != null) {
+				if (binary || previousIsBinary || previous.isOperator(","))
+					sb.append(' ');
+				else if (previous.isOperator("-") && token.getText().startsWith("-"))
+					sb.append(' ');  // unary minus twice; "--" would be a decrement.
+			}
+			sb.append(token.getText());
+			previous = token;
+			previousIsBinary = binary;
+		}
+		return sb.toString();
+	}
+
+	private static List<Token> significant(List<Token> tokens) {
+		List<Token> result = new ArrayList<Token>(tokens.size());
+		for (Token token: tokens) {
+			if (token.getType() != Token.Type.WHITESPACE)
+				result.add(token);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the token is a binary operator. "-" is binary if it
+	 * follows an operand, otherwise it is a unary minus.
+	 */
+	private static boolean isBinaryOperator(Token token, Token previous) {
+		if (token.getType() != Token.Type.OPERATOR)
+			return false;
+		for (String op: BINARY_OPERATORS) {
+			if (token.isOperator(op)) {
+				if (! op.equals("-"))
+					return true;
+				return previous != null && endsOperand(previous);
+			}
+		}
+		return false;
+	}
+
+	private static boolean endsOperand(Token token) {
+		switch (token.getType()) {
+		case IDENTIFIER:
+		case KEYWORD:
+		case NUMBER:
+		case STRING:
+			return true;
+		case OPERATOR:
+			return token.isOperator(")") || token.isOperator("]");
+		default:
+			return false;
+		}
+	}
+}
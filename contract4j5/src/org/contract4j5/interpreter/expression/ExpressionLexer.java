@@ -0,0 +1,164 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single-pass lexer for test expressions. It recognizes the tokens common to
+ * the supported scripting languages (Groovy, JEXL, etc.) plus the Contract4J
+ * "dollar" keywords. It never fails; characters it doesn't recognize are
+ * returned as one-character {@link Token.Type#OPERATOR} tokens and an
+ * unterminated string runs to the end of the expression, so callers can
+ * decide how strict to be. Whitespace is preserved as tokens, so the
+ * original text can be rebuilt exactly from the token list.
+ */
+public class ExpressionLexer {
+
+	/** Multi-character operators, longest first so the longest match wins. */
+	private static final String[] OPERATORS = {
+		"===", "!==", "==~", "<=>", "**=", "<<=", ">>=",
+		"==", "!=", "<=", ">=", "&&", "||", "=~", "?.", "*.", "..", "->",
+		"<<", ">>", "++", "--", "+=", "-=", "*=", "/=", "%=", "**", "?:",
+	};
+
+	/**
+	 * @return the tokens of the expression, ending with a {@link Token.Type#END} token.
+	 */
+	public static List<Token> tokenize(String expression) {
+		return new ExpressionLexer(expression).tokenize();
+	}
+
+	private final String expression;
+	private final int    length;
+	private int          position = 0;
+
+	public ExpressionLexer(String expression) {
+		this.expression = expression;
+		this.length     = expression.length();
+	}
+
+	public List<Token> tokenize() {
+		List<Token> tokens = new ArrayList<Token>();
+		while (position < length) {
+			tokens.add(nextToken());
+		}
+		tokens.add(new Token(Token.Type.END, "", length));
+		return tokens;
+	}
+
+	private Token nextToken() {
+		int  start = position;
+		char c     = expression.charAt(position);
+		if (Character.isWhitespace(c)) {
+			while (position < length && Character.isWhitespace(expression.charAt(position)))
+				position++;
+			return make(Token.Type.WHITESPACE, start);
+		}
+		if (c == '$') {
+			position++;
+			skipWordCharacters();
+			return make(Token.Type.KEYWORD, start);
+		}
+		if (isIdentifierStart(c)) {
+			skipWordCharacters();
+			return make(Token.Type.IDENTIFIER, start);
+		}
+		if (Character.isDigit(c)) {
+			scanNumber();
+			return make(Token.Type.NUMBER, start);
+		}
+		if (c == '"' || c == '\'') {
+			scanString(c);
+			return make(Token.Type.STRING, start);
+		}
+		for (String op: OPERATORS) {
+			if (expression.startsWith(op, position)) {
+				position += op.length();
+				return make(Token.Type.OPERATOR, start);
+			}
+		}
+		position++;
+		return make(Token.Type.OPERATOR, start);
+	}
+
+	private Token make(Token.Type type, int start) {
+		return new Token(type, expression.substring(start, position), start);
+	}
+
+	private void skipWordCharacters() {
+		while (position < length && isIdentifierPart(expression.charAt(position)))
+			position++;
+	}
+
+	private void scanNumber() {
+		if (expression.startsWith("0x", position) || expression.startsWith("0X", position)) {
+			position += 2;
+			while (position < length && Character.digit(expression.charAt(position), 16) >= 0)
+				position++;
+		} else {
+			skipDigits();
+			// Require a digit after '.', so "1..2" and "1.foo" aren't swallowed.
+			if (position+1 < length && expression.charAt(position) == '.' &&
+					Character.isDigit(expression.charAt(position+1))) {
+				position++;
+				skipDigits();
+			}
+			if (position < length && (expression.charAt(position) == 'e' || expression.charAt(position) == 'E')) {
+				int mark = position++;
+				if (position < length && (expression.charAt(position) == '+' || expression.charAt(position) == '-'))
+					position++;
+				if (position < length && Character.isDigit(expression.charAt(position)))
+					skipDigits();
+				else
+					position = mark;
+			}
+		}
+		if (position < length && "lLfFdDgG".indexOf(expression.charAt(position)) >= 0)
+			position++;
+	}
+
+	private void skipDigits() {
+		while (position < length && Character.isDigit(expression.charAt(position)))
+			position++;
+	}
+
+	private void scanString(char quote) {
+		position++;
+		while (position < length) {
+			char c = expression.charAt(position++);
+			if (c == '\\') {
+				if (position < length)
+					position++;
+			} else if (c == quote) {
+				return;
+			}
+		}
+	}
+
+	public static boolean isIdentifierStart(char c) {
+		return Character.isLetter(c) || c == '_';
+	}
+
+	public static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
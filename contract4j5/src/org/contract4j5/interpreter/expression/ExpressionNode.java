@@ -0,0 +1,166 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Abstract syntax tree for the subset of test expression syntax that is
+ * common to the supported scripting languages and that {@link ExpressionParser}
+ * understands. The nodes are immutable. {@link #toString()} renders a fully
+ * parenthesized form of the expression that is independent of the original
+ * whitespace and redundant parentheses.
+ */
+abstract public class ExpressionNode {
+
+	/**
+	 * Visitor for the node types, so tools that process the tree don't need
+	 * <code>instanceof</code> chains.
+	 */
+	public static interface Visitor<T> {
+		T visitLiteral   (Literal    node);
+		T visitName      (Name       node);
+		T visitProperty  (Property   node);
+		T visitMethodCall(MethodCall node);
+		T visitIndex     (Index      node);
+		T visitUnary     (Unary      node);
+		T visitBinary    (Binary     node);
+	}
+
+	abstract public <T> T accept(Visitor<T> visitor);
+
+	/**
+	 * A literal number, string, boolean or null. The value is an Integer, Long,
+	 * Double, String, Boolean, or null.
+	 */
+	public static class Literal extends ExpressionNode {
+		private final Object value;
+		public Object getValue() { return value; }
+		public Literal(Object value) { this.value = value; }
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitLiteral(this); }
+		public String toString() {
+			if (value instanceof String)
+				return "\"" + ((String) value).replaceAll("([\"\\\\])", "\\\\$1") + "\"";
+			if (value instanceof Long)
+				return value + "L";
+			return String.valueOf(value);
+		}
+	}
+
+	/** A bare name, e.g., <code>c4jThis</code>. */
+	public static class Name extends ExpressionNode {
+		private final String name;
+		public String getName() { return name; }
+		public Name(String name) { this.name = name; }
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitName(this); }
+		public String toString() { return name; }
+	}
+
+	/** A property (or field) reference, e.g., <code>c4jThis.name</code>. */
+	public static class Property extends ExpressionNode {
+		private final ExpressionNode target;
+		private final String name;
+		public ExpressionNode getTarget() { return target; }
+		public String getName() { return name; }
+		public Property(ExpressionNode target, String name) {
+			this.target = target;
+			this.name   = name;
+		}
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitProperty(this); }
+		public String toString() { return target + "." + name; }
+	}
+
+	/**
+	 * A method call, e.g., <code>c4jThis.getName()</code>. The target is null
+	 * for an unqualified call, e.g., <code>foo(1)</code>.
+	 */
+	public static class MethodCall extends ExpressionNode {
+		private final ExpressionNode target;
+		private final String name;
+		private final List<ExpressionNode> arguments;
+		public ExpressionNode getTarget() { return target; }
+		public String getName() { return name; }
+		public List<ExpressionNode> getArguments() { return arguments; }
+		public MethodCall(ExpressionNode target, String name, List<ExpressionNode> arguments) {
+			this.target    = target;
+			this.name      = name;
+			this.arguments = Collections.unmodifiableList(arguments);
+		}
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitMethodCall(this); }
+		public String toString() {
+			StringBuffer sb = new StringBuffer();
+			if (target != null)
+				sb.append(target).append('.');
+			sb.append(name).append('(');
+			for (int i = 0; i < arguments.size(); i++) {
+				if (i > 0)
+					sb.append(", ");
+				sb.append(arguments.get(i));
+			}
+			return sb.append(')').toString();
+		}
+	}
+
+	/** An array subscript, e.g., <code>c4jArgs[0]</code>. */
+	public static class Index extends ExpressionNode {
+		private final ExpressionNode target;
+		private final ExpressionNode index;
+		public ExpressionNode getTarget() { return target; }
+		public ExpressionNode getIndex() { return index; }
+		public Index(ExpressionNode target, ExpressionNode index) {
+			this.target = target;
+			this.index  = index;
+		}
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitIndex(this); }
+		public String toString() { return target + "[" + index + "]"; }
+	}
+
+	/** A prefix operator, "!" or "-". */
+	public static class Unary extends ExpressionNode {
+		private final String operator;
+		private final ExpressionNode operand;
+		public String getOperator() { return operator; }
+		public ExpressionNode getOperand() { return operand; }
+		public Unary(String operator, ExpressionNode operand) {
+			this.operator = operator;
+			this.operand  = operand;
+		}
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitUnary(this); }
+		public String toString() { return operator + operand; }
+	}
+
+	/** An infix operator, e.g., "&&", "==", "<", "+". */
+	public static class Binary extends ExpressionNode {
+		private final String operator;
+		private final ExpressionNode left;
+		private final ExpressionNode right;
+		public String getOperator() { return operator; }
+		public ExpressionNode getLeft() { return left; }
+		public ExpressionNode getRight() { return right; }
+		public Binary(String operator, ExpressionNode left, ExpressionNode right) {
+			this.operator = operator;
+			this.left     = left;
+			this.right    = right;
+		}
+		public <T> T accept(Visitor<T> visitor) { return visitor.visitBinary(this); }
+		public String toString() { return "(" + left + " " + operator + " " + right + ")"; }
+	}
+}
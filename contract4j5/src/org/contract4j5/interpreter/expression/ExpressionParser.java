@@ -0,0 +1,288 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-descent parser for the Java-like subset of expression syntax shared
+ * by the supported scripting languages. The grammar, from lowest to highest
+ * precedence, is:
+ * <pre>
+ * expression := and ( "||" and )*
+ * and        := equality ( "&&" equality )*
+ * equality   := relational ( ( "==" | "!=" ) relational )*
+ * relational := additive ( ( "&lt;" | "&lt;=" | "&gt;" | "&gt;=" ) additive )*
+ * additive   := multiply ( ( "+" | "-" ) multiply )*
+ * multiply   := unary ( ( "*" | "/" | "%" ) unary )*
+ * unary      := ( "!" | "-" ) unary | postfix
+ * postfix    := primary ( "." name [ "(" arguments ")" ] | "[" expression "]" )*
+ * primary    := literal | name [ "(" arguments ")" ] | keyword | "(" expression ")"
+ * </pre>
+ * Anything else (closures, GStrings, ternaries, regex operators, ...) causes an
+ * {@link ExpressionParseException}. Callers that only want to optimize the
+ * common cases should treat that as "not handled here" and fall back to the
+ * scripting language.
+ */
+public class ExpressionParser {
+
+	/**
+	 * Parse the whole expression.
+	 * @throws ExpressionParseException if the expression uses unsupported syntax.
+	 */
+	public static ExpressionNode parse(String expression) {
+		return new ExpressionParser(ExpressionLexer.tokenize(expression)).parse();
+	}
+
+	private final List<Token> tokens;
+	private int position = 0;
+
+	public ExpressionParser(List<Token> tokens) {
+		this.tokens = new ArrayList<Token>(tokens.size());
+		for (Token token: tokens) {
+			if (token.getType() != Token.Type.WHITESPACE)
+				this.tokens.add(token);
+		}
+	}
+
+	public ExpressionNode parse() {
+		ExpressionNode node = parseOr();
+		if (peek().getType() != Token.Type.END)
+			throw error("Unexpected \"" + peek().getText() + "\"");
+		return node;
+	}
+
+	private ExpressionNode parseOr() {
+		ExpressionNode node = parseAnd();
+		while (peek().isOperator("||"))
+			node = new ExpressionNode.Binary(next().getText(), node, parseAnd());
+		return node;
+	}
+
+	private ExpressionNode parseAnd() {
+		ExpressionNode node = parseEquality();
+		while (peek().isOperator("&&"))
+			node = new ExpressionNode.Binary(next().getText(), node, parseEquality());
+		return node;
+	}
+
+	private ExpressionNode parseEquality() {
+		ExpressionNode node = parseRelational();
+		while (peek().isOperator("==") || peek().isOperator("!="))
+			node = new ExpressionNode.Binary(next().getText(), node, parseRelational());
+		return node;
+	}
+
+	private ExpressionNode parseRelational() {
+		ExpressionNode node = parseAdditive();
+		while (peek().isOperator("<")  || peek().isOperator("<=") ||
+			   peek().isOperator(">")  || peek().isOperator(">="))
+			node = new ExpressionNode.Binary(next().getText(), node, parseAdditive());
+		return node;
+	}
+
+	private ExpressionNode parseAdditive() {
+		ExpressionNode node = parseMultiplicative();
+		while (peek().isOperator("+") || peek().isOperator("-"))
+			node = new ExpressionNode.Binary(next().getText(), node, parseMultiplicative());
+		return node;
+	}
+
+	private ExpressionNode parseMultiplicative() {
+		ExpressionNode node = parseUnary();
+		while (peek().isOperator("*") || peek().isOperator("/") || peek().isOperator("%"))
+			node = new ExpressionNode.Binary(next().getText(), node, parseUnary());
+		return node;
+	}
+
+	private ExpressionNode parseUnary() {
+		if (peek().isOperator("!") || peek().isOperator("-"))
+			return new ExpressionNode.Unary(next().getText(), parseUnary());
+		return parsePostfix();
+	}
+
+	private ExpressionNode parsePostfix() {
+		ExpressionNode node = parsePrimary();
+		while (true) {
+			if (peek().isOperator(".")) {
+				next();
+				Token name = expect(Token.Type.IDENTIFIER, "name after \".\"");
+				if (peek().isOperator("(")) {
+					next();
+					node = new ExpressionNode.MethodCall(node, name.getText(), parseArguments());
+				} else {
+					node = new ExpressionNode.Property(node, name.getText());
+				}
+			} else if (peek().isOperator("[")) {
+				next();
+				ExpressionNode index = parseOr();
+				expectOperator("]");
+				node = new ExpressionNode.Index(node, index);
+			} else {
+				return node;
+			}
+		}
+	}
+
+	private ExpressionNode parsePrimary() {
+		Token token = next();
+		switch (token.getType()) {
+		case NUMBER:
+			return new ExpressionNode.Literal(parseNumber(token));
+		case STRING:
+			return new ExpressionNode.Literal(parseString(token));
+		case KEYWORD:
+			return new ExpressionNode.Name(token.getText());
+		case IDENTIFIER:
+			String name = token.getText();
+			if (name.equals("true"))
+				return new ExpressionNode.Literal(Boolean.TRUE);
+			if (name.equals("false"))
+				return new ExpressionNode.Literal(Boolean.FALSE);
+			if (name.equals("null"))
+				return new ExpressionNode.Literal(null);
+			if (peek().isOperator("(")) {
+				next();
+				return new ExpressionNode.MethodCall(null, name, parseArguments());
+			}
+			return new ExpressionNode.Name(name);
+		case OPERATOR:
+			if (token.isOperator("(")) {
+				ExpressionNode node = parseOr();
+				expectOperator(")");
+				return node;
+			}
+			break;
+		default:
+			break;
+		}
+		position--;
+		throw error("Unexpected \"" + token.getText() + "\"");
+	}
+
+	/** Parses the arguments after the "(" has been consumed, through the ")". */
+	private List<ExpressionNode> parseArguments() {
+		List<ExpressionNode> args = new ArrayList<ExpressionNode>();
+		if (peek().isOperator(")")) {
+			next();
+			return args;
+		}
+		while (true) {
+			args.add(parseOr());
+			if (peek().isOperator(")")) {
+				next();
+				return args;
+			}
+			expectOperator(",");
+		}
+	}
+
+	private Object parseNumber(Token token) {
+		String text = token.getText();
+		char   last = Character.toLowerCase(text.charAt(text.length()-1));
+		try {
+			if (text.startsWith("0x") || text.startsWith("0X")) {
+				if (last == 'l')
+					return Long.valueOf(Long.parseLong(text.substring(2, text.length()-1), 16));
+				return Integer.valueOf((int) Long.parseLong(text.substring(2), 16));
+			}
+			if (last == 'l')
+				return Long.valueOf(text.substring(0, text.length()-1));
+			if (last == 'd' || last == 'f')
+				return Double.valueOf(text.substring(0, text.length()-1));
+			if (last == 'g')
+				throw error("Unsupported big number literal " + text);
+			if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0)
+				return Double.valueOf(text);
+			long value = Long.parseLong(text);
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+				return Integer.valueOf((int) value);
+			return Long.valueOf(value);
+		} catch (NumberFormatException nfe) {
+			throw error("Invalid number " + text);
+		}
+	}
+
+	private String parseString(Token token) {
+		if (! token.isTerminatedString())
+			throw error("Unterminated string " + token.getText());
+		String text  = token.getText();
+		char   quote = text.charAt(0);
+		StringBuffer sb = new StringBuffer(text.length());
+		for (int i = 1; i < text.length()-1; i++) {
+			char c = text.charAt(i);
+			if (c == '$' && quote == '"')
+				throw error("Unsupported interpolated string " + text);
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			c = text.charAt(++i);
+			switch (c) {
+			case 'n': sb.append('\n'); break;
+			case 't': sb.append('\t'); break;
+			case 'r': sb.append('\r'); break;
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'u':
+				if (i+4 >= text.length()-1)
+					throw error("Invalid unicode escape in " + text);
+				try {
+					sb.append((char) Integer.parseInt(text.substring(i+1, i+5), 16));
+				} catch (NumberFormatException nfe) {
+					throw error("Invalid unicode escape in " + text);
+				}
+				i += 4;
+				break;
+			default:  sb.append(c); break;
+			}
+		}
+		return sb.toString();
+	}
+
+	private Token peek() {
+		return tokens.get(position);
+	}
+
+	private Token next() {
+		Token token = tokens.get(position);
+		if (token.getType() != Token.Type.END)
+			position++;
+		return token;
+	}
+
+	private Token expect(Token.Type type, String what) {
+		Token token = peek();
+		if (token.getType() != type)
+			throw error("Expected " + what + " but found \"" + token.getText() + "\"");
+		return next();
+	}
+
+	private void expectOperator(String op) {
+		if (! peek().isOperator(op))
+			throw error("Expected \"" + op + "\" but found \"" + peek().getText() + "\"");
+		next();
+	}
+
+	private ExpressionParseException error(String message) {
+		return new ExpressionParseException(message, peek().getStart());
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What Contract4J needs to know about a test expression, found with one pass
+ * of {@link ExpressionLexer} over it: the "dollar" keywords it uses, the
+ * <code>$old(..)</code> expressions whose values must be captured, and the
+ * problems reported by validation. The tokens are grouped into a small tree
+ * of "segments", where each <code>$old(..)</code> call is one segment
+ * containing the segments of its argument, and {@link #expand(List, String[], String, boolean)}
+ * walks that tree to produce the "internal" expression given to the scripting
+ * engine. Quoted strings are single tokens, so nothing inside them is ever
+ * checked or rewritten.
+ * <p>
+ * Instances are immutable, so they can be cached and shared by all the tests
+ * that use the same expression.
+ */
+public class TestExpressionAnalysis {
+
+	/** The "dollar" keywords, without the '$'. */
+	public static final String[] KEYWORDS = { "this", "target", "return", "args", "old" };
+
+	/** Characters that may not appear in operators in a <code>$old(..)</code> argument. */
+	private static final String INVALID_OLD_ARGUMENT_CHARACTERS = "+-*/<>=~^|&%#@!,:;?{}";
+
+	public static TestExpressionAnalysis analyze(String expression) {
+		return new TestExpressionAnalysis(expression);
+	}
+
+	/** A token, or an "$old(..)" call with its argument. */
+	private abstract static class Segment {}
+
+	private static class TokenSegment extends Segment {
+		final Token token;
+		TokenSegment(Token token) { this.token = token; }
+	}
+
+	private static class OldSegment extends Segment {
+		/** The text from "$old" through the "(". */
+		final String        prefix;
+		/** The argument text between the parentheses, trimmed. */
+		final String        argument;
+		final List<Segment> arguments;
+		final boolean       valid;
+		OldSegment(String prefix, String argument, List<Segment> arguments, boolean valid) {
+			this.prefix    = prefix;
+			this.argument  = argument;
+			this.arguments = arguments;
+			this.valid     = valid;
+		}
+	}
+
+	private final String        expression;
+	private final List<Segment> segments;
+	private final Set<String>   keywords               = new HashSet<String>();
+	private final List<String>  oldExpressions         = new ArrayList<String>();
+	private final List<String>  unrecognizedKeywords   = new ArrayList<String>();
+	private final List<String>  keywordsMissingDollars = new ArrayList<String>();
+	private boolean oldWithoutArguments     = false;
+	private boolean oldWithInvalidArguments = false;
+	private boolean whitespaceAfterDollar   = false;
+
+	public String getExpression() { return expression; }
+
+	/**
+	 * @param keyword without the '$', e.g., "this".
+	 * @return true if the "dollar" keyword appears outside quoted strings.
+	 */
+	public boolean usesKeyword(String keyword) { return keywords.contains(keyword); }
+
+	/**
+	 * @return the distinct, trimmed arguments of the valid <code>$old(..)</code>
+	 * calls, e.g., "$this.getName()", in the order they appear.
+	 */
+	public List<String> getOldExpressions() { return Collections.unmodifiableList(oldExpressions); }
+
+	/** @return "$" words that aren't Contract4J keywords, e.g., "$foo". */
+	public List<String> getUnrecognizedKeywords() { return Collections.unmodifiableList(unrecognizedKeywords); }
+
+	/** @return bare words that look like keywords missing the '$', e.g., "this". */
+	public List<String> getKeywordsMissingDollars() { return Collections.unmodifiableList(keywordsMissingDollars); }
+
+	/** @return true if "$old" appears without a "(..)" argument list. */
+	public boolean hasOldWithoutArguments() { return oldWithoutArguments; }
+
+	/** @return true if an "$old(..)" argument is empty, unterminated or contains operators. */
+	public boolean hasOldWithInvalidArguments() { return oldWithInvalidArguments; }
+
+	/** @return true if a "$" is followed by whitespace. */
+	public boolean hasWhitespaceAfterDollar() { return whitespaceAfterDollar; }
+
+	/**
+	 * Rewrite the expression for the scripting engine.
+	 * <table>
+	 * <tr><th>Expression</th><th>Substitution</th></tr>
+	 * <tr><td><code>$this</code>, <code>$target</code>, <code>$return</code>, <code>$args</code></td>
+	 *     <td><code>c4jThis</code>, <code>c4jTarget</code>, <code>c4jReturn</code>, <code>c4jArgs</code></td></tr>
+	 * <tr><td><code>$old(..)</code></td>
+	 *     <td><code>c4jExprVar</code>N, where N-1 is the index of ".." in <code>oldKeys</code>.
+	 *     If ".." isn't there, the current value is used instead: <code>$old($this..)</code> becomes
+	 *     <code>c4jThis..</code>, <code>$old($target..)</code> becomes <code>c4jTarget..</code>
+	 *     and anything else is assumed to be a member of <code>$this</code>.</td></tr>
+	 * <tr><td>a method argument name</td><td><code>c4jArgs[</code>N<code>]</code></td></tr>
+	 * <tr><td>the item name</td><td><code>c4jThis.</code><i>itemName</i></td></tr>
+	 * </table>
+	 * Argument and item names that follow a '.' are member names, so they aren't rewritten.
+	 * @param oldKeys the sorted keys of the "old" values map, or null.
+	 * @param argNames the method argument names, or null.
+	 * @param itemName the field or method name, or null.
+	 * @param expandKeywords if false, only the argument and item names are rewritten.
+	 * @return the new expression.
+	 */
+	public String expand(List<String> oldKeys, String[] argNames, String itemName, boolean expandKeywords) {
+		StringBuffer sb = new StringBuffer(expression.length() + 32);
+		new Expander(oldKeys, argNames, itemName, expandKeywords).expand(segments, 0, false, sb);
+		return sb.toString();
+	}
+
+	private static class Expander {
+		final List<String> oldKeys;
+		final String[]     argNames;
+		final String       itemName;
+		final boolean      expandKeywords;
+
+		Expander(List<String> oldKeys, String[] argNames, String itemName, boolean expandKeywords) {
+			this.oldKeys        = oldKeys != null ? oldKeys : Collections.<String>emptyList();
+			this.argNames       = argNames != null ? argNames : new String[0];
+			this.itemName       = itemName;
+			this.expandKeywords = expandKeywords;
+		}
+
+		/**
+		 * @param afterDot true if the previous non-whitespace text was a '.'.
+		 */
+		void expand(List<Segment> list, int from, boolean afterDot, StringBuffer sb) {
+			for (int i = from; i < list.size(); i++) {
+				Segment segment = list.get(i);
+				if (segment instanceof OldSegment) {
+					expandOld((OldSegment) segment, sb);
+					afterDot = false;
+					continue;
+				}
+				Token token = ((TokenSegment) segment).token;
+				switch (token.getType()) {
+				case KEYWORD:
+					sb.append(expandKeywords ? expandKeyword(token) : token.getText());
+					break;
+				case IDENTIFIER:
+					sb.append(afterDot ? token.getText() : expandName(token.getText()));
+					break;
+				default:
+					sb.append(token.getText());
+					break;
+				}
+				if (token.getType() != Token.Type.WHITESPACE)
+					afterDot = token.isOperator(".");
+			}
+		}
+
+		private void expandOld(OldSegment old, StringBuffer sb) {
+			if (! expandKeywords) {
+				sb.append(old.prefix);
+				expand(old.arguments, 0, false, sb);
+				sb.append(')');
+				return;
+			}
+			int index = old.valid ? oldKeys.indexOf(old.argument) : -1;
+			if (index >= 0) {
+				sb.append("c4jExprVar").append(index + 1);
+				return;
+			}
+			int first = firstSignificant(old.arguments);
+			Segment segment = first < old.arguments.size() ? old.arguments.get(first) : null;
+			if (segment instanceof TokenSegment &&
+				(((TokenSegment) segment).token.is(Token.Type.KEYWORD, "$this") ||
+				 ((TokenSegment) segment).token.is(Token.Type.KEYWORD, "$target"))) {
+				sb.append(expandKeyword(((TokenSegment) segment).token));
+				expand(old.arguments, first + 1, false, sb);
+			} else {
+				sb.append("c4jThis.");
+				expand(old.arguments, first, true, sb);
+			}
+		}
+
+		private String expandKeyword(Token token) {
+			String name = token.getKeywordName();
+			if (name.equals("this"))
+				return "c4jThis";
+			if (name.equals("target"))
+				return "c4jTarget";
+			if (name.equals("return"))
+				return "c4jReturn";
+			if (name.equals("args"))
+				return "c4jArgs";
+			return token.getText();
+		}
+
+		private String expandName(String name) {
+			for (int i = 0; i < argNames.length; i++) {
+				if (name.equals(argNames[i]))
+					return "c4jArgs[" + i + "]";
+			}
+			if (name.equals(itemName))
+				return "c4jThis." + name;
+			return name;
+		}
+	}
+
+	private static int firstSignificant(List<Segment> list) {
+		int i = 0;
+		while (i < list.size() && list.get(i) instanceof TokenSegment &&
+			   ((TokenSegment) list.get(i)).token.getType() == Token.Type.WHITESPACE)
+			i++;
+		return i;
+	}
+
+	private List<Segment> parse(List<Token> tokens, int from, int to) {
+		List<Segment> list = new ArrayList<Segment>();
+		for (int i = from; i < to; i++) {
+			Token token = tokens.get(i);
+			if (token.getType() == Token.Type.KEYWORD) {
+				String name = token.getKeywordName();
+				if (name.length() == 0) {
+					if (i+1 < to && tokens.get(i+1).getType() == Token.Type.WHITESPACE)
+						whitespaceAfterDollar = true;
+				} else if (isKeyword(name)) {
+					keywords.add(name);
+				} else if (! unrecognizedKeywords.contains(token.getText())) {
+					unrecognizedKeywords.add(token.getText());
+				}
+				if (name.equals("old")) {
+					int close = parseOld(tokens, i, to, list);
+					if (close >= 0) {
+						i = close;
+						continue;
+					}
+				}
+			} else if (token.getType() == Token.Type.IDENTIFIER) {
+				String name = token.getText();
+				if (isKeyword(name) && ! keywordsMissingDollars.contains(name))
+					keywordsMissingDollars.add(name);
+			} else if (token.getType() == Token.Type.END) {
+				break;
+			}
+			list.add(new TokenSegment(token));
+		}
+		return list;
+	}
+
+	/**
+	 * Parse "$old(..)" starting at the keyword token.
+	 * @return the index of the closing ")" or -1 if there isn't a complete
+	 * argument list, in which case the "$old" is left as an ordinary token.
+	 */
+	private int parseOld(List<Token> tokens, int keyword, int to, List<Segment> list) {
+		int open = keyword + 1;
+		while (open < to && tokens.get(open).getType() == Token.Type.WHITESPACE)
+			open++;
+		if (open >= to || ! tokens.get(open).isOperator("(")) {
+			oldWithoutArguments = true;
+			return -1;
+		}
+		int close = open + 1;
+		for (int depth = 0; close < to; close++) {
+			Token token = tokens.get(close);
+			if (token.isOperator("("))
+				depth++;
+			else if (token.isOperator(")") && depth-- == 0)
+				break;
+		}
+		if (close >= to) {
+			oldWithInvalidArguments = true;
+			return -1;
+		}
+		String  argument = text(tokens, open + 1, close).trim();
+		boolean valid    = argument.length() > 0 && ! containsInvalidOperator(tokens, open + 1, close);
+		if (! valid)
+			oldWithInvalidArguments = true;
+		else if (! oldExpressions.contains(argument))
+			oldExpressions.add(argument);
+		list.add(new OldSegment(text(tokens, keyword, open + 1), argument, parse(tokens, open + 1, close), valid));
+		return close;
+	}
+
+	private static boolean containsInvalidOperator(List<Token> tokens, int from, int to) {
+		for (int i = from; i < to; i++) {
+			Token token = tokens.get(i);
+			if (token.getType() != Token.Type.OPERATOR)
+				continue;
+			String text = token.getText();
+			for (int j = 0; j < text.length(); j++) {
+				if (INVALID_OLD_ARGUMENT_CHARACTERS.indexOf(text.charAt(j)) >= 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static String text(List<Token> tokens, int from, int to) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = from; i < to; i++)
+			sb.append(tokens.get(i).getText());
+		return sb.toString();
+	}
+
+	private static boolean isKeyword(String name) {
+		for (String keyword: KEYWORDS) {
+			if (keyword.equals(name))
+				return true;
+		}
+		return false;
+	}
+
+	public TestExpressionAnalysis(String expression) {
+		this.expression = expression;
+		List<Token> tokens = ExpressionLexer.tokenize(expression);
+		this.segments = parse(tokens, 0, tokens.size());
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression;
+
+/**
+ * A single lexical token of a test expression. Tokens remember the exact
+ * source text and where it started, so concatenating the text of all the
+ * tokens returned by {@link ExpressionLexer} reproduces the original expression.
+ */
+public class Token {
+	public static enum Type {
+		/** A Java-style identifier, e.g., <code>foo</code>, <code>c4jThis</code>. */
+		IDENTIFIER,
+		/** A "dollar" keyword, e.g., <code>$this</code>. Just "$" if no word follows. */
+		KEYWORD,
+		/** An integer or floating point literal, including any type suffix. */
+		NUMBER,
+		/** A single- or double-quoted string literal, including the quotes. */
+		STRING,
+		/** An operator or punctuation character sequence. */
+		OPERATOR,
+		/** One or more whitespace characters. */
+		WHITESPACE,
+		/** The end of the expression. Its text is empty. */
+		END
+	}
+
+	private final Type   type;
+	private final String text;
+	private final int    start;
+
+	public Type   getType()  { return type; }
+	public String getText()  { return text; }
+	public int    getStart() { return start; }
+	public int    getEnd()   { return start + text.length(); }
+
+	public boolean is(Type type, String text) {
+		return this.type == type && this.text.equals(text);
+	}
+
+	public boolean isOperator(String op) {
+		return is(Type.OPERATOR, op);
+	}
+
+	/**
+	 * @return the keyword's name without the leading '$', or null if this
+	 * token isn't a keyword.
+	 */
+	public String getKeywordName() {
+		return type == Type.KEYWORD ? text.substring(1) : null;
+	}
+
+	/**
+	 * @return for a {@link Type#STRING} token, true if the closing quote is present.
+	 */
+	public boolean isTerminatedString() {
+		if (type != Type.STRING || text.length() < 2)
+			return false;
+		char quote = text.charAt(0);
+		if (text.charAt(text.length()-1) != quote)
+			return false;
+		int backslashes = 0;
+		for (int i = text.length()-2; i > 0 && text.charAt(i) == '\\'; i--)
+			backslashes++;
+		return backslashes % 2 == 0;
+	}
+
+	public String toString() {
+		return type + "(" + text + ")@" + start;
+	}
+
+	public Token(Type type, String text, int start) {
+		this.type  = type;
+		this.text  = text;
+		this.start = start;
+	}
+}
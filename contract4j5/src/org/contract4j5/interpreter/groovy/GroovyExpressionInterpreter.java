@@ -1,29 +1,110 @@
 package org.contract4j5.interpreter.groovy;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
+import groovy.lang.GroovyClassLoader;
 import groovy.lang.Script;
 import groovy.lang.MissingPropertyException;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import org.contract4j5.context.TestContext;
 import org.contract4j5.errors.TestSpecificationError;
+import org.contract4j5.interpreter.ExpressionCache;
 import org.contract4j5.interpreter.ExpressionInterpreterHelper;
 import org.contract4j5.interpreter.TestResult;
 
+/**
+ * Evaluates test expressions as Groovy scripts. Each expression is compiled
+ * to a script class once, and the class is shared by all threads. Each 
+ * thread runs its own instance of the class, bound to the thread's own 
+ * binding, so evaluations don't lock anything once a thread has seen the
+ * expression.
+ * <p>
+ * The compiled scripts are kept in a bounded {@link ExpressionCache}. Each
+ * class is defined by its own class loader. When a script is evicted, every
+ * thread's instance of it is dropped too, so nothing here refers to the 
+ * loader and its class any more. Groovy's MetaClassRegistry still refers to
+ * the loader through a soft reference, so the loader is unloaded by the 
+ * first collection that clears soft references, at the latest before the 
+ * JVM would run out of memory. Apart from those, the loaded script classes
+ * are the ones in the cache, so the memory used for classes stays bounded
+ * by the cache's capacity even when the expressions keep changing.
+ */
 public class GroovyExpressionInterpreter extends ExpressionInterpreterHelper {
 
-	private Binding binding;
-	private GroovyShell shell;
+	/**
+	 * The Groovy state for one thread: the binding its scripts run against
+	 * and its instances of the compiled scripts. Only the thread itself adds 
+	 * instances; an eviction on another thread removes them.
+	 */
+	private static class GroovyScope {
+		final Binding binding = new Binding();
+		final ConcurrentMap<CompiledScript, Script> instances = 
+			new ConcurrentHashMap<CompiledScript, Script>(16, 0.75f, 1);
+
+		Script getInstance(CompiledScript script) {
+			Script instance = instances.get(script);
+			if (instance == null) {
+				instance = InvokerHelper.createScript(script.scriptClass, binding);
+				instances.put(script, instance);
+				// If it was evicted meanwhile, the eviction may have missed it.
+				if (script.evicted)
+					instances.remove(script);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * A compiled expression.
+	 */
+	private static class CompiledScript {
+		final Class<?> scriptClass;
+		volatile boolean evicted = false;
+
+		CompiledScript(Class<?> scriptClass) {
+			this.scriptClass = scriptClass;
+		}
+	}
+
+	private final ExpressionCache<CompiledScript> scripts = new ExpressionCache<CompiledScript>();
+	private final AtomicInteger scriptCount = new AtomicInteger();
+
+	// Every thread's scope, so an eviction can drop the thread's instances. 
+	// The scopes of threads that have ended are collected; guarded by itself.
+	private final Map<GroovyScope, Boolean> scopes = new WeakHashMap<GroovyScope, Boolean>();
+
+	private final ThreadLocal<GroovyScope> scope = new ThreadLocal<GroovyScope>() {
+		protected GroovyScope initialValue() {
+			GroovyScope s = new GroovyScope();
+			synchronized (scopes) {
+				scopes.put(s, Boolean.TRUE);
+			}
+			return s;
+		}
+	};
 
 	public GroovyExpressionInterpreter(boolean treatEmptyTestExpressionAsValid, Map<String, String> optionalKeywordSubstitutions) {
 		super("groovy", treatEmptyTestExpressionAsValid, optionalKeywordSubstitutions);
-		binding = new Binding();
-		shell   = new GroovyShell(binding);
+		scripts.setEvictionListener(new ExpressionCache.EvictionListener<CompiledScript>() {
+			public void evicted(String expression, CompiledScript script) {
+				script.evicted = true;
+				synchronized (scopes) {
+					for (GroovyScope s: scopes.keySet())
+						s.instances.remove(script);
+				}
+				// Drop the class's meta class now; Groovy's registry would 
+				// otherwise keep it until the class is collected.
+				InvokerHelper.removeClass(script.scriptClass);
+			}
+		});
 	}
 	
 	public GroovyExpressionInterpreter() {
@@ -44,7 +125,7 @@ public class GroovyExpressionInterpreter extends ExpressionInterpreterHelper {
 	@Override
 	protected Object doGetObjectInContext(String name) {
 		try {
-			return binding.getVariable(name);
+			return scope.get().binding.getVariable(name);
 		} catch (MissingPropertyException mpe) {
 			return null;
 		}
@@ -52,12 +133,12 @@ public class GroovyExpressionInterpreter extends ExpressionInterpreterHelper {
 
 	@Override
 	protected void doRecordContextChange(String newSymbolName, Object newObject) {
-		binding.setVariable(newSymbolName, newObject);
+		scope.get().binding.setVariable(newSymbolName, newObject);
 	}
 
 	@Override
 	protected void doRemoveContextChange(String oldSymbolName) {
-		binding.setVariable(oldSymbolName, null);
+		scope.get().binding.setVariable(oldSymbolName, null);
 	}
 
 	@Override
@@ -80,14 +161,53 @@ public class GroovyExpressionInterpreter extends ExpressionInterpreterHelper {
 		return false;
 	}
 	
-	private SortedMap<String,Script> scriptCache = new TreeMap<String,Script>();
-
 	private Script getOrParseScript(String exprStr) {
-		Script script = scriptCache.get(exprStr);
-		if (script != null) return script;
-		script = shell.parse(exprStr);
-		scriptCache.put(exprStr, script);
+		return scope.get().getInstance(getCompiledScript(exprStr));
+	}
+
+	/**
+	 * @return the script class compiled from the expression, compiling it 
+	 * the first time any thread asks for it, or after it was evicted.
+	 */
+	protected Class<?> getScriptClass(String exprStr) {
+		return getCompiledScript(exprStr).scriptClass;
+	}
+
+	private CompiledScript getCompiledScript(String exprStr) {
+		CompiledScript script = scripts.get(exprStr);
+		if (script == null) {
+			synchronized (scripts) {
+				script = scripts.peek(exprStr);
+				if (script == null) {
+					String name = "C4JScript" + scriptCount.incrementAndGet() + ".groovy";
+					GroovyClassLoader loader = new GroovyClassLoader(parentClassLoader());
+					script = new CompiledScript(loader.parseClass(exprStr, name));
+					script = scripts.put(exprStr, script);
+				}
+			}
+		}
 		return script;
 	}
 
+	/**
+	 * @return the number of compiled expressions in the cache.
+	 */
+	public int getCompiledScriptCount() {
+		return scripts.size();
+	}
+
+	/**
+	 * @return the cache of compiled scripts.
+	 */
+	@Override
+	public ExpressionCache<?> getExpressionCache() {
+		return scripts;
+	}
+
+	// The same parent GroovyShell uses, so expressions can name the same classes.
+	private static ClassLoader parentClassLoader() {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		return loader != null ? loader : GroovyExpressionInterpreter.class.getClassLoader();
+	}
+
 }
@@ -22,8 +22,6 @@ package org.contract4j5.interpreter.jexl;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.apache.commons.jexl.Expression;
 import org.apache.commons.jexl.ExpressionFactory;
@@ -31,6 +29,7 @@ import org.apache.commons.jexl.JexlContext;
 import org.apache.commons.jexl.JexlHelper;
 import org.contract4j5.context.TestContext;
 import org.contract4j5.errors.TestSpecificationError;
+import org.contract4j5.interpreter.ExpressionCache;
 import org.contract4j5.interpreter.ExpressionInterpreterHelper;
 import org.contract4j5.interpreter.TestResult;
 
@@ -43,7 +42,15 @@ import org.contract4j5.interpreter.TestResult;
  */
 public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 
-	private JexlContext jexlContext = null;
+	/**
+	 * Each thread evaluates against its own context. The parsed expressions
+	 * don't hold any evaluation state, so they are shared.
+	 */
+	private final ThreadLocal<JexlContext> jexlContext = new ThreadLocal<JexlContext>() {
+		protected JexlContext initialValue() {
+			return JexlHelper.createContext();
+		}
+	};
 	
 	/* (non-Javadoc)
 	 * @see org.contract4j5.interpreter.ExpressionInterpreterHelper#doDetermineOldValue(java.lang.String, org.contract4j5.TestContext)
@@ -57,7 +64,7 @@ public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 			throw new TestSpecificationError("Failed to create the Jexl expression for \""+exprStr+"\".", th);
 		}
 		try {
-			Object o = expr.evaluate(jexlContext);
+			Object o = expr.evaluate(jexlContext.get());
 			return o;
 		} catch (Throwable th2) {
 			throw new TestSpecificationError("Failed to evaluate the Jexl expression for \""+exprStr+"\".", th2);
@@ -81,7 +88,7 @@ public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 			return new TestResult (false, msg, new TestSpecificationError(msg, th));
 		}
 		try {
-			Object o = expr.evaluate(jexlContext);
+			Object o = expr.evaluate(jexlContext.get());
 			if (!(o instanceof Boolean)) {
 				String msg = didNotReturnBooleanErrorMessage(testExpression, o);
 				return new TestResult (false, msg);
@@ -99,7 +106,7 @@ public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 	@SuppressWarnings("unchecked")
 	@Override
 	protected void doRecordContextChange(String newSymbolName, Object newObject) {
-		Map<String, Object> map = jexlContext.getVars();
+		Map<String, Object> map = jexlContext.get().getVars();
 		map.put (newSymbolName, newObject);
 	}
 	
@@ -110,14 +117,14 @@ public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 	@SuppressWarnings("unchecked")
 	@Override
 	protected void doRemoveContextChange(String oldSymbolName) {
-		Map<String, Object> map = jexlContext.getVars();
+		Map<String, Object> map = jexlContext.get().getVars();
 		map.remove(oldSymbolName);
 	}
 	
 	@Override
 	@SuppressWarnings("unchecked")
 	protected Object doGetObjectInContext(String name) {
-		Map<String, Object> map = jexlContext.getVars();
+		Map<String, Object> map = jexlContext.get().getVars();
 		return map.get(name);
 	}
 
@@ -128,7 +135,15 @@ public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 	public JexlExpressionInterpreter(
 			boolean treatEmptyTestExpressionAsValid, Map<String, String> optionalKeywordSubstitutions) {
 		super("jexl", treatEmptyTestExpressionAsValid, optionalKeywordSubstitutions);
-		jexlContext = JexlHelper.createContext();
+	}
+
+	/**
+	 * Jexl reads properties only with their "get" and "is" methods, so don't 
+	 * read public fields directly either.
+	 */
+	@Override
+	protected boolean getReadPublicFieldsDirectly() {
+		return false;
 	}
 
 	@Override
@@ -138,14 +153,17 @@ public class JexlExpressionInterpreter extends ExpressionInterpreterHelper {
 		return false;
 	}
 
-	private SortedMap<String,Expression> expressionCache = new TreeMap<String,Expression>();
+	private ExpressionCache<Expression> expressionCache = new ExpressionCache<Expression>();
+
+	@Override
+	public ExpressionCache<?> getExpressionCache() {
+		return expressionCache;
+	}
 
 	private Expression getOrParseExpression(String exprStr) throws Throwable {
 		Expression script = expressionCache.get(exprStr);
 		if (script != null) return script;
-		script = ExpressionFactory.createExpression (exprStr);
-		expressionCache.put(exprStr, script);
-		return script;
+		return expressionCache.put(exprStr, ExpressionFactory.createExpression (exprStr));
 	}
 
 }
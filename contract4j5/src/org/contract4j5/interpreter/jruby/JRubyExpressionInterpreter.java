@@ -42,6 +42,23 @@ public class JRubyExpressionInterpreter extends ExpressionInterpreterHelper {
 		setAllowUnrecognizedKeywords(true);
 	}
 
+	/**
+	 * Ruby's property access and comparisons differ from Java's, so let the 
+	 * engine evaluate all "old" expressions.
+	 */
+	@Override
+	protected boolean getReadOldValuesDirectly() {
+		return false;
+	}
+
+	/**
+	 * Likewise, let the engine evaluate all tests, even the simple ones.
+	 */
+	@Override
+	public boolean getEvaluateTestsDirectly() {
+		return false;
+	}
+
 	@Override
 	protected Object doDetermineOldValue(String exprStr, TestContext context) {
 		IRubyObject iro = runtime.evalScript(mungeTestExpression(exprStr));
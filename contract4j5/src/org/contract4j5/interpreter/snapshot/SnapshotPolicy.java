@@ -0,0 +1,275 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.snapshot;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Chooses how the "old" value of each <code>$old(..)</code> expression is 
+ * kept, so a test sees the value's state before the call even if the call 
+ * mutates it. For a value of a given type, read for a test of a given 
+ * member, the first of these rules that applies is used:
+ * <ol>
+ * <li>Immutable values are kept as they are: strings, boxed primitives, 
+ * {@link BigInteger}, {@link BigDecimal}, {@link UUID}, classes, enums, 
+ * records, and the types added with {@link #addImmutableType(String)}.</li>
+ * <li>{@link Snapshotable} values make their own snapshot.</li>
+ * <li>The strategy for the most specific site scope: a package, a 
+ * fully-qualified class name (nested classes use "$"), a class name 
+ * followed by "." and a method name, "new" for constructors, or a field 
+ * name, or "*" for all sites.</li>
+ * <li>The strategy for the value's class, or else its nearest superclass,
+ * or else the first of its interfaces, that has one.</li>
+ * <li>The {@link #getDefaultStrategy() default}, which is
+ * {@link StandardSnapshotStrategy#REFERENCE}, so values are not copied
+ * unless something is configured.</li>
+ * </ol>
+ * For example, to deep copy the values of one class and shallow copy all 
+ * collections for the methods of one package:
+ * <pre>
+ * policy.setTypeStrategy("com.example.Ledger", StandardSnapshotStrategy.DEEP);
+ * policy.setSiteStrategy("com.example.accounts", StandardSnapshotStrategy.SHALLOW);
+ * </pre>
+ * The strategy for a class, without a site strategy, is only resolved once,
+ * until the policy is changed.
+ */
+public class SnapshotPolicy {
+	/** The site scope that matches everything. */
+	public static final String ALL_SCOPES = "*";
+
+	private static final Set<Class<?>> BUILT_IN_IMMUTABLES = new HashSet<Class<?>>();
+	static {
+		Class<?>[] immutables = { 
+			String.class, Boolean.class, Character.class, Byte.class, Short.class, 
+			Integer.class, Long.class, Float.class, Double.class, 
+			BigInteger.class, BigDecimal.class, UUID.class, Class.class 
+		};
+		for (Class<?> c: immutables)
+			BUILT_IN_IMMUTABLES.add(c);
+	}
+
+	/** Keeps immutable values as they are; sites can't override it. */
+	private static final SnapshotStrategy IMMUTABLE = new SnapshotStrategy() {
+		public Object snapshot(Object value) { return value; }
+	};
+
+	/** Asks {@link Snapshotable} values for a snapshot; sites can't override it. */
+	private static final SnapshotStrategy SELF = new SnapshotStrategy() {
+		public Object snapshot(Object value) { return ((Snapshotable) value).snapshot(); }
+	};
+
+	// Copy on write, so lookups don't need to lock.
+	private volatile Set<String> immutableTypes = Collections.emptySet();
+	private volatile Map<String, SnapshotStrategy> typeStrategies = Collections.emptyMap();
+	private volatile Map<String, SnapshotStrategy> siteStrategies = Collections.emptyMap();
+	private volatile SnapshotStrategy defaultStrategy = StandardSnapshotStrategy.REFERENCE;
+	// Replaced, not cleared, when the policy changes, so a lookup that is 
+	// concurrent with a change can't add a stale strategy to the new cache.
+	private volatile ConcurrentMap<Class<?>, SnapshotStrategy> strategiesByClass = 
+		new ConcurrentHashMap<Class<?>, SnapshotStrategy>();
+
+	/**
+	 * @param value the value read before the call.
+	 * @param className the class that declares the tested member, or null.
+	 * @param memberName the method, "new" or field name, or null.
+	 * @return the value to remember as the "old" value.
+	 */
+	public Object snapshot(Object value, String className, String memberName) {
+		if (value == null)
+			return null;
+		return getStrategy(value.getClass(), className, memberName).snapshot(value);
+	}
+
+	/**
+	 * @return the strategy used for values of the class read for a test of
+	 * the member of the class named <code>className</code>. Either name may 
+	 * be null.
+	 */
+	public SnapshotStrategy getStrategy(Class<?> type, String className, String memberName) {
+		ConcurrentMap<Class<?>, SnapshotStrategy> cache = strategiesByClass;
+		SnapshotStrategy strategy = cache.get(type);
+		if (strategy == null) {
+			strategy = resolveForClass(type);
+			cache.put(type, strategy);
+		}
+		if (strategy == IMMUTABLE || strategy == SELF || siteStrategies.isEmpty())
+			return strategy;
+		SnapshotStrategy forSite = resolveForSite(className, memberName);
+		return forSite != null ? forSite : strategy;
+	}
+
+	/**
+	 * @return true if values of the class are never copied.
+	 */
+	public boolean isImmutable(Class<?> type) {
+		return BUILT_IN_IMMUTABLES.contains(type) || 
+			Enum.class.isAssignableFrom(type) || 
+			isRecord(type) || 
+			immutableTypes.contains(type.getName());
+	}
+
+	/**
+	 * Declare that values of the class (but not its subclasses) are 
+	 * immutable, so they are never copied.
+	 * @param className the fully-qualified name (nested classes use "$").
+	 */
+	public synchronized void addImmutableType(String className) {
+		Set<String> newTypes = new TreeSet<String>(immutableTypes);
+		newTypes.add(className.trim());
+		immutableTypes = newTypes;
+		changed();
+	}
+
+	public Set<String> getImmutableTypes() {
+		return Collections.unmodifiableSet(immutableTypes);
+	}
+
+	/**
+	 * Set the strategy for values of the class and its subclasses, or 
+	 * remove it, if the strategy is null.
+	 * @param className the fully-qualified name of a class or interface.
+	 */
+	public synchronized void setTypeStrategy(String className, SnapshotStrategy strategy) {
+		typeStrategies = put(typeStrategies, className.trim(), strategy);
+		changed();
+	}
+
+	public Map<String, SnapshotStrategy> getTypeStrategies() {
+		return Collections.unmodifiableMap(typeStrategies);
+	}
+
+	/**
+	 * Set the strategy for the values read for the tests in the scope, or 
+	 * remove it, if the strategy is null.
+	 * @param scope a package, class or "class.member" name, or {@link #ALL_SCOPES}.
+	 */
+	public synchronized void setSiteStrategy(String scope, SnapshotStrategy strategy) {
+		siteStrategies = put(siteStrategies, scope.trim(), strategy);
+	}
+
+	public Map<String, SnapshotStrategy> getSiteStrategies() {
+		return Collections.unmodifiableMap(siteStrategies);
+	}
+
+	public SnapshotStrategy getDefaultStrategy() { 
+		return defaultStrategy; 
+	}
+
+	/**
+	 * @param strategy the strategy for types without one; null restores
+	 * {@link StandardSnapshotStrategy#REFERENCE}.
+	 */
+	public synchronized void setDefaultStrategy(SnapshotStrategy strategy) {
+		defaultStrategy = strategy != null ? strategy : StandardSnapshotStrategy.REFERENCE;
+		changed();
+	}
+
+	/**
+	 * Remove all the configured types and strategies.
+	 */
+	public synchronized void clear() {
+		immutableTypes  = Collections.emptySet();
+		typeStrategies  = Collections.emptyMap();
+		siteStrategies  = Collections.emptyMap();
+		defaultStrategy = StandardSnapshotStrategy.REFERENCE;
+		changed();
+	}
+
+	private SnapshotStrategy resolveForClass(Class<?> type) {
+		if (isImmutable(type))
+			return IMMUTABLE;
+		if (Snapshotable.class.isAssignableFrom(type))
+			return SELF;
+		Map<String, SnapshotStrategy> strategies = typeStrategies;
+		if (! strategies.isEmpty()) {
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				SnapshotStrategy strategy = strategies.get(c.getName());
+				if (strategy != null)
+					return strategy;
+			}
+			SnapshotStrategy strategy = resolveForInterfaces(type, strategies);
+			if (strategy != null)
+				return strategy;
+		}
+		return defaultStrategy;
+	}
+
+	private static SnapshotStrategy resolveForInterfaces(Class<?> type, 
+			Map<String, SnapshotStrategy> strategies) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Class<?> i: c.getInterfaces()) {
+				SnapshotStrategy strategy = strategies.get(i.getName());
+				if (strategy == null)
+					strategy = resolveForInterfaces(i, strategies);
+				if (strategy != null)
+					return strategy;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the strategy for the most specific scope that has one, from the 
+	 * member up through the class, any outer classes, the packages, and "*".
+	 */
+	private SnapshotStrategy resolveForSite(String className, String memberName) {
+		Map<String, SnapshotStrategy> strategies = siteStrategies;
+		if (className != null) {
+			String scope = memberName == null ? className : className + "." + memberName;
+			while (scope.length() > 0) {
+				SnapshotStrategy strategy = strategies.get(scope);
+				if (strategy != null)
+					return strategy;
+				int end = Math.max(scope.lastIndexOf('.'), scope.lastIndexOf('$'));
+				scope = end > 0 ? scope.substring(0, end) : "";
+			}
+		}
+		return strategies.get(ALL_SCOPES);
+	}
+
+	private static boolean isRecord(Class<?> type) {
+		Class<?> parent = type.getSuperclass();
+		return parent != null && parent.getName().equals("java.lang.Record");
+	}
+
+	private static Map<String, SnapshotStrategy> put(Map<String, SnapshotStrategy> map,
+			String key, SnapshotStrategy strategy) {
+		Map<String, SnapshotStrategy> newMap = new TreeMap<String, SnapshotStrategy>(map);
+		if (strategy == null)
+			newMap.remove(key);
+		else
+			newMap.put(key, strategy);
+		return newMap;
+	}
+
+	private void changed() {
+		strategiesByClass = new ConcurrentHashMap<Class<?>, SnapshotStrategy>();
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.snapshot;
+
+/**
+ * Makes the copy of a value that is kept as the "old" value of an 
+ * <code>$old(..)</code> expression, so a postcondition or invariant compares
+ * against the state the value had before the call, even if the call mutates
+ * the object.
+ * @see SnapshotPolicy
+ * @see StandardSnapshotStrategy
+ */
+public interface SnapshotStrategy {
+	/**
+	 * @param value the value read before the call; never null.
+	 * @return the value to remember, which may be the value itself.
+	 */
+	Object snapshot(Object value);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.snapshot;
+
+/**
+ * Implemented by types that know how to snapshot themselves more cheaply 
+ * than a generic copy, <i>e.g.,</i> a persistent or copy-on-write structure
+ * that can hand out a frozen view that shares its storage until the next
+ * modification. A {@link SnapshotPolicy} always uses this method for such 
+ * values, whatever strategy is configured for the type or site.
+ */
+public interface Snapshotable {
+	/**
+	 * @return a value that keeps the current state of this object, and is 
+	 * not affected by later changes to it.
+	 */
+	Object snapshot();
+}
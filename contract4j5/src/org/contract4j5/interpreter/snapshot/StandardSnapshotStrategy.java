@@ -0,0 +1,212 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The snapshot strategies that don't need any help from the value's type.
+ * For types that can do better, <i>e.g.,</i> with copy-on-write, see
+ * {@link Snapshotable}.
+ */
+public enum StandardSnapshotStrategy implements SnapshotStrategy {
+	/** 
+	 * Keep the value itself. Correct for immutable values, and the behavior
+	 * when nothing else is configured. 
+	 */
+	REFERENCE {
+		public Object snapshot(Object value) {
+			return value;
+		}
+	},
+
+	/**
+	 * Copy the value, but not the objects it refers to: arrays are copied, 
+	 * {@link Cloneable} objects with a public <code>clone()</code> are 
+	 * cloned (which is cheap for the <code>java.util.concurrent</code>
+	 * copy-on-write collections, as the clone shares the current array), 
+	 * and other collections and maps are copied to a list, set or map with
+	 * the same iteration order, so <code>equals</code> and <code>size</code>
+	 * still work as expected. Anything else is kept as it is.
+	 */
+	SHALLOW {
+		public Object snapshot(Object value) {
+			return shallowCopy(value);
+		}
+	},
+
+	/**
+	 * Copy the value and everything it refers to by serializing and 
+	 * deserializing it. Values that aren't serializable get a 
+	 * {@link #SHALLOW} copy.
+	 */
+	DEEP {
+		public Object snapshot(Object value) {
+			if (value instanceof Serializable) {
+				try {
+					return deepCopy(value);
+				} catch (IOException ioe) {
+					// E.g., it refers to something that isn't serializable.
+					return shallowCopy(value);
+				} catch (ClassNotFoundException cnfe) {
+					return shallowCopy(value);
+				}
+			}
+			return shallowCopy(value);
+		}
+	};
+
+	/**
+	 * @return the strategy with the name, ignoring case, or null.
+	 */
+	public static StandardSnapshotStrategy parse(String name) {
+		for (StandardSnapshotStrategy s: values()) {
+			if (s.name().equalsIgnoreCase(name.trim()))
+				return s;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	static Object shallowCopy(Object value) {
+		Class<?> clazz = value.getClass();
+		if (clazz.isArray()) {
+			int    length = Array.getLength(value);
+			Object copy   = Array.newInstance(clazz.getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+			return copy;
+		}
+		if (value instanceof Cloneable) {
+			Method clone = CloneMethods.find(clazz);
+			if (clone != null) {
+				try {
+					return clone.invoke(value);
+				} catch (Exception e) {
+					// Don't try again; copy it as a collection below, if it is one.
+					CloneMethods.disable(clazz);
+				}
+			}
+		}
+		if (value instanceof SortedMap)
+			return new TreeMap<Object, Object>((SortedMap<Object, Object>) value);
+		if (value instanceof Map)
+			return new LinkedHashMap<Object, Object>((Map<Object, Object>) value);
+		if (value instanceof SortedSet)
+			return new TreeSet<Object>((SortedSet<Object>) value);
+		if (value instanceof Set)
+			return new LinkedHashSet<Object>((Set<Object>) value);
+		if (value instanceof Collection)
+			return new ArrayList<Object>((Collection<Object>) value);
+		return value;
+	}
+
+	static Object deepCopy(Object value) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		final ClassLoader loader = value.getClass().getClassLoader();
+		InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+		ObjectInputStream objects = new ObjectInputStream(in) {
+			@Override
+			protected Class<?> resolveClass(ObjectStreamClass desc) 
+					throws IOException, ClassNotFoundException {
+				if (loader != null) {
+					try {
+						return Class.forName(desc.getName(), false, loader);
+					} catch (ClassNotFoundException cnfe) {
+						return super.resolveClass(desc);
+					}
+				}
+				return super.resolveClass(desc);
+			}
+		};
+		try {
+			return objects.readObject();
+		} finally {
+			objects.close();
+		}
+	}
+
+	/**
+	 * The public <code>clone()</code> method of each class, looked up once.
+	 */
+	private static class CloneMethods {
+		private static final Method NONE;
+		static {
+			try {
+				NONE = Object.class.getMethod("toString");
+			} catch (NoSuchMethodException nsme) {
+				throw new ExceptionInInitializerError(nsme);
+			}
+		}
+		private static final ConcurrentMap<Class<?>, Method> methods = 
+			new ConcurrentHashMap<Class<?>, Method>();
+
+		static Method find(Class<?> clazz) {
+			Method method = methods.get(clazz);
+			if (method == null) {
+				method = lookup(clazz);
+				methods.put(clazz, method);
+			}
+			return method != NONE ? method : null;
+		}
+
+		/**
+		 * Stop using the class's <code>clone()</code>, e.g., because it throws.
+		 */
+		static void disable(Class<?> clazz) {
+			methods.put(clazz, NONE);
+		}
+
+		private static Method lookup(Class<?> clazz) {
+			if (! Modifier.isPublic(clazz.getModifiers()))
+				return NONE;
+			try {
+				Method method = clazz.getMethod("clone");
+				return method.getParameterTypes().length == 0 ? method : NONE;
+			} catch (NoSuchMethodException nsme) {
+				return NONE;
+			}
+		}
+	}
+}
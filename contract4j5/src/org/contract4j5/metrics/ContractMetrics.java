@@ -0,0 +1,243 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.metrics;
+
+/**
+ * The statistics for one contract test site, identified by its source file,
+ * line and test type: how often the test was evaluated, passed, failed and
+ * failed because the test itself was invalid, or was skipped because the 
+ * call wasn't sampled, and a histogram of how long the evaluations took. 
+ * It also shows whether the test is suspended because it exceeded its 
+ * latency budget, and how often that happened, and how long capturing the
+ * "old" values of <code>$old(..)</code> expressions took.
+ * <p>
+ * The histogram uses a fixed amount of memory: bucket <i>i</i> counts the 
+ * evaluations that took from 2<sup><i>i</i>-1</sup> up to 2<sup><i>i</i></sup>
+ * nanoseconds, and the last bucket counts all the longer ones. Percentiles 
+ * are reported as the upper bound of the bucket they fall in.
+ * <p>
+ * All counters are {@link StripedCounters}, so concurrent evaluations of 
+ * the same test don't contend, and a snapshot read while tests run is 
+ * approximate.
+ */
+public class ContractMetrics implements ContractMetricsMBean {
+	/** The number of latency histogram buckets. */
+	public static final int LATENCY_BUCKETS = 40;
+
+	private static final int EVALUATIONS = 0;
+	private static final int PASSES      = 1;
+	private static final int FAILURES    = 2;
+	private static final int SPEC_ERRORS = 3;
+	private static final int TIMED       = 4;
+	private static final int TOTAL_NANOS = 5;
+	private static final int SKIPPED     = 6;
+	private static final int SUSPENSIONS = 7;
+	private static final int SNAPSHOTS   = 8;
+	private static final int SNAPSHOT_NANOS = 9;
+
+	private final String fileName;
+	private final int    lineNumber;
+	private final String testType;
+	private final StripedCounters counts  = new StripedCounters(10);
+	private final StripedCounters latency = new StripedCounters(LATENCY_BUCKETS);
+	private volatile boolean suspended   = false;
+	private volatile long    budgetNanos = 0;
+	private volatile long    costNanos   = 0;
+	private volatile String  evaluationTier = null;
+
+	public String getFileName()   { return fileName; }
+	public int    getLineNumber() { return lineNumber; }
+	public String getTestType()   { return testType; }
+
+	public long getEvaluations()         { return counts.get(EVALUATIONS); }
+	public long getPasses()              { return counts.get(PASSES); }
+	public long getFailures()            { return counts.get(FAILURES); }
+	public long getSpecificationErrors() { return counts.get(SPEC_ERRORS); }
+	public long getSkipped()             { return counts.get(SKIPPED); }
+	public long getSuspensions()         { return counts.get(SUSPENSIONS); }
+	public long getSnapshots()           { return counts.get(SNAPSHOTS); }
+	public long getTotalSnapshotNanos()  { return counts.get(SNAPSHOT_NANOS); }
+
+	/**
+	 * @return true if the test is suspended because it exceeded its budget.
+	 */
+	public boolean isSuspended()         { return suspended; }
+
+	/**
+	 * @return the latency budget of the test when it was last suspended or 
+	 * resumed, or 0.
+	 */
+	public long getBudgetNanos()         { return budgetNanos; }
+
+	/**
+	 * @return how long the evaluation that last suspended or resumed the
+	 * test took, or 0.
+	 */
+	public long getLastBudgetedCostNanos() { return costNanos; }
+
+	/**
+	 * Record one evaluation of the test.
+	 * @param passed true if the test passed.
+	 * @param specificationError true if the test failed because the test
+	 * expression (or another part of the contract) is invalid.
+	 * @param nanos how long the evaluation took.
+	 */
+	public void record(boolean passed, boolean specificationError, long nanos) {
+		counts.increment(EVALUATIONS);
+		count(passed, specificationError);
+		counts.increment(TIMED);
+		counts.add(TOTAL_NANOS, nanos);
+		latency.increment(bucket(nanos));
+	}
+
+	/**
+	 * Record a failure that was detected without evaluating the test, e.g., 
+	 * a specification error found while the test site was set up.
+	 */
+	public void recordFailure(boolean specificationError) {
+		counts.increment(EVALUATIONS);
+		count(false, specificationError);
+	}
+
+	/**
+	 * Record that the test was suspended, or resumed, because of its cost.
+	 * @param suspended true if the test was suspended, false if it resumed.
+	 * @param budgetNanos the test's latency budget.
+	 * @param costNanos how long the evaluation that changed the state took.
+	 */
+	public void recordSuspension(boolean suspended, long budgetNanos, long costNanos) {
+		if (suspended)
+			counts.increment(SUSPENSIONS);
+		this.suspended   = suspended;
+		this.budgetNanos = budgetNanos;
+		this.costNanos   = costNanos;
+	}
+
+	/**
+	 * Record a call for which the test wasn't evaluated, because it wasn't
+	 * sampled, or the site was trusted or suspended. 
+	 */
+	public void recordSkipped() {
+		counts.increment(SKIPPED);
+	}
+
+	/**
+	 * Record the capture of the "old" values for one evaluation of the test.
+	 * @param nanos how long reading and copying the values took.
+	 */
+	public void recordSnapshot(long nanos) {
+		counts.increment(SNAPSHOTS);
+		counts.add(SNAPSHOT_NANOS, nanos);
+	}
+
+	private void count(boolean passed, boolean specificationError) {
+		if (passed)
+			counts.increment(PASSES);
+		else
+			counts.increment(FAILURES);
+		if (specificationError)
+			counts.increment(SPEC_ERRORS);
+	}
+
+	public long getMeanLatencyNanos() {
+		long[] sums = counts.getAll();
+		return sums[TIMED] == 0 ? 0 : sums[TOTAL_NANOS] / sums[TIMED];
+	}
+
+	public long getMeanSnapshotNanos() {
+		long[] sums = counts.getAll();
+		return sums[SNAPSHOTS] == 0 ? 0 : sums[SNAPSHOT_NANOS] / sums[SNAPSHOTS];
+	}
+
+	public long getMedianLatencyNanos() {
+		return getLatencyPercentileNanos(50.0);
+	}
+
+	public long get99thPercentileLatencyNanos() {
+		return getLatencyPercentileNanos(99.0);
+	}
+
+	/**
+	 * @param percentile from 0 to 100.
+	 * @return the upper bound, in nanoseconds, of the histogram bucket with
+	 * the percentile, or 0 if there have been no timed evaluations.
+	 */
+	public long getLatencyPercentileNanos(double percentile) {
+		long[] histogram = latency.getAll();
+		long   total     = 0;
+		for (long count: histogram)
+			total += count;
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			seen += histogram[i];
+			if (seen >= rank && seen > 0)
+				return upperBound(i);
+		}
+		return upperBound(histogram.length - 1);
+	}
+
+	/**
+	 * @return the evaluation counts of the latency buckets.
+	 */
+	public long[] getLatencyHistogram() {
+		return latency.getAll();
+	}
+
+	public void reset() {
+		counts.reset();
+		latency.reset();
+	}
+
+	static int bucket(long nanos) {
+		if (nanos <= 0)
+			return 0;
+		return Math.min(64 - Long.numberOfLeadingZeros(nanos), LATENCY_BUCKETS - 1);
+	}
+
+	static long upperBound(int bucket) {
+		return 1L << bucket;
+	}
+
+	/**
+	 * @return the name of the {@link org.contract4j5.interpreter.EvaluationTier} 
+	 * the site's test runs in, or null if it isn't known yet.
+	 */
+	public String getEvaluationTier() { return evaluationTier; }
+	public void   setEvaluationTier(String evaluationTier) { this.evaluationTier = evaluationTier; }
+
+	public String toString() {
+		return fileName + ":" + lineNumber + ":" + testType + 
+			" (evaluations = " + getEvaluations() + ", failures = " + getFailures() + 
+			", specification errors = " + getSpecificationErrors() + 
+			", skipped = " + getSkipped() + 
+			(isSuspended() ? ", suspended" : "") + 
+			(evaluationTier != null ? ", tier = " + evaluationTier : "") + 
+			", mean latency = " + getMeanLatencyNanos() + "ns)";
+	}
+
+	public ContractMetrics(String fileName, int lineNumber, String testType) {
+		this.fileName   = fileName;
+		this.lineNumber = lineNumber;
+		this.testType   = testType;
+	}
+}
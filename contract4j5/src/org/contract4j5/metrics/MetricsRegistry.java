@@ -0,0 +1,219 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextFrame;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.reporter.Severity;
+
+/**
+ * The {@link ContractMetrics} of all contract test sites evaluated since 
+ * metrics collection was enabled, keyed by "file:line:testType". Collection
+ * is off by default; when it's off, the enforcer pays one volatile read per
+ * test.
+ * <p>
+ * The metrics of a site are found once and remembered in its 
+ * {@link ContractSite}, so recording an evaluation doesn't look up this 
+ * registry. For the same reason, {@link #reset()} zeroes the metrics 
+ * instead of discarding them.
+ * <p>
+ * When {@link #registerMBeans(MBeanServer)} has been called, the registry
+ * and each site's metrics, including sites first evaluated later, are 
+ * registered as MBeans named "org.contract4j5:type=ContractMetrics,site=..."
+ */
+public class MetricsRegistry implements MetricsRegistryMBean {
+	/** The JMX object name of the registry itself. */
+	public static final String OBJECT_NAME = "org.contract4j5:type=ContractMetricsRegistry";
+	/** The prefix of the JMX object names of the sites' metrics. */
+	public static final String SITE_OBJECT_NAME_PREFIX = "org.contract4j5:type=ContractMetrics,site=";
+
+	private final ConcurrentMap<String, ContractMetrics> metrics = 
+		new ConcurrentHashMap<String, ContractMetrics>();
+
+	private volatile boolean enabled = false;
+	private volatile MBeanServer mbeanServer = null;
+
+	public boolean isEnabled() { return enabled; }
+	public void    setEnabled(boolean enabled) { this.enabled = enabled; }
+
+	public int getSiteCount() { return metrics.size(); }
+
+	/**
+	 * @return a summary of each site's metrics, ordered by site.
+	 */
+	public String[] getSites() {
+		List<String> list = new ArrayList<String>();
+		for (ContractMetrics m: getAllMetrics().values())
+			list.add(m.toString());
+		return list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * @return a summary of the metrics of each site that is suspended because
+	 * it exceeded its latency budget. Suspended sites are recorded even when
+	 * metrics aren't being collected.
+	 */
+	public String[] getSuspendedSites() {
+		List<String> list = new ArrayList<String>();
+		for (ContractMetrics m: getAllMetrics().values()) {
+			if (m.isSuspended())
+				list.add(m.toString() + " budget = " + m.getBudgetNanos() + 
+						"ns, cost = " + m.getLastBudgetedCostNanos() + "ns");
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * @return a copy of the map from "file:line:testType" to the site's metrics.
+	 */
+	public SortedMap<String, ContractMetrics> getAllMetrics() {
+		return new TreeMap<String, ContractMetrics>(metrics);
+	}
+
+	/**
+	 * @return the metrics for the site, or null if it hasn't been recorded.
+	 */
+	public ContractMetrics findMetrics(String fileName, int lineNumber, String testType) {
+		return metrics.get(makeKey(fileName, lineNumber, testType));
+	}
+
+	/**
+	 * @return the metrics for the site, creating them if necessary.
+	 */
+	public ContractMetrics getMetrics(String fileName, int lineNumber, String testType) {
+		String key = makeKey(fileName, lineNumber, testType);
+		ContractMetrics m = metrics.get(key);
+		if (m == null) {
+			ContractMetrics newMetrics = new ContractMetrics(fileName, lineNumber, testType);
+			m = metrics.putIfAbsent(key, newMetrics);
+			if (m == null) {
+				m = newMetrics;
+				register(mbeanServer, key, m);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * @return the metrics for the context's site, which are remembered in its
+	 * {@link ContractSite}, if it has one.
+	 */
+	public ContractMetrics getMetrics(TestContext context, String testType) {
+		if (! (context instanceof TestContextFrame))
+			return getMetrics(context.getFileName(), context.getLineNumber(), testType);
+		return getMetrics(((TestContextFrame) context).getSite(), testType);
+	}
+
+	/**
+	 * @return the metrics for the site's own test type.
+	 */
+	public ContractMetrics getMetrics(ContractSite site) {
+		Contract4J.TestType type = site.getTestType();
+		return getMetrics(site, type != null ? type.name() : "");
+	}
+
+	private ContractMetrics getMetrics(ContractSite site, String testType) {
+		ContractMetrics m = site.getMetrics();
+		if (m == null || ! m.getTestType().equals(testType)) {
+			m = getMetrics(site.getFileName(), site.getLineNumber(), testType);
+			site.setMetrics(m);
+			if (site.getEvaluationTier() != null)
+				m.setEvaluationTier(site.getEvaluationTier().name());
+		}
+		return m;
+	}
+
+	/**
+	 * Zero the metrics of all sites.
+	 */
+	public void reset() {
+		for (ContractMetrics m: metrics.values())
+			m.reset();
+	}
+
+	/**
+	 * Register this registry and the metrics of all sites with the server,
+	 * and register the sites recorded from now on as they appear.
+	 * @throws JMException if a registration fails.
+	 */
+	public synchronized void registerMBeans(MBeanServer server) throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (! server.isRegistered(name))
+			server.registerMBean(this, name);
+		mbeanServer = server;
+		for (Map.Entry<String, ContractMetrics> entry: metrics.entrySet())
+			register(server, entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Remove this registry and the sites' metrics from the server.
+	 * @throws JMException if a removal fails.
+	 */
+	public synchronized void unregisterMBeans(MBeanServer server) throws JMException {
+		mbeanServer = null;
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name))
+			server.unregisterMBean(name);
+		for (String key: metrics.keySet()) {
+			name = makeObjectName(key);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+		}
+	}
+
+	private static void register(MBeanServer server, String key, ContractMetrics m) {
+		if (server == null)
+			return;
+		try {
+			ObjectName name = makeObjectName(key);
+			if (! server.isRegistered(name))
+				server.registerMBean(m, name);
+		} catch (JMException e) {
+			// The metrics are still available through getAllMetrics().
+			Contract4J.getInstance().getReporter().report(Severity.DEBUG, MetricsRegistry.class,
+					"Could not register the metrics of {} as an MBean: {}", key, e);
+		}
+	}
+
+	/**
+	 * @return the JMX object name of the metrics with the key.
+	 */
+	public static ObjectName makeObjectName(String key) throws JMException {
+		return new ObjectName(SITE_OBJECT_NAME_PREFIX + ObjectName.quote(key));
+	}
+
+	public static String makeKey(String fileName, int lineNumber, String testType) {
+		return fileName + ":" + lineNumber + ":" + testType;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of <code>long</code> counters, each split into several 
+ * "stripes", so threads that update the same counter at the same time 
+ * usually update different memory and don't contend. A thread always uses 
+ * the same stripe, chosen from its id. Each stripe's counters are padded to
+ * a multiple of a cache line. Reading a counter sums its stripes, so a read
+ * that is concurrent with updates is only approximate.
+ */
+public class StripedCounters {
+	private static final int LONGS_PER_CACHE_LINE = 8;
+	private static final int MAX_STRIPES = 16;
+	private static final int STRIPES = stripeCount(MAX_STRIPES);
+
+	private final int width;
+	private final int stride;
+	private final AtomicLongArray counters;
+
+	/**
+	 * @param width the number of counters.
+	 */
+	public StripedCounters(int width) {
+		this.width    = width;
+		this.stride   = (width + LONGS_PER_CACHE_LINE - 1) / LONGS_PER_CACHE_LINE * LONGS_PER_CACHE_LINE;
+		this.counters = new AtomicLongArray(STRIPES * stride);
+	}
+
+	public int getWidth() { return width; }
+
+	public void increment(int counter) {
+		counters.incrementAndGet(offset() + counter);
+	}
+
+	public void add(int counter, long delta) {
+		counters.addAndGet(offset() + counter, delta);
+	}
+
+	/**
+	 * @return the sum of the counter's stripes.
+	 */
+	public long get(int counter) {
+		long sum = 0;
+		for (int i = counter; i < counters.length(); i += stride)
+			sum += counters.get(i);
+		return sum;
+	}
+
+	/**
+	 * @return the sums of all the counters.
+	 */
+	public long[] getAll() {
+		long[] sums = new long[width];
+		for (int i = 0; i < counters.length(); i++) {
+			int counter = i % stride;
+			if (counter < width)
+				sums[counter] += counters.get(i);
+		}
+		return sums;
+	}
+
+	/**
+	 * Set all counters to zero. Updates that happen at the same time may
+	 * or may not be lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < counters.length(); i++)
+			counters.set(i, 0L);
+	}
+
+	private int offset() {
+		return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * stride;
+	}
+
+	/**
+	 * @return the smallest power of two at least twice the number of 
+	 * processors, but no more than <code>max</code>.
+	 */
+	static int stripeCount(int max) {
+		int wanted = 2 * Runtime.getRuntime().availableProcessors();
+		int count  = 1;
+		while (count < wanted && count < max)
+			count <<= 1;
+		return count;
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.reporter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link WriterReporter} that doesn't write on the caller's thread. Messages
+ * at or above the threshold are put in a bounded, lock-free ring buffer, and
+ * a background thread formats and writes them in batches, flushing each 
+ * writer once per batch and at least every {@link #getFlushIntervalMillis()},
+ * so a burst of messages doesn't block the threads that report them on I/O.
+ * <p>
+ * When the buffer is full, the {@link OverflowPolicy} decides what happens.
+ * The thread is started with the first message; {@link #close()}, which is 
+ * also called when the JVM shuts down, writes all the queued messages and 
+ * stops it. Messages reported after that are written synchronously.
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+public class AsyncReporter extends WriterReporter {
+
+	/**
+	 * What to do with a message when the buffer is full.
+	 */
+	public static enum OverflowPolicy { 
+		/** Discard it. */
+		DROP, 
+		/** Discard it, and later report how many messages were discarded. */
+		COUNT, 
+		/** Wait for the background thread to make room. */
+		BLOCK 
+	}
+
+	public static final int  DEFAULT_CAPACITY              = 8192;
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+	private static final int  MAX_BATCH             = 256;
+	private static final long CLOSE_TIMEOUT_MILLIS  = 10000;
+
+	private int capacity = DEFAULT_CAPACITY;
+	private volatile long           flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+	private volatile OverflowPolicy overflowPolicy      = OverflowPolicy.COUNT;
+
+	private volatile Ring    ring         = null;
+	private volatile Thread  writerThread = null;
+	private volatile boolean closed       = false;
+	private Thread shutdownHook = null;
+
+	private final AtomicLong dropped = new AtomicLong();
+	// Written only by the background thread.
+	private volatile long flushed = 0;
+	private long droppedReported = 0;
+
+	/**
+	 * @return the number of messages the buffer holds.
+	 */
+	public synchronized int getCapacity() { return capacity; }
+
+	/**
+	 * Set the size of the buffer, rounded up to a power of two.
+	 * @throws IllegalStateException if messages have already been reported.
+	 */
+	public synchronized void setCapacity(int capacity) {
+		if (ring != null)
+			throw new IllegalStateException("The capacity of an AsyncReporter can't be changed once it has started.");
+		if (capacity < 1)
+			throw new IllegalArgumentException("Invalid capacity " + capacity + ". Expected 1 or more.");
+		int size = 2;
+		while (size < capacity)
+			size <<= 1;
+		this.capacity = size;
+	}
+
+	public long getFlushIntervalMillis() { return flushIntervalMillis; }
+
+	/**
+	 * Set the longest time a written message may wait to be flushed, which is
+	 * also how long the background thread sleeps when there are no messages.
+	 */
+	public void setFlushIntervalMillis(long millis) {
+		if (millis < 1)
+			throw new IllegalArgumentException("Invalid flush interval " + millis + ". Expected 1 or more milliseconds.");
+		flushIntervalMillis = millis;
+	}
+
+	public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+
+	public void setOverflowPolicy(OverflowPolicy policy) {
+		if (policy == null)
+			throw new IllegalArgumentException("The overflow policy can't be null.");
+		overflowPolicy = policy;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the string isn't an {@link OverflowPolicy}.
+	 */
+	public void setOverflowPolicyUsingString(String policy) throws IllegalArgumentException {
+		setOverflowPolicy(OverflowPolicy.valueOf(policy.trim().toUpperCase()));
+	}
+
+	/**
+	 * @return how many messages were discarded because the buffer was full.
+	 */
+	public long getDroppedCount() { return dropped.get(); }
+
+	/**
+	 * @return how many messages are waiting to be written.
+	 */
+	public int getPendingCount() { 
+		Ring r = ring;
+		return r != null ? r.size() : 0; 
+	}
+
+	@Override
+	protected void reportSupport(Severity level, Class<?> clazz, String message) {
+		if (closed) {
+			super.reportSupport(level, clazz, message);
+			return;
+		}
+		Ring    r = start();
+		Message m = new Message(level, clazz, message);
+		if (r.offer(m))
+			return;
+		if (overflowPolicy != OverflowPolicy.BLOCK) {
+			dropped.incrementAndGet();
+			return;
+		}
+		while (! r.offer(m)) {
+			if (closed) {
+				super.reportSupport(level, clazz, message);
+				return;
+			}
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(100000L);
+		}
+	}
+
+	/**
+	 * Wait until the messages reported so far have been written and flushed.
+	 */
+	public void flush() {
+		Ring r = ring;
+		if (r == null)
+			return;
+		long   target = r.claimed();
+		Thread t      = writerThread;
+		while (flushed < target && t.isAlive()) {
+			LockSupport.unpark(t);
+			LockSupport.parkNanos(1000000L);
+		}
+	}
+
+	/**
+	 * Write and flush all the queued messages and stop the background thread.
+	 * Calling it again has no effect.
+	 */
+	public void close() {
+		Thread t;
+		Thread hook;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			t    = writerThread;
+			hook = shutdownHook;
+		}
+		if (t == null)
+			return;
+		LockSupport.unpark(t);
+		try {
+			t.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		if (hook != null && Thread.currentThread() != hook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(hook);
+			} catch (IllegalStateException ise) {
+				// The JVM is already shutting down. The reporter is closed, 
+				// so this is written on this thread.
+				report(Severity.DEBUG, AsyncReporter.class, 
+						"Not removing the shutdown hook: {}", ise.getMessage());
+			}
+		}
+	}
+
+	private Ring start() {
+		Ring r = ring;
+		if (r != null)
+			return r;
+		synchronized (this) {
+			if (ring == null) {
+				Thread t = new Thread(new Runnable() {
+					public void run() { writeLoop(); }
+				}, "Contract4J5 AsyncReporter");
+				t.setDaemon(true);
+				ring         = new Ring(capacity);
+				writerThread = t;
+				t.start();
+				shutdownHook = new Thread(new Runnable() {
+					public void run() { close(); }
+				}, "Contract4J5 AsyncReporter shutdown");
+				Runtime.getRuntime().addShutdownHook(shutdownHook);
+			}
+			return ring;
+		}
+	}
+
+	private void writeLoop() {
+		Ring r = ring;
+		List<Writer> dirty = new ArrayList<Writer>();
+		long lastFlush = System.nanoTime();
+		while (true) {
+			// Read the flag before draining, so everything queued before 
+			// close() was called is written.
+			boolean done = closed;
+			int  count = writeBatch(r, dirty);
+			long now   = System.nanoTime();
+			if (count == 0 || now - lastFlush >= flushIntervalMillis * 1000000L) {
+				flushWriters(dirty);
+				flushed   = r.consumed();
+				lastFlush = now;
+			}
+			if (count == 0) {
+				if (done)
+					return;
+				LockSupport.parkNanos(flushIntervalMillis * 1000000L);
+			}
+		}
+	}
+
+	private int writeBatch(Ring r, List<Writer> dirty) {
+		int count = 0;
+		Message m;
+		while (count < MAX_BATCH && (m = r.poll()) != null) {
+			write(m.level, format(m.level, m.clazz, m.message), dirty);
+			count++;
+		}
+		long d = dropped.get();
+		if (d != droppedReported && overflowPolicy == OverflowPolicy.COUNT && 
+			Severity.WARN.compareTo(getThreshold()) >= 0) {
+			write(Severity.WARN, format(Severity.WARN, AsyncReporter.class, 
+					(d - droppedReported) + " messages were dropped because the queue was full."), dirty);
+		}
+		droppedReported = d;
+		return count;
+	}
+
+	private void write(Severity level, String text, List<Writer> dirty) {
+		Writer writer = getWriter(level);
+		if (writer == null)
+			return;
+		try {
+			writer.write(text);
+		} catch (IOException e) {
+			System.err.println ("Could not write to writer: ");
+			e.printStackTrace(System.err);
+		}
+		for (Writer w: dirty) {
+			if (w == writer)
+				return;
+		}
+		dirty.add(writer);
+	}
+
+	private void flushWriters(List<Writer> dirty) {
+		for (Writer writer: dirty) {
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				System.err.println ("Could not flush writer: ");
+				e.printStackTrace(System.err);
+			}
+		}
+		dirty.clear();
+	}
+
+	private static final class Message {
+		final Severity level;
+		final Class<?> clazz;
+		final String   message;
+
+		Message(Severity level, Class<?> clazz, String message) {
+			this.level   = level;
+			this.clazz   = clazz;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * A bounded buffer for many producers and one consumer. Each slot has a
+	 * sequence number: a producer claims the next position by incrementing 
+	 * the tail, stores its message, then publishes it by setting the slot's
+	 * sequence to the position plus one. The consumer takes the message when
+	 * it sees that sequence, and frees the slot for the next lap by setting
+	 * it to the position plus the capacity. No locks are used.
+	 */
+	private static final class Ring {
+		private final AtomicReferenceArray<Message> slots;
+		private final AtomicLongArray sequences;
+		private final int  mask;
+		private final AtomicLong tail = new AtomicLong();
+		private volatile long    head = 0;
+
+		Ring(int capacity) {
+			slots     = new AtomicReferenceArray<Message>(capacity);
+			sequences = new AtomicLongArray(capacity);
+			mask      = capacity - 1;
+			for (int i = 0; i < capacity; i++)
+				sequences.set(i, i);
+		}
+
+		boolean offer(Message m) {
+			while (true) {
+				long t    = tail.get();
+				int  i    = (int) t & mask;
+				long diff = sequences.get(i) - t;
+				if (diff == 0) {
+					if (tail.compareAndSet(t, t + 1)) {
+						slots.set(i, m);
+						sequences.set(i, t + 1);
+						return true;
+					}
+				} else if (diff < 0) {
+					// The slot still holds the message from the previous lap.
+					return false;
+				}
+			}
+		}
+
+		/** Called only by the consumer. */
+		Message poll() {
+			long h = head;
+			int  i = (int) h & mask;
+			if (sequences.get(i) != h + 1)
+				return null;
+			Message m = slots.get(i);
+			slots.set(i, null);
+			sequences.set(i, h + slots.length());
+			head = h + 1;
+			return m;
+		}
+
+		long claimed()  { return tail.get(); }
+		long consumed() { return head; }
+		int  size()     { return (int) Math.max(0, tail.get() - head); }
+	}
+
+	/**
+	 * Default constructor. Sets the threshold to {@link Severity#WARN}.
+	 */
+	public AsyncReporter() {
+		super();
+	}
+
+	public AsyncReporter(Severity threshold) {
+		super(threshold);
+	}
+
+	/**
+	 * @param writer to use for all severities.
+	 */
+	public AsyncReporter(Severity threshold, Writer writer) {
+		super(threshold, writer);
+	}
+}
@@ -30,6 +30,12 @@ package org.contract4j5.reporter;
 public class NullReporter implements Reporter {
 
 	public void report(Severity level, Class<?> clazz, String message) {}
+	public void report(Severity level, Class<?> clazz, String format, Object arg) {}
+	public void report(Severity level, Class<?> clazz, String format, Object arg1, Object arg2) {}
+	public void report(Severity level, Class<?> clazz, String format, Object... args) {}
+	public boolean isEnabled(Severity level) {
+		return false;
+	}
 	public Severity getThreshold() {
 		return Severity.OFF;
 	}
@@ -39,6 +39,37 @@ public interface Reporter {
 	 */
 	void report(Severity level, Class<?> clazz, String message);
 
+	/**
+	 * "Report" a message built from a format and one argument, but only if 
+	 * "level" is at or above the threshold, so nothing is built otherwise. 
+	 * Each "{}" in the format is replaced by the string value of the next
+	 * argument. Use this form on frequently-executed paths, rather than 
+	 * concatenating the message before the call.
+	 * @param level severity of the message, one of {@link Severity}
+	 * @param clazz the Class of the caller
+	 * @param format of the message, with a "{}" for each argument
+	 * @param arg the argument
+	 */
+	void report(Severity level, Class<?> clazz, String format, Object arg);
+
+	/**
+	 * Like {@link #report(Severity, Class, String, Object)}, with two arguments.
+	 */
+	void report(Severity level, Class<?> clazz, String format, Object arg1, Object arg2);
+
+	/**
+	 * Like {@link #report(Severity, Class, String, Object)}, with any number 
+	 * of arguments. Note that the argument array is created even when
+	 * nothing is reported; use {@link #isEnabled(Severity)} to avoid that.
+	 */
+	void report(Severity level, Class<?> clazz, String format, Object... args);
+
+	/**
+	 * @return true if a message at "level" would be reported. Use it to
+	 * avoid building expensive messages that would be discarded. 
+	 */
+	boolean isEnabled(Severity level);
+
 	/**
 	 * Get the threshold for reporting messages. Only those at or above the
 	 * threshold will actually get reported.
@@ -26,13 +26,62 @@ package org.contract4j5.reporter;
 public abstract class ReporterHelper implements Reporter {
 
 	public void report(Severity level, Class<?> clazz, String message) {
-		Severity threshold = getThreshold();
-		if (threshold.equals(Severity.OFF) || level.compareTo(threshold) < 0) {
+		if (isEnabled(level) == false) {
 			return;
 		}
 		reportSupport (level, clazz, (message == null ? "" : message));
 	}
 
+	public void report(Severity level, Class<?> clazz, String format, Object arg) {
+		if (isEnabled(level) == false) {
+			return;
+		}
+		reportSupport (level, clazz, formatMessage(format, arg));
+	}
+
+	public void report(Severity level, Class<?> clazz, String format, Object arg1, Object arg2) {
+		if (isEnabled(level) == false) {
+			return;
+		}
+		reportSupport (level, clazz, formatMessage(format, arg1, arg2));
+	}
+
+	public void report(Severity level, Class<?> clazz, String format, Object... args) {
+		if (isEnabled(level) == false) {
+			return;
+		}
+		reportSupport (level, clazz, formatMessage(format, args));
+	}
+
+	public boolean isEnabled(Severity level) {
+		Severity threshold = getThreshold();
+		return threshold.equals(Severity.OFF) == false && level.compareTo(threshold) >= 0;
+	}
+
+	/**
+	 * Replace each "{}" in the format with the string value of the next 
+	 * argument. Extra arguments are ignored and extra "{}" are left as is. 
+	 * @return the message, or "" if the format is null.
+	 */
+	public static String formatMessage(String format, Object... args) {
+		if (format == null) {
+			return "";
+		}
+		StringBuffer sb = new StringBuffer(format.length() + 16 * args.length);
+		int start = 0;
+		for (Object arg: args) {
+			int brace = format.indexOf("{}", start);
+			if (brace < 0) {
+				break;
+			}
+			sb.append(format, start, brace);
+			sb.append(arg);
+			start = brace + 2;
+		}
+		sb.append(format, start, format.length());
+		return sb.toString();
+	}
+
 	/**
 	 * Abstract support method implemented by derived classes to do the
 	 * actual reporting. See {@link Reporter#report(Severity,Class,String)} for expected
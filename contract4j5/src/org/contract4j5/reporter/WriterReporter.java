@@ -37,18 +37,26 @@ import org.contract4j5.utils.StringUtils;
 public class WriterReporter extends ReporterHelper {
 	protected void reportSupport (Severity level, Class<?> clazz, String message) {
 		try {
-			StringBuffer buff = new StringBuffer(256);
-			buff.append("[").append(level).append("] ");
-			String cname = clazz != null ? clazz.getSimpleName() : "<null>";
-			buff.append(cname).append(": ");
-			buff.append(message).append(StringUtils.newline());
-			writers[level.ordinal()].write(buff.toString());
+			writers[level.ordinal()].write(format(level, clazz, message));
 			writers[level.ordinal()].flush();
 		} catch (IOException e) {
 			System.err.println ("Could not flush writer: ");
 			e.printStackTrace(System.err);
 		}
 	}
+
+	/**
+	 * @return the line written for the message, e.g., 
+	 * "[WARN] MyClass: message", followed by a newline.
+	 */
+	protected String format (Severity level, Class<?> clazz, String message) {
+		StringBuffer buff = new StringBuffer(256);
+		buff.append("[").append(level).append("] ");
+		String cname = clazz != null ? clazz.getSimpleName() : "<null>";
+		buff.append(cname).append(": ");
+		buff.append(message).append(StringUtils.newline());
+		return buff.toString();
+	}
 	
 	private Writer[] writers = null; 
 	
@@ -233,7 +233,7 @@ public class ParentTestExpressionFinderImpl implements
 			}
 		} catch (NoSuchMethodException nsme) {
 			// Somewhat expensive setup for output, so don't do it unless we know we'll log...
-			if (getReporter().getThreshold().compareTo(Severity.INFO) >= 0) {
+			if (getReporter().isEnabled(Severity.INFO)) {
 				StringBuffer args = new StringBuffer(256);
 				for (Class<?> a: methodArgsTypes) {
 					args.append(a.toString());
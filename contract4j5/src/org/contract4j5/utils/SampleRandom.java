@@ -0,0 +1,55 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.utils;
+
+/**
+ * A fast, per-thread source of random numbers for sampling decisions, where
+ * statistical quality matters much less than cost. Each thread has its own
+ * xorshift generator, seeded from the clock and the thread's identity, so
+ * threads never contend. (<code>java.util.Random</code> is thread-safe, 
+ * but every call is a compare-and-set on shared state.)
+ */
+public class SampleRandom {
+	private static final class State {
+		long seed;
+		State(long seed) { this.seed = seed != 0 ? seed : 0x9E3779B97F4A7C15L; }
+	}
+
+	private static final ThreadLocal<State> state = new ThreadLocal<State>() {
+		protected State initialValue() {
+			Thread t = Thread.currentThread();
+			return new State(System.nanoTime() ^ (t.getId() * 0x9E3779B97F4A7C15L) ^ System.identityHashCode(t));
+		}
+	};
+
+	/**
+	 * @return a random number from 0, inclusive, to 2<sup>bits</sup>, exclusive.
+	 * @param bits from 1 to 31.
+	 */
+	public static int next(int bits) {
+		State s = state.get();
+		long x = s.seed;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		s.seed = x;
+		return (int) ((x * 0x2545F4914F6CDD1DL) >>> (64 - bits));
+	}
+}
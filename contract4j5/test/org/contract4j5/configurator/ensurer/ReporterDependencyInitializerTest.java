@@ -21,6 +21,7 @@ package org.contract4j5.configurator.ensurer;
 
 import org.contract4j5.controller.Contract4J;
 import org.contract4j5.reporter.Reporter;
+import org.contract4j5.reporter.ReporterHelper;
 import org.contract4j5.reporter.Severity;
 
 import junit.framework.TestCase;
@@ -33,6 +34,16 @@ public class ReporterDependencyInitializerTest extends TestCase {
 		public void report(Severity level, Class<?> clazz, String message) {
 			buff.append(message+"\t");
 		}
+		public void report(Severity level, Class<?> clazz, String format, Object arg) {
+			report(level, clazz, ReporterHelper.formatMessage(format, arg));
+		}
+		public void report(Severity level, Class<?> clazz, String format, Object arg1, Object arg2) {
+			report(level, clazz, ReporterHelper.formatMessage(format, arg1, arg2));
+		}
+		public void report(Severity level, Class<?> clazz, String format, Object... args) {
+			report(level, clazz, ReporterHelper.formatMessage(format, args));
+		}
+		public boolean isEnabled(Severity level) { return true; }
 		public void setThreshold(Severity level) {}
 
 		public void setThresholdUsingString(String level)
@@ -40,11 +40,17 @@ import org.contract4j5.configurator.Configurator;
 import org.contract4j5.configurator.properties.PropertiesConfigurator;
 import org.contract4j5.configurator.properties.PropertiesConfigurator.EnabledPropertyKeys;
 import org.contract4j5.context.TestContext;
+import org.contract4j5.contract.CostTier;
 import org.contract4j5.controller.Contract4J;
 import org.contract4j5.enforcer.ContractEnforcer;
 import org.contract4j5.enforcer.NullContractEnforcer;
+import org.contract4j5.interpreter.ExpressionCache;
 import org.contract4j5.interpreter.ExpressionInterpreter;
 import org.contract4j5.interpreter.TestResult;
+import org.contract4j5.interpreter.bytecode.BytecodeExpressionInterpreter;
+import org.contract4j5.interpreter.jexl.JexlExpressionInterpreter;
+import org.contract4j5.interpreter.snapshot.SnapshotPolicy;
+import org.contract4j5.interpreter.snapshot.StandardSnapshotStrategy;
 import org.contract4j5.reporter.Reporter;
 import org.contract4j5.reporter.Severity;
 import org.contract4j5.reporter.WriterReporter;
@@ -68,6 +74,15 @@ public class PropertiesConfiguratorTest extends TestCase {
 		}
 		public void report(Severity level, Class<?> clazz, String message) {
 		}
+		public void report(Severity level, Class<?> clazz, String format, Object arg) {
+		}
+		public void report(Severity level, Class<?> clazz, String format, Object arg1, Object arg2) {
+		}
+		public void report(Severity level, Class<?> clazz, String format, Object... args) {
+		}
+		public boolean isEnabled(Severity level) {
+			return false;
+		}
 
 		public void setThreshold(Severity level) {
 		}
@@ -545,6 +560,86 @@ public class PropertiesConfiguratorTest extends TestCase {
 		assertTrue (ei.getTreatEmptyTestExpressionAsValidTest());
 	}
 
+	public void testEnablementOverridesWithPassedInProps() {
+		Properties props = new Properties();
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + "Contract.com.example.hot", "false");
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + "Pre.com.example.hot.Cache.put", "true");
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.SAMPLE_RATE_PREFIX + "Invar.com.example", "0.01");
+		try {
+			new PropertiesConfigurator(props).configure();
+			assertEquals(Boolean.FALSE, Contract4J.getEnablementRegistry().getOverride("Contract.com.example.hot"));
+			assertTrue (Contract4J.getEnablementRegistry().isEnabled("com.example.hot.Cache", "put", Contract4J.TestType.Pre));
+			assertFalse(Contract4J.getEnablementRegistry().isEnabled("com.example.hot.Cache", "get", Contract4J.TestType.Pre));
+			assertEquals(0.01, Contract4J.getEnablementRegistry().getSampleRate("com.example.Other", null, Contract4J.TestType.Invar), 0.0);
+		} finally {
+			Contract4J.getEnablementRegistry().clear();
+		}
+	}
+
+	public void testSnapshotStrategiesWithPassedInProps() {
+		Properties props = new Properties();
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.SNAPSHOT_TYPE_PREFIX + "java.util.List", "shallow");
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.SNAPSHOT_SITE_PREFIX + "com.example.Ledger.post", "DEEP");
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.SnapshotImmutableTypes.name(), "com.example.Money, com.example.Id");
+		try {
+			new PropertiesConfigurator(props).configure();
+			SnapshotPolicy policy = Contract4J.getSnapshotPolicy();
+			assertSame(StandardSnapshotStrategy.SHALLOW, policy.getTypeStrategies().get("java.util.List"));
+			assertSame(StandardSnapshotStrategy.DEEP, policy.getSiteStrategies().get("com.example.Ledger.post"));
+			assertTrue(policy.getImmutableTypes().contains("com.example.Money"));
+			assertTrue(policy.getImmutableTypes().contains("com.example.Id"));
+		} finally {
+			Contract4J.getSnapshotPolicy().clear();
+		}
+	}
+
+	public void testExpressionCacheWithPassedInProps() {
+		Properties props = new Properties();
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.ExpressionInterpreter.name(), 
+				JexlExpressionInterpreter.class.getName());
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.ExpressionInterpreterCacheCapacity.name(), "16");
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.ExpressionInterpreterCacheEvictionPolicy.name(), "lfu");
+		new PropertiesConfigurator(props).configure();
+		ExpressionInterpreter ei = c4j.getContractEnforcer().getExpressionInterpreter();
+		ExpressionCache<?> cache = ((JexlExpressionInterpreter) ei).getExpressionCache();
+		assertEquals(16, cache.getCapacity());
+		assertEquals(ExpressionCache.EvictionPolicy.LFU, cache.getEvictionPolicy());
+	}
+
+	public void testCompileToBytecodeWithPassedInProps() {
+		// Off by default: the configured interpreter evaluates every test.
+		Properties props = new Properties();
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.ExpressionInterpreter.name(), 
+				JexlExpressionInterpreter.class.getName());
+		new PropertiesConfigurator(props).configure();
+		assertFalse(c4j.getContractEnforcer().getExpressionInterpreter() instanceof BytecodeExpressionInterpreter);
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.ExpressionInterpreterCompileToBytecode.name(), "true");
+		new PropertiesConfigurator(props).configure();
+		assertTrue(c4j.getContractEnforcer().getExpressionInterpreter() instanceof BytecodeExpressionInterpreter);
+	}
+
+	public void testMaxTierWithPassedInProps() {
+		Properties props = new Properties();
+		props.setProperty(PropertiesConfigurator.PROPERTY_PREFIX + 
+				PropertiesConfigurator.KnownBeanKeys.MaxTier.name(), "moderate");
+		try {
+			new PropertiesConfigurator(props).configure();
+			assertEquals(CostTier.MODERATE, Contract4J.getInstance().getMaxTier());
+			assertEquals(CostTier.MODERATE, Contract4J.getEnablementRegistry().getMaxTier());
+		} finally {
+			Contract4J.getInstance().setMaxTier(CostTier.EXPENSIVE);
+		}
+	}
+
 	public void testEnableContractFlag() {
 		setupEnabledFlags(false, false, false);
 		checkEnabled(0, true, true, true, true);
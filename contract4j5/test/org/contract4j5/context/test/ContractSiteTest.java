@@ -0,0 +1,318 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextFrame;
+import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.contract.Contract;
+import org.contract4j5.contract.CostTier;
+import org.contract4j5.contract.Pre;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.controller.EnablementRegistry;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.EvaluationTier;
+import org.contract4j5.metrics.ContractMetrics;
+import org.contract4j5.metrics.MetricsRegistry;
+
+public class ContractSiteTest extends TestCase {
+	@Contract
+	static class Account {
+		int balance;
+		Account(int balance) { this.balance = balance; }
+		@Pre(value = "$args[0] > 0", budgetMicros = 100)
+		void withdraw(int amount) { balance -= amount; }
+		@Pre(value = "$args[0] > 0", tier = CostTier.EXPENSIVE)
+		void transfer(int amount) { balance -= amount; }
+	}
+
+	private ContractSite site;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Account prototypeAccount = new Account(1);
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "deposit", 
+				new Instance(Account.class.getName(), Account.class, prototypeAccount), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				new Instance("", Integer.TYPE, null), "Account.java", 42);
+		prototype.setActualTestExpression("$args[0] > 0 && $return >= 0");
+		site = new ContractSite(prototype, new String[] { "amount" }, new Class<?>[] { Integer.TYPE });
+	}
+
+	public void testSiteCapturesPerSiteData() {
+		assertEquals("$args[0] > 0", site.getTestExpression());
+		assertEquals("$args[0] > 0 && $return >= 0", site.getActualTestExpression());
+		assertEquals("deposit", site.getItemName());
+		assertEquals(Account.class, site.getInstanceType());
+		assertEquals(Integer.TYPE,  site.getResultType());
+		assertNull(site.getFieldType());
+		assertEquals("Account.java", site.getFileName());
+		assertEquals(42, site.getLineNumber());
+		assertNull(site.getInternalTestExpression());
+	}
+
+	public void testFramesHaveTheirOwnValues() {
+		Account a1 = new Account(10);
+		Account a2 = new Account(20);
+		TestContext f1 = site.newFrame(a1, null, new Object[] { new Integer(5) });
+		TestContext f2 = site.newFrame(a2, null, new Object[] { new Integer(7) });
+		f1.getMethodResult().setValue(new Integer(15));
+		Map<String,Object> old = new HashMap<String,Object>();
+		old.put("$this.balance", new Integer(10));
+		f1.setOldValuesMap(old);
+
+		assertSame(a1, f1.getInstance().getValue());
+		assertSame(a2, f2.getInstance().getValue());
+		assertEquals(new Integer(5), f1.getMethodArgs()[0].getValue());
+		assertEquals(new Integer(7), f2.getMethodArgs()[0].getValue());
+		assertEquals("amount", f2.getMethodArgs()[0].getItemName());
+		assertEquals(new Integer(15), f1.getMethodResult().getValue());
+		assertNull(f2.getMethodResult().getValue());
+		assertEquals(1, f1.getOldValuesMap().size());
+		assertTrue(f2.getOldValuesMap().isEmpty());
+		assertNull(f1.getField());
+		assertEquals("deposit", f2.getItemName());
+		assertEquals(42, f2.getLineNumber());
+	}
+
+	public void testInternalTestExpressionIsSharedThroughTheSite() {
+		TestContext f1 = site.newFrame(new Account(1), null, new Object[] { new Integer(1) });
+		TestContext f2 = site.newFrame(new Account(2), null, new Object[] { new Integer(2) });
+		f1.setInternalTestExpression(" c4jArgs[0] > 0 ");
+		assertEquals("c4jArgs[0] > 0", f2.getInternalTestExpression());
+		assertEquals("c4jArgs[0] > 0", site.getInternalTestExpression());
+	}
+
+	public void testPerSiteDataCantBeChangedThroughAFrame() {
+		TestContextFrame frame = site.newFrame(new Account(1), null, null);
+		assertSame(site, frame.getSite());
+		try {
+			frame.setActualTestExpression("true");
+			fail();
+		} catch (UnsupportedOperationException uoe) {
+			assertEquals("$args[0] > 0 && $return >= 0", frame.getActualTestExpression());
+		}
+	}
+
+	public void testFieldSites() {
+		TestContext prototype = new TestContextImpl("balance >= 0", "balance", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)),
+				new Instance("balance", Integer.TYPE, new Integer(1)), null, null, "Account.java", 43);
+		ContractSite fieldSite = new ContractSite(prototype, null, null);
+		TestContext frame = fieldSite.newFrame(new Account(3), new Integer(3), null);
+		assertEquals("balance", frame.getField().getItemName());
+		assertEquals(Integer.TYPE, frame.getField().getClazz());
+		assertEquals(new Integer(3), frame.getField().getValue());
+		assertNull(frame.getMethodArgs());
+		assertNull(frame.getMethodResult());
+	}
+
+	public void testEnablementFollowsTheRegistry() {
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "deposit", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				null, "Account.java", 42);
+		ContractSite preSite = new ContractSite(prototype, new String[] { "amount" }, 
+				new Class<?>[] { Integer.TYPE }, Contract4J.TestType.Pre, Account.class.getName(), "deposit");
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		try {
+			assertTrue(site.isEnabled());  // No test type, so always enabled.
+			assertTrue(preSite.isEnabled());
+			registry.setEnabled(Account.class.getName() + ".deposit", Contract4J.TestType.Pre, false);
+			assertFalse(preSite.isEnabled());
+			assertTrue(site.isEnabled());
+			registry.setEnabled(getClass().getPackage().getName(), null, true);
+			assertFalse(preSite.isEnabled());
+			registry.clear();
+			assertTrue(preSite.isEnabled());
+		} finally {
+			registry.clear();
+		}
+	}
+
+	public void testSitesEarnTrustAndLoseItOnFailureOrReconfiguration() {
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "deposit", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				null, "Account.java", 45);
+		ContractSite preSite = new ContractSite(prototype, new String[] { "amount" }, 
+				new Class<?>[] { Integer.TYPE }, Contract4J.TestType.Pre, Account.class.getName(), "deposit");
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		try {
+			registry.setTrustThreshold(3);
+			registry.setMaxTrustInterval(8);
+			// The first 3 passes earn trust, then the gaps between checks grow: 2, 4, 8, 8.
+			int[] expectedIntervals = { 1, 1, 1, 2, 4, 8, 8 };
+			for (int expected: expectedIntervals) {
+				assertTrue(preSite.shouldEvaluate());
+				preSite.recordResult(true);
+				assertEquals(expected, preSite.getCheckInterval());
+				for (int i = 1; i < expected; i++)
+					assertFalse(preSite.shouldEvaluate());
+			}
+			assertTrue(preSite.shouldEvaluate());
+			preSite.recordResult(false);
+			assertEquals(1, preSite.getCheckInterval());
+			assertTrue(preSite.shouldEvaluate());
+
+			for (int i = 0; i < 5; i++)
+				preSite.recordResult(true);
+			assertEquals(4, preSite.getCheckInterval());
+			assertFalse(preSite.shouldEvaluate());
+			registry.enable("Pre." + Account.class.getName());
+			assertTrue(preSite.shouldEvaluate());
+			assertEquals(1, preSite.getCheckInterval());
+
+			// Sites that aren't in the registry are never trusted.
+			for (int i = 0; i < 5; i++)
+				site.recordResult(true);
+			assertEquals(1, site.getCheckInterval());
+		} finally {
+			registry.clear();
+			registry.setTrustThreshold(0);
+			registry.setMaxTrustInterval(EnablementRegistry.DEFAULT_MAX_TRUST_INTERVAL);
+		}
+	}
+
+	public void testSitesThatExceedTheirBudgetAreSuspendedAndProbed() throws Exception {
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "withdraw", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				null, "Account.java", 46);
+		Pre pre = Account.class.getDeclaredMethod("withdraw", Integer.TYPE).getAnnotation(Pre.class);
+		ContractSite preSite = new ContractSite(prototype, new String[] { "amount" }, 
+				new Class<?>[] { Integer.TYPE }, Contract4J.TestType.Pre, Account.class.getName(), "withdraw", pre);
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		try {
+			registry.setBudgetOverruns(3);
+			registry.setSuspensionMillis(50);
+			assertTrue(preSite.shouldEvaluate());
+			assertEquals(100, preSite.getDeclaredBudgetMicros());
+			assertEquals(100000, preSite.getBudgetNanos());
+			assertFalse(preSite.recordCost(100000));
+			assertFalse(preSite.recordCost(200000));
+			assertFalse(preSite.recordCost(200000));
+			assertTrue(preSite.recordCost(200000));
+			assertTrue(preSite.isSuspended());
+			assertEquals(200000, preSite.getLastCostNanos());
+			assertFalse(preSite.shouldEvaluate());
+
+			// After the suspension, one call is evaluated as a probe. Only a 
+			// probe within budget resumes the site.
+			Thread.sleep(60);
+			assertTrue(preSite.shouldEvaluate());
+			assertFalse(preSite.shouldEvaluate());
+			assertFalse(preSite.recordCost(300000));
+			assertTrue(preSite.isSuspended());
+			Thread.sleep(60);
+			assertTrue(preSite.shouldEvaluate());
+			assertTrue(preSite.recordCost(50000));
+			assertFalse(preSite.isSuspended());
+			assertTrue(preSite.shouldEvaluate());
+
+			// A configured budget overrides the annotation's.
+			registry.setBudget("Pre." + Account.class.getName(), 0);
+			assertTrue(preSite.shouldEvaluate());
+			assertEquals(0, preSite.getBudgetNanos());
+			assertFalse(preSite.recordCost(Long.MAX_VALUE));
+		} finally {
+			registry.clear();
+			registry.setBudgetOverruns(EnablementRegistry.DEFAULT_BUDGET_OVERRUNS);
+			registry.setSuspensionMillis(EnablementRegistry.DEFAULT_SUSPENSION_MILLIS);
+		}
+	}
+
+	public void testSitesAboveTheMaxTierAreNotEvaluated() throws Exception {
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "transfer", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				null, "Account.java", 47);
+		Pre pre = Account.class.getDeclaredMethod("transfer", Integer.TYPE).getAnnotation(Pre.class);
+		ContractSite preSite = new ContractSite(prototype, new String[] { "amount" }, 
+				new Class<?>[] { Integer.TYPE }, Contract4J.TestType.Pre, Account.class.getName(), "transfer", pre);
+		assertEquals(CostTier.EXPENSIVE, preSite.getTier());
+		assertEquals(CostTier.CHEAP, site.getTier());
+		Contract4J c4j = Contract4J.getInstance();
+		try {
+			assertTrue(preSite.shouldEvaluate());
+			c4j.setMaxTier(CostTier.MODERATE);
+			assertFalse(preSite.shouldEvaluate());
+			assertFalse(preSite.isEnabled());
+			c4j.setMaxTier(CostTier.EXPENSIVE);
+			assertTrue(preSite.shouldEvaluate());
+		} finally {
+			c4j.setMaxTier(CostTier.EXPENSIVE);
+		}
+	}
+
+	public void testSampledSitesEvaluateAFractionOfTheCalls() {
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "deposit", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				null, "Account.java", 44);
+		ContractSite preSite = new ContractSite(prototype, new String[] { "amount" }, 
+				new Class<?>[] { Integer.TYPE }, Contract4J.TestType.Pre, Account.class.getName(), "deposit");
+		EnablementRegistry registry = Contract4J.getEnablementRegistry();
+		MetricsRegistry    metrics  = Contract4J.getMetricsRegistry();
+		try {
+			metrics.setEnabled(true);
+			registry.setSampleRate("Pre." + Account.class.getName(), 0.25);
+			int evaluated = 0;
+			for (int i = 0; i < 10000; i++) {
+				if (preSite.shouldEvaluate())
+					evaluated++;
+			}
+			assertTrue(Integer.toString(evaluated), evaluated > 2000 && evaluated < 3000);
+			ContractMetrics m = metrics.getMetrics(preSite);
+			assertEquals(10000 - evaluated, m.getSkipped());
+
+			registry.setSampleRate("Pre." + Account.class.getName(), 0.0);
+			assertFalse(preSite.shouldEvaluate());
+			registry.removeSampleRate("Pre." + Account.class.getName());
+			assertTrue(preSite.shouldEvaluate());
+			assertTrue(site.shouldEvaluate());
+		} finally {
+			registry.clear();
+			metrics.setEnabled(false);
+		}
+	}
+
+	public void testEvaluationTierIsRecordedInTheMetrics() {
+		TestContext prototype = new TestContextImpl("$args[0] > 0", "deposit", 
+				new Instance(Account.class.getName(), Account.class, new Account(1)), null,
+				new Instance[] { new Instance("amount", Integer.TYPE, new Integer(1)) },
+				null, "Account.java", 46);
+		ContractSite tierSite = new ContractSite(prototype, new String[] { "amount" }, 
+				new Class<?>[] { Integer.TYPE }, Contract4J.TestType.Pre, Account.class.getName(), "deposit");
+		tierSite.setEvaluationTier(EvaluationTier.DIRECT);
+		ContractMetrics m = new MetricsRegistry().getMetrics(tierSite);
+		assertEquals("DIRECT", m.getEvaluationTier());
+		tierSite.setEvaluationTier(EvaluationTier.SCRIPT);
+		assertEquals(EvaluationTier.SCRIPT, tierSite.getEvaluationTier());
+		assertEquals("SCRIPT", m.getEvaluationTier());
+		assertTrue(m.toString(), m.toString().contains("tier = SCRIPT"));
+	}
+}
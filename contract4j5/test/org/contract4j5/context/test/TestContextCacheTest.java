@@ -0,0 +1,108 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.context.test;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContextCache;
+import org.contract4j5.context.TestContextImpl;
+
+public class TestContextCacheTest extends TestCase {
+	// Stand-ins for the join points' static parts, which are only compared by identity.
+	private Object staticPart1 = new Object();
+	private Object staticPart2 = new Object();
+
+	private TestContextCache cache;
+	private ContractSite site1;
+	private ContractSite site2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache = new TestContextCache();
+		cache.enableCachePuts();
+		site1 = makeSite("x > 0", 10);
+		site2 = makeSite("y > 0", 20);
+	}
+
+	private ContractSite makeSite(String expr, int line) {
+		return new ContractSite(
+				new TestContextImpl(expr, "item", null, null, null, null, "Foo.java", line), null, null);
+	}
+
+	public void testCachingIsEnabledByDefault() {
+		assertSame(site1, cache.put(staticPart1, "Pre", site1));
+		assertSame(site1, cache.get(staticPart1, "Pre"));
+	}
+
+	public void testSitesAreKeyedByStaticPartIdentityAndTestType() {
+		cache.put(staticPart1, "Pre",  site1);
+		cache.put(staticPart1, "Post", site2);
+		assertSame(site1, cache.get(staticPart1, "Pre"));
+		assertSame(site2, cache.get(staticPart1, "Post"));
+		assertNull(cache.get(staticPart2, "Pre"));
+		assertNull(cache.get(staticPart1, "Invar"));
+		assertEquals(2, cache.size());
+	}
+
+	public void testSitesCanBeQualifiedByTypeAndName() {
+		cache.put(staticPart1, "Invar", String.class,  "a", site1);
+		cache.put(staticPart1, "Invar", Integer.class, "a", site2);
+		assertSame(site1, cache.get(staticPart1, "Invar", String.class,  "a"));
+		assertSame(site2, cache.get(staticPart1, "Invar", Integer.class, "a"));
+		assertSame(site1, cache.get(staticPart1, "Invar", String.class,  new String("a")));
+		assertNull(cache.get(staticPart1, "Invar", String.class, "b"));
+		assertNull(cache.get(staticPart1, "Invar", String.class));
+		assertNull(cache.get(staticPart1, "Invar"));
+	}
+
+	public void testTheFirstSitePutForAKeyWins() {
+		assertSame(site1, cache.put(staticPart1, "Pre", site1));
+		assertSame(site1, cache.put(staticPart1, "Pre", site2));
+		assertSame(site1, cache.get(staticPart1, "Pre"));
+		assertEquals(1, cache.size());
+	}
+
+	public void testStatistics() {
+		assertNull(cache.get(staticPart1, "Pre"));
+		cache.put(staticPart1, "Pre", site1);
+		for (int i = 0; i < 5; i++)
+			cache.get(staticPart1, "Pre");
+		assertEquals(5, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+		cache.clear();
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertEquals(0, cache.size());
+		assertNull(cache.get(staticPart1, "Pre"));
+	}
+
+	public void testNothingIsCachedWhenPutsAreDisabled() {
+		cache.disableCachePuts();
+		try {
+			assertSame(site1, cache.put(staticPart1, "Pre", site1));
+			assertNull(cache.get(staticPart1, "Pre"));
+			assertEquals(0, cache.size());
+		} finally {
+			cache.enableCachePuts();
+		}
+	}
+}
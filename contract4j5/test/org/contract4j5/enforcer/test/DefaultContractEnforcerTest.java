@@ -34,6 +34,7 @@ import org.contract4j5.enforcer.defaultimpl.DefaultContractEnforcer;
 import org.contract4j5.errors.ContractError;
 import org.contract4j5.errors.TestSpecificationError;
 import org.contract4j5.interpreter.ExpressionInterpreter;
+import org.contract4j5.interpreter.TestResult;
 import org.contract4j5.interpreter.bsf.BSFExpressionInterpreterAdapter;
 import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
 import org.contract4j5.interpreter.jexl.JexlExpressionInterpreter;
@@ -46,8 +47,22 @@ import org.contract4j5.reporter.WriterReporter;
  * TestCase.
  */
 public class DefaultContractEnforcerTest extends TestCase {
+	/** Counts the failure messages it builds. */
+	static class CountingContractEnforcer extends DefaultContractEnforcer {
+		int messages = 0;
+		@Override
+		protected String makeFailureMessage(String testExpression, String testPrefix, 
+				String extraMessage, String fileName, String lineNumber, String itemName,
+				TestResult testResult) {
+			messages++;
+			return super.makeFailureMessage(testExpression, testPrefix, extraMessage, 
+					fileName, lineNumber, itemName, testResult);
+		}
+	}
+
 	Contract4J c4j;
 	ContractEnforcer contractEnforcer;
+	CountingContractEnforcer countingEnforcer;
 	ExpressionInterpreter interpreter;
 	Reporter              reporter;
 	protected void setUp() throws Exception {
@@ -60,6 +75,7 @@ public class DefaultContractEnforcerTest extends TestCase {
 		contractEnforcer = c4j.getContractEnforcer();
 		contractEnforcer.setIncludeStackTrace(true);
 		interpreter = contractEnforcer.getExpressionInterpreter();
+		countingEnforcer = new CountingContractEnforcer();
 	}
 
 	public void testConstructor1() {
@@ -115,6 +131,68 @@ public class DefaultContractEnforcerTest extends TestCase {
 		assertFalse(str.contains("Stack Trace:"));
 	}
 
+	public void testRepeatedFailuresAreReportedInFullOnlyOnce() {
+		for (int i = 0; i < 5; i++) {
+			try {
+				contractEnforcer.fail("test", "Invar", "Repeated failure", TestContextImpl.emptyTestContext, null);
+				fail();
+			} catch (ContractError ce) {
+				// Empty: expected
+			}
+		}
+		WriterReporter wr = (WriterReporter) reporter;
+		String str = wr.getWriter(Severity.FATAL).toString();
+		assertEquals(str, str.indexOf("Repeated failure"), str.lastIndexOf("Repeated failure"));
+		assertEquals(4, ((DefaultContractEnforcer) contractEnforcer).getFailureAggregator().getSuppressedCount());
+	}
+
+	public void testStacklessErrors() {
+		DefaultContractEnforcer enforcer = (DefaultContractEnforcer) contractEnforcer;
+		enforcer.setStacklessErrors(true);
+		assertTrue(enforcer.getStacklessErrors());
+		try {
+			enforcer.fail("test", "Pre", "Stackless", TestContextImpl.emptyTestContext, null);
+			fail();
+		} catch (ContractError ce) {
+			assertEquals(0, ce.getStackTrace().length);
+			assertTrue(ce.getMessage(), ce.getMessage().contains("Pre test \"test\""));
+		}
+		try {
+			enforcer.fail("test", "Pre", "Stackless", TestContextImpl.emptyTestContext, new TestSpecificationError());
+			fail();
+		} catch (TestSpecificationError tse) {
+			assertEquals(0, tse.getStackTrace().length);
+		}
+	}
+
+	public void testMessagesAreOnlyBuiltWhenTheyAreNeeded() {
+		countingEnforcer.setReportErrors(false);
+		try {
+			countingEnforcer.fail("test", "Pre", "Lazy", TestContextImpl.emptyTestContext, null);
+			fail();
+		} catch (ContractError ce) {
+			assertTrue(ce.getStackTrace().length > 0);
+			assertEquals(0, countingEnforcer.messages);
+			assertTrue(ce.getMessage(), ce.getMessage().contains("Pre test \"test\""));
+			assertEquals(1, countingEnforcer.messages);
+		}
+	}
+
+	public void testLateMessagesDescribeTheContextAtTheFailure() {
+		countingEnforcer.setReportErrors(false);
+		TestContextImpl context = 
+			new TestContextImpl("test", "item", null, null, null, null, "Before.java", 10);
+		try {
+			countingEnforcer.fail("test", "Pre", "Lazy", context, null);
+			fail();
+		} catch (ContractError ce) {
+			context.setFileName("After.java");
+			context.setLineNumber(20);
+			assertEquals(0, countingEnforcer.messages);
+			assertTrue(ce.getMessage(), ce.getMessage().contains("(Before.java:10)"));
+		}
+	}
+
 	public void testHandleFailureStringThrowable() {
 		try {
 			contractEnforcer.fail("test", "Invar", "A message",	TestContextImpl.emptyTestContext, new Throwable());
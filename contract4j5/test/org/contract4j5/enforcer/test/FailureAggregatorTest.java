@@ -0,0 +1,65 @@
+package org.contract4j5.enforcer.test;
+
+import org.contract4j5.enforcer.FailureAggregator;
+
+import junit.framework.TestCase;
+
+public class FailureAggregatorTest extends TestCase {
+	private FailureAggregator aggregator;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		aggregator = new FailureAggregator();
+	}
+
+	public void testFirstFailureOfEachSiteAndCauseIsReportedInFull() {
+		assertEquals(FailureAggregator.FIRST, aggregator.record("a", null));
+		assertEquals(FailureAggregator.FIRST, aggregator.record("b", null));
+		assertEquals(FailureAggregator.FIRST, aggregator.record("a", new IllegalStateException()));
+		assertEquals(FailureAggregator.FIRST, aggregator.record("a", new NullPointerException()));
+		assertEquals(0, aggregator.getSuppressedCount());
+	}
+
+	public void testRepeatedFailuresAreCountedUntilTheIntervalPasses() throws InterruptedException {
+		aggregator.setSummaryIntervalMillis(50);
+		assertEquals(FailureAggregator.FIRST, aggregator.record("a", null));
+		for (int i = 0; i < 10; i++)
+			assertEquals(FailureAggregator.SUPPRESS, aggregator.record("a", null));
+		assertEquals(10, aggregator.getSuppressedCount());
+		Thread.sleep(60);
+		assertEquals(11, aggregator.record("a", null));
+		assertEquals(0, aggregator.getSuppressedCount());
+		assertEquals(FailureAggregator.SUPPRESS, aggregator.record("a", null));
+	}
+
+	public void testClearForgetsFailures() {
+		aggregator.record("a", null);
+		aggregator.record("a", null);
+		aggregator.clear();
+		assertEquals(0, aggregator.getSuppressedCount());
+		assertEquals(FailureAggregator.FIRST, aggregator.record("a", null));
+	}
+
+	public void testGroupsThatStopFailingAreDropped() throws InterruptedException {
+		aggregator.setSummaryIntervalMillis(20);
+		aggregator.record("a", null);
+		aggregator.record("a", null);
+		assertEquals(1, aggregator.getGroupCount());
+		Thread.sleep(50);
+		assertEquals(FailureAggregator.FIRST, aggregator.record("b", null));
+		assertEquals(1, aggregator.getGroupCount());
+		assertEquals(1, aggregator.getSuppressedCount());
+		assertEquals(FailureAggregator.FIRST, aggregator.record("a", null));
+		assertEquals(2, aggregator.getGroupCount());
+	}
+
+	public void testZeroIntervalReportsEveryFailure() {
+		aggregator.setSummaryIntervalMillis(0);
+		for (int i = 0; i < 3; i++)
+			assertEquals(FailureAggregator.FIRST, aggregator.record("a", null));
+		try {
+			aggregator.setSummaryIntervalMillis(-1);
+			fail();
+		} catch (IllegalArgumentException iae) {}
+	}
+}
@@ -0,0 +1,61 @@
+package org.contract4j5.errors.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.contract4j5.errors.ContractError;
+import org.contract4j5.errors.StacklessContractError;
+import org.contract4j5.errors.StacklessTestSpecificationError;
+import org.contract4j5.errors.TestSpecificationError;
+
+import junit.framework.TestCase;
+
+public class ContractErrorTest extends TestCase {
+	private static class CountingSource implements ContractError.MessageSource {
+		int calls = 0;
+		public String getMessage() {
+			calls++;
+			return "lazy message";
+		}
+	}
+
+	public void testEagerMessagesAreUnchanged() {
+		assertEquals("eager", new ContractError("eager").getMessage());
+		assertNull(new ContractError().getMessage());
+	}
+
+	public void testLazyMessageIsBuiltOnceWhenFirstAskedFor() {
+		CountingSource source = new CountingSource();
+		Throwable cause = new IllegalStateException();
+		ContractError ce = new ContractError(source, cause);
+		assertEquals(0, source.calls);
+		assertSame(cause, ce.getCause());
+		assertEquals("lazy message", ce.getMessage());
+		assertEquals("lazy message", ce.getMessage());
+		assertTrue(ce.toString().endsWith(": lazy message"));
+		assertEquals(1, source.calls);
+	}
+
+	public void testStacklessErrorsHaveNoStackTrace() {
+		CountingSource source = new CountingSource();
+		ContractError ce = new StacklessContractError(source, null);
+		assertEquals(0, ce.getStackTrace().length);
+		assertEquals(0, source.calls);
+		TestSpecificationError tse = new StacklessTestSpecificationError(source, null);
+		assertEquals(0, tse.getStackTrace().length);
+		assertEquals("lazy message", tse.getMessage());
+	}
+
+	public void testLazyMessageIsSerialized() throws Exception {
+		ContractError ce = new StacklessContractError(new CountingSource(), null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(ce);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		ContractError copy = (ContractError) in.readObject();
+		assertEquals("lazy message", copy.getMessage());
+	}
+}
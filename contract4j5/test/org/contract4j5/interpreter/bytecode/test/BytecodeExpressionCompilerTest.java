@@ -0,0 +1,183 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.bytecode.BytecodeExpressionCompiler;
+import org.contract4j5.interpreter.bytecode.CompiledTest;
+import org.contract4j5.interpreter.bytecode.UncompilableExpressionException;
+
+public class BytecodeExpressionCompilerTest extends TestCase {
+	public static class Account {
+		public  int    publicCount = 3;
+		private String name;
+		private long   balance;
+		private boolean open = true;
+		private Map<String, String> attributes = new HashMap<String, String>();
+
+		public String  getName()    { return name; }
+		public long    getBalance() { return balance; }
+		public boolean isOpen()     { return open; }
+		public Map<String, String> getAttributes() { return attributes; }
+		public boolean canWithdraw(long amount) { return amount <= balance; }
+		public Boolean hasName()    { return Boolean.valueOf(name != null); }
+		public float   getRate()    { return 0.5f; }
+
+		public Account(String name, long balance) {
+			this.name    = name;
+			this.balance = balance;
+		}
+	}
+
+	static class Hidden {
+		public int getValue() { return 1; }
+	}
+
+	private BytecodeExpressionCompiler compiler;
+	private Account account;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		compiler = new BytecodeExpressionCompiler();
+		account  = new Account("bob", 100L);
+	}
+
+	private BytecodeExpressionCompiler.Signature thisSignature(Class<?> thisType) {
+		return new BytecodeExpressionCompiler.Signature(thisType, null, null, null, null);
+	}
+
+	private boolean evalOnAccount(String expression) {
+		CompiledTest test = compiler.compile(expression, thisSignature(Account.class));
+		return test.test(account, null, new Object[0], null, new Object[0]);
+	}
+
+	public void testComparesGetterValuesToLiterals() {
+		assertTrue (evalOnAccount("c4jThis.balance > 99"));
+		assertTrue (evalOnAccount("c4jThis.balance >= 100"));
+		assertFalse(evalOnAccount("c4jThis.balance < 100"));
+		assertTrue (evalOnAccount("c4jThis.getBalance() == 100"));
+		assertTrue (evalOnAccount("c4jThis.balance != 100.5"));
+		assertTrue (evalOnAccount("c4jThis.rate < 1"));
+	}
+
+	public void testUsesPublicFieldsWhenThereIsNoGetter() {
+		assertTrue (evalOnAccount("c4jThis.publicCount == 3"));
+	}
+
+	public void testBooleanPropertiesAndLogic() {
+		assertTrue (evalOnAccount("c4jThis.open"));
+		assertFalse(evalOnAccount("!c4jThis.open"));
+		assertTrue (evalOnAccount("c4jThis.open && c4jThis.hasName()"));
+		assertTrue (evalOnAccount("c4jThis.balance < 0 || c4jThis.open == true"));
+		assertFalse(evalOnAccount("c4jThis.balance < 0 || c4jThis.balance > 1000"));
+	}
+
+	public void testLogicalOperatorsShortCircuit() {
+		account = new Account(null, 100L);
+		assertFalse(evalOnAccount("c4jThis.name != null && c4jThis.name.length() > 0"));
+		assertTrue (evalOnAccount("c4jThis.name == null || c4jThis.name.length() > 0"));
+	}
+
+	public void testObjectEqualityUsesValueSemantics() {
+		assertTrue (evalOnAccount("c4jThis.name == \"bob\""));
+		assertTrue (evalOnAccount("c4jThis.name != 'alice'"));
+		assertTrue (evalOnAccount("c4jThis.name.equals(\"bob\")"));
+		assertTrue (evalOnAccount("c4jThis.name.length() == 3"));
+	}
+
+	public void testMethodCallsWithConvertedArguments() {
+		assertTrue (evalOnAccount("c4jThis.canWithdraw(50)"));
+		assertFalse(evalOnAccount("c4jThis.canWithdraw(c4jThis.balance + 1)"));
+		assertTrue (evalOnAccount("c4jThis.name.startsWith(\"b\")"));
+	}
+
+	public void testArithmetic() {
+		assertTrue (evalOnAccount("c4jThis.balance * 2 - 50 == 150"));
+		assertTrue (evalOnAccount("c4jThis.balance % 7 == 2"));
+		assertTrue (evalOnAccount("-c4jThis.balance < 0"));
+		assertTrue (evalOnAccount("c4jThis.balance / 3.0 > 33"));
+	}
+
+	public void testArgumentsWithPrimitiveAndObjectTypes() {
+		CompiledTest test = compiler.compile("c4jArgs[0] > 0 && c4jArgs[1] != null && c4jArgs[1].length() == c4jArgs[0]",
+				new BytecodeExpressionCompiler.Signature(null, null, null, new Class<?>[] { int.class, String.class }, null));
+		assertTrue (test.test(null, null, new Object[] { Integer.valueOf(3), "abc" }, null, new Object[0]));
+		assertFalse(test.test(null, null, new Object[] { Integer.valueOf(3), "ab"  }, null, new Object[0]));
+		assertFalse(test.test(null, null, new Object[] { Integer.valueOf(0), "abc" }, null, new Object[0]));
+	}
+
+	public void testReturnTargetAndOldValues() {
+		CompiledTest test = compiler.compile("c4jReturn == c4jExprVar1 + 1 && c4jTarget.length() > 0",
+				new BytecodeExpressionCompiler.Signature(null, String.class, long.class, null, new Class<?>[] { Integer.class }));
+		assertTrue (test.test(null, "x", new Object[0], Long.valueOf(5), new Object[] { Integer.valueOf(4) }));
+		assertFalse(test.test(null, "x", new Object[0], Long.valueOf(5), new Object[] { Integer.valueOf(5) }));
+	}
+
+	public void testArrayLength() {
+		CompiledTest test = compiler.compile("c4jArgs.length == 2",
+				new BytecodeExpressionCompiler.Signature(null, null, null, new Class<?>[] { int.class, int.class }, null));
+		assertTrue(test.test(null, null, new Object[2], null, new Object[0]));
+	}
+
+	public void testNullValuesThrowRatherThanGuess() {
+		account = new Account(null, 0L);
+		try {
+			evalOnAccount("c4jThis.name.length() > 0");
+			fail();
+		} catch (NullPointerException npe) {
+			// expected; the interpreter lets the scripting language handle it.
+		}
+	}
+
+	public void testUnsupportedExpressionsAreNotCompiled() {
+		String[] exprs = {
+			"c4jThis.balance / 2 > 1",            // integer division semantics differ.
+			"c4jThis.attributes.foo == null",     // Map properties are key lookups.
+			"c4jThis.missing > 0",                // no such property.
+			"someGlobal.isOK()",                  // unknown symbols.
+			"c4jThis.name + \"x\" == \"bobx\"",   // string concatenation.
+			"c4jThis.balance",                    // not boolean.
+			"c4jThis.name ? true : false",        // unsupported syntax.
+			"c4jExprVar1 == null",                // no such old value.
+		};
+		for (String expr: exprs) {
+			try {
+				evalOnAccount(expr);
+				fail(expr);
+			} catch (UncompilableExpressionException uee) {
+				// expected
+			}
+		}
+	}
+
+	public void testNonPublicTypesAreNotCompiled() {
+		try {
+			compiler.compile("c4jThis.value == 1", thisSignature(Hidden.class));
+			fail();
+		} catch (UncompilableExpressionException uee) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.bytecode.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.TestResult;
+import org.contract4j5.interpreter.bytecode.BytecodeExpressionInterpreter;
+import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+
+public class BytecodeExpressionInterpreterTest extends TestCase {
+	public static class Counter {
+		private int count;
+		public int getCount() { return count; }
+		public Counter(int count) { this.count = count; }
+	}
+
+	private BytecodeExpressionInterpreter interpreter;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		interpreter = new BytecodeExpressionInterpreter(new GroovyExpressionInterpreter());
+	}
+
+	private TestContext makeContext(String expression, Counter counter, int arg, int line) {
+		Instance   instance = new Instance("", Counter.class, counter);
+		Instance[] args     = new Instance[] { new Instance("amount", int.class, Integer.valueOf(arg)) };
+		return new TestContextImpl(expression, "", instance, null, args, null,
+				"Counter.java", line);
+	}
+
+	public void testCompilesSimpleExpressionsAndReportsTheSite() {
+		TestResult result = interpreter.invokeTest(makeContext("$this.count + amount > 2", new Counter(2), 1, 10));
+		assertTrue(result.isPassed());
+		result = interpreter.invokeTest(makeContext("$this.count + amount > 2", new Counter(1), 1, 10));
+		assertFalse(result.isPassed());
+		assertEquals(1, interpreter.getCompiledSiteCount());
+		assertTrue(interpreter.getCompilationReport().get("Counter.java:10").startsWith("compiled"));
+	}
+
+	public void testBindsTheCompiledTestToTheSite() {
+		TestContext prototype = makeContext("$this.count + amount > 2", new Counter(2), 1, 50);
+		ContractSite site = new ContractSite(prototype, new String[] { "amount" }, new Class<?>[] { int.class });
+		assertTrue(interpreter.invokeTest(site.newFrame(new Counter(2), null, new Object[] { Integer.valueOf(1) })).isPassed());
+		Object bound = site.getCompiledTest();
+		assertNotNull(bound);
+		assertFalse(interpreter.invokeTest(site.newFrame(new Counter(1), null, new Object[] { Integer.valueOf(1) })).isPassed());
+		assertSame(bound, site.getCompiledTest());
+		assertEquals(1, interpreter.getCompiledSiteCount());
+	}
+
+	public void testLaterEvaluationsAtASiteUseTheBoundTest() {
+		TestContext prototype = makeContext("$this.count + amount > 2", new Counter(2), 1, 70);
+		ContractSite site = new ContractSite(prototype, new String[] { "amount" }, new Class<?>[] { int.class });
+		assertTrue(interpreter.invokeTest(site.newFrame(new Counter(2), null, new Object[] { Integer.valueOf(1) })).isPassed());
+		assertEquals(0, interpreter.getSiteBindingHits());
+		assertFalse(interpreter.invokeTest(site.newFrame(new Counter(1), null, new Object[] { Integer.valueOf(1) })).isPassed());
+		assertEquals(1, interpreter.getSiteBindingHits());
+		// A context that isn't from a site looks the expression up.
+		assertTrue(interpreter.invokeTest(makeContext("$this.count + amount > 2", new Counter(2), 1, 70)).isPassed());
+		assertEquals(1, interpreter.getSiteBindingHits());
+	}
+
+	public void testSitesWithUncompilableExpressionsGoStraightToTheDelegate() {
+		TestContext prototype = makeContext("[1, 2].contains(amount)", new Counter(0), 2, 60);
+		ContractSite site = new ContractSite(prototype, new String[] { "amount" }, new Class<?>[] { int.class });
+		assertTrue(interpreter.invokeTest(site.newFrame(new Counter(0), null, new Object[] { Integer.valueOf(2) })).isPassed());
+		Object bound = site.getCompiledTest();
+		assertFalse(interpreter.invokeTest(site.newFrame(new Counter(0), null, new Object[] { Integer.valueOf(3) })).isPassed());
+		assertSame(bound, site.getCompiledTest());
+		assertEquals(0, interpreter.getCompiledSiteCount());
+	}
+
+	public void testFallsBackToTheDelegateForUncompilableExpressions() {
+		TestResult result = interpreter.invokeTest(makeContext("[1, 2].contains(amount)", new Counter(0), 2, 20));
+		assertTrue(result.isPassed());
+		result = interpreter.invokeTest(makeContext("[1, 2].contains(amount)", new Counter(0), 3, 20));
+		assertFalse(result.isPassed());
+		assertEquals(0, interpreter.getCompiledSiteCount());
+		assertTrue(interpreter.getCompilationReport().get("Counter.java:20").startsWith("interpreted by groovy"));
+	}
+
+	public void testUsesOldValues() {
+		Map<String, Object> oldValues = new HashMap<String, Object>();
+		oldValues.put("$this.count", Integer.valueOf(1));
+		TestContext context = makeContext("$this.count > $old($this.count)", new Counter(2), 0, 30);
+		context.setOldValuesMap(oldValues);
+		assertTrue(interpreter.invokeTest(context).isPassed());
+		assertEquals(1, interpreter.getCompiledSiteCount());
+	}
+
+	public void testFailedCompiledEvaluationsAreReportedByTheDelegate() {
+		TestResult result = interpreter.invokeTest(makeContext("$this.count > 0", null, 0, 40));
+		assertFalse(result.isPassed());
+		assertTrue(result.getMessage(), result.getMessage().length() > 0);
+	}
+
+	public void testEngineNameIncludesTheDelegateName() {
+		assertEquals("bytecode+groovy", interpreter.getScriptingEngineName());
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression.test;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.expression.ExpressionCanonicalizer;
+
+public class ExpressionCanonicalizerTest extends TestCase {
+
+	private void assertCanonical(String expected, String expression) {
+		assertEquals(expected, ExpressionCanonicalizer.canonicalize(expression));
+	}
+
+	public void testBinaryOperatorsHaveOneSpaceAroundThem() {
+		assertCanonical("c4jArgs[0] != null && c4jArgs[1] != null", "c4jArgs[0]!=null&&c4jArgs[1]!=null");
+		assertCanonical("c4jArgs[0] != null && c4jArgs[1] != null", "  c4jArgs[0]  !=  null\t&&\n c4jArgs[1] != null ");
+		assertCanonical("c4jThis.count >= 0", "c4jThis.count>=0");
+		assertCanonical("a + b * c - d / e % f < g", "a+b*c-d/e%f<g");
+	}
+
+	public void testPunctuationHasNoSpaces() {
+		assertCanonical("c4jArgs[0].length() > 0", "c4jArgs [ 0 ] . length ( ) > 0");
+		assertCanonical("c4jThis.between(1, 2)", "c4jThis.between( 1 ,2 )");
+		assertCanonical("!(c4jThis.isEmpty())", "! ( c4jThis.isEmpty() )");
+	}
+
+	public void testUnaryMinusIsKeptNextToItsOperand() {
+		assertCanonical("c4jThis.x > -1", "c4jThis.x > - 1");
+		assertCanonical("c4jThis.x - -1", "c4jThis.x- -1");
+		assertCanonical("- -c4jThis.x == c4jThis.x", "- - c4jThis.x==c4jThis.x");
+		assertCanonical("(c4jThis.x) - 1", "(c4jThis.x)-1");
+	}
+
+	public void testLiteralsAreUnchanged() {
+		assertCanonical("c4jThis.name == 'a  b'", "c4jThis.name=='a  b'");
+		assertCanonical("c4jThis.total < 10L", "c4jThis.total<10L");
+		assertCanonical("((c4jThis.x))", "( ( c4jThis.x ) )");
+	}
+
+	public void testOtherExpressionsAreOnlyTrimmed() {
+		assertCanonical("c4jThis.list.every  {  it > 0 }", " c4jThis.list.every  {  it > 0 }\t");
+		assertCanonical("c4jThis.x\t instanceof  String", "c4jThis.x\t instanceof  String");
+		assertCanonical("x \r\n y", "x \r\n y");
+		assertCanonical("\"a  b\"   ==   \"$x\"", "\"a  b\"   ==   \"$x\"");
+		assertCanonical("c4jThis.name ==~ /a  b/", "c4jThis.name ==~ /a  b/ ");
+	}
+}
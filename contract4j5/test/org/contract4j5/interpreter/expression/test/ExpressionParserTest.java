@@ -0,0 +1,122 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression.test;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.expression.ExpressionLexer;
+import org.contract4j5.interpreter.expression.ExpressionNode;
+import org.contract4j5.interpreter.expression.ExpressionParseException;
+import org.contract4j5.interpreter.expression.ExpressionParser;
+import org.contract4j5.interpreter.expression.Token;
+
+public class ExpressionParserTest extends TestCase {
+
+	private String rebuild(List<Token> tokens) {
+		StringBuffer sb = new StringBuffer();
+		for (Token token: tokens)
+			sb.append(token.getText());
+		return sb.toString();
+	}
+
+	public void testLexerTokensReproduceTheExpression() {
+		String expr = "$this.foo( \"a \\\"quoted\\\" $this\" , 'b' ) >= 1.5e3  && $old($args[0]) != null";
+		assertEquals(expr, rebuild(ExpressionLexer.tokenize(expr)));
+	}
+
+	public void testLexerRecognizesKeywordsStringsAndOperators() {
+		List<Token> tokens = ExpressionLexer.tokenize("$old(x)==\"$this\"");
+		assertEquals(Token.Type.KEYWORD,  tokens.get(0).getType());
+		assertEquals("old",               tokens.get(0).getKeywordName());
+		assertTrue(tokens.get(1).isOperator("("));
+		assertEquals(Token.Type.IDENTIFIER, tokens.get(2).getType());
+		assertTrue(tokens.get(4).isOperator("=="));
+		assertEquals(Token.Type.STRING,   tokens.get(5).getType());
+		assertTrue(tokens.get(5).isTerminatedString());
+		assertEquals(Token.Type.END,      tokens.get(6).getType());
+	}
+
+	public void testLexerReturnsBareDollarAsKeywordWithEmptyName() {
+		List<Token> tokens = ExpressionLexer.tokenize("$ this");
+		assertEquals(Token.Type.KEYWORD, tokens.get(0).getType());
+		assertEquals("", tokens.get(0).getKeywordName());
+	}
+
+	public void testLexerHandlesUnterminatedStrings() {
+		List<Token> tokens = ExpressionLexer.tokenize("x == \"abc");
+		Token string = tokens.get(tokens.size()-2);
+		assertEquals(Token.Type.STRING, string.getType());
+		assertFalse(string.isTerminatedString());
+	}
+
+	public void testParserRespectsPrecedence() {
+		assertEquals("((a || (b && c)) || (d == (1 + (2 * 3))))",
+				ExpressionParser.parse("a || b && c || d == 1 + 2 * 3").toString());
+		assertEquals("(!a && (-1 < c4jThis.b))", ExpressionParser.parse("!a && -1 < c4jThis.b").toString());
+	}
+
+	public void testParserIgnoresWhitespaceAndRedundantParentheses() {
+		assertEquals(ExpressionParser.parse("c4jThis.getFoo(1,2)>0").toString(),
+				ExpressionParser.parse(" ( ( c4jThis.getFoo( 1 , 2 ) ) >  0 ) ").toString());
+	}
+
+	public void testParserBuildsMembersCallsAndSubscripts() {
+		ExpressionNode node = ExpressionParser.parse("c4jArgs[0].name.startsWith(\"x\")");
+		assertTrue(node instanceof ExpressionNode.MethodCall);
+		ExpressionNode.MethodCall call = (ExpressionNode.MethodCall) node;
+		assertEquals("startsWith", call.getName());
+		assertEquals(1, call.getArguments().size());
+		assertEquals("x", ((ExpressionNode.Literal) call.getArguments().get(0)).getValue());
+		ExpressionNode.Property property = (ExpressionNode.Property) call.getTarget();
+		assertEquals("name", property.getName());
+		assertTrue(property.getTarget() instanceof ExpressionNode.Index);
+	}
+
+	public void testParserConvertsLiterals() {
+		assertEquals(Integer.valueOf(12),  literal("12"));
+		assertEquals(Long.valueOf(12),     literal("12L"));
+		assertEquals(Long.valueOf(1L<<40), literal("1099511627776"));
+		assertEquals(Double.valueOf(1.5),  literal("1.5"));
+		assertEquals("a\"b",               literal("\"a\\\"b\""));
+		assertEquals("c",                  literal("'c'"));
+		assertEquals(Boolean.TRUE,         literal("true"));
+		assertNull(literal("null"));
+	}
+
+	private Object literal(String expr) {
+		return ((ExpressionNode.Literal) ExpressionParser.parse(expr)).getValue();
+	}
+
+	public void testParserRejectsUnsupportedSyntax() {
+		String[] exprs = {
+			"x ? y : z", "list.each { it > 0 }", "\"${x}\"", "x =~ /abc/", "x +", "(x", "x y", "1.0G",
+		};
+		for (String expr: exprs) {
+			try {
+				ExpressionParser.parse(expr);
+				fail(expr);
+			} catch (ExpressionParseException epe) {
+				// expected
+			}
+		}
+	}
+}
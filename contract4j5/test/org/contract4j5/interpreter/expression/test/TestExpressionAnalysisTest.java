@@ -0,0 +1,98 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.expression.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.expression.TestExpressionAnalysis;
+
+public class TestExpressionAnalysisTest extends TestCase {
+
+	private static final List<String> OLD_KEYS = Arrays.asList(new String[] { "$target", "$this", "$this.getName()" });
+	private static final String[]     ARGS     = new String[] { "amount", "name" };
+
+	private String expand(String expression, String itemName) {
+		return TestExpressionAnalysis.analyze(expression).expand(OLD_KEYS, ARGS, itemName, true);
+	}
+
+	public void testFindsKeywordsOutsideQuotedStrings() {
+		TestExpressionAnalysis analysis = TestExpressionAnalysis.analyze("$this.equals(\"$target\") && $args[0] > 0");
+		assertTrue (analysis.usesKeyword("this"));
+		assertTrue (analysis.usesKeyword("args"));
+		assertFalse(analysis.usesKeyword("target"));
+		assertFalse(analysis.usesKeyword("return"));
+	}
+
+	public void testFindsDistinctOldExpressionsIncludingNestedCalls() {
+		TestExpressionAnalysis analysis = TestExpressionAnalysis.analyze(
+				"$old( $this.get(size()) ) > $old($target) && $old($target) != null && \"$old(x)\" != null");
+		assertEquals(Arrays.asList(new String[] { "$this.get(size())", "$target" }), analysis.getOldExpressions());
+		assertTrue (analysis.usesKeyword("old"));
+		assertTrue (analysis.usesKeyword("this"));
+		assertFalse(analysis.hasOldWithInvalidArguments());
+	}
+
+	public void testReportsMalformedOldCalls() {
+		assertTrue(TestExpressionAnalysis.analyze("$old.foo").hasOldWithoutArguments());
+		assertTrue(TestExpressionAnalysis.analyze("$old").hasOldWithoutArguments());
+		assertTrue(TestExpressionAnalysis.analyze("$old( )").hasOldWithInvalidArguments());
+		assertTrue(TestExpressionAnalysis.analyze("$old(x + y)").hasOldWithInvalidArguments());
+		assertTrue(TestExpressionAnalysis.analyze("$old(x, y)").hasOldWithInvalidArguments());
+		assertTrue(TestExpressionAnalysis.analyze("$old(x").hasOldWithInvalidArguments());
+		assertEquals(0, TestExpressionAnalysis.analyze("$old(x + y)").getOldExpressions().size());
+	}
+
+	public void testReportsUnrecognizedKeywordsWhitespaceAndMissingDollars() {
+		TestExpressionAnalysis analysis = TestExpressionAnalysis.analyze("$foo && $ this && $thisx && $foo && old && \"$bar\"");
+		assertEquals(Arrays.asList(new String[] { "$foo", "$thisx" }), analysis.getUnrecognizedKeywords());
+		assertEquals(Arrays.asList(new String[] { "this", "old" }), analysis.getKeywordsMissingDollars());
+		assertTrue (analysis.hasWhitespaceAfterDollar());
+		assertFalse(TestExpressionAnalysis.analyze("$this.oldValue").hasWhitespaceAfterDollar());
+		assertEquals(0, TestExpressionAnalysis.analyze("$this.oldValue").getKeywordsMissingDollars().size());
+	}
+
+	public void testExpandsKeywordsAndOldValues() {
+		assertEquals("c4jThis.compareTo(c4jTarget) < c4jReturn + c4jArgs.length", 
+				expand("$this.compareTo($target) < $return + $args.length", null));
+		assertEquals("c4jExprVar2.compareTo(c4jExprVar1) < 0", expand("$old($this).compareTo($old( $target )) < 0", null));
+		assertEquals("c4jExprVar3.length() > 0", expand("$old($this.getName()).length() > 0", null));
+	}
+
+	public void testExpandsOldValuesWithoutCapturedValuesToCurrentValues() {
+		assertEquals("c4jThis.getSize() > 0",  expand("$old($this.getSize()) > 0", null));
+		assertEquals("c4jTarget.size > 0",     expand("$old( $target.size) > 0", null));
+		assertEquals("c4jThis.size > 0",       expand("$old(size) > 0", "size"));
+	}
+
+	public void testExpandsArgumentAndItemNamesButNotMembersOrStrings() {
+		assertEquals("c4jArgs[0] > c4jThis.balance && c4jArgs[1] != \"amount\"", 
+				expand("amount > balance && name != \"amount\"", "balance"));
+		assertEquals("c4jThis.amount > c4jThis . balance && foo.name != null", 
+				expand("$this.amount > $this . balance && foo.name != null", "balance"));
+	}
+
+	public void testExpandWithoutKeywordsOnlySubstitutesArguments() {
+		assertEquals("$this.amount > c4jArgs[0] && $old(c4jArgs[1]) != null",
+				TestExpressionAnalysis.analyze("$this.amount > amount && $old(name) != null").expand(null, ARGS, "foo", false));
+	}
+}
@@ -28,4 +28,8 @@ public class JRubyExpressionInterpreterTest extends TestCase {
 			assertTrue(interpreter.invokeTest(context).isPassed());
 	}
 
+	public void testJRubyInterpreterEvaluatesEvenSimpleTests() throws Exception {
+		assertFalse(interpreter.getEvaluateTestsDirectly());
+	}
+
 }
@@ -0,0 +1,128 @@
+package org.contract4j5.interpreter.snapshot.test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.snapshot.SnapshotPolicy;
+import org.contract4j5.interpreter.snapshot.SnapshotStrategy;
+import org.contract4j5.interpreter.snapshot.Snapshotable;
+import org.contract4j5.interpreter.snapshot.StandardSnapshotStrategy;
+
+public class SnapshotPolicyTest extends TestCase {
+	public static class Holder implements Serializable {
+		private static final long serialVersionUID = 1L;
+		public List<String> items = new ArrayList<String>();
+	}
+
+	public static class Money {
+		public final long cents;
+		public Money(long cents) { this.cents = cents; }
+	}
+
+	public static class Versioned implements Snapshotable {
+		public int version = 1;
+		public Object snapshot() { return Integer.valueOf(version); }
+	}
+
+	public static enum Color { RED }
+
+	private SnapshotPolicy policy;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		policy = new SnapshotPolicy();
+	}
+
+	public void testValuesAreKeptByDefault() {
+		List<String> list = new ArrayList<String>();
+		assertSame(list, policy.snapshot(list, "com.example.Account", "withdraw"));
+		assertNull(policy.snapshot(null, "com.example.Account", "withdraw"));
+	}
+
+	public void testImmutablesAreNeverCopied() {
+		policy.setDefaultStrategy(StandardSnapshotStrategy.DEEP);
+		policy.setSiteStrategy(SnapshotPolicy.ALL_SCOPES, StandardSnapshotStrategy.DEEP);
+		String s = new String("abc");
+		BigDecimal d = new BigDecimal("1.5");
+		assertSame(s, policy.snapshot(s, null, null));
+		assertSame(d, policy.snapshot(d, null, null));
+		assertSame(Color.RED, policy.snapshot(Color.RED, null, null));
+		assertTrue(policy.isImmutable(Integer.class));
+		assertSame(StandardSnapshotStrategy.DEEP, policy.getStrategy(Money.class, null, null));
+		policy.addImmutableType(Money.class.getName());
+		assertTrue(policy.isImmutable(Money.class));
+		assertNotSame(StandardSnapshotStrategy.DEEP, policy.getStrategy(Money.class, null, null));
+	}
+
+	public void testSnapshotablesMakeTheirOwnSnapshots() {
+		policy.setDefaultStrategy(StandardSnapshotStrategy.DEEP);
+		Versioned v = new Versioned();
+		Object old = policy.snapshot(v, null, null);
+		v.version++;
+		assertEquals(Integer.valueOf(1), old);
+	}
+
+	public void testTypeStrategiesApplyToSubtypes() {
+		policy.setTypeStrategy("java.util.Collection", StandardSnapshotStrategy.SHALLOW);
+		List<String> list = new ArrayList<String>();
+		list.add("a");
+		Object old = policy.snapshot(list, null, null);
+		list.add("b");
+		assertEquals(1, ((Collection<?>) old).size());
+		assertSame(StandardSnapshotStrategy.SHALLOW, policy.getStrategy(ArrayList.class, null, null));
+		assertSame(StandardSnapshotStrategy.REFERENCE, policy.getStrategy(TreeMap.class, null, null));
+	}
+
+	public void testTheMostSpecificSiteStrategyWins() {
+		policy.setTypeStrategy("java.util.List", StandardSnapshotStrategy.SHALLOW);
+		policy.setSiteStrategy("com.example", StandardSnapshotStrategy.REFERENCE);
+		policy.setSiteStrategy("com.example.Ledger.post", StandardSnapshotStrategy.DEEP);
+		assertSame(StandardSnapshotStrategy.DEEP,      policy.getStrategy(ArrayList.class, "com.example.Ledger", "post"));
+		assertSame(StandardSnapshotStrategy.REFERENCE, policy.getStrategy(ArrayList.class, "com.example.Ledger", "get"));
+		assertSame(StandardSnapshotStrategy.SHALLOW,   policy.getStrategy(ArrayList.class, "org.other.Ledger", "post"));
+		policy.setSiteStrategy("com.example", null);
+		assertSame(StandardSnapshotStrategy.SHALLOW,   policy.getStrategy(ArrayList.class, "com.example.Ledger", "get"));
+	}
+
+	public void testShallowCopies() {
+		int[] ints = { 1, 2 };
+		int[] oldInts = (int[]) StandardSnapshotStrategy.SHALLOW.snapshot(ints);
+		ints[0] = 5;
+		assertEquals(1, oldInts[0]);
+		CopyOnWriteArrayList<String> cow = new CopyOnWriteArrayList<String>();
+		cow.add("a");
+		Object oldCow = StandardSnapshotStrategy.SHALLOW.snapshot(cow);
+		cow.add("b");
+		assertTrue(oldCow instanceof CopyOnWriteArrayList);
+		assertEquals(1, ((List<?>) oldCow).size());
+		Money money = new Money(5);
+		assertSame(money, StandardSnapshotStrategy.SHALLOW.snapshot(money));
+	}
+
+	public void testDeepCopies() {
+		Holder holder = new Holder();
+		holder.items.add("a");
+		Holder old = (Holder) StandardSnapshotStrategy.DEEP.snapshot(holder);
+		holder.items.add("b");
+		assertEquals(1, old.items.size());
+		Holder shallow = (Holder) StandardSnapshotStrategy.SHALLOW.snapshot(holder);
+		assertSame(holder, shallow);
+	}
+
+	public void testCustomStrategies() {
+		SnapshotStrategy toString = new SnapshotStrategy() {
+			public Object snapshot(Object value) { return value.toString(); }
+		};
+		policy.setTypeStrategy(Money.class.getName(), toString);
+		assertTrue(policy.snapshot(new Money(5), null, null) instanceof String);
+		assertSame(StandardSnapshotStrategy.SHALLOW, StandardSnapshotStrategy.parse(" shallow "));
+		assertNull(StandardSnapshotStrategy.parse("com.example.Custom"));
+	}
+}
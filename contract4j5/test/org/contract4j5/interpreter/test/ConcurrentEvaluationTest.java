@@ -0,0 +1,229 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.interpreter.test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.ExpressionInterpreterHelper;
+import org.contract4j5.interpreter.TestResult;
+import org.contract4j5.interpreter.bsf.groovy.GroovyBSFExpressionInterpreter;
+import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.contract4j5.interpreter.jexl.JexlExpressionInterpreter;
+
+/**
+ * Runs the same tests on several threads at once with one interpreter. Every 
+ * thread uses its own objects, so if one thread's "c4jThis", "c4jArgs", etc. 
+ * leaked into another's evaluation, tests would fail that should pass, or vice versa.
+ */
+public class ConcurrentEvaluationTest extends TestCase {
+	public static class Account {
+		private final int id;
+		public int getId() { return id; }
+		public Account(int id) { this.id = id; }
+	}
+
+	/** Exposes the compiled script classes. */
+	private static class ScriptClassGroovyInterpreter extends GroovyExpressionInterpreter {
+		@Override
+		public Class<?> getScriptClass(String exprStr) {
+			return super.getScriptClass(exprStr);
+		}
+	}
+
+	private static final int THREADS    = 8;
+	private static final int ITERATIONS = 300;
+	/** BSF's Groovy engine compiles every script it evaluates, so it gets fewer. */
+	private static final int BSF_ITERATIONS = 25;
+
+	private ScriptClassGroovyInterpreter   groovy;
+	private JexlExpressionInterpreter      jexl;
+	private GroovyBSFExpressionInterpreter bsfGroovy;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		groovy    = new ScriptClassGroovyInterpreter();
+		jexl      = new JexlExpressionInterpreter();
+		bsfGroovy = new GroovyBSFExpressionInterpreter();
+		// These tests are about the scripting engines, so don't let the simple
+		// tests bypass them.
+		groovy.setEvaluateTestsDirectly(false);
+		jexl.setEvaluateTestsDirectly(false);
+	}
+
+	public void testDirectEvaluationsDoNotSeeOtherThreadsObjects() throws Exception {
+		groovy.setEvaluateTestsDirectly(true);
+		assertNoCrossTalk(groovy, ITERATIONS);
+		assertEquals(0, groovy.getCompiledScriptCount());
+	}
+
+	public void testGroovyEvaluationsDoNotSeeOtherThreadsObjects() throws Exception {
+		assertNoCrossTalk(groovy, ITERATIONS);
+	}
+
+	public void testGroovyCompilesEachExpressionOnceForAllThreads() throws Exception {
+		runConcurrently(groovy, ITERATIONS, new Evaluation() {
+			public String evaluate(ExpressionInterpreterHelper interpreter, int id) {
+				TestResult result = interpreter.invokeTest(makeContext("$this.id == expected", id, id));
+				return result.isPassed() ? null : "id " + id + ": " + result.getMessage();
+			}
+		});
+		assertEquals(1, groovy.getCompiledScriptCount());
+	}
+
+	public void testGroovyEvaluatesCorrectlyWhileScriptsAreEvicted() throws Exception {
+		groovy.getExpressionCache().setCapacity(2);
+		runConcurrently(groovy, ITERATIONS, new Evaluation() {
+			public String evaluate(ExpressionInterpreterHelper interpreter, int id) {
+				String expr = "$this.id + " + (id % 5) + " == expected + " + (id % 5);
+				TestResult result = interpreter.invokeTest(makeContext(expr, id, id));
+				return result.isPassed() ? null : "id " + id + ": " + result.getMessage();
+			}
+		});
+		assertTrue(groovy.getCompiledScriptCount() <= 2);
+		assertTrue(groovy.getExpressionCache().getEvictions() > 0);
+	}
+
+	public void testLoadersOfEvictedScriptsCanBeCollected() throws Exception {
+		groovy.getExpressionCache().setCapacity(1);
+		assertTrue(groovy.invokeTest(makeContext("$this.id == expected", 1, 1)).isPassed());
+		// This thread had an instance of the first script, evicted by this one.
+		WeakReference<ClassLoader> loader = 
+			new WeakReference<ClassLoader>(groovy.getScriptClass("true").getClassLoader());
+		// Evict it too, while this thread is still alive. The script that
+		// replaces it has its own loader, so nothing keeps this one.
+		assertTrue(groovy.invokeTest(makeContext("$this.id + 1 == expected + 1", 1, 1)).isPassed());
+		clearSoftReferences();
+		for (int i = 0; i < 20 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertNull("the loader of the evicted scripts is still reachable", loader.get());
+	}
+
+	/**
+	 * Groovy's MetaClassRegistry refers to each class loader through a soft
+	 * reference, so only a collection that clears soft references can unload
+	 * it. The JVM clears them all before it throws an OutOfMemoryError.
+	 */
+	private static void clearSoftReferences() {
+		List<long[]> hog = new ArrayList<long[]>();
+		long size = Runtime.getRuntime().maxMemory() / 8 + 1;
+		try {
+			while (true)
+				hog.add(new long[(int) Math.min(size, Integer.MAX_VALUE - 16)]);
+		} catch (OutOfMemoryError oome) {
+			hog = null;
+		}
+	}
+
+	public void testJexlEvaluationsDoNotSeeOtherThreadsObjects() throws Exception {
+		assertNoCrossTalk(jexl, ITERATIONS);
+	}
+
+	public void testBSFEvaluationsDoNotSeeOtherThreadsObjects() throws Exception {
+		assertNoCrossTalk(bsfGroovy, BSF_ITERATIONS);
+	}
+
+	public void testGlobalObjectsAreSharedWithAllThreads() throws Exception {
+		groovy.registerGlobalContextObject("limit", Integer.valueOf(THREADS * ITERATIONS));
+		runConcurrently(groovy, ITERATIONS, new Evaluation() {
+			public String evaluate(ExpressionInterpreterHelper interpreter, int id) {
+				TestResult result = interpreter.invokeTest(makeContext("$this.id < limit", id, id));
+				return result.isPassed() ? null : "global \"limit\" not visible: " + result.getMessage();
+			}
+		});
+		groovy.unregisterGlobalContextObject("limit");
+		assertNull(groovy.getObjectInContext("limit"));
+	}
+
+	public void testObjectsRegisteredForOneTestAreNotSeenByOtherThreads() throws Exception {
+		runConcurrently(groovy, ITERATIONS, new Evaluation() {
+			public String evaluate(ExpressionInterpreterHelper interpreter, int id) {
+				Object before = interpreter.getObjectInContext("threadValue");
+				if (before != null)
+					return "saw another thread's \"threadValue\": " + before;
+				interpreter.registerContextObject("threadValue", Integer.valueOf(id));
+				TestResult result = interpreter.invokeTest(makeContext("$this.id == threadValue", id, id));
+				return result.isPassed() ? null : "wrong \"threadValue\": " + result.getMessage();
+			}
+		});
+	}
+
+	private void assertNoCrossTalk(ExpressionInterpreterHelper interpreter, int iterations) throws Exception {
+		runConcurrently(interpreter, iterations, new Evaluation() {
+			public String evaluate(ExpressionInterpreterHelper interpreter, int id) {
+				// Every other test should fail, so a binding that's stuck doesn't pass.
+				boolean shouldPass = id % 2 == 0;
+				TestContext context = makeContext("$this.id == expected && $old($this.id) == expected", 
+						id, shouldPass ? id : id + 1);
+				context.setOldValuesMap(interpreter.determineOldValues(context));
+				TestResult result = interpreter.invokeTest(context);
+				return result.isPassed() == shouldPass ? null : 
+					"id " + id + " expected " + (shouldPass ? "pass" : "failure") + ": " + result.getMessage();
+			}
+		});
+	}
+
+	private interface Evaluation {
+		/** @return null if the evaluation was correct or an error message. */
+		String evaluate(ExpressionInterpreterHelper interpreter, int id);
+	}
+
+	private void runConcurrently(final ExpressionInterpreterHelper interpreter, final int iterations, 
+			final Evaluation evaluation) throws InterruptedException {
+		final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int first = t * iterations;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int id = first; id < first + iterations; id++) {
+							String error = evaluation.evaluate(interpreter, id);
+							if (error != null)
+								errors.add(error);
+						}
+					} catch (Throwable th) {
+						errors.add(th.toString());
+					}
+				}
+			};
+		}
+		for (Thread thread: threads)
+			thread.start();
+		for (Thread thread: threads)
+			thread.join();
+		assertTrue(errors.size() + " errors, e.g., " + (errors.isEmpty() ? "" : errors.get(0)), errors.isEmpty());
+	}
+
+	private TestContext makeContext(String expression, int id, int expected) {
+		Instance   instance = new Instance("account", Account.class, new Account(id));
+		Instance[] args     = new Instance[] { new Instance("expected", Integer.class, Integer.valueOf(expected)) };
+		return new TestContextImpl(expression, "id", instance, null, args, null, "Account.java", id);
+	}
+}
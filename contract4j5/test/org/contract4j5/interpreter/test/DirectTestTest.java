@@ -0,0 +1,196 @@
+package org.contract4j5.interpreter.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.DirectTest;
+import org.contract4j5.interpreter.DirectTest.Outcome;
+import org.contract4j5.interpreter.ExpressionInterpreterHelper;
+import org.contract4j5.interpreter.TestResult;
+import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.contract4j5.interpreter.jexl.JexlExpressionInterpreter;
+
+public class DirectTestTest extends TestCase {
+	public static class Account {
+		public int count = 3;
+		private int hidden = 1;
+		private String name;
+		private List<String> owners = new ArrayList<String>();
+		public Account(String name) { this.name = name; }
+		public String       getName()   { return name; }
+		public double       getRatio()  { return 0.5; }
+		public boolean      isOpen()    { return true; }
+		public List<String> getOwners() { return owners; }
+		public int[]        history()   { return new int[] { 1, 2 }; }
+		public int          hidden()    { return hidden; }
+		public int          size()      { return owners.size(); }
+	}
+
+	/** Counts the calls of its methods. */
+	public static class Counter {
+		public int calls = 0;
+		public int    getValue()  { calls++; return 1; }
+		public Object getThing()  { calls++; return "x"; }
+		public double getRatio()  { calls++; return Double.NaN; }
+		public int    getBroken() { calls++; throw new IllegalStateException("broken"); }
+	}
+
+	private Account account = new Account("bob");
+	private ExpressionInterpreterHelper groovy;
+	private ExpressionInterpreterHelper jexl;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		groovy = new GroovyExpressionInterpreter();
+		jexl   = new JexlExpressionInterpreter();
+	}
+
+	private TestContext context(Object arg0, Object arg1, Object result) {
+		Instance[] args = new Instance[] {
+				new Instance("arg0", Object.class, arg0),
+				new Instance("arg1", Object.class, arg1)
+		};
+		Map<String, Object> old = new HashMap<String, Object>();
+		old.put("$this.count", Integer.valueOf(2));
+		old.put("$this.name", "alice");
+		return new TestContextImpl("", "count", new Instance("account", Account.class, account), null,
+				args, new Instance("", Object.class, result), old, "Account.java", 1);
+	}
+
+	private Outcome test(String expression, TestContext context) throws InvocationTargetException {
+		DirectTest direct = DirectTest.compile(expression);
+		assertNotSame(expression, DirectTest.INTERPRETED, direct);
+		return direct.test(context);
+	}
+
+	private void assertOutcome(Outcome expected, String expression, TestContext context) 
+			throws InvocationTargetException {
+		assertEquals(expression, expected, test(expression, context));
+	}
+
+	private TestContext context(String expression, Object thiz) {
+		return new TestContextImpl(expression, "", new Instance("", thiz.getClass(), thiz), null,
+				new Instance[0], null, "Counter.java", 1);
+	}
+
+	public void testNullChecks() throws Exception {
+		assertOutcome(Outcome.PASSED, "c4jArgs[0] != null && c4jArgs[1] != null", context("a", "b", null));
+		assertOutcome(Outcome.FAILED, "c4jArgs[0] != null && c4jArgs[1] != null", context("a", null, null));
+		assertOutcome(Outcome.PASSED, "null == c4jReturn", context("a", null, null));
+		assertOutcome(Outcome.FAILED, "c4jThis == null || c4jThis.name == null", context(null, null, null));
+	}
+
+	public void testNumericComparisons() throws Exception {
+		TestContext context = context(Integer.valueOf(5), Long.valueOf(5), Double.valueOf(5.5));
+		assertOutcome(Outcome.PASSED, "c4jThis.count >= 0", context);
+		assertOutcome(Outcome.FAILED, "c4jThis.count > 3", context);
+		assertOutcome(Outcome.PASSED, "c4jArgs[0] == c4jArgs[1]", context);
+		assertOutcome(Outcome.PASSED, "c4jArgs[0] < c4jReturn", context);
+		assertOutcome(Outcome.PASSED, "c4jReturn < 6 && c4jReturn > -1", context);
+		assertOutcome(Outcome.PASSED, "c4jArgs[1] != -5L", context);
+	}
+
+	public void testLengthsAndSizes() throws Exception {
+		TestContext context = context("", Arrays.asList("x", "y"), new int[3]);
+		assertOutcome(Outcome.FAILED, "c4jArgs[0].length() > 0", context);
+		assertOutcome(Outcome.PASSED, "c4jArgs[1].size() <= 2", context);
+		assertOutcome(Outcome.PASSED, "c4jReturn.length == 3", context);
+		assertOutcome(Outcome.PASSED, "c4jThis.size() == 0 && !c4jArgs[1].isEmpty()", context);
+	}
+
+	public void testStringsBooleansAndOldValues() throws Exception {
+		TestContext context = context(null, null, null);
+		assertOutcome(Outcome.PASSED, "c4jThis.name == 'bob' && c4jThis.open", context);
+		assertOutcome(Outcome.PASSED, "c4jThis.open == true", context);
+		assertOutcome(Outcome.PASSED, "c4jThis.count > c4jExprVar1 && c4jExprVar2 != c4jThis.name", context);
+	}
+
+	public void testUndecidedWhenTheScriptMightDisagree() throws Exception {
+		TestContext context = context(null, "b", Double.valueOf(Double.NaN));
+		assertOutcome(Outcome.UNDECIDED, "c4jArgs[0].length() > 0", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jThis.hidden > 0", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jThis.name < c4jArgs[1]", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jThis.name == 3", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jThis.count", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jArgs[5] == null", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jThis.ratio < 1.5", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jReturn < 1.5", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jArgs[0] == null || c4jArgs[0].length() > 0", context);
+	}
+
+	public void testNothingIsCalledWhenTheTestIsUndecided() throws Exception {
+		Counter counter = new Counter();
+		TestContext context = context(counter, null, null);
+		assertOutcome(Outcome.UNDECIDED, "c4jArgs[0].value > 0 && c4jArgs[0].thing == 'x'", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jArgs[0].value > 0 && c4jArgs[0].ratio < 1", context);
+		assertOutcome(Outcome.UNDECIDED, "c4jArgs[0].value > 0 && c4jArgs[1].length() > 0", context);
+		assertEquals(0, counter.calls);
+		assertOutcome(Outcome.PASSED, "c4jArgs[0].value > 0 && c4jArgs[0].thing != null", context);
+		assertEquals(2, counter.calls);
+	}
+
+	public void testTheInterpreterDoesntCallMethodsAgain() {
+		Counter counter = new Counter();
+		groovy.invokeTest(context("$this.value > 0 && $this.ratio < 1", counter));
+		assertEquals(2, counter.calls);
+	}
+
+	public void testExceptionsThrownByMethodsFailTheTest() throws Exception {
+		Counter counter = new Counter();
+		try {
+			test("c4jArgs[0].broken > 0", context(counter, null, null));
+			fail();
+		} catch (InvocationTargetException ite) {
+			assertTrue(ite.getCause() instanceof IllegalStateException);
+		}
+		TestResult result = groovy.invokeTest(context("$this.broken > 0", counter));
+		assertFalse(result.isPassed());
+		assertTrue(result.getMessage(), result.getMessage().indexOf("broken") >= 0);
+		assertEquals(2, counter.calls);
+	}
+
+	public void testFieldsAreOnlyReadIfTheInterpreterReadsThem() throws Exception {
+		TestContext context = context(null, null, null);
+		assertEquals(Outcome.PASSED, DirectTest.compile("c4jThis.count == 3", true).test(context));
+		assertEquals(Outcome.UNDECIDED, DirectTest.compile("c4jThis.count == 3", false).test(context));
+		assertTrue(groovy.invokeTest(context("$this.count == 3", account)).isPassed());
+		// Jexl can't read the field, so it's null.
+		assertFalse(jexl.invokeTest(context("$this.count == 3", account)).isPassed());
+		assertTrue(jexl.invokeTest(context("$this.count == null", account)).isPassed());
+	}
+
+	public void testOtherExpressionsAreInterpreted() {
+		String[] expressions = {
+			"c4jThis.count + 1 > 0", "limit > 0", "c4jThis.between(1, 2)", 
+			"c4jThis.list[0] == null", "c4jThis.name =~ 'b.*'", "-c4jThis.count < 0", "5", "'x'",
+			"c4jThis.name.length() > 0", "c4jThis.owners.isEmpty()", "c4jThis.history().length == 2"
+		};
+		for (String expression: expressions)
+			assertSame(expression, DirectTest.INTERPRETED, DirectTest.compile(expression));
+		assertFalse(DirectTest.INTERPRETED.isEnabled());
+	}
+
+	public void testRepeatedlyUndecidedTestsAreGivenUpOn() throws Exception {
+		DirectTest direct = DirectTest.compile("c4jThis.hidden > 0");
+		TestContext context = context(null, null, null);
+		for (int i = 0; i < DirectTest.MAX_UNDECIDED; i++) {
+			assertTrue(direct.isEnabled());
+			assertEquals(Outcome.UNDECIDED, direct.test(context));
+		}
+		assertFalse(direct.isEnabled());
+	}
+
+	public void testUsesOldValues() {
+		assertTrue(DirectTest.compile("c4jThis.count > c4jExprVar1").usesOldValues());
+		assertFalse(DirectTest.compile("c4jThis.count > 0").usesOldValues());
+	}
+}
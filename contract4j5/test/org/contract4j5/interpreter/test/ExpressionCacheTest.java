@@ -0,0 +1,126 @@
+package org.contract4j5.interpreter.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.ExpressionCache;
+
+public class ExpressionCacheTest extends TestCase {
+	private ExpressionCache<String> cache;
+	private List<String> evicted;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache   = new ExpressionCache<String>(4, ExpressionCache.EvictionPolicy.LRU);
+		evicted = new ArrayList<String>();
+		cache.setEvictionListener(new ExpressionCache.EvictionListener<String>() {
+			public void evicted(String expression, String value) {
+				evicted.add(expression);
+			}
+		});
+	}
+
+	public void testPutReturnsTheCachedValue() {
+		assertEquals("v1", cache.put("x > 0", "v1"));
+		assertEquals("v1", cache.put("x > 0", "v2"));
+		assertEquals("v1", cache.get("x > 0"));
+		assertEquals(1, cache.size());
+	}
+
+	public void testGetCountsHitsAndMisses() {
+		assertEquals(0.0, cache.getHitRate(), 0.0);
+		assertNull(cache.get("x > 0"));
+		cache.put("x > 0", "v");
+		cache.get("x > 0");
+		cache.get("x > 0");
+		cache.get("x > 0");
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.75, cache.getHitRate(), 0.0001);
+		cache.resetStatistics();
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+
+	public void testPeekDoesNotCountOrTouch() {
+		assertNull(cache.peek("x > 0"));
+		cache.put("x > 0", "v");
+		assertEquals("v", cache.peek("x > 0"));
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+
+	public void testLRUEvictsTheLeastRecentlyUsed() {
+		fill(4);
+		cache.get("e0");
+		cache.put("e4", "v4");
+		assertEquals(4, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertEquals("[e1]", evicted.toString());
+		assertNotNull(cache.peek("e0"));
+	}
+
+	public void testLFUEvictsTheLeastFrequentlyUsed() {
+		cache.setEvictionPolicy(ExpressionCache.EvictionPolicy.LFU);
+		fill(4);
+		for (int i = 0; i < 4; i++) {
+			if (i != 2) {
+				cache.get("e" + i);
+				cache.get("e" + i);
+			}
+		}
+		cache.get("e2");
+		cache.setCapacity(3);
+		assertEquals("[e2]", evicted.toString());
+	}
+
+	public void testEvictsInBatchesOfAnEighthOfTheCapacity() {
+		cache.setCapacity(16);
+		fill(17);
+		assertEquals(14, cache.size());
+		assertEquals("[e0, e1, e2]", evicted.toString());
+	}
+
+	public void testSettingASmallerCapacityEvictsNow() {
+		fill(4);
+		cache.setCapacity(2);
+		assertEquals(2, cache.size());
+		assertEquals("[e0, e1]", evicted.toString());
+	}
+
+	public void testCapacityMustBePositive() {
+		try {
+			cache.setCapacity(0);
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		assertEquals(4, cache.getCapacity());
+	}
+
+	public void testEvictionPolicyFromString() {
+		cache.setEvictionPolicyUsingString(" lfu ");
+		assertEquals(ExpressionCache.EvictionPolicy.LFU, cache.getEvictionPolicy());
+		try {
+			cache.setEvictionPolicyUsingString("fifo");
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+	}
+
+	public void testClearTellsTheListener() {
+		fill(3);
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(3, evicted.size());
+	}
+
+	private void fill(int n) {
+		for (int i = 0; i < n; i++)
+			cache.put("e" + i, "v" + i);
+	}
+}
@@ -20,19 +20,26 @@
 
 package org.contract4j5.interpreter.test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.TestCase;
 
 import org.contract4j5.configurator.Configurator;
 import org.contract4j5.configurator.test.ConfiguratorForTesting;
+import org.contract4j5.context.ContractSite;
 import org.contract4j5.context.TestContext;
 import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.controller.Contract4J;
 import org.contract4j5.instance.Instance;
+import org.contract4j5.interpreter.EvaluationTier;
+import org.contract4j5.interpreter.ExpressionDeduplicator;
 import org.contract4j5.interpreter.ExpressionInterpreter;
 import org.contract4j5.interpreter.ExpressionInterpreterHelper;
 import org.contract4j5.interpreter.TestResult;
+import org.contract4j5.interpreter.snapshot.StandardSnapshotStrategy;
 
 public class ExpressionInterpreterHelperTest extends TestCase {
 	ExpressionInterpreterHelper interpreter = null;
@@ -127,6 +134,24 @@ public class ExpressionInterpreterHelperTest extends TestCase {
 		assertEquals  (map.toString(), 0, map.size());
 	}
 		
+	public void testCaptureOldValuesUsesTheSnapshotPolicy() {
+		List<String> list = new ArrayList<String>();
+		list.add("a");
+		Instance target = new Instance ("my_target", List.class, list);
+		TestContext context = new TestContextImpl("$old($target).size() == $target.size()", 
+				"itemName", null, target, null, null, null, "", 0);
+		Map<String, Object> map = interpreter.determineOldValues(context);
+		assertSame (list, map.get("$target"));
+		Contract4J.getSnapshotPolicy().setTypeStrategy("java.util.List", StandardSnapshotStrategy.SHALLOW);
+		try {
+			map = interpreter.determineOldValues(context);
+			assertNotSame (list, map.get("$target"));
+			assertEquals  (list, map.get("$target"));
+		} finally {
+			Contract4J.getSnapshotPolicy().clear();
+		}
+	}
+
 	/*
 	 * Test method for 'org.contract4j5.interpreter.ExpressionInterpreterHelper.expandKeywords(String, String, Object, Object[], Object)'
 	 */
@@ -174,6 +199,57 @@ public class ExpressionInterpreterHelperTest extends TestCase {
 		doTestExpandKeywords (makeContext("\"$this\" $args[0] \"$target\""), true,  "\"$this\" c4jArgs[0] \"$target\"");
 	}
 
+	public void testExpandKeywordsWithOptionalSubstitutions() {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("\\bself\\b", "\\$this");
+		interpreter.setOptionalKeywordSubstitutions(map);
+		doTestExpandKeywords (makeContext("self.equals(\"self\")"), true, "c4jThis.equals(\"self\")");
+		// Changes made to the map after it is set are used, too.
+		map.put("\\bthat\\b", "\\$target");
+		doTestExpandKeywords (makeContext("self != that"), true, "c4jThis != c4jTarget");
+	}
+
+	public void testSitesWithTheSameTestShareTheExpandedExpression() {
+		TestContext byName     = makeContext("my_arg1 != null");
+		TestContext byPosition = makeContext("$args[0] != null");
+		TestContext compact    = makeContext("$args[0]!=null");
+		interpreter.expandKeywords(byName);
+		interpreter.expandKeywords(byPosition);
+		interpreter.expandKeywords(compact);
+		assertEquals("c4jArgs[0] != null", byName.getInternalTestExpression());
+		assertSame(byName.getInternalTestExpression(), byPosition.getInternalTestExpression());
+		// Only grouped with the others; the interpreter still gets the text as written.
+		assertEquals("c4jArgs[0]!=null", compact.getInternalTestExpression());
+		ExpressionDeduplicator deduplicator = interpreter.getExpressionDeduplicator();
+		assertSame(deduplicator.getCanonicalForm("c4jArgs[0] != null"), 
+				deduplicator.getCanonicalForm(compact.getInternalTestExpression()));
+		assertEquals(3, deduplicator.getExpansionCount());
+		assertEquals(2, deduplicator.getExpandedExpressionCount());
+		assertEquals(1, deduplicator.getCanonicalExpressionCount());
+		assertEquals(3.0, deduplicator.getDeduplicationRatio(), 0.0);
+	}
+
+	public void testSitesRecordTheTierTheyRunIn() {
+		ContractSite direct = makeSite("$args[0] > 0");
+		ContractSite script = makeSite("$args[0] + 1 > 0");
+		assertNull(direct.getEvaluationTier());
+		assertTrue(interpreter.invokeTest(direct.newFrame("this", null, new Object[] { Integer.valueOf(1) })).isPassed());
+		assertFalse(interpreter.invokeTest(direct.newFrame("this", null, new Object[] { Integer.valueOf(0) })).isPassed());
+		assertEquals(EvaluationTier.DIRECT, direct.getEvaluationTier());
+		interpreter.invokeTest(script.newFrame("this", null, new Object[] { Integer.valueOf(1) }));
+		assertEquals(EvaluationTier.SCRIPT, script.getEvaluationTier());
+		interpreter.setEvaluateTestsDirectly(false);
+		interpreter.invokeTest(direct.newFrame("this", null, new Object[] { Integer.valueOf(1) }));
+		assertEquals(EvaluationTier.SCRIPT, direct.getEvaluationTier());
+	}
+
+	private ContractSite makeSite(String testExpr) {
+		TestContext prototype = new TestContextImpl(testExpr, "amount", 
+				new Instance("my_this", String.class, "this"), null,
+				new Instance[] { new Instance("amount", Integer.class, Integer.valueOf(1)) },
+				null, "Account.java", 42);
+		return new ContractSite(prototype, new String[] { "amount" }, new Class<?>[] { Integer.class });
+	}
 
 	private TestContext makeContext(String testExpr) {
 		Instance[] args = new Instance[] {
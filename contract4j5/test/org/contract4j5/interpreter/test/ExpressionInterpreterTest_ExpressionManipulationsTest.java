@@ -11,6 +11,7 @@ import org.contract4j5.controller.Contract4J;
 import org.contract4j5.instance.Instance;
 import org.contract4j5.interpreter.ExpressionInterpreterHelper;
 import org.contract4j5.interpreter.groovy.GroovyExpressionInterpreter;
+import org.contract4j5.reporter.Reporter;
 
 public class ExpressionInterpreterTest_ExpressionManipulationsTest extends TestCase {
 
@@ -91,6 +92,36 @@ public class ExpressionInterpreterTest_ExpressionManipulationsTest extends TestC
 		assertNull(interpreter.getObjectInContext("Color"));
 	}
 	
+	static class CountingInterpreter extends GroovyExpressionInterpreter {
+		int lookups = 0;
+		@Override
+		protected Class<?> loadClassIfPossible(String className) {
+			lookups++;
+			return super.loadClassIfPossible(className);
+		}
+		@Override
+		protected Reporter getReporter() {
+			return Contract4J.getInstance().getReporter();
+		}
+	}
+
+	public void testReferencedNamesAreResolvedOncePerExpression() {
+		CountingInterpreter counting = new CountingInterpreter();
+		String expression = "c4jX.foo "+COLOR_FQN+".BLUE && notAClass.value > 0";
+		counting.findReferencedObjectsAndLoad(expression, new NullTestContext());
+		int lookups = counting.lookups;
+		assertTrue(lookups > 0);
+		assertNotNull(counting.getObjectInContext(COLOR_FQN));
+		counting.unregisterContextObject(COLOR_FQN);
+		for (int i = 0; i < 10; i++)
+			counting.findReferencedObjectsAndLoad(expression, new NullTestContext());
+		assertEquals(lookups, counting.lookups);
+		assertNotNull(counting.getObjectInContext(COLOR_FQN));
+		counting.clearBindingPlans();
+		counting.findReferencedObjectsAndLoad(expression, new NullTestContext());
+		assertEquals(2 * lookups, counting.lookups);
+	}
+
 	static class Tester {
 		static {
 			Contract4J.getInstance().registerGlobalContextObject("Color", Color.class);
@@ -50,6 +50,10 @@ public class ExpressionsWithOtherObjectsTest extends TestCase {
 		public static boolean validate() { return true; }
 		public boolean valid() { return true; }
 	}
+
+	public static class Named {
+		public String getName() { return "a  b"; }
+	}
 	
 	public void testStaticReferencesWhenExplicitlyRegisteringClass() {
 		TestContext testContext = new TestContextImpl("org.contract4j5.interpreter.test.ExpressionsWithOtherObjectsTest.TestClass.validate() == true", "", null, null, new Instance[0], null, "", 0);
@@ -78,5 +82,13 @@ public class ExpressionsWithOtherObjectsTest extends TestCase {
 		TestResult result = interpreter.invokeTest(testContext);
 		assertTrue(result.isPassed());		
 	}
+
+	public void testWhitespaceInARegularExpressionIsKept() {
+		Instance instance = new Instance("named", Named.class, new Named());
+		TestContext testContext = new TestContextImpl("$this.name ==~ /a  b/", "", instance, null, new Instance[0], null, "", 0);
+		TestResult result = interpreter.invokeTest(testContext);
+		assertTrue(result.getMessage(), result.isPassed());
+		assertEquals("c4jThis.name ==~ /a  b/", testContext.getInternalTestExpression());
+	}
 	
 }
@@ -0,0 +1,79 @@
+package org.contract4j5.interpreter.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.interpreter.OldValueAccessor;
+
+public class OldValueAccessorTest extends TestCase {
+	public static class Account {
+		public int count = 3;
+		private int balance;
+		private Account parent;
+		private int[] history = new int[] { 1, 2 };
+		public Account(int balance, Account parent) {
+			this.balance = balance;
+			this.parent  = parent;
+		}
+		public int     getBalance() { return balance; }
+		public Account getParent()  { return parent; }
+		public boolean isOpen()     { return true; }
+		public int[]   getHistory() { return history; }
+		public int     total()      { return balance + count; }
+		public int     fail()       { throw new IllegalStateException(); }
+	}
+
+	private Account parent  = new Account(10, null);
+	private Account account = new Account(5, parent);
+
+	public void testThisAndTargetAreReadDirectly() {
+		assertSame(account, read("$this", account, null));
+		assertSame(parent,  read("$target", account, parent));
+	}
+
+	public void testPropertiesFieldsAndMethodsAreReadDirectly() {
+		assertEquals(Integer.valueOf(5),  read("$this.balance", account, null));
+		assertEquals(Integer.valueOf(5),  read("balance", account, null));
+		assertEquals(Integer.valueOf(10), read("$this.parent.balance", account, null));
+		assertEquals(Integer.valueOf(10), read("$target.balance", null, parent));
+		assertEquals(Boolean.TRUE,        read("$this.open", account, null));
+		assertEquals(Integer.valueOf(3),  read("count", account, null));
+		assertEquals(Integer.valueOf(8),  read("$this.total()", account, null));
+		assertEquals(Integer.valueOf(2),  read("$this.history.length", account, null));
+	}
+
+	public void testTheMemberIsResolvedForEachClass() {
+		OldValueAccessor accessor = OldValueAccessor.compile("$this.balance");
+		assertEquals(Integer.valueOf(5), accessor.read(account, null));
+		assertSame(OldValueAccessor.UNREADABLE, accessor.read("a string", null));
+		assertEquals(Integer.valueOf(5), accessor.read(account, null));
+	}
+
+	public void testOtherExpressionsAreInterpreted() {
+		assertSame(OldValueAccessor.INTERPRETED, OldValueAccessor.compile("$this.balance + 1"));
+		assertSame(OldValueAccessor.INTERPRETED, OldValueAccessor.compile("$this.total(1)"));
+		assertSame(OldValueAccessor.INTERPRETED, OldValueAccessor.compile("$args[0]"));
+		assertSame(OldValueAccessor.INTERPRETED, OldValueAccessor.compile("$this.items.collect { it }"));
+		assertSame(OldValueAccessor.UNREADABLE, OldValueAccessor.INTERPRETED.read(account, null));
+	}
+
+	public void testValuesThatCantBeReadDirectlyAreUnreadable() {
+		assertSame(OldValueAccessor.UNREADABLE, read("$this.parent.parent.balance", account, null));
+		assertSame(OldValueAccessor.UNREADABLE, read("$this.missing", account, null));
+		assertSame(OldValueAccessor.UNREADABLE, read("$this.fail()", account, null));
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("size", "key");
+		assertSame(OldValueAccessor.UNREADABLE, read("$this.size", map, null));
+	}
+
+	public void testFieldsAreOnlyReadIfTheInterpreterReadsThem() {
+		assertSame(OldValueAccessor.UNREADABLE, OldValueAccessor.compile("count", false).read(account, null));
+		assertEquals(Integer.valueOf(5), OldValueAccessor.compile("balance", false).read(account, null));
+	}
+
+	private Object read(String expression, Object thiz, Object target) {
+		return OldValueAccessor.compile(expression).read(thiz, target);
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.metrics.test;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.metrics.ContractMetrics;
+import org.contract4j5.metrics.StripedCounters;
+
+public class ContractMetricsTest extends TestCase {
+	ContractMetrics metrics;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		metrics = new ContractMetrics("Account.java", 42, "Pre");
+	}
+
+	public void testCounts() {
+		metrics.record(true,  false, 100);
+		metrics.record(false, false, 100);
+		metrics.record(false, true,  100);
+		metrics.recordFailure(true);
+		assertEquals(4, metrics.getEvaluations());
+		assertEquals(1, metrics.getPasses());
+		assertEquals(3, metrics.getFailures());
+		assertEquals(2, metrics.getSpecificationErrors());
+	}
+
+	public void testSnapshots() {
+		assertEquals(0, metrics.getMeanSnapshotNanos());
+		metrics.recordSnapshot(100);
+		metrics.recordSnapshot(300);
+		assertEquals(2,   metrics.getSnapshots());
+		assertEquals(400, metrics.getTotalSnapshotNanos());
+		assertEquals(200, metrics.getMeanSnapshotNanos());
+		assertEquals(0,   metrics.getEvaluations());
+	}
+
+	public void testLatencyHistogram() {
+		for (int i = 0; i < 98; i++)
+			metrics.record(true, false, 100);  // bucket 7: 64 - 127ns
+		metrics.record(true, false, 1000);      // bucket 10: 512 - 1023ns
+		metrics.record(true, false, 5000000);   // bucket 23
+		long[] histogram = metrics.getLatencyHistogram();
+		assertEquals(ContractMetrics.LATENCY_BUCKETS, histogram.length);
+		assertEquals(98, histogram[7]);
+		assertEquals(1,  histogram[10]);
+		assertEquals(1,  histogram[23]);
+		assertEquals(128, metrics.getMedianLatencyNanos());
+		assertEquals(1024, metrics.get99thPercentileLatencyNanos());
+		assertEquals(1L << 23, metrics.getLatencyPercentileNanos(100.0));
+		assertEquals((98 * 100 + 1000 + 5000000) / 100, metrics.getMeanLatencyNanos());
+	}
+
+	public void testVeryLongEvaluationsGoInTheLastBucket() {
+		metrics.record(true, false, Long.MAX_VALUE);
+		metrics.record(true, false, -1);  // e.g., a clock adjustment
+		long[] histogram = metrics.getLatencyHistogram();
+		assertEquals(1, histogram[ContractMetrics.LATENCY_BUCKETS - 1]);
+		assertEquals(1, histogram[0]);
+	}
+
+	public void testEmptyMetrics() {
+		assertEquals(0, metrics.getMeanLatencyNanos());
+		assertEquals(0, metrics.getMedianLatencyNanos());
+	}
+
+	public void testReset() {
+		metrics.record(false, true, 100);
+		metrics.reset();
+		assertEquals(0, metrics.getEvaluations());
+		assertEquals(0, metrics.getFailures());
+		assertEquals(0, metrics.getLatencyHistogram()[7]);
+	}
+
+	public void testStripedCountersFromManyThreads() throws Exception {
+		final StripedCounters counters = new StripedCounters(3);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						counters.increment(1);
+						counters.add(2, 2);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread: threads)
+			thread.join();
+		assertEquals(0,      counters.get(0));
+		assertEquals(80000,  counters.get(1));
+		assertEquals(160000, counters.get(2));
+		long[] all = counters.getAll();
+		assertEquals(3, all.length);
+		assertEquals(80000, all[1]);
+	}
+}
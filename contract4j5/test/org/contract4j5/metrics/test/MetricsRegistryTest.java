@@ -0,0 +1,113 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.metrics.test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.context.ContractSite;
+import org.contract4j5.context.TestContext;
+import org.contract4j5.context.TestContextImpl;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.instance.Instance;
+import org.contract4j5.metrics.ContractMetrics;
+import org.contract4j5.metrics.MetricsRegistry;
+
+public class MetricsRegistryTest extends TestCase {
+	MetricsRegistry registry;
+	ContractSite site;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		registry = new MetricsRegistry();
+		TestContext prototype = new TestContextImpl("$this != null", "Account", 
+				new Instance("Account", Object.class, new Object()), null, null, null, "Account.java", 42);
+		prototype.setActualTestExpression("$this != null");
+		site = new ContractSite(prototype, null, null);
+	}
+
+	public void testDisabledByDefault() {
+		assertFalse(registry.isEnabled());
+		assertFalse(Contract4J.getMetricsRegistry().isEnabled());
+	}
+
+	public void testMetricsAreFoundOnceAndRememberedInTheSite() {
+		ContractMetrics m = registry.getMetrics(site.newFrame(new Object(), null, null), "Invar");
+		assertSame(m, site.getMetrics());
+		assertSame(m, registry.getMetrics(site.newFrame(new Object(), null, null), "Invar"));
+		assertSame(m, registry.findMetrics("Account.java", 42, "Invar"));
+		assertEquals(1, registry.getSiteCount());
+		assertEquals("Account.java:42:Invar", registry.getAllMetrics().firstKey());
+	}
+
+	public void testContextsWithoutSitesAreLookedUpBySourceLocation() {
+		TestContext context = new TestContextImpl("true", "x", null, null, null, null, "Other.java", 7);
+		ContractMetrics m = registry.getMetrics(context, "Pre");
+		assertSame(m, registry.getMetrics("Other.java", 7, "Pre"));
+		assertNotSame(m, registry.getMetrics("Other.java", 7, "Post"));
+	}
+
+	public void testSuspendedSitesAreListed() {
+		ContractMetrics m = registry.getMetrics("Account.java", 42, "Invar");
+		registry.getMetrics("Account.java", 43, "Invar");
+		assertEquals(0, registry.getSuspendedSites().length);
+		m.recordSuspension(true, 1000, 5000);
+		assertEquals(1, m.getSuspensions());
+		assertTrue(m.isSuspended());
+		String[] suspended = registry.getSuspendedSites();
+		assertEquals(1, suspended.length);
+		assertTrue(suspended[0], suspended[0].startsWith("Account.java:42:Invar"));
+		assertTrue(suspended[0], suspended[0].endsWith("budget = 1000ns, cost = 5000ns"));
+		m.recordSuspension(false, 1000, 500);
+		assertEquals(1, m.getSuspensions());
+		assertEquals(0, registry.getSuspendedSites().length);
+	}
+
+	public void testResetKeepsTheSites() {
+		ContractMetrics m = registry.getMetrics("Account.java", 42, "Pre");
+		m.record(true, false, 10);
+		registry.reset();
+		assertEquals(0, m.getEvaluations());
+		assertSame(m, registry.getMetrics("Account.java", 42, "Pre"));
+	}
+
+	public void testSitesAreExportedAsMBeans() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		registry.getMetrics("Account.java", 42, "Pre").record(false, false, 10);
+		registry.registerMBeans(server);
+		try {
+			// Sites recorded after the registration are registered, too.
+			registry.getMetrics("Account.java", 43, "Post");
+			ObjectName pre  = MetricsRegistry.makeObjectName("Account.java:42:Pre");
+			ObjectName post = MetricsRegistry.makeObjectName("Account.java:43:Post");
+			assertEquals(new Long(1), server.getAttribute(pre, "Failures"));
+			assertTrue(server.isRegistered(post));
+			assertEquals(new Integer(2), 
+					server.getAttribute(new ObjectName(MetricsRegistry.OBJECT_NAME), "SiteCount"));
+		} finally {
+			registry.unregisterMBeans(server);
+		}
+		assertFalse(server.isRegistered(MetricsRegistry.makeObjectName("Account.java:42:Pre")));
+	}
+}
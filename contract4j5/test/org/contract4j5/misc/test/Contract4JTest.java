@@ -63,6 +63,35 @@ public class Contract4JTest extends TestCase {
 		doSetCheckNewStyle(false, false, true);
 	}
 	
+	public void testSystemFlagsFollowTheSystemInstance() {
+		Contract4J previous = Contract4J.getInstance();
+		try {
+			Contract4J.setInstance(c4j);
+			c4j.setPreTestsEnabled(false);
+			c4j.setEnabled(Contract4J.TestType.Invar, false);
+			assertFalse(Contract4J.isSystemPreTestsEnabled());
+			assertTrue (Contract4J.isSystemPostTestsEnabled());
+			assertFalse(Contract4J.isSystemInvarTestsEnabled());
+
+			// Changes to other instances aren't published.
+			Contract4J other = new Contract4J();
+			other.setPostTestsEnabled(false);
+			assertTrue (Contract4J.isSystemPostTestsEnabled());
+
+			// ... until they become the system instance.
+			Contract4J.setInstance(other);
+			assertTrue (Contract4J.isSystemPreTestsEnabled());
+			assertFalse(Contract4J.isSystemPostTestsEnabled());
+			assertTrue (Contract4J.isSystemInvarTestsEnabled());
+
+			Contract4J.setInstance(null);
+			assertTrue (Contract4J.isSystemPostTestsEnabled());
+		} finally {
+			Contract4J.setInstance(previous);
+		}
+		assertTrue(Contract4J.isSystemPreTestsEnabled());
+	}
+
 	private void doSetCheckOldStyle(boolean pre, boolean post, boolean invar) {
 		c4j.setEnabled(Contract4J.TestType.Pre,   pre);
 		c4j.setEnabled(Contract4J.TestType.Post,  post);
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2005, 2006 Dean Wampler. All rights reserved.
+ * http://www.contract4j.org
+ *
+ * Licensed under the Eclipse Public License - v 1.0; you may not use this
+ * software except in compliance with the License. You may obtain a copy of the 
+ * License at
+ *
+ *     http://www.eclipse.org/legal/epl-v10.html
+ *
+ * A copy is also included with this distribution. See the "LICENSE" file.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @author Dean Wampler <mailto:dean@aspectprogramming.com>
+ */
+package org.contract4j5.misc.test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.contract4j5.contract.CostTier;
+import org.contract4j5.controller.Contract4J;
+import org.contract4j5.controller.EnablementRegistry;
+
+public class EnablementRegistryTest extends TestCase {
+	private static final String CLASS = "com.example.hot.Cache";
+
+	Contract4J c4j;
+	EnablementRegistry registry;
+	Contract4J previous;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		previous = Contract4J.getInstance();
+		c4j = new Contract4J();
+		Contract4J.setInstance(c4j);
+		registry = Contract4J.getEnablementRegistry();
+		registry.clear();
+	}
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		registry.clear();
+		registry.setTrustThreshold(0);
+		registry.setMaxTrustInterval(EnablementRegistry.DEFAULT_MAX_TRUST_INTERVAL);
+		registry.setBudgetOverruns(EnablementRegistry.DEFAULT_BUDGET_OVERRUNS);
+		Contract4J.setInstance(previous);
+	}
+
+	public void testGlobalFlagsApplyWithoutOverrides() {
+		assertTrue(registry.isEnabled(CLASS, "put", Contract4J.TestType.Pre));
+		c4j.setPreTestsEnabled(false);
+		assertFalse(registry.isEnabled(CLASS, "put", Contract4J.TestType.Pre));
+		assertTrue(registry.isEnabled(CLASS, "put", Contract4J.TestType.Post));
+	}
+
+	public void testMostSpecificOverrideWins() {
+		registry.setOverride("Contract.com.example.hot", false);
+		registry.setOverride("Pre.com.example.hot.Cache.put", true);
+		assertTrue (registry.isEnabled(CLASS, "put", Contract4J.TestType.Pre));
+		assertFalse(registry.isEnabled(CLASS, "put", Contract4J.TestType.Post));
+		assertFalse(registry.isEnabled(CLASS, "get", Contract4J.TestType.Pre));
+		assertFalse(registry.isEnabled("com.example.hot.sub.Other", null, Contract4J.TestType.Invar));
+		assertTrue (registry.isEnabled("com.example.hotter.Other", null, Contract4J.TestType.Invar));
+	}
+
+	public void testTypeOverrideWinsOverContractOverrideForTheSameScope() {
+		registry.setOverride("Contract." + CLASS, false);
+		registry.setOverride("Invar." + CLASS, true);
+		assertTrue (registry.isEnabled(CLASS, "put", Contract4J.TestType.Invar));
+		assertFalse(registry.isEnabled(CLASS, "put", Contract4J.TestType.Pre));
+	}
+
+	public void testNestedClassesInheritTheOuterClassOverride() {
+		registry.setOverride("Contract." + CLASS, false);
+		assertFalse(registry.isEnabled(CLASS + "$Entry", "getKey", Contract4J.TestType.Post));
+	}
+
+	public void testVersionChangesWithEveryUpdate() {
+		int version = registry.getVersion();
+		registry.enable("Pre." + CLASS);
+		assertTrue(registry.getVersion() != version);
+		version = registry.getVersion();
+		c4j.setPostTestsEnabled(false);
+		assertTrue(registry.getVersion() != version);
+		version = registry.getVersion();
+		registry.remove("Pre." + CLASS);
+		assertTrue(registry.getVersion() != version);
+	}
+
+	public void testGuardFlagsStayOnWhileAnyOverrideEnablesTheType() {
+		c4j.setPreTestsEnabled(false);
+		assertFalse(Contract4J.isSystemPreTestsEnabled());
+		registry.setOverride("Pre." + CLASS, true);
+		assertTrue (Contract4J.isSystemPreTestsEnabled());
+		assertFalse(registry.isEnabled("com.example.Other", null, Contract4J.TestType.Pre));
+		registry.remove("Pre." + CLASS);
+		assertFalse(Contract4J.isSystemPreTestsEnabled());
+		registry.setOverride("Contract." + CLASS, true);
+		assertTrue (Contract4J.isSystemPreTestsEnabled());
+	}
+
+	public void testInvalidKeysAreRejected() {
+		String[] badKeys = { "Foo.com.example", "Pre", "Pre.", ".com.example", null };
+		for (String key: badKeys) {
+			try {
+				registry.setOverride(key, false);
+				fail(key);
+			} catch (IllegalArgumentException iae) {
+				// expected
+			}
+		}
+		assertEquals(0, registry.getOverrideList().length);
+	}
+
+	public void testSampleRatesResolveLikeOverrides() {
+		assertEquals(1.0, registry.getSampleRate(CLASS, "put", Contract4J.TestType.Pre), 0.0);
+		registry.setSampleRate("Contract.*", 0.5);
+		registry.setSampleRate("Invar.com.example.hot", 0.01);
+		assertEquals(0.5,  registry.getSampleRate(CLASS, "put", Contract4J.TestType.Pre), 0.0);
+		assertEquals(0.01, registry.getSampleRate(CLASS, "put", Contract4J.TestType.Invar), 0.0);
+		assertEquals(0.5,  registry.getSampleRate("com.example.Other", null, Contract4J.TestType.Invar), 0.0);
+	}
+
+	public void testSampleThresholds() {
+		assertEquals(EnablementRegistry.ALWAYS, registry.getSampleThreshold(CLASS, "put", Contract4J.TestType.Pre));
+		registry.setSampleRate("Pre." + CLASS, 0.25);
+		assertEquals(EnablementRegistry.ALWAYS / 4, registry.getSampleThreshold(CLASS, "put", Contract4J.TestType.Pre));
+		registry.setSampleRate("Pre." + CLASS, 1e-12);
+		assertEquals(1, registry.getSampleThreshold(CLASS, "put", Contract4J.TestType.Pre));
+		registry.setSampleRate("Pre." + CLASS, 0.0);
+		assertEquals(0, registry.getSampleThreshold(CLASS, "put", Contract4J.TestType.Pre));
+		registry.setSampleRate("Pre." + CLASS, 1.0);
+		registry.disable("Pre." + CLASS);
+		assertEquals(0, registry.getSampleThreshold(CLASS, "put", Contract4J.TestType.Pre));
+	}
+
+	public void testInvalidSampleRatesAreRejected() {
+		double[] badRates = { -0.1, 1.1, Double.NaN };
+		for (double rate: badRates) {
+			try {
+				registry.setSampleRate("Pre." + CLASS, rate);
+				fail(Double.toString(rate));
+			} catch (IllegalArgumentException iae) {
+				// expected
+			}
+		}
+		assertEquals(0, registry.getSampleRateList().length);
+	}
+
+	public void testTestsAboveTheMaxTierAreDisabled() {
+		assertEquals(CostTier.EXPENSIVE, registry.getMaxTier());
+		assertTrue(registry.isTierEnabled(CostTier.EXPENSIVE));
+		int version = registry.getVersion();
+		c4j.setMaxTier(CostTier.MODERATE);
+		assertTrue(registry.getVersion() != version);
+		assertEquals(CostTier.MODERATE, registry.getMaxTier());
+		assertTrue (registry.isTierEnabled(CostTier.CHEAP));
+		assertTrue (registry.isTierEnabled(CostTier.MODERATE));
+		assertFalse(registry.isTierEnabled(CostTier.EXPENSIVE));
+		registry.setMaxTierName("cheap");
+		assertEquals("CHEAP", registry.getMaxTierName());
+		assertFalse(registry.isTierEnabled(CostTier.MODERATE));
+		// A new system instance publishes its own tier.
+		Contract4J.setInstance(new Contract4J());
+		assertEquals(CostTier.EXPENSIVE, registry.getMaxTier());
+	}
+
+	public void testTrustSettings() {
+		assertEquals(0, registry.getTrustThreshold());
+		assertEquals(EnablementRegistry.DEFAULT_MAX_TRUST_INTERVAL, registry.getMaxTrustInterval());
+		int version = registry.getVersion();
+		registry.setTrustThreshold(100);
+		assertTrue(registry.getVersion() != version);
+		version = registry.getVersion();
+		registry.setMaxTrustInterval(64);
+		assertTrue(registry.getVersion() != version);
+		try {
+			registry.setTrustThreshold(-1);
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		try {
+			registry.setMaxTrustInterval(0);
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		assertEquals(100, registry.getTrustThreshold());
+		assertEquals(64,  registry.getMaxTrustInterval());
+	}
+
+	public void testBudgetsResolveLikeOverrides() {
+		assertEquals(-1, registry.getBudgetMicros(CLASS, "put", Contract4J.TestType.Invar));
+		registry.setBudget("Invar.com.example", 500);
+		registry.setBudget("Contract." + CLASS + ".put", 0);
+		assertEquals(500, registry.getBudgetMicros(CLASS, "get", Contract4J.TestType.Invar));
+		assertEquals(0,   registry.getBudgetMicros(CLASS, "put", Contract4J.TestType.Invar));
+		assertEquals(-1,  registry.getBudgetMicros(CLASS, "get", Contract4J.TestType.Pre));
+		assertEquals(2, registry.getBudgetList().length);
+		try {
+			registry.setBudget("Invar.com.example", -1);
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		try {
+			registry.setBudgetOverruns(0);
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		registry.setBudgetOverruns(2);
+		assertEquals(2, registry.getBudgetOverruns());
+		registry.clear();
+		assertEquals(0, registry.getBudgetList().length);
+	}
+
+	public void testOverridesCanBeChangedThroughJMX() throws Exception {
+		Contract4J.registerMBeans();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName  name   = new ObjectName(EnablementRegistry.OBJECT_NAME);
+			server.invoke(name, "disable", new Object[] { "Post." + CLASS }, 
+					new String[] { String.class.getName() });
+			assertFalse(registry.isEnabled(CLASS, "put", Contract4J.TestType.Post));
+			String[] list = (String[]) server.getAttribute(name, "OverrideList");
+			assertEquals(1, list.length);
+			assertEquals("Post." + CLASS + "=false", list[0]);
+		} finally {
+			Contract4J.unregisterMBeans();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.contract4j5.reporter.test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+import org.contract4j5.reporter.AsyncReporter;
+import org.contract4j5.reporter.Severity;
+
+import junit.framework.TestCase;
+
+public class AsyncReporterTest extends TestCase {
+	private StringWriter out;
+	private AsyncReporter reporter;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		out = new StringWriter();
+		reporter = new AsyncReporter(Severity.INFO, out);
+	}
+
+	protected void tearDown() throws Exception {
+		reporter.close();
+		super.tearDown();
+	}
+
+	public void testMessagesAreWrittenInOrderAfterFlush() {
+		for (int i = 0; i < 1000; i++)
+			reporter.report(Severity.WARN, AsyncReporterTest.class, "message " + i);
+		reporter.flush();
+		String[] lines = out.toString().split("\n");
+		assertEquals(1000, lines.length);
+		for (int i = 0; i < 1000; i++)
+			assertEquals("[WARN] AsyncReporterTest: message " + i, lines[i].trim());
+		assertEquals(0, reporter.getPendingCount());
+	}
+
+	public void testMessagesBelowTheThresholdAreNotQueued() {
+		reporter.report(Severity.DEBUG, AsyncReporterTest.class, "hidden");
+		reporter.report(Severity.ERROR, AsyncReporterTest.class, "shown");
+		reporter.flush();
+		assertEquals("[ERROR] AsyncReporterTest: shown", out.toString().trim());
+	}
+
+	public void testCapacityIsRoundedToAPowerOfTwoAndFixedOnceStarted() {
+		reporter.setCapacity(100);
+		assertEquals(128, reporter.getCapacity());
+		reporter.report(Severity.WARN, AsyncReporterTest.class, "start");
+		try {
+			reporter.setCapacity(256);
+			fail();
+		} catch (IllegalStateException ise) {}
+	}
+
+	public void testDropPolicyDiscardsMessagesSilentlyWhenFull() throws Exception {
+		GatedWriter writer = fillWhileBlocked(AsyncReporter.OverflowPolicy.DROP);
+		assertEquals(3, reporter.getDroppedCount());
+		writer.release.countDown();
+		reporter.flush();
+		assertEquals(3, countLines(writer.toString()));
+		assertTrue(writer.toString().indexOf("dropped") < 0);
+	}
+
+	public void testCountPolicyReportsHowManyMessagesWereDiscarded() throws Exception {
+		GatedWriter writer = fillWhileBlocked(AsyncReporter.OverflowPolicy.COUNT);
+		assertEquals(3, reporter.getDroppedCount());
+		writer.release.countDown();
+		reporter.flush();
+		String s = writer.toString();
+		assertEquals(4, countLines(s));
+		assertTrue(s, s.indexOf("[WARN] AsyncReporter: 3 messages were dropped") >= 0);
+	}
+
+	public void testBlockPolicyLosesNothing() throws Exception {
+		reporter.setCapacity(2);
+		reporter.setOverflowPolicy(AsyncReporter.OverflowPolicy.BLOCK);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 500; i++)
+						reporter.report(Severity.WARN, AsyncReporterTest.class, "m");
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t: threads)
+			t.join();
+		reporter.flush();
+		assertEquals(0, reporter.getDroppedCount());
+		assertEquals(2000, countLines(out.toString()));
+	}
+
+	public void testCloseWritesQueuedMessagesAndLaterOnesAreWrittenSynchronously() {
+		for (int i = 0; i < 100; i++)
+			reporter.report(Severity.WARN, AsyncReporterTest.class, "before");
+		reporter.close();
+		assertEquals(100, countLines(out.toString()));
+		reporter.report(Severity.WARN, AsyncReporterTest.class, "after");
+		assertEquals(101, countLines(out.toString()));
+	}
+
+	public void testOverflowPolicyCanBeSetFromAString() {
+		reporter.setOverflowPolicyUsingString(" block ");
+		assertEquals(AsyncReporter.OverflowPolicy.BLOCK, reporter.getOverflowPolicy());
+		try {
+			reporter.setFlushIntervalMillis(0);
+			fail();
+		} catch (IllegalArgumentException iae) {}
+	}
+
+	/**
+	 * Blocks the background thread in the writer with one message, fills the
+	 * two slots of the buffer and then reports three more.
+	 */
+	private GatedWriter fillWhileBlocked(AsyncReporter.OverflowPolicy policy) throws InterruptedException {
+		GatedWriter writer = new GatedWriter();
+		reporter = new AsyncReporter(Severity.INFO, writer);
+		reporter.setCapacity(2);
+		reporter.setOverflowPolicy(policy);
+		reporter.report(Severity.WARN, AsyncReporterTest.class, "first");
+		writer.entered.await();
+		for (int i = 0; i < 5; i++)
+			reporter.report(Severity.WARN, AsyncReporterTest.class, "queued " + i);
+		return writer;
+	}
+
+	private static int countLines(String s) {
+		return s.trim().length() == 0 ? 0 : s.trim().split("\n").length;
+	}
+
+	private static class GatedWriter extends StringWriter {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		public void write(String str) {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			super.write(str);
+		}
+
+		public void flush() {}
+		public void close() throws IOException {}
+	}
+}
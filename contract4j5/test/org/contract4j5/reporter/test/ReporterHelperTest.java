@@ -0,0 +1,60 @@
+package org.contract4j5.reporter.test;
+
+import java.io.StringWriter;
+
+import org.contract4j5.reporter.ReporterHelper;
+import org.contract4j5.reporter.Severity;
+import org.contract4j5.reporter.WriterReporter;
+
+import junit.framework.TestCase;
+
+public class ReporterHelperTest extends TestCase {
+	private static class CountingArg {
+		int calls = 0;
+		public String toString() { 
+			calls++;
+			return "arg"; 
+		}
+	}
+
+	private StringWriter out;
+	private WriterReporter reporter;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		out = new StringWriter();
+		reporter = new WriterReporter(Severity.WARN, out);
+	}
+
+	public void testIsEnabledHonorsTheThreshold() {
+		assertFalse(reporter.isEnabled(Severity.INFO));
+		assertTrue(reporter.isEnabled(Severity.WARN));
+		assertTrue(reporter.isEnabled(Severity.FATAL));
+		reporter.setThreshold(Severity.OFF);
+		assertFalse(reporter.isEnabled(Severity.FATAL));
+	}
+
+	public void testArgumentsAreNotConvertedBelowTheThreshold() {
+		CountingArg arg = new CountingArg();
+		reporter.report(Severity.DEBUG, ReporterHelperTest.class, "a {}", arg);
+		reporter.report(Severity.INFO,  ReporterHelperTest.class, "a {} {}", arg, arg);
+		reporter.report(Severity.INFO,  ReporterHelperTest.class, "a {} {} {}", arg, arg, arg);
+		assertEquals(0, arg.calls);
+		assertEquals("", out.toString());
+	}
+
+	public void testFormattedMessagesAreReportedAtOrAboveTheThreshold() {
+		CountingArg arg = new CountingArg();
+		reporter.report(Severity.WARN, ReporterHelperTest.class, "a {} and {}", arg, Integer.valueOf(2));
+		assertEquals(1, arg.calls);
+		assertEquals("[WARN] ReporterHelperTest: a arg and 2", out.toString().trim());
+	}
+
+	public void testFormatMessage() {
+		assertEquals("x=1, y=null", ReporterHelper.formatMessage("x={}, y={}", Integer.valueOf(1), null));
+		assertEquals("no args {}", ReporterHelper.formatMessage("no args {}"));
+		assertEquals("extra 1", ReporterHelper.formatMessage("extra {}", "1", "2"));
+		assertEquals("{} }{", ReporterHelper.formatMessage("{} }{"));
+		assertEquals("", ReporterHelper.formatMessage(null, "1"));
+	}
+}